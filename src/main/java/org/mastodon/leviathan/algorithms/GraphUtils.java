@@ -2,6 +2,7 @@ package org.mastodon.leviathan.algorithms;
 
 import org.mastodon.graph.Edge;
 import org.mastodon.graph.Vertex;
+import org.mastodon.leviathan.model.DoubleSlice;
 import org.mastodon.leviathan.model.cell.Cell;
 
 import net.imglib2.RealLocalizable;
@@ -33,6 +34,46 @@ public class GraphUtils
 		return ( a + x1 * y0 - x0 * y1 ) / 2.0;
 	}
 
+	public static final double signedArea( final DoubleSlice boundary )
+	{
+		final int n = boundary.size();
+		double a = 0.0;
+		for ( int i = 0; i < n - 3; i = i + 2 )
+		{
+			final double x0 = boundary.get( i );
+			final double y0 = boundary.get( i + 1 );
+			final double x1 = boundary.get( i + 2 );
+			final double y1 = boundary.get( i + 3 );
+			a += x0 * y1 - x1 * y0;
+		}
+		final double x0 = boundary.get( 0 );
+		final double y0 = boundary.get( 1 );
+		final double x1 = boundary.get( n - 2 );
+		final double y1 = boundary.get( n - 1 );
+
+		return ( a + x1 * y0 - x0 * y1 ) / 2.0;
+	}
+
+	/**
+	 * Returns the length of the polyline specified as interleaved
+	 * <code>x, y</code> coordinates.
+	 *
+	 * @param xy
+	 *            the polyline coordinates.
+	 * @return the polyline length.
+	 */
+	public static final double pathLength( final double[] xy )
+	{
+		double length = 0.;
+		for ( int i = 0; i < xy.length - 3; i = i + 2 )
+		{
+			final double dx = xy[ i + 2 ] - xy[ i ];
+			final double dy = xy[ i + 3 ] - xy[ i + 1 ];
+			length += Math.sqrt( dx * dx + dy * dy );
+		}
+		return length;
+	}
+
 	public static final < V extends Vertex< E >, E extends Edge< V > > V vertexAcross( final E edge, final V vertex, final V ref )
 	{
 		final V source = edge.getSource( ref );
@@ -0,0 +1,205 @@
+package org.mastodon.leviathan.algorithms;
+
+import java.util.Arrays;
+
+/**
+ * Rasterizes closed polygons and polylines given as interleaved
+ * <code>x, y</code> coordinates on the integer pixel grid.
+ * <p>
+ * Polygons are filled with a scanline algorithm following the top-left rule: a
+ * pixel is inside the polygon if its center is inside, and pixels whose center
+ * lies exactly on an edge shared by two adjacent polygons are attributed to
+ * only one of them.
+ * <p>
+ * Instances keep a scratch buffer for the edge crossings and are therefore
+ * not thread-safe. Use one instance per thread.
+ */
+public class PolygonRasterizer
+{
+
+	/**
+	 * Receives the horizontal spans of a filled polygon.
+	 */
+	@FunctionalInterface
+	public interface SpanConsumer
+	{
+		/**
+		 * Called for each span of pixels inside the polygon.
+		 *
+		 * @param y
+		 *            the row of the span.
+		 * @param xmin
+		 *            the first pixel of the span, inclusive.
+		 * @param xmax
+		 *            the last pixel of the span, inclusive.
+		 */
+		public void span( long y, long xmin, long xmax );
+	}
+
+	/**
+	 * Receives the pixels along a polyline.
+	 */
+	@FunctionalInterface
+	public interface PixelConsumer
+	{
+		public void pixel( long x, long y );
+	}
+
+	private double[] crossings = new double[ 16 ];
+
+	/**
+	 * Fills the polygon made of the first <code>n</code> points of the
+	 * specified array.
+	 *
+	 * @param xy
+	 *            the polygon coordinates, as <code>x0, y0, x1, y1, ...</code>.
+	 *            The polygon is closed implicitly.
+	 * @param n
+	 *            the number of points to use.
+	 * @param consumer
+	 *            the consumer of the horizontal spans.
+	 */
+	public void fill( final double[] xy, final int n, final SpanConsumer consumer )
+	{
+		fill( xy, 0, n, consumer );
+	}
+
+	/**
+	 * Fills the polygon made of the <code>n</code> points of the specified
+	 * array starting at point <code>offset</code>.
+	 *
+	 * @param xy
+	 *            the polygon coordinates, as <code>x0, y0, x1, y1, ...</code>.
+	 *            The polygon is closed implicitly.
+	 * @param offset
+	 *            the index of the first point to use.
+	 * @param n
+	 *            the number of points to use.
+	 * @param consumer
+	 *            the consumer of the horizontal spans.
+	 */
+	public void fill( final double[] xy, final int offset, final int n, final SpanConsumer consumer )
+	{
+		if ( n < 3 )
+			return;
+
+		final int o = 2 * offset;
+		double minY = Double.POSITIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		for ( int i = 0; i < n; i++ )
+		{
+			final double y = xy[ o + 2 * i + 1 ];
+			if ( y < minY )
+				minY = y;
+			if ( y > maxY )
+				maxY = y;
+		}
+
+		final long ystart = ( long ) Math.ceil( minY );
+		final long yend = ( long ) Math.ceil( maxY );
+		for ( long y = ystart; y < yend; y++ )
+		{
+			int nc = 0;
+			double x0 = xy[ o + 2 * n - 2 ];
+			double y0 = xy[ o + 2 * n - 1 ];
+			for ( int i = 0; i < n; i++ )
+			{
+				final double x1 = xy[ o + 2 * i ];
+				final double y1 = xy[ o + 2 * i + 1 ];
+				if ( ( y0 <= y && y < y1 ) || ( y1 <= y && y < y0 ) )
+				{
+					final double x = x0 + ( y - y0 ) * ( x1 - x0 ) / ( y1 - y0 );
+					if ( nc == crossings.length )
+						crossings = Arrays.copyOf( crossings, 2 * nc );
+					// Insertion sort, there are few crossings per row.
+					int j = nc++;
+					while ( j > 0 && crossings[ j - 1 ] > x )
+					{
+						crossings[ j ] = crossings[ j - 1 ];
+						j--;
+					}
+					crossings[ j ] = x;
+				}
+				x0 = x1;
+				y0 = y1;
+			}
+
+			for ( int k = 0; k < nc - 1; k += 2 )
+			{
+				final long xmin = ( long ) Math.ceil( crossings[ k ] );
+				final long xmax = ( long ) Math.ceil( crossings[ k + 1 ] ) - 1;
+				if ( xmin <= xmax )
+					consumer.span( y, xmin, xmax );
+			}
+		}
+	}
+
+	/**
+	 * Visits the pixels along the polyline made of the first <code>n</code>
+	 * points of the specified array. Consecutive duplicate pixels are visited
+	 * only once.
+	 *
+	 * @param xy
+	 *            the polyline coordinates, as <code>x0, y0, x1, y1, ...</code>.
+	 * @param n
+	 *            the number of points to use.
+	 * @param closed
+	 *            if <code>true</code>, the last point is joined to the first
+	 *            one.
+	 * @param consumer
+	 *            the consumer of the pixels.
+	 */
+	public static void trace( final double[] xy, final int n, final boolean closed, final PixelConsumer consumer )
+	{
+		trace( xy, 0, n, closed, consumer );
+	}
+
+	/**
+	 * Visits the pixels along the polyline made of the <code>n</code> points
+	 * of the specified array starting at point <code>offset</code>.
+	 *
+	 * @param xy
+	 *            the polyline coordinates, as <code>x0, y0, x1, y1, ...</code>.
+	 * @param offset
+	 *            the index of the first point to use.
+	 * @param n
+	 *            the number of points to use.
+	 * @param closed
+	 *            if <code>true</code>, the last point is joined to the first
+	 *            one.
+	 * @param consumer
+	 *            the consumer of the pixels.
+	 */
+	public static void trace( final double[] xy, final int offset, final int n, final boolean closed, final PixelConsumer consumer )
+	{
+		if ( n < 1 )
+			return;
+
+		final int o = 2 * offset;
+		long px = Math.round( xy[ o ] );
+		long py = Math.round( xy[ o + 1 ] );
+		consumer.pixel( px, py );
+		final int nSegments = closed ? n : n - 1;
+		for ( int i = 0; i < nSegments; i++ )
+		{
+			final int i1 = ( i + 1 ) % n;
+			final double x0 = xy[ o + 2 * i ];
+			final double y0 = xy[ o + 2 * i + 1 ];
+			final double dx = xy[ o + 2 * i1 ] - x0;
+			final double dy = xy[ o + 2 * i1 + 1 ] - y0;
+			final int nSteps = ( int ) Math.ceil( Math.max( Math.abs( dx ), Math.abs( dy ) ) );
+			// Do not visit the first pixel twice when closing the polyline.
+			final int lastStep = ( closed && i == nSegments - 1 ) ? nSteps - 1 : nSteps;
+			for ( int s = 1; s <= lastStep; s++ )
+			{
+				final long x = Math.round( x0 + s * dx / nSteps );
+				final long y = Math.round( y0 + s * dy / nSteps );
+				if ( x == px && y == py )
+					continue;
+				px = x;
+				py = y;
+				consumer.pixel( x, y );
+			}
+		}
+	}
+}
@@ -0,0 +1,419 @@
+package org.mastodon.leviathan.algorithms;
+
+import java.util.Arrays;
+
+/**
+ * Simplifies polylines given as interleaved <code>x, y</code> coordinates.
+ * <p>
+ * Instead of simplifying a polyline for one tolerance, the methods of this
+ * class compute the significance of each of its points once. The polyline
+ * simplified with a tolerance is then made of the points whose significance is
+ * above the tolerance threshold, so that it can be extracted for any tolerance
+ * by a single pass over the points, without recomputation. The first and last
+ * points have an infinite significance and are always kept.
+ * <p>
+ * Significances are made monotonic: a point removed at some tolerance is also
+ * removed at all larger tolerances. For the Douglas-Peucker method, filtering
+ * with a tolerance gives exactly the points the Douglas-Peucker algorithm keeps
+ * with that tolerance.
+ * <p>
+ * All the methods are iterative and work on primitive arrays, so that long
+ * polylines do not overflow the stack. They are thread-safe.
+ */
+public class PolylineSimplifier
+{
+
+	/**
+	 * Simplification methods.
+	 */
+	public enum Method
+	{
+		/**
+		 * Douglas-Peucker: the significance of a point is its distance to the
+		 * segment joining the points kept around it, when it is split.
+		 */
+		DOUGLAS_PEUCKER( "Douglas-Peucker" ),
+
+		/**
+		 * Visvalingam-Whyatt: the significance of a point is the area of the
+		 * triangle it forms with its neighbors, when it is removed.
+		 */
+		VISVALINGAM_WHYATT( "Visvalingam-Whyatt" );
+
+		private final String name;
+
+		private Method( final String name )
+		{
+			this.name = name;
+		}
+
+		/**
+		 * Returns the significance threshold matching a tolerance. Distances
+		 * are compared to the tolerance, areas to the area of a square whose
+		 * side is the tolerance.
+		 *
+		 * @param tolerance
+		 *            the tolerance, in global units.
+		 * @return the threshold.
+		 */
+		public double threshold( final double tolerance )
+		{
+			switch ( this )
+			{
+			case VISVALINGAM_WHYATT:
+				return tolerance * tolerance;
+			case DOUGLAS_PEUCKER:
+			default:
+				return tolerance;
+			}
+		}
+
+		/**
+		 * Computes the significance of the points of a polyline with this
+		 * method.
+		 *
+		 * @param xy
+		 *            the polyline coordinates.
+		 * @param offset
+		 *            the index of the first coordinate in <code>xy</code>.
+		 * @param n
+		 *            the number of points.
+		 * @param significance
+		 *            the array to write the <code>n</code> significances to.
+		 */
+		public void significance( final double[] xy, final int offset, final int n, final double[] significance )
+		{
+			switch ( this )
+			{
+			case VISVALINGAM_WHYATT:
+				visvalingamWhyattSignificance( xy, offset, n, significance );
+				break;
+			case DOUGLAS_PEUCKER:
+			default:
+				douglasPeuckerSignificance( xy, offset, n, significance );
+				break;
+			}
+		}
+
+		@Override
+		public String toString()
+		{
+			return name;
+		}
+	}
+
+	private PolylineSimplifier()
+	{}
+
+	/**
+	 * Computes the Douglas-Peucker significance of the points of a polyline.
+	 * <p>
+	 * The significance of a point is the distance at which the algorithm
+	 * splits the polyline on it, capped by the significance of the point that
+	 * split the enclosing range: if the enclosing range is not split, neither
+	 * is this one.
+	 *
+	 * @param xy
+	 *            the polyline coordinates.
+	 * @param offset
+	 *            the index of the first coordinate in <code>xy</code>.
+	 * @param n
+	 *            the number of points.
+	 * @param significance
+	 *            the array to write the <code>n</code> significances to.
+	 */
+	public static void douglasPeuckerSignificance( final double[] xy, final int offset, final int n, final double[] significance )
+	{
+		if ( n <= 0 )
+			return;
+		Arrays.fill( significance, 0, n, 0. );
+		significance[ 0 ] = Double.POSITIVE_INFINITY;
+		significance[ n - 1 ] = Double.POSITIVE_INFINITY;
+		if ( n < 3 )
+			return;
+
+		/*
+		 * Explicit stack of point ranges to split, with the significance of
+		 * the split that created them. Ranges on the stack never overlap, so
+		 * there are less than n of them.
+		 */
+		final int[] ranges = new int[ 2 * n ];
+		final double[] bounds = new double[ n ];
+		int top = 0;
+		ranges[ 0 ] = 0;
+		ranges[ 1 ] = n - 1;
+		bounds[ 0 ] = Double.POSITIVE_INFINITY;
+		top++;
+
+		while ( top > 0 )
+		{
+			top--;
+			final int start = ranges[ 2 * top ];
+			final int end = ranges[ 2 * top + 1 ];
+			final double bound = bounds[ top ];
+
+			final int s = offset + 2 * start;
+			final int e = offset + 2 * end;
+			final double vx = xy[ s ];
+			final double vy = xy[ s + 1 ];
+			final double wx = xy[ e ];
+			final double wy = xy[ e + 1 ];
+			double dmax = 0.;
+			int index = -1;
+			for ( int i = start + 1; i < end; i++ )
+			{
+				final int p = offset + 2 * i;
+				final double d = distanceToSegmentSquared( xy[ p ], xy[ p + 1 ], vx, vy, wx, wy );
+				if ( d > dmax )
+				{
+					dmax = d;
+					index = i;
+				}
+			}
+			if ( index < 0 )
+				continue;
+
+			final double sig = Math.min( bound, Math.sqrt( dmax ) );
+			significance[ index ] = sig;
+			if ( index - start > 1 )
+			{
+				ranges[ 2 * top ] = start;
+				ranges[ 2 * top + 1 ] = index;
+				bounds[ top ] = sig;
+				top++;
+			}
+			if ( end - index > 1 )
+			{
+				ranges[ 2 * top ] = index;
+				ranges[ 2 * top + 1 ] = end;
+				bounds[ top ] = sig;
+				top++;
+			}
+		}
+	}
+
+	/**
+	 * Computes the Visvalingam-Whyatt significance of the points of a
+	 * polyline.
+	 * <p>
+	 * Points are removed in increasing order of the area of the triangle they
+	 * form with their remaining neighbors. The significance of a point is that
+	 * area when it is removed, raised to the largest area removed before so
+	 * that significances are monotonic.
+	 *
+	 * @param xy
+	 *            the polyline coordinates.
+	 * @param offset
+	 *            the index of the first coordinate in <code>xy</code>.
+	 * @param n
+	 *            the number of points.
+	 * @param significance
+	 *            the array to write the <code>n</code> significances to.
+	 */
+	public static void visvalingamWhyattSignificance( final double[] xy, final int offset, final int n, final double[] significance )
+	{
+		if ( n <= 0 )
+			return;
+		significance[ 0 ] = Double.POSITIVE_INFINITY;
+		significance[ n - 1 ] = Double.POSITIVE_INFINITY;
+		if ( n < 3 )
+			return;
+
+		// Doubly-linked list of the remaining points.
+		final int[] prev = new int[ n ];
+		final int[] next = new int[ n ];
+		for ( int i = 0; i < n; i++ )
+		{
+			prev[ i ] = i - 1;
+			next[ i ] = i + 1;
+		}
+
+		// Binary min-heap of the interior points, keyed by area.
+		final double[] area = new double[ n ];
+		final int[] heap = new int[ n ];
+		final int[] position = new int[ n ];
+		int size = 0;
+		for ( int i = 1; i < n - 1; i++ )
+		{
+			area[ i ] = triangleArea( xy, offset, i - 1, i, i + 1 );
+			heap[ size ] = i;
+			position[ i ] = size;
+			size++;
+		}
+		for ( int k = size / 2 - 1; k >= 0; k-- )
+			siftDown( heap, position, area, size, k );
+
+		double max = 0.;
+		while ( size > 0 )
+		{
+			final int i = heap[ 0 ];
+			size--;
+			if ( size > 0 )
+			{
+				heap[ 0 ] = heap[ size ];
+				position[ heap[ 0 ] ] = 0;
+				siftDown( heap, position, area, size, 0 );
+			}
+			position[ i ] = -1;
+
+			max = Math.max( max, area[ i ] );
+			significance[ i ] = max;
+
+			final int p = prev[ i ];
+			final int q = next[ i ];
+			next[ p ] = q;
+			prev[ q ] = p;
+			if ( p > 0 )
+				update( heap, position, area, size, p, triangleArea( xy, offset, prev[ p ], p, q ) );
+			if ( q < n - 1 )
+				update( heap, position, area, size, q, triangleArea( xy, offset, p, q, next[ q ] ) );
+		}
+	}
+
+	/**
+	 * Copies the points of a polyline whose significance is above a
+	 * threshold.
+	 *
+	 * @param xy
+	 *            the polyline coordinates.
+	 * @param offset
+	 *            the index of the first coordinate in <code>xy</code>.
+	 * @param n
+	 *            the number of points.
+	 * @param significance
+	 *            the significances of the points.
+	 * @param sigOffset
+	 *            the index of the first significance in
+	 *            <code>significance</code>.
+	 * @param threshold
+	 *            the threshold, see {@link Method#threshold(double)}.
+	 * @param out
+	 *            the array to write the coordinates of the points kept to,
+	 *            from index 0. Must have room for <code>2 n</code> values.
+	 * @return the number of points kept.
+	 */
+	public static int filter( final double[] xy, final int offset, final int n, final double[] significance, final int sigOffset, final double threshold, final double[] out )
+	{
+		int m = 0;
+		for ( int i = 0; i < n; i++ )
+		{
+			if ( significance[ sigOffset + i ] > threshold )
+			{
+				out[ 2 * m ] = xy[ offset + 2 * i ];
+				out[ 2 * m + 1 ] = xy[ offset + 2 * i + 1 ];
+				m++;
+			}
+		}
+		return m;
+	}
+
+	/**
+	 * Simplifies a polyline with the Douglas-Peucker algorithm.
+	 *
+	 * @param xy
+	 *            the polyline coordinates.
+	 * @param offset
+	 *            the index of the first coordinate in <code>xy</code>.
+	 * @param n
+	 *            the number of points.
+	 * @param epsilon
+	 *            the maximal distance between the simplified and the original
+	 *            polyline.
+	 * @param out
+	 *            the array to write the coordinates of the points kept to,
+	 *            from index 0. Must have room for <code>2 n</code> values.
+	 * @return the number of points kept.
+	 */
+	public static int douglasPeucker( final double[] xy, final int offset, final int n, final double epsilon, final double[] out )
+	{
+		final double[] significance = new double[ n ];
+		douglasPeuckerSignificance( xy, offset, n, significance );
+		return filter( xy, offset, n, significance, 0, epsilon, out );
+	}
+
+	/*
+	 * Geometry.
+	 */
+
+	private static double distanceToSegmentSquared( final double px, final double py, final double vx, final double vy, final double wx, final double wy )
+	{
+		final double dx = wx - vx;
+		final double dy = wy - vy;
+		final double l2 = dx * dx + dy * dy;
+		if ( l2 == 0 )
+			return sqr( px - vx ) + sqr( py - vy );
+		final double t = ( ( px - vx ) * dx + ( py - vy ) * dy ) / l2;
+		if ( t < 0 )
+			return sqr( px - vx ) + sqr( py - vy );
+		if ( t > 1 )
+			return sqr( px - wx ) + sqr( py - wy );
+		return sqr( px - ( vx + t * dx ) ) + sqr( py - ( vy + t * dy ) );
+	}
+
+	private static double triangleArea( final double[] xy, final int offset, final int a, final int b, final int c )
+	{
+		final int ia = offset + 2 * a;
+		final int ib = offset + 2 * b;
+		final int ic = offset + 2 * c;
+		final double cross = ( xy[ ib ] - xy[ ia ] ) * ( xy[ ic + 1 ] - xy[ ia + 1 ] )
+				- ( xy[ ic ] - xy[ ia ] ) * ( xy[ ib + 1 ] - xy[ ia + 1 ] );
+		return 0.5 * Math.abs( cross );
+	}
+
+	private static double sqr( final double x )
+	{
+		return x * x;
+	}
+
+	/*
+	 * Min-heap of point indices keyed by area.
+	 */
+
+	private static void update( final int[] heap, final int[] position, final double[] area, final int size, final int i, final double value )
+	{
+		final double old = area[ i ];
+		area[ i ] = value;
+		if ( value < old )
+			siftUp( heap, position, area, position[ i ] );
+		else
+			siftDown( heap, position, area, size, position[ i ] );
+	}
+
+	private static void siftUp( final int[] heap, final int[] position, final double[] area, int k )
+	{
+		final int i = heap[ k ];
+		while ( k > 0 )
+		{
+			final int parent = ( k - 1 ) >>> 1;
+			final int j = heap[ parent ];
+			if ( area[ j ] <= area[ i ] )
+				break;
+			heap[ k ] = j;
+			position[ j ] = k;
+			k = parent;
+		}
+		heap[ k ] = i;
+		position[ i ] = k;
+	}
+
+	private static void siftDown( final int[] heap, final int[] position, final double[] area, final int size, int k )
+	{
+		final int i = heap[ k ];
+		while ( true )
+		{
+			int child = 2 * k + 1;
+			if ( child >= size )
+				break;
+			if ( child + 1 < size && area[ heap[ child + 1 ] ] < area[ heap[ child ] ] )
+				child++;
+			final int j = heap[ child ];
+			if ( area[ i ] <= area[ j ] )
+				break;
+			heap[ k ] = j;
+			position[ j ] = k;
+			k = child;
+		}
+		heap[ k ] = i;
+		position[ i ] = k;
+	}
+}
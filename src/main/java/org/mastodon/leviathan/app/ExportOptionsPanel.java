@@ -0,0 +1,127 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.app;
+
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
+import java.awt.Insets;
+
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+
+/**
+ * Accessory of the export file choosers, to choose the objects to export,
+ * cells or membranes, and whether to write one file per time-point.
+ */
+class ExportOptionsPanel extends JPanel
+{
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String CELLS = "Cells";
+
+	private static final String MEMBRANES = "Membranes";
+
+	private final JComboBox< String > objects;
+
+	private final JCheckBox splitPerTimepoint;
+
+	private final GridBagConstraints c;
+
+	/**
+	 * Creates the panel, offering only the objects of the models that are
+	 * present.
+	 *
+	 * @param hasCells
+	 *            whether cells can be exported.
+	 * @param hasMembranes
+	 *            whether membranes can be exported.
+	 */
+	public ExportOptionsPanel( final boolean hasCells, final boolean hasMembranes )
+	{
+		super( new GridBagLayout() );
+		this.c = new GridBagConstraints();
+		c.gridx = 0;
+		c.gridy = 0;
+		c.anchor = GridBagConstraints.WEST;
+		c.fill = GridBagConstraints.HORIZONTAL;
+		c.insets = new Insets( 2, 5, 2, 5 );
+
+		this.objects = new JComboBox<>();
+		if ( hasCells )
+			objects.addItem( CELLS );
+		if ( hasMembranes )
+			objects.addItem( MEMBRANES );
+		add( new JLabel( "Export:" ), c );
+		c.gridy++;
+		add( objects, c );
+
+		this.splitPerTimepoint = new JCheckBox( "One file per time-point" );
+		c.gridy++;
+		add( splitPerTimepoint, c );
+	}
+
+	/**
+	 * Adds a choice to the panel, under the objects.
+	 *
+	 * @param label
+	 *            the label of the choice.
+	 * @param values
+	 *            the values to choose from. The first one is selected.
+	 * @return the combo box of the choice.
+	 */
+	public < T > JComboBox< T > addChoice( final String label, final T[] values )
+	{
+		final JComboBox< T > choice = new JComboBox<>( values );
+		remove( splitPerTimepoint );
+		add( new JLabel( label ), c );
+		c.gridy++;
+		add( choice, c );
+		c.gridy++;
+		add( splitPerTimepoint, c );
+		return choice;
+	}
+
+	/**
+	 * Returns whether cells, rather than membranes, are to be exported.
+	 *
+	 * @return <code>true</code> for cells.
+	 */
+	public boolean isCells()
+	{
+		return CELLS.equals( objects.getSelectedItem() );
+	}
+
+	public boolean isSplitPerTimepoint()
+	{
+		return splitPerTimepoint.isSelected();
+	}
+}
@@ -30,11 +30,15 @@ package org.mastodon.leviathan.app;
 
 import static org.mastodon.app.MastodonIcons.BDV_ICON_MEDIUM;
 import static org.mastodon.app.MastodonIcons.FEATURES_ICON_MEDIUM;
+import static org.mastodon.app.MastodonIcons.LOAD_ICON_MEDIUM;
 import static org.mastodon.app.MastodonIcons.MAINWINDOW_BG;
 import static org.mastodon.app.MastodonIcons.MASTODON_ICON;
+import static org.mastodon.app.MastodonIcons.SAVE_AS_ICON_MEDIUM;
+import static org.mastodon.app.MastodonIcons.SAVE_ICON_MEDIUM;
 import static org.mastodon.app.MastodonIcons.TABLE_ICON_MEDIUM;
 import static org.mastodon.app.MastodonIcons.TAGS_ICON_MEDIUM;
 import static org.mastodon.app.ui.ViewMenuBuilder.item;
+import static org.mastodon.app.ui.ViewMenuBuilder.separator;
 import static org.mastodon.mamut.MamutMenuBuilder.fileMenu;
 import static org.mastodon.mamut.MamutMenuBuilder.windowMenu;
 
@@ -164,6 +168,11 @@ public class LeviathanMainWindow extends JFrame
 		button_gbc_right.gridy = gridy;
 		buttonsPanel.add( featureComputationButton, button_gbc_right );
 
+		final JButton junctionFeatureComputationButton = new JButton( actionMap.get( LeviathanWM.COMPUTE_JUNCTION_FEATURE_DIALOG ) );
+		prepareButton( junctionFeatureComputationButton, "junction features", FEATURES_ICON_MEDIUM );
+		button_gbc_left.gridy = gridy;
+		buttonsPanel.add( junctionFeatureComputationButton, button_gbc_left );
+
 		++gridy;
 
 		final JButton editTagSetsButton = new JButton( actionMap.get( LeviathanWM.TAGSETS_DIALOG ) );
@@ -179,21 +188,28 @@ public class LeviathanMainWindow extends JFrame
 		++gridy;
 
 		label_gbc.gridy = gridy;
-		final JLabel ioLabel = new JLabel( "Saving:" );
+		final JLabel ioLabel = new JLabel( "Project:" );
 		ioLabel.setFont( buttonsPanel.getFont().deriveFont( Font.BOLD ) );
 		buttonsPanel.add( ioLabel, label_gbc );
 
 		++gridy;
 
-//		final JButton saveProjectButton = new JButton( actionMap.get( ProjectManager.SAVE_PROJECT ) );
-//		prepareButton( saveProjectButton, "save", SAVE_ICON_MEDIUM );
-//		button_gbc_left.gridy = gridy;
-//		buttonsPanel.add( saveProjectButton, button_gbc_left );
+		final JButton saveProjectButton = new JButton( actionMap.get( LeviathanWM.SAVE_PROJECT ) );
+		prepareButton( saveProjectButton, "save", SAVE_ICON_MEDIUM );
+		button_gbc_left.gridy = gridy;
+		buttonsPanel.add( saveProjectButton, button_gbc_left );
 
-//		final JButton loadProjectButton = new JButton( actionMap.get( ProjectManager.SAVE_PROJECT_AS ) );
-//		prepareButton( loadProjectButton, "save as...", SAVE_AS_ICON_MEDIUM );
-//		button_gbc_right.gridy = gridy;
-//		buttonsPanel.add( loadProjectButton, button_gbc_right );
+		final JButton saveProjectAsButton = new JButton( actionMap.get( LeviathanWM.SAVE_PROJECT_AS ) );
+		prepareButton( saveProjectAsButton, "save as...", SAVE_AS_ICON_MEDIUM );
+		button_gbc_right.gridy = gridy;
+		buttonsPanel.add( saveProjectAsButton, button_gbc_right );
+
+		++gridy;
+
+		final JButton loadProjectButton = new JButton( actionMap.get( LeviathanWM.LOAD_PROJECT ) );
+		prepareButton( loadProjectButton, "load", LOAD_ICON_MEDIUM );
+		button_gbc_left.gridy = gridy;
+		buttonsPanel.add( loadProjectButton, button_gbc_left );
 
 		/*
 		 * Background with an image.
@@ -254,6 +270,19 @@ public class LeviathanMainWindow extends JFrame
 	{
 		MamutMenuBuilder.build( menu, actionMap,
 				fileMenu(
+						item( LeviathanWM.LOAD_PROJECT ),
+						item( LeviathanWM.SAVE_PROJECT ),
+						item( LeviathanWM.SAVE_PROJECT_AS ),
+						separator(),
+						item( LeviathanWM.OPEN_TIMEPOINT_CHUNKS ),
+						item( LeviathanWM.EXPORT_TIMEPOINT_CHUNKS ),
+						separator(),
+						item( LeviathanWM.EXPORT_FEATURES ),
+						item( LeviathanWM.EXPORT_LABEL_IMAGES ),
+						item( LeviathanWM.EXPORT_GEOMETRY ),
+						separator(),
+						item( LeviathanWM.MODEL_STATISTICS ),
+						separator(),
 						item( LeviathanWM.PREFERENCES_DIALOG ) ),
 				windowMenu(
 						item( LeviathanWM.NEW_CELL_BDV_VIEW ),
@@ -4,6 +4,7 @@ import java.io.IOException;
 
 import org.mastodon.leviathan.algorithms.FindFaces;
 import org.mastodon.leviathan.algorithms.MaskImporter;
+import org.mastodon.leviathan.model.SpatialIndexRebuildScheduler;
 import org.mastodon.leviathan.model.cell.CellModel;
 import org.mastodon.leviathan.model.junction.JunctionModel;
 import org.mastodon.views.bdv.SharedBigDataViewerData;
@@ -53,14 +54,35 @@ public class LeviathanMaskImporter
 		final RandomAccessibleInterval< T > img = Views.dropSingletonDimensions(
 				( RandomAccessibleInterval< T > ) sharedBdvData.getSources().get( boundSourceID ).getSpimSource().getSource( timepoint, 0 ) );
 
-		MaskImporter.importMask( img, junctionModel.getGraph(), timepoint );
+		final CellModel cellModel = new CellModel( spaceUnits, timeUnits );
 
 		/*
-		 * Create cell graph from junction graph.
+		 * Spatial indices are rebuilt once after the import, not after each
+		 * batch of added vertices.
 		 */
+		final SpatialIndexRebuildScheduler rebuildScheduler = SpatialIndexRebuildScheduler.shared();
+		rebuildScheduler.pause();
+		try
+		{
+			MaskImporter.importMask( img, junctionModel.getGraph(), timepoint );
+
+			/*
+			 * Create cell graph from junction graph.
+			 */
+
+			FindFaces.findFaces( junctionModel.getGraph(), cellModel.getGraph() );
+		}
+		finally
+		{
+			rebuildScheduler.resume();
+		}
 
-		final CellModel cellModel = new CellModel( spaceUnits, timeUnits );
-		FindFaces.findFaces( junctionModel.getGraph(), cellModel.getGraph() );
+		/*
+		 * Simplify the polylines once, instead of on the first paint.
+		 */
+
+		junctionModel.getContourCache().precompute();
+		cellModel.getContourCache().precompute();
 		/*
 		 * Pass results to window manager and return it.
 		 */
@@ -33,23 +33,42 @@ import static org.mastodon.app.MastodonIcons.FEATURES_ICON;
 import static org.mastodon.app.MastodonIcons.TABLE_VIEW_ICON;
 import static org.mastodon.app.MastodonIcons.TAGS_ICON;
 
+import java.awt.Font;
 import java.awt.Window;
 import java.awt.event.WindowEvent;
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.function.Consumer;
 
+import javax.swing.JComboBox;
 import javax.swing.JDialog;
+import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
 
 import org.mastodon.app.ui.MastodonFrameView;
 import org.mastodon.feature.FeatureSpecsService;
 import org.mastodon.feature.ui.FeatureColorModeConfigPage;
 import org.mastodon.leviathan.algorithms.FindFaces;
 import org.mastodon.leviathan.feature.LeviathanCellFeatureComputation;
+import org.mastodon.leviathan.feature.LeviathanCellFeatureComputerService;
 import org.mastodon.leviathan.feature.LeviathanCellFeatureProjectionsManager;
+import org.mastodon.leviathan.feature.LeviathanJunctionFeatureComputation;
+import org.mastodon.leviathan.feature.LeviathanJunctionFeatureComputerService;
+import org.mastodon.leviathan.feature.LeviathanJunctionFeatureProjectionsManager;
+import org.mastodon.leviathan.io.FeatureCsvExporter;
+import org.mastodon.leviathan.io.GeometryExporter;
+import org.mastodon.leviathan.io.LabelImageExporter;
+import org.mastodon.leviathan.io.LazyTimepointLoader;
+import org.mastodon.leviathan.io.LeviathanProject;
+import org.mastodon.leviathan.io.LeviathanProjectIO;
+import org.mastodon.leviathan.io.TimepointChunkFile;
+import org.mastodon.leviathan.model.ModelStatistics;
 import org.mastodon.leviathan.model.cell.CellModel;
 import org.mastodon.leviathan.model.junction.Junction;
 import org.mastodon.leviathan.model.junction.JunctionGraph;
@@ -89,6 +108,7 @@ import org.scijava.ui.behaviour.util.RunnableAction;
 import bdv.spimdata.SpimDataMinimal;
 import bdv.spimdata.XmlIoSpimDataMinimal;
 import bdv.util.InvokeOnEDT;
+import bdv.viewer.Source;
 import bdv.viewer.ViewerOptions;
 import bdv.viewer.animate.MessageOverlayAnimator;
 import mpicbg.spim.data.SpimDataException;
@@ -110,6 +130,26 @@ public class LeviathanWM
 
 	public static final String COMPUTE_FEATURE_DIALOG = "compute features";
 
+	public static final String COMPUTE_JUNCTION_FEATURE_DIALOG = "compute junction features";
+
+	public static final String SAVE_PROJECT = "save project";
+
+	public static final String SAVE_PROJECT_AS = "save project as";
+
+	public static final String LOAD_PROJECT = "load project";
+
+	public static final String MODEL_STATISTICS = "model statistics";
+
+	public static final String EXPORT_TIMEPOINT_CHUNKS = "export time-point chunks";
+
+	public static final String OPEN_TIMEPOINT_CHUNKS = "open time-point chunks";
+
+	public static final String EXPORT_FEATURES = "export features";
+
+	public static final String EXPORT_LABEL_IMAGES = "export label images";
+
+	public static final String EXPORT_GEOMETRY = "export geometry";
+
 	static final String[] NEW_CELL_BDV_VIEW_KEYS = new String[] { "not mapped" };
 
 	static final String[] NEW_JUNCTION_BDV_VIEW_KEYS = new String[] { "not mapped" };
@@ -124,6 +164,32 @@ public class LeviathanWM
 
 	static final String[] COMPUTE_FEATURE_DIALOG_KEYS = new String[] { "not mapped" };
 
+	static final String[] COMPUTE_JUNCTION_FEATURE_DIALOG_KEYS = new String[] { "not mapped" };
+
+	static final String[] SAVE_PROJECT_KEYS = new String[] { "meta S", "ctrl S" };
+
+	static final String[] SAVE_PROJECT_AS_KEYS = new String[] { "meta shift S", "ctrl shift S" };
+
+	static final String[] LOAD_PROJECT_KEYS = new String[] { "meta O", "ctrl O" };
+
+	static final String[] MODEL_STATISTICS_KEYS = new String[] { "not mapped" };
+
+	static final String[] EXPORT_TIMEPOINT_CHUNKS_KEYS = new String[] { "not mapped" };
+
+	static final String[] OPEN_TIMEPOINT_CHUNKS_KEYS = new String[] { "not mapped" };
+
+	static final String[] EXPORT_FEATURES_KEYS = new String[] { "not mapped" };
+
+	static final String[] EXPORT_LABEL_IMAGES_KEYS = new String[] { "not mapped" };
+
+	static final String[] EXPORT_GEOMETRY_KEYS = new String[] { "not mapped" };
+
+	/**
+	 * Fraction of the maximal heap size used as memory budget for the
+	 * time-points loaded from a chunk file.
+	 */
+	private static final double TIMEPOINT_CHUNKS_MEMORY_FRACTION = 0.25;
+
 	/*
 	 * Command descriptions for all provided commands
 	 */
@@ -149,6 +215,16 @@ public class LeviathanWM
 			descriptions.add( PREFERENCES_DIALOG, PREFERENCES_DIALOG_KEYS, "Edit Mastodon preferences." );
 			descriptions.add( TAGSETS_DIALOG, TAGSETS_DIALOG_KEYS, "Edit tag definitions." );
 			descriptions.add( COMPUTE_FEATURE_DIALOG, COMPUTE_FEATURE_DIALOG_KEYS, "Show the feature computation dialog." );
+			descriptions.add( COMPUTE_JUNCTION_FEATURE_DIALOG, COMPUTE_JUNCTION_FEATURE_DIALOG_KEYS, "Show the junction and membrane feature computation dialog." );
+			descriptions.add( SAVE_PROJECT, SAVE_PROJECT_KEYS, "Save the current project." );
+			descriptions.add( SAVE_PROJECT_AS, SAVE_PROJECT_AS_KEYS, "Save the current project in a new folder." );
+			descriptions.add( LOAD_PROJECT, LOAD_PROJECT_KEYS, "Load a project." );
+			descriptions.add( MODEL_STATISTICS, MODEL_STATISTICS_KEYS, "Show the object counts and the estimated memory use of the models." );
+			descriptions.add( EXPORT_TIMEPOINT_CHUNKS, EXPORT_TIMEPOINT_CHUNKS_KEYS, "Export the junctions, membranes and cells to a file chunked by time-point." );
+			descriptions.add( OPEN_TIMEPOINT_CHUNKS, OPEN_TIMEPOINT_CHUNKS_KEYS, "Open a file chunked by time-point, loading time-points as they are viewed." );
+			descriptions.add( EXPORT_FEATURES, EXPORT_FEATURES_KEYS, "Export the features of the cells or of the membranes to a CSV file." );
+			descriptions.add( EXPORT_LABEL_IMAGES, EXPORT_LABEL_IMAGES_KEYS, "Export the cells or the membranes of all the time-points as label images in a TIFF file." );
+			descriptions.add( EXPORT_GEOMETRY, EXPORT_GEOMETRY_KEYS, "Export the cell polygons or the membrane polylines as GeoJSON or WKB." );
 		}
 	}
 
@@ -170,6 +246,8 @@ public class LeviathanWM
 
 	private final LeviathanCellFeatureProjectionsManager featureProjectionsManager;
 
+	private final LeviathanJunctionFeatureProjectionsManager junctionFeatureProjectionsManager;
+
 	private final KeymapManager keymapManager;
 
 	private final Actions globalAppActions;
@@ -186,6 +264,26 @@ public class LeviathanWM
 
 	private final AbstractNamedAction featureComputationAction;
 
+	private final AbstractNamedAction junctionFeatureComputationAction;
+
+	private final AbstractNamedAction saveProjectAction;
+
+	private final AbstractNamedAction saveProjectAsAction;
+
+	private final AbstractNamedAction loadProjectAction;
+
+	private final AbstractNamedAction modelStatisticsAction;
+
+	private final AbstractNamedAction exportTimepointChunksAction;
+
+	private final AbstractNamedAction openTimepointChunksAction;
+
+	private final AbstractNamedAction exportFeaturesAction;
+
+	private final AbstractNamedAction exportLabelImagesAction;
+
+	private final AbstractNamedAction exportGeometryAction;
+
 	private LeviathanCellAppModel cellAppModel;
 
 	private LeviathanJunctionAppModel junctionAppModel;
@@ -194,10 +292,18 @@ public class LeviathanWM
 
 	private JDialog featureComputationDialog;
 
+	private JDialog junctionFeatureComputationDialog;
+
 	private FindFaces faceFinder;
 
 	private SharedBigDataViewerData sharedBdvData;
 
+	private String imagePath;
+
+	private File projectFolder;
+
+	private LazyTimepointLoader timepointLoader;
+
 	public LeviathanWM( final Context context )
 	{
 		this.context = context;
@@ -208,6 +314,9 @@ public class LeviathanWM
 		featureProjectionsManager = new LeviathanCellFeatureProjectionsManager(
 				context.getService( FeatureSpecsService.class ),
 				featureColorModeManager );
+		junctionFeatureProjectionsManager = new LeviathanJunctionFeatureProjectionsManager(
+				context.getService( FeatureSpecsService.class ),
+				featureColorModeManager );
 		keymapManager = new KeymapManager();
 
 		final Keymap keymap = keymapManager.getForwardDefaultKeymap();
@@ -233,6 +342,16 @@ public class LeviathanWM
 		newCellSelectionTableViewAction = new RunnableAction( NEW_CELL_SELECTION_TABLE_VIEW, () -> createCellTable( true ) );
 		editTagSetsAction = new RunnableAction( TAGSETS_DIALOG, this::editTagSets );
 		featureComputationAction = new RunnableAction( COMPUTE_FEATURE_DIALOG, this::computeFeatures );
+		junctionFeatureComputationAction = new RunnableAction( COMPUTE_JUNCTION_FEATURE_DIALOG, this::computeJunctionFeatures );
+		saveProjectAction = new RunnableAction( SAVE_PROJECT, this::saveProject );
+		saveProjectAsAction = new RunnableAction( SAVE_PROJECT_AS, this::saveProjectAs );
+		loadProjectAction = new RunnableAction( LOAD_PROJECT, this::loadProject );
+		modelStatisticsAction = new RunnableAction( MODEL_STATISTICS, this::showModelStatistics );
+		exportTimepointChunksAction = new RunnableAction( EXPORT_TIMEPOINT_CHUNKS, this::exportTimepointChunks );
+		openTimepointChunksAction = new RunnableAction( OPEN_TIMEPOINT_CHUNKS, this::openTimepointChunks );
+		exportFeaturesAction = new RunnableAction( EXPORT_FEATURES, this::exportFeatures );
+		exportLabelImagesAction = new RunnableAction( EXPORT_LABEL_IMAGES, this::exportLabelImages );
+		exportGeometryAction = new RunnableAction( EXPORT_GEOMETRY, this::exportGeometry );
 
 		globalAppActions.namedAction( newCellBdvViewAction, NEW_CELL_BDV_VIEW_KEYS );
 		globalAppActions.namedAction( newJunctionBdvViewAction, NEW_JUNCTION_BDV_VIEW_KEYS );
@@ -240,11 +359,22 @@ public class LeviathanWM
 		globalAppActions.namedAction( newCellSelectionTableViewAction, NEW_CELL_SELECTION_TABLE_VIEW_KEYS );
 		globalAppActions.namedAction( editTagSetsAction, TAGSETS_DIALOG_KEYS );
 		globalAppActions.namedAction( featureComputationAction, COMPUTE_FEATURE_DIALOG_KEYS );
+		globalAppActions.namedAction( junctionFeatureComputationAction, COMPUTE_JUNCTION_FEATURE_DIALOG_KEYS );
+		globalAppActions.namedAction( saveProjectAction, SAVE_PROJECT_KEYS );
+		globalAppActions.namedAction( saveProjectAsAction, SAVE_PROJECT_AS_KEYS );
+		globalAppActions.namedAction( loadProjectAction, LOAD_PROJECT_KEYS );
+		globalAppActions.namedAction( modelStatisticsAction, MODEL_STATISTICS_KEYS );
+		globalAppActions.namedAction( exportTimepointChunksAction, EXPORT_TIMEPOINT_CHUNKS_KEYS );
+		globalAppActions.namedAction( openTimepointChunksAction, OPEN_TIMEPOINT_CHUNKS_KEYS );
+		globalAppActions.namedAction( exportFeaturesAction, EXPORT_FEATURES_KEYS );
+		globalAppActions.namedAction( exportLabelImagesAction, EXPORT_LABEL_IMAGES_KEYS );
+		globalAppActions.namedAction( exportGeometryAction, EXPORT_GEOMETRY_KEYS );
 
 		final PreferencesDialog settings = new PreferencesDialog( null, keymap, new String[] { KeyConfigContexts.MASTODON } );
 		settings.addPage( new CellRenderSettingsConfigPage( "Cell BDV Render Settings", cellRenderSettingsManager ) );
 		settings.addPage( new KeymapSettingsPage( "Keymap", keymapManager, descriptions ) );
 		settings.addPage( new FeatureColorModeConfigPage( "Feature Color Modes", featureColorModeManager, featureProjectionsManager ) );
+		settings.addPage( new FeatureColorModeConfigPage( "Junction Feature Color Modes", featureColorModeManager, junctionFeatureProjectionsManager ) );
 
 		final ToggleDialogAction tooglePreferencesDialogAction = new ToggleDialogAction( PREFERENCES_DIALOG, settings );
 		globalAppActions.namedAction( tooglePreferencesDialogAction, PREFERENCES_DIALOG_KEYS );
@@ -282,12 +412,26 @@ public class LeviathanWM
 		newCellSelectionTableViewAction.setEnabled( cellAppModel != null );
 		editTagSetsAction.setEnabled( cellAppModel != null );
 		featureComputationAction.setEnabled( cellAppModel != null );
+		junctionFeatureComputationAction.setEnabled( junctionAppModel != null );
+		saveProjectAction.setEnabled( cellAppModel != null || junctionAppModel != null );
+		// Models loaded lazily are only saved back to their chunk file.
+		saveProjectAsAction.setEnabled( ( cellAppModel != null || junctionAppModel != null ) && timepointLoader == null );
+		loadProjectAction.setEnabled( true );
+		modelStatisticsAction.setEnabled( cellAppModel != null || junctionAppModel != null );
+		exportTimepointChunksAction.setEnabled( cellAppModel != null && junctionAppModel != null && timepointLoader == null );
+		openTimepointChunksAction.setEnabled( sharedBdvData != null );
+		exportFeaturesAction.setEnabled( cellAppModel != null || junctionAppModel != null );
+		exportLabelImagesAction.setEnabled( ( cellAppModel != null || junctionAppModel != null ) && sharedBdvData != null );
+		exportGeometryAction.setEnabled( cellAppModel != null || junctionAppModel != null );
 	}
 
 	public void setImagePath( final String path ) throws SpimDataException
 	{
 		closeAllWindows();
 		this.sharedBdvData = toSharedBdvData( path, this );
+		this.imagePath = path;
+		context.getService( LeviathanCellFeatureComputerService.class ).setSharedBdvData( sharedBdvData );
+		context.getService( LeviathanJunctionFeatureComputerService.class ).setSharedBdvData( sharedBdvData );
 
 		if ( cellAppModel != null )
 			this.cellAppModel = toAppModel( cellAppModel.getModel(), sharedBdvData, this );
@@ -300,16 +444,23 @@ public class LeviathanWM
 
 	public void setCellModel( final CellModel model )
 	{
+		// A model not loaded from the chunk file replaces the file contents.
+		if ( timepointLoader != null && timepointLoader.getCellModel() != model )
+			closeTimepointLoader();
 		closeAllWindows();
+		if ( cellAppModel != null && cellAppModel.getModel() != model )
+			cellAppModel.getModel().dispose();
 		this.cellAppModel = toAppModel( model, sharedBdvData, this );
+		// Closing only hides the dialogs. Dispose them to release the model.
+		if ( tagSetDialog != null )
+			tagSetDialog.dispose();
+		tagSetDialog = null;
+		if ( featureComputationDialog != null )
+			featureComputationDialog.dispose();
+		featureComputationDialog = null;
 		if ( model == null )
 		{
-			if ( tagSetDialog != null )
-				tagSetDialog.dispose();
-			tagSetDialog = null;
-			if ( featureComputationDialog != null )
-				featureComputationDialog.dispose();
-			featureComputationDialog = null;
+			context.getService( LeviathanCellFeatureComputerService.class ).setModel( null );
 			if ( featureProjectionsManager != null )
 				featureProjectionsManager.setModel( null, 1 );
 			updateEnabledActions();
@@ -322,20 +473,41 @@ public class LeviathanWM
 		final Keymap keymap = keymapManager.getForwardDefaultKeymap();
 		tagSetDialog = new TagSetDialog( null, model.getTagSetModel(), model, keymap, new String[] { LeviathanKeyConfigContexts.LEVIATHAN } );
 		tagSetDialog.setIconImages( TAGS_ICON );
-		featureComputationDialog = LeviathanCellFeatureComputation.getDialog( cellAppModel, context );
+		featureComputationDialog = LeviathanCellFeatureComputation.getDialog( cellAppModel, context, featureProjectionsManager::invalidateRanges );
 		featureComputationDialog.setIconImages( FEATURES_ICON );
+		updateCellFeatureJunctionGraph();
+		featureProjectionsManager.setModel( model, numSources() );
 		updateEnabledActions();
 		plugins.setAppPluginModel( new LeviathanPluginAppModel( junctionAppModel, this ) );
 	}
 
 	public void setJunctionModel( final JunctionModel junctionModel )
 	{
+		if ( timepointLoader != null && timepointLoader.getJunctionModel() != junctionModel )
+			closeTimepointLoader();
 		closeAllWindows();
+		if ( this.junctionAppModel != null && this.junctionAppModel.getModel() != junctionModel )
+			this.junctionAppModel.getModel().dispose();
 		this.junctionAppModel = toAppModel( junctionModel, sharedBdvData, this );
-		if ( junctionAppModel != null && cellAppModel != null )
+		if ( junctionFeatureComputationDialog != null )
+			junctionFeatureComputationDialog.dispose();
+		junctionFeatureComputationDialog = null;
+		updateCellFeatureJunctionGraph();
+		if ( junctionModel == null )
+		{
+			context.getService( LeviathanJunctionFeatureComputerService.class ).setModel( null );
+			junctionFeatureProjectionsManager.setModel( null, 1 );
+			updateEnabledActions();
+			return;
+		}
+
+		if ( cellAppModel != null )
 			faceFinder = FindFaces.create( 
 					junctionAppModel.getModel().getGraph(), 
 					cellAppModel.getModel().getGraph() );
+		junctionFeatureComputationDialog = LeviathanJunctionFeatureComputation.getDialog( junctionAppModel, context, junctionFeatureProjectionsManager::invalidateRanges );
+		junctionFeatureComputationDialog.setIconImages( FEATURES_ICON );
+		junctionFeatureProjectionsManager.setModel( junctionModel, numSources() );
 		updateEnabledActions();
 	}
 
@@ -388,6 +560,8 @@ public class LeviathanWM
 		{
 			final LeviathanCellViewBdv view = new LeviathanCellViewBdv( cellAppModel );
 			view.getFrame().setIconImages( BDV_VIEW_ICON );
+			if ( timepointLoader != null )
+				view.getViewerPanelLeviathan().addTimePointListener( timepointLoader::requestLoad );
 			addCellBdvWindow( view );
 			return view;
 		}
@@ -400,6 +574,8 @@ public class LeviathanWM
 		{
 			final LeviathanJunctionViewBdv view = new LeviathanJunctionViewBdv( junctionAppModel, faceFinder );
 			view.getFrame().setIconImages( BDV_VIEW_ICON );
+			if ( timepointLoader != null )
+				view.getViewerPanelLeviathan().addTimePointListener( timepointLoader::requestLoad );
 			addJunctionBdvWindow( view );
 			return view;
 		}
@@ -434,6 +610,369 @@ public class LeviathanWM
 		}
 	}
 
+	public void computeJunctionFeatures()
+	{
+		if ( junctionAppModel != null )
+		{
+			junctionFeatureComputationDialog.setVisible( true );
+		}
+	}
+
+	/**
+	 * Computes the object counts and the estimated memory use of the current
+	 * models.
+	 *
+	 * @return new statistics.
+	 */
+	public ModelStatistics getModelStatistics()
+	{
+		return ModelStatistics.compute(
+				junctionAppModel == null ? null : junctionAppModel.getModel(),
+				cellAppModel == null ? null : cellAppModel.getModel() );
+	}
+
+	/**
+	 * Shows the statistics of the current models in a dialog.
+	 */
+	public void showModelStatistics()
+	{
+		final JTextArea text = new JTextArea( getModelStatistics().toString() );
+		text.setEditable( false );
+		text.setFont( new Font( Font.MONOSPACED, Font.PLAIN, 12 ) );
+		JOptionPane.showMessageDialog( null, new JScrollPane( text ), "Model statistics", JOptionPane.INFORMATION_MESSAGE );
+	}
+
+	/**
+	 * Saves the current project to the folder it was last saved to or loaded
+	 * from. Asks for a folder if there is none. When the models are loaded
+	 * from a time-point chunk file, writes the edited time-points back to it
+	 * instead.
+	 */
+	public void saveProject()
+	{
+		if ( timepointLoader != null )
+		{
+			try
+			{
+				timepointLoader.flush();
+			}
+			catch ( final IOException e )
+			{
+				e.printStackTrace();
+				JOptionPane.showMessageDialog( null, "Could not write the edited time-points:\n" + e.getMessage(),
+						"Save Leviathan project", JOptionPane.ERROR_MESSAGE );
+			}
+			return;
+		}
+		if ( projectFolder == null )
+		{
+			saveProjectAs();
+			return;
+		}
+		saveProjectTo( projectFolder );
+	}
+
+	/**
+	 * Asks for a folder and saves the current project to it.
+	 */
+	public void saveProjectAs()
+	{
+		final File folder = chooseProjectFolder( "Save Leviathan project", "Save" );
+		if ( folder != null )
+			saveProjectTo( folder );
+	}
+
+	/**
+	 * Asks for a project folder and loads it.
+	 */
+	public void loadProject()
+	{
+		final File folder = chooseProjectFolder( "Load Leviathan project", "Load" );
+		if ( folder == null )
+			return;
+		try
+		{
+			loadProject( folder );
+		}
+		catch ( final IOException | SpimDataException e )
+		{
+			e.printStackTrace();
+			JOptionPane.showMessageDialog( null, "Could not load project " + folder + ":\n" + e.getMessage(),
+					"Load Leviathan project", JOptionPane.ERROR_MESSAGE );
+		}
+	}
+
+	/**
+	 * Saves the current models and the link to the image data to the specified
+	 * project folder.
+	 *
+	 * @param folder
+	 *            the project folder.
+	 * @throws IOException
+	 *             if an I/O error occurs while writing the project.
+	 */
+	public void saveProject( final File folder ) throws IOException
+	{
+		final LeviathanProject project = new LeviathanProject(
+				imagePath,
+				junctionAppModel == null ? null : junctionAppModel.getModel(),
+				cellAppModel == null ? null : cellAppModel.getModel() );
+		LeviathanProjectIO.save( folder, project, context );
+		projectFolder = folder;
+	}
+
+	/**
+	 * Loads the project in the specified folder, replacing the current models
+	 * and image data.
+	 *
+	 * @param folder
+	 *            the project folder.
+	 * @throws IOException
+	 *             if an I/O error occurs while reading the project.
+	 * @throws SpimDataException
+	 *             if the image data cannot be opened.
+	 */
+	public void loadProject( final File folder ) throws IOException, SpimDataException
+	{
+		final LeviathanProject project = LeviathanProjectIO.load( folder, context );
+		closeTimepointLoader();
+		if ( project.getImagePath() != null )
+			setImagePath( project.getImagePath() );
+		else if ( project.getJunctionModel() != null )
+			setImagePath( dummyBdvData( project.getJunctionModel().getGraph() ) );
+		setJunctionModel( project.getJunctionModel() );
+		setCellModel( project.getCellModel() );
+		projectFolder = folder;
+	}
+
+	/**
+	 * Asks for a file and exports the current models to it as a time-point
+	 * chunk file.
+	 */
+	public void exportTimepointChunks()
+	{
+		final File file = chooseChunkFile( "Export time-point chunks", "Export" );
+		if ( file == null )
+			return;
+		try
+		{
+			exportTimepointChunks( file );
+		}
+		catch ( final IOException e )
+		{
+			e.printStackTrace();
+			JOptionPane.showMessageDialog( null, "Could not export time-point chunks to " + file + ":\n" + e.getMessage(),
+					"Export time-point chunks", JOptionPane.ERROR_MESSAGE );
+		}
+	}
+
+	/**
+	 * Writes the current junction and cell models to the specified time-point
+	 * chunk file. Tags and features are not exported.
+	 *
+	 * @param file
+	 *            the file to write.
+	 * @throws IOException
+	 *             if an I/O error occurs while writing the file.
+	 */
+	public void exportTimepointChunks( final File file ) throws IOException
+	{
+		if ( junctionAppModel == null || cellAppModel == null )
+			return;
+		TimepointChunkFile.create( file, junctionAppModel.getModel(), cellAppModel.getModel() ).close();
+	}
+
+	/**
+	 * Asks for a time-point chunk file and opens it, with a memory budget
+	 * proportional to the maximal heap size.
+	 */
+	public void openTimepointChunks()
+	{
+		final File file = chooseChunkFile( "Open time-point chunks", "Open" );
+		if ( file == null )
+			return;
+		try
+		{
+			openTimepointChunks( file, ( long ) ( TIMEPOINT_CHUNKS_MEMORY_FRACTION * Runtime.getRuntime().maxMemory() ) );
+		}
+		catch ( final IOException e )
+		{
+			e.printStackTrace();
+			JOptionPane.showMessageDialog( null, "Could not open time-point chunks " + file + ":\n" + e.getMessage(),
+					"Open time-point chunks", JOptionPane.ERROR_MESSAGE );
+		}
+	}
+
+	/**
+	 * Opens a time-point chunk file. The junctions, membranes and cells of a
+	 * time-point are loaded when a BDV view moves to it, and the least
+	 * recently viewed time-points are evicted when the memory budget is
+	 * exceeded. The first time-point is loaded immediately. The file is
+	 * displayed over the current image data, and edits are written back to it
+	 * when the project is saved.
+	 *
+	 * @param file
+	 *            the chunk file.
+	 * @param memoryBudget
+	 *            the memory budget for the loaded time-points, in bytes.
+	 * @throws IOException
+	 *             if an I/O error occurs while opening the file.
+	 */
+	public void openTimepointChunks( final File file, final long memoryBudget ) throws IOException
+	{
+		final TimepointChunkFile chunkFile = TimepointChunkFile.open( file );
+		final JunctionModel junctionModel = new JunctionModel( chunkFile.getSpaceUnits(), chunkFile.getTimeUnits() );
+		final CellModel cellModel = new CellModel( chunkFile.getSpaceUnits(), chunkFile.getTimeUnits() );
+		closeTimepointLoader();
+		timepointLoader = new LazyTimepointLoader( chunkFile, junctionModel, cellModel, memoryBudget );
+		final int[] timepoints = chunkFile.getTimepoints();
+		if ( timepoints.length > 0 )
+			timepointLoader.ensureLoaded( timepoints[ 0 ] );
+		setJunctionModel( junctionModel );
+		setCellModel( cellModel );
+	}
+
+	/**
+	 * Asks for a CSV file and exports the features of the cells or of the
+	 * membranes to it, optionally in one file per time-point.
+	 */
+	public void exportFeatures()
+	{
+		final ExportOptionsPanel options = new ExportOptionsPanel( cellAppModel != null, junctionAppModel != null );
+		final File file = chooseExportFile( "Export features", options );
+		if ( file == null )
+			return;
+		try
+		{
+			if ( options.isCells() )
+				FeatureCsvExporter.exportCells( cellAppModel.getModel(), file, options.isSplitPerTimepoint() );
+			else
+				FeatureCsvExporter.exportMembranes( junctionAppModel.getModel(), file, options.isSplitPerTimepoint() );
+		}
+		catch ( final IOException e )
+		{
+			e.printStackTrace();
+			JOptionPane.showMessageDialog( null, "Could not export features to " + file + ":\n" + e.getMessage(),
+					"Export features", JOptionPane.ERROR_MESSAGE );
+		}
+	}
+
+	/**
+	 * Asks for a TIFF file and exports the cells or the membranes to it as
+	 * label images, with the size and the transform of the first image source,
+	 * optionally in one file per time-point.
+	 */
+	public void exportLabelImages()
+	{
+		final ExportOptionsPanel options = new ExportOptionsPanel( cellAppModel != null, junctionAppModel != null );
+		final File file = chooseExportFile( "Export label images", options );
+		if ( file == null )
+			return;
+		final Source< ? > reference = sharedBdvData.getSources().get( 0 ).getSpimSource();
+		final int numTimepoints = sharedBdvData.getNumTimepoints();
+		final int numThreads = Runtime.getRuntime().availableProcessors();
+		try
+		{
+			if ( options.isCells() )
+				LabelImageExporter.exportCells( cellAppModel.getModel(), reference, numTimepoints, file, options.isSplitPerTimepoint(), numThreads );
+			else
+				LabelImageExporter.exportMembranes( junctionAppModel.getModel(), reference, numTimepoints, file, options.isSplitPerTimepoint(), numThreads );
+		}
+		catch ( final IOException e )
+		{
+			e.printStackTrace();
+			JOptionPane.showMessageDialog( null, "Could not export label images to " + file + ":\n" + e.getMessage(),
+					"Export label images", JOptionPane.ERROR_MESSAGE );
+		}
+	}
+
+	/**
+	 * Asks for a file and a format, and exports the cell polygons or the
+	 * membrane polylines to it, optionally in one file per time-point.
+	 */
+	public void exportGeometry()
+	{
+		final ExportOptionsPanel options = new ExportOptionsPanel( cellAppModel != null, junctionAppModel != null );
+		final JComboBox< GeometryExporter.Format > format = options.addChoice( "Format:", GeometryExporter.Format.values() );
+		final File file = chooseExportFile( "Export geometry", options );
+		if ( file == null )
+			return;
+		try
+		{
+			final GeometryExporter.Format f = ( GeometryExporter.Format ) format.getSelectedItem();
+			if ( options.isCells() )
+				GeometryExporter.exportCells( cellAppModel.getModel(), file, f, options.isSplitPerTimepoint() );
+			else
+				GeometryExporter.exportMembranes( junctionAppModel.getModel(), file, f, options.isSplitPerTimepoint() );
+		}
+		catch ( final IOException e )
+		{
+			e.printStackTrace();
+			JOptionPane.showMessageDialog( null, "Could not export geometry to " + file + ":\n" + e.getMessage(),
+					"Export geometry", JOptionPane.ERROR_MESSAGE );
+		}
+	}
+
+	private void closeTimepointLoader()
+	{
+		if ( timepointLoader == null )
+			return;
+		try
+		{
+			timepointLoader.close();
+		}
+		catch ( final IOException e )
+		{
+			e.printStackTrace();
+		}
+		timepointLoader = null;
+	}
+
+	private void saveProjectTo( final File folder )
+	{
+		try
+		{
+			saveProject( folder );
+		}
+		catch ( final IOException e )
+		{
+			e.printStackTrace();
+			JOptionPane.showMessageDialog( null, "Could not save project to " + folder + ":\n" + e.getMessage(),
+					"Save Leviathan project", JOptionPane.ERROR_MESSAGE );
+		}
+	}
+
+	private File chooseChunkFile( final String title, final String approveText )
+	{
+		final JFileChooser chooser = new JFileChooser( projectFolder );
+		chooser.setDialogTitle( title );
+		chooser.setFileSelectionMode( JFileChooser.FILES_ONLY );
+		if ( chooser.showDialog( null, approveText ) != JFileChooser.APPROVE_OPTION )
+			return null;
+		return chooser.getSelectedFile();
+	}
+
+	private File chooseExportFile( final String title, final ExportOptionsPanel options )
+	{
+		final JFileChooser chooser = new JFileChooser( projectFolder );
+		chooser.setDialogTitle( title );
+		chooser.setFileSelectionMode( JFileChooser.FILES_ONLY );
+		chooser.setAccessory( options );
+		if ( chooser.showDialog( null, "Export" ) != JFileChooser.APPROVE_OPTION )
+			return null;
+		return chooser.getSelectedFile();
+	}
+
+	private File chooseProjectFolder( final String title, final String approveText )
+	{
+		final JFileChooser chooser = new JFileChooser( projectFolder );
+		chooser.setDialogTitle( title );
+		chooser.setFileSelectionMode( JFileChooser.DIRECTORIES_ONLY );
+		if ( chooser.showDialog( null, approveText ) != JFileChooser.APPROVE_OPTION )
+			return null;
+		return chooser.getSelectedFile();
+	}
+
 	public void closeAllWindows()
 	{
 		final ArrayList< Window > windows = new ArrayList<>();
@@ -443,6 +982,7 @@ public class LeviathanWM
 			windows.add( w.getFrame() );
 		windows.add( tagSetDialog );
 		windows.add( featureComputationDialog );
+		windows.add( junctionFeatureComputationDialog );
 
 		try
 		{
@@ -517,6 +1057,22 @@ public class LeviathanWM
 		return context.getService( FeatureSpecsService.class );
 	}
 
+	/**
+	 * Passes the junction graph to the cell feature computer service, so that
+	 * cell features depending on neighbors or membranes are kept in sync when
+	 * the junctions are edited.
+	 */
+	private void updateCellFeatureJunctionGraph()
+	{
+		context.getService( LeviathanCellFeatureComputerService.class ).setJunctionGraph(
+				junctionAppModel == null ? null : junctionAppModel.getModel().getGraph() );
+	}
+
+	private int numSources()
+	{
+		return ( sharedBdvData == null ) ? 1 : sharedBdvData.getSources().size();
+	}
+
 	private CommandDescriptions buildCommandDescriptions()
 	{
 		final CommandDescriptionsBuilder builder = new CommandDescriptionsBuilder();
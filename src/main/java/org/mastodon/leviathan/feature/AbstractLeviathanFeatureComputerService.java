@@ -0,0 +1,422 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.feature;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.mastodon.feature.DefaultFeatureComputerService;
+import org.mastodon.feature.Feature;
+import org.mastodon.feature.FeatureComputer;
+import org.mastodon.feature.FeatureModel;
+import org.mastodon.feature.FeatureSpec;
+import org.mastodon.feature.FeatureSpecsService;
+import org.mastodon.views.bdv.SharedBigDataViewerData;
+import org.scijava.command.CommandModule;
+import org.scijava.module.ModuleItem;
+import org.scijava.plugin.Parameter;
+
+/**
+ * Common machinery of the Leviathan feature computer services: passing the
+ * model, its graph, the image data, the computation settings and the "force
+ * recompute" flag to the feature computers, and registering the listeners
+ * that keep features in sync when the model changes.
+ * <p>
+ * Computations can run on a background thread while the model is edited on
+ * the EDT. The feature computers compute into copies of the features published
+ * in the feature model, and only hold the read lock of the graph in short
+ * sections, through the {@link ComputationLock}. The results are swapped in
+ * the feature model on the EDT by {@link #publish(Map, Runnable)}, unless the
+ * model was edited while they were computed.
+ *
+ * @param <M>
+ *            the type of model.
+ * @param <G>
+ *            the type of the model graph.
+ */
+public abstract class AbstractLeviathanFeatureComputerService< M, G > extends DefaultFeatureComputerService
+{
+
+	private final Class< M > modelClass;
+
+	private final Class< G > graphClass;
+
+	private SharedBigDataViewerData sharedBdvData;
+
+	private M model;
+
+	private final AtomicBoolean shouldRecomputeAll = new AtomicBoolean( false );
+
+	private final FeatureComputationSettings settings = new FeatureComputationSettings();
+
+	@Parameter
+	private FeatureSpecsService featureSpecsService;
+
+	/**
+	 * Incremented by the listeners of the model at every edit.
+	 */
+	private final AtomicLong modCount = new AtomicLong();
+
+	/**
+	 * The value of {@link #modCount} when the last computation started.
+	 */
+	private volatile long computationStamp;
+
+	private ComputationLock computationLock;
+
+	/**
+	 * The module of the last feature computer whose parameters were passed.
+	 */
+	private CommandModule lastModule;
+
+	protected AbstractLeviathanFeatureComputerService(
+			final Class< ? extends FeatureComputer > computerClass,
+			final Class< M > modelClass,
+			final Class< G > graphClass )
+	{
+		super( computerClass );
+		this.modelClass = modelClass;
+		this.graphClass = graphClass;
+	}
+
+	@Override
+	public Map< FeatureSpec< ?, ? >, Feature< ? > > compute( final boolean forceComputeAll, final Collection< FeatureSpec< ?, ? > > featureKeys )
+	{
+		// Set the force flag.
+		shouldRecomputeAll.set( forceComputeAll );
+		computationStamp = modCount.get();
+
+		final Map< FeatureSpec< ?, ? >, Feature< ? > > results;
+		try
+		{
+			results = super.compute( forceComputeAll, featureKeys );
+		}
+		finally
+		{
+			lastModule = null;
+		}
+		if ( isCanceled() )
+		{
+			computationDiscarded();
+			return null;
+		}
+
+		return results;
+	}
+
+	/**
+	 * Swaps the results of the last computation in the feature model, unless
+	 * the model was edited since the computation started. Must be called on
+	 * the EDT, where the model is edited.
+	 *
+	 * @param results
+	 *            the results of the last computation.
+	 * @param beforePublish
+	 *            run before the results are passed to the feature model, if
+	 *            they are. Can be <code>null</code>.
+	 * @return <code>true</code> if the results were passed to the feature
+	 *         model, <code>false</code> if they were discarded.
+	 */
+	public boolean publish( final Map< FeatureSpec< ?, ? >, Feature< ? > > results, final Runnable beforePublish )
+	{
+		final ReadWriteLock lock = getLock( model );
+		lock.readLock().lock();
+		try
+		{
+			if ( isStale() )
+			{
+				computationDiscarded();
+				return false;
+			}
+
+			if ( beforePublish != null )
+				beforePublish.run();
+
+			final FeatureModel featureModel = getFeatureModel( model );
+			featureModel.pauseListeners();
+			// Clear feature we can compute
+			final Collection< FeatureSpec< ?, ? > > toClear = new ArrayList<>();
+			for ( final FeatureSpec< ?, ? > featureSpec : featureModel.getFeatureSpecs() )
+				if ( null != getFeatureComputerFor( featureSpec ) )
+					toClear.add( featureSpec );
+
+			for ( final FeatureSpec< ?, ? > featureSpec : toClear )
+				featureModel.clear( featureSpec );
+
+			// Pass the feature map to the feature model.
+			results.values().forEach( featureModel::declareFeature );
+
+			featureModel.resumeListeners();
+			computationPublished();
+			return true;
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns whether the current computation is canceled, or the model was
+	 * edited since it started.
+	 */
+	private boolean isStale()
+	{
+		return isCanceled() || modCount.get() != computationStamp;
+	}
+
+	@Override
+	protected void provideParameters(
+			final ModuleItem< ? > item,
+			final CommandModule module, final Class< ? > parameterClass,
+			final Map< FeatureSpec< ?, ? >, Feature< ? > > featureModel )
+	{
+		if ( module != lastModule )
+		{
+			lastModule = module;
+			resetOutputs( module );
+		}
+
+		// Pass the model is required.
+		if ( modelClass.isAssignableFrom( parameterClass ) )
+		{
+			@SuppressWarnings( "unchecked" )
+			final ModuleItem< M > modelItem = ( ModuleItem< M > ) item;
+			modelItem.setValue( module, model );
+			return;
+		}
+
+		// Pass the model graph.
+		if ( graphClass.isAssignableFrom( parameterClass ) )
+		{
+			@SuppressWarnings( "unchecked" )
+			final ModuleItem< G > graphItem = ( ModuleItem< G > ) item;
+			graphItem.setValue( module, getGraph( model ) );
+			return;
+		}
+
+		// Pass the BDV data.
+		if ( SharedBigDataViewerData.class.isAssignableFrom( parameterClass ) )
+		{
+			@SuppressWarnings( "unchecked" )
+			final ModuleItem< SharedBigDataViewerData > bdvItem = ( ModuleItem< SharedBigDataViewerData > ) item;
+			bdvItem.setValue( module, sharedBdvData );
+			return;
+		}
+
+		// Pass the computation settings.
+		if ( FeatureComputationSettings.class.isAssignableFrom( parameterClass ) )
+		{
+			@SuppressWarnings( "unchecked" )
+			final ModuleItem< FeatureComputationSettings > settingsItem = ( ModuleItem< FeatureComputationSettings > ) item;
+			settingsItem.setValue( module, settings );
+			return;
+		}
+
+		// Pass the graph lock.
+		if ( ComputationLock.class.isAssignableFrom( parameterClass ) )
+		{
+			@SuppressWarnings( "unchecked" )
+			final ModuleItem< ComputationLock > lockItem = ( ModuleItem< ComputationLock > ) item;
+			lockItem.setValue( module, computationLock );
+			return;
+		}
+
+		// Pass the "force recompute" flag.
+		if ( AtomicBoolean.class.isAssignableFrom( parameterClass ) )
+		{
+			@SuppressWarnings( "unchecked" )
+			final ModuleItem< AtomicBoolean > forceRecomputeAllItem = ( ModuleItem< AtomicBoolean > ) item;
+			forceRecomputeAllItem.setValue( module, shouldRecomputeAll );
+			return;
+		}
+
+		super.provideParameters( item, module, parameterClass, featureModel );
+	}
+
+	/**
+	 * Sets the output of a feature computer to the feature published in the
+	 * feature model, or to <code>null</code> if there is none. The computer
+	 * then computes into a copy of it, or into a new feature, and the results
+	 * of a discarded computation are never reused.
+	 */
+	private void resetOutputs( final CommandModule module )
+	{
+		final FeatureModel featureModel = getFeatureModel( model );
+		for ( final ModuleItem< ? > item : module.getInfo().outputs() )
+		{
+			Feature< ? > published = null;
+			for ( final FeatureSpec< ?, ? > spec : featureModel.getFeatureSpecs() )
+				if ( spec.getFeatureClass().equals( item.getType() ) )
+					published = featureModel.getFeature( spec );
+			module.setOutput( item.getName(), published );
+		}
+	}
+
+	/**
+	 * Sets the image data to be used by the feature computers.
+	 *
+	 * @param sharedBdvData
+	 *            the image data.
+	 */
+	public void setSharedBdvData( final SharedBigDataViewerData sharedBdvData )
+	{
+		this.sharedBdvData = sharedBdvData;
+	}
+
+	/**
+	 * Returns the settings passed to the feature computers.
+	 *
+	 * @return the feature computation settings.
+	 */
+	public FeatureComputationSettings getSettings()
+	{
+		return settings;
+	}
+
+	/**
+	 * Sets the model to be used by the feature computers. Unregisters the
+	 * listeners from the previous model and registers them with the new one.
+	 *
+	 * @param model
+	 *            the model, or <code>null</code>.
+	 */
+	public void setModel( final M model )
+	{
+		if ( this.model != null )
+			unregisterListeners( this.model );
+		this.model = model;
+		modified();
+		if ( model != null )
+		{
+			computationLock = new ComputationLock( getLock( model ), this::isStale );
+			registerListeners( model );
+		}
+		else
+		{
+			computationLock = null;
+		}
+	}
+
+	protected M getModel()
+	{
+		return model;
+	}
+
+	/**
+	 * Must be called by the listeners of the model at every edit, so that the
+	 * results of a computation running meanwhile are discarded.
+	 */
+	protected final void modified()
+	{
+		modCount.incrementAndGet();
+	}
+
+	/**
+	 * Called on the EDT once the results of the last computation were passed
+	 * to the feature model.
+	 */
+	protected void computationPublished()
+	{}
+
+	/**
+	 * Called when the results of the last computation are discarded, because
+	 * it was canceled or because the model was edited meanwhile.
+	 */
+	protected void computationDiscarded()
+	{}
+
+	/**
+	 * Returns the graph of a model.
+	 *
+	 * @param model
+	 *            the model.
+	 * @return the graph.
+	 */
+	protected abstract G getGraph( M model );
+
+	/**
+	 * Returns the lock of the graph of a model.
+	 *
+	 * @param model
+	 *            the model.
+	 * @return the lock.
+	 */
+	protected abstract ReadWriteLock getLock( M model );
+
+	/**
+	 * Returns the feature model of a model.
+	 *
+	 * @param model
+	 *            the model.
+	 * @return the feature model.
+	 */
+	protected abstract FeatureModel getFeatureModel( M model );
+
+	/**
+	 * Creates the listeners that keep the features of a model in sync with its
+	 * edits, and registers them with the model. The listeners must call
+	 * {@link #modified()}.
+	 *
+	 * @param model
+	 *            the new model.
+	 */
+	protected abstract void registerListeners( M model );
+
+	/**
+	 * Unregisters the listeners from a model that is replaced, and releases
+	 * the resources they hold.
+	 *
+	 * @param model
+	 *            the previous model.
+	 */
+	protected abstract void unregisterListeners( M model );
+
+	/**
+	 * Invalidates the specified object in all the features of the feature
+	 * model that target its class.
+	 */
+	protected static < O > void invalidate( final FeatureModel featureModel, final Class< O > targetClass, final O o )
+	{
+		for ( final FeatureSpec< ?, ? > spec : featureModel.getFeatureSpecs() )
+		{
+			if ( !spec.getTargetClass().isAssignableFrom( targetClass ) )
+				continue;
+
+			@SuppressWarnings( "unchecked" )
+			final Feature< O > feature = ( Feature< O > ) featureModel.getFeature( spec );
+			if ( feature != null )
+				feature.invalidate( o );
+		}
+	}
+}
@@ -67,7 +67,7 @@ public class CellAreaFeature implements Feature< Cell >
 	}
 
 	@Plugin( type = FeatureSpec.class )
-	public static class Spec extends FeatureSpec< CellAreaFeature, Cell >
+	public static class Spec extends FeatureSpec< CellAreaFeature, Cell > implements FeatureReach.HasReach
 	{
 		public Spec()
 		{
@@ -79,6 +79,12 @@ public class CellAreaFeature implements Feature< Cell >
 					Multiplicity.SINGLE,
 					PROJECTION_SPEC );
 		}
+
+		@Override
+		public FeatureReach getReach()
+		{
+			return FeatureReach.SELF;
+		}
 	}
 
 	public double get( final Cell Cell )
@@ -30,9 +30,11 @@ package org.mastodon.leviathan.feature;
 
 import static org.mastodon.leviathan.algorithms.GraphUtils.signedArea;
 
+import java.util.BitSet;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.mastodon.feature.Dimension;
+import org.mastodon.leviathan.model.DoubleSlice;
 import org.mastodon.leviathan.model.cell.Cell;
 import org.mastodon.leviathan.model.cell.CellModel;
 import org.mastodon.properties.DoublePropertyMap;
@@ -50,44 +52,92 @@ public class CellAreaFeatureComputer implements CellFeatureComputer
 	@Parameter
 	private AtomicBoolean forceComputeAll;
 
+	@Parameter
+	private DirtyCells dirtyCells;
+
+	@Parameter
+	private ComputationLock lock;
+
 	@Parameter( type = ItemIO.OUTPUT )
 	private CellAreaFeature output;
 
+	/**
+	 * Whether the output was just created, in which case all cells have to be
+	 * computed.
+	 */
+	private boolean outputCreated;
+
+	private final DoubleSlice slice = new DoubleSlice();
+
 	@Override
 	public void run()
 	{
-		final boolean recomputeAll = forceComputeAll.get();
-		if ( recomputeAll )
-			output.map.beforeClearPool();
-
-		for ( final Cell cell : model.getGraph().vertices() )
+		final boolean recomputeAll = forceComputeAll.get() || outputCreated;
+		outputCreated = false;
+		final BitSet dirty = dirtyCells.take( CellAreaFeature.SPEC );
+		lock.lock();
+		try
 		{
+			if ( recomputeAll )
+			{
+				output.map.beforeClearPool();
+				for ( final Cell cell : model.getGraph().vertices() )
+				{
+					if ( !lock.next() )
+						return;
+					compute( cell );
+				}
+				return;
+			}
 
 			/*
-			 * Skip if we are not force to recompute all and if a value is
-			 * already computed.
+			 * Only visit the cells marked dirty since the last computation.
 			 */
-			if ( !recomputeAll && output.map.isSet( cell ) )
-				continue;
-
-			final double[] boundary = cell.getBoundary();
-			if ( boundary == null )
+			final Cell ref = model.getGraph().vertexRef();
+			for ( int id = dirty.nextSetBit( 0 ); id >= 0; id = dirty.nextSetBit( id + 1 ) )
 			{
-				output.map.set( cell, Double.NaN );
-				continue;
+				if ( !lock.next() )
+					break;
+				compute( model.getGraph().vertices().getRefPool().getObject( id, ref ) );
 			}
+			model.getGraph().releaseRef( ref );
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
 
-			final double area = Math.abs( signedArea( boundary ) );
-			output.map.set( cell, area );
+	private void compute( final Cell cell )
+	{
+		final DoubleSlice boundary = cell.getBoundary( slice );
+		if ( boundary == null )
+		{
+			output.map.set( cell, Double.NaN );
+			return;
 		}
+
+		final double area = Math.abs( signedArea( boundary ) );
+		output.map.set( cell, area );
 	}
 
 	@Override
 	public void createOutput()
 	{
+		final String units = Dimension.AREA.getUnits( model.getSpaceUnits(), model.getTimeUnits() );
 		if ( null == output )
+		{
 			output = new CellAreaFeature(
 					new DoublePropertyMap<>( model.getGraph().vertices().getRefPool(), Double.NaN ),
-					Dimension.AREA.getUnits( model.getSpaceUnits(), model.getTimeUnits() ) );
+					units );
+			outputCreated = true;
+		}
+		else
+		{
+			// Compute into a copy of the published feature.
+			output = new CellAreaFeature(
+					FeatureMaps.copy( output.map, model.getGraph().vertices().getRefPool(), model.getGraph().vertices() , lock ),
+					units );
+		}
 	}
 }
@@ -0,0 +1,278 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.feature;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.mastodon.feature.Feature;
+import org.mastodon.feature.FeatureModel;
+import org.mastodon.feature.FeatureSpec;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.leviathan.model.cell.Cell;
+import org.mastodon.leviathan.model.cell.CellGraph;
+import org.mastodon.leviathan.model.cell.Link;
+import org.mastodon.leviathan.model.junction.JunctionGraph;
+import org.mastodon.leviathan.model.junction.MembranePart;
+import org.mastodon.properties.PropertyChangeListener;
+
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.set.hash.TIntHashSet;
+
+/**
+ * Propagates the edits of the cell and junction models to the cell features,
+ * following the {@link FeatureReach} of each feature.
+ * <p>
+ * Edited cells are marked in the {@link DirtyCells} for every feature, and
+ * their neighbors, found across their membranes, are marked and invalidated
+ * for the features that depend on them. Membrane edits mark and invalidate
+ * the cells on each side of the membrane for the features that depend on
+ * membranes or neighbors.
+ * <p>
+ * Neighbors can only be found when the junction graph is known. Without it,
+ * only the edited cells are marked.
+ */
+class CellFeatureInvalidation implements GraphListener< Cell, Link >
+{
+
+	private final CellGraph graph;
+
+	private final FeatureModel featureModel;
+
+	private final DirtyCells dirty;
+
+	private final Supplier< Collection< FeatureSpec< ?, ? > > > specs;
+
+	private final Runnable onEdit;
+
+	private final TIntHashSet neighbors = new TIntHashSet();
+
+	private final Cell ref;
+
+	private JunctionGraph junctionGraph;
+
+	final PropertyChangeListener< Cell > cellListener = this::cellChanged;
+
+	final PropertyChangeListener< MembranePart > membraneListener = this::membraneChanged;
+
+	/**
+	 * Creates a new invalidation listener.
+	 *
+	 * @param graph
+	 *            the cell graph.
+	 * @param featureModel
+	 *            the feature model of the cell model, in which feature values
+	 *            of neighbor cells are invalidated.
+	 * @param dirty
+	 *            the dirty sets to update.
+	 * @param specs
+	 *            supplies the feature specs that can be computed for the
+	 *            cells.
+	 * @param onEdit
+	 *            run at every edit of the cell or junction model.
+	 */
+	CellFeatureInvalidation(
+			final CellGraph graph,
+			final FeatureModel featureModel,
+			final DirtyCells dirty,
+			final Supplier< Collection< FeatureSpec< ?, ? > > > specs,
+			final Runnable onEdit )
+	{
+		this.graph = graph;
+		this.featureModel = featureModel;
+		this.dirty = dirty;
+		this.specs = specs;
+		this.onEdit = onEdit;
+		this.ref = graph.vertexRef();
+	}
+
+	void setJunctionGraph( final JunctionGraph junctionGraph )
+	{
+		this.junctionGraph = junctionGraph;
+	}
+
+	/**
+	 * Releases the vertex reference of this listener. Must be called once it
+	 * is unregistered from the graph.
+	 */
+	void release()
+	{
+		graph.releaseRef( ref );
+	}
+
+	static FeatureReach reach( final FeatureSpec< ?, ? > spec )
+	{
+		return ( spec instanceof FeatureReach.HasReach )
+				? ( ( FeatureReach.HasReach ) spec ).getReach()
+				: FeatureReach.SELF;
+	}
+
+	private List< FeatureSpec< ?, ? > > cellSpecs()
+	{
+		final Collection< FeatureSpec< ?, ? > > all = specs.get();
+		final List< FeatureSpec< ?, ? > > cellSpecs = new ArrayList<>( all.size() );
+		for ( final FeatureSpec< ?, ? > spec : all )
+			if ( Cell.class.equals( spec.getTargetClass() ) )
+				cellSpecs.add( spec );
+		return cellSpecs;
+	}
+
+	private void cellChanged( final Cell cell )
+	{
+		onEdit.run();
+		final int id = cell.getInternalPoolIndex();
+		neighbors.clear();
+		addNeighbors( cell, neighbors );
+		neighbors.remove( id );
+
+		for ( final FeatureSpec< ?, ? > spec : cellSpecs() )
+		{
+			// The cell itself is invalidated by the vertex property listener.
+			dirty.mark( spec, id );
+			if ( reach( spec ) == FeatureReach.NEIGHBORS )
+				markAndInvalidate( spec, neighbors );
+		}
+	}
+
+	private void membraneChanged( final MembranePart membrane )
+	{
+		onEdit.run();
+		final TIntHashSet sides = new TIntHashSet( 2 );
+		addCell( membrane.getCellIdCW(), sides );
+		addCell( membrane.getCellIdCCW(), sides );
+		if ( sides.isEmpty() )
+			return;
+
+		neighbors.clear();
+		neighbors.addAll( sides );
+		final TIntIterator it = sides.iterator();
+		while ( it.hasNext() )
+			addNeighbors( graph.getGraphIdBimap().getVertex( it.next(), ref ), neighbors );
+
+		for ( final FeatureSpec< ?, ? > spec : cellSpecs() )
+		{
+			switch ( reach( spec ) )
+			{
+			case MEMBRANE:
+				markAndInvalidate( spec, sides );
+				break;
+			case NEIGHBORS:
+				markAndInvalidate( spec, neighbors );
+				break;
+			case SELF:
+			default:
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Adds the ids of the cells that share a membrane with the specified cell,
+	 * including the cell itself, to the specified set.
+	 */
+	private void addNeighbors( final Cell cell, final TIntHashSet set )
+	{
+		if ( junctionGraph == null )
+			return;
+
+		final int[] membranes = cell.getMembranes();
+		if ( membranes == null )
+			return;
+
+		final MembranePart eref = junctionGraph.edgeRef();
+		for ( final int mbid : membranes )
+		{
+			if ( mbid < 0 )
+				continue;
+			final MembranePart mb = junctionGraph.getGraphIdBimap().getEdge( mbid, eref );
+			addCell( mb.getCellIdCW(), set );
+			addCell( mb.getCellIdCCW(), set );
+		}
+		junctionGraph.releaseRef( eref );
+	}
+
+	private static void addCell( final int cellId, final TIntHashSet set )
+	{
+		// Skip perimeter and uninitialized ids.
+		if ( cellId >= 0 )
+			set.add( cellId );
+	}
+
+	private void markAndInvalidate( final FeatureSpec< ?, ? > spec, final TIntHashSet ids )
+	{
+		@SuppressWarnings( "unchecked" )
+		final Feature< Cell > feature = ( Feature< Cell > ) featureModel.getFeature( spec );
+		final TIntIterator it = ids.iterator();
+		while ( it.hasNext() )
+		{
+			final int id = it.next();
+			dirty.mark( spec, id );
+			if ( feature != null )
+				feature.invalidate( graph.getGraphIdBimap().getVertex( id, ref ) );
+		}
+	}
+
+	@Override
+	public void graphRebuilt()
+	{
+		onEdit.run();
+		dirty.clear();
+		final List< FeatureSpec< ?, ? > > cellSpecs = cellSpecs();
+		for ( final Cell cell : graph.vertices() )
+			dirty.markAll( cellSpecs, cell.getInternalPoolIndex() );
+	}
+
+	@Override
+	public void vertexAdded( final Cell cell )
+	{
+		onEdit.run();
+		dirty.markAll( cellSpecs(), cell.getInternalPoolIndex() );
+	}
+
+	@Override
+	public void vertexRemoved( final Cell cell )
+	{
+		onEdit.run();
+		dirty.unmark( cell.getInternalPoolIndex() );
+	}
+
+	@Override
+	public void edgeAdded( final Link edge )
+	{
+		onEdit.run();
+	}
+
+	@Override
+	public void edgeRemoved( final Link edge )
+	{
+		onEdit.run();
+	}
+}
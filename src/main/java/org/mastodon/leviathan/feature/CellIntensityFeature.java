@@ -0,0 +1,180 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.feature;
+
+import static org.mastodon.feature.FeatureProjectionKey.key;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.mastodon.feature.Dimension;
+import org.mastodon.feature.Feature;
+import org.mastodon.feature.FeatureProjection;
+import org.mastodon.feature.FeatureProjectionKey;
+import org.mastodon.feature.FeatureProjectionSpec;
+import org.mastodon.feature.FeatureProjections;
+import org.mastodon.feature.FeatureSpec;
+import org.mastodon.feature.Multiplicity;
+import org.mastodon.leviathan.model.cell.Cell;
+import org.mastodon.properties.DoublePropertyMap;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Intensity statistics of a cell, measured in each image source.
+ * <p>
+ * Pixels inside the cell polygon are collected by scanline rasterization of
+ * the cell boundary. Pixels on the membrane are collected along the pixel path
+ * of the cell boundary. For both, the mean, standard deviation, median, 5th
+ * and 95th percentiles are reported.
+ */
+public class CellIntensityFeature implements Feature< Cell >
+{
+
+	private static final String KEY = "Cell intensity";
+
+	private static final String HELP_STRING = "Computes intensity statistics inside the cell and along its membrane, "
+			+ "for each source. The image data is sampled at the resolution level specified in the "
+			+ "feature computation dialog.";
+
+	static final String[] STATS = new String[] { "mean", "std", "median", "p5", "p95" };
+
+	static final double[] PERCENTILES = new double[] { 50., 5., 95. };
+
+	static final String[] REGIONS = new String[] { "Interior", "Membrane" };
+
+	static final int INTERIOR = 0;
+
+	static final int MEMBRANE = 1;
+
+	static final FeatureProjectionSpec[] PROJECTION_SPECS = projectionSpecs();
+
+	public static final Spec SPEC = new Spec();
+
+	/**
+	 * The maps for each source, indexed as
+	 * <code>maps.get( source )[ region * STATS.length + stat ]</code>.
+	 */
+	final List< DoublePropertyMap< Cell >[] > maps;
+
+	private final Map< FeatureProjectionKey, FeatureProjection< Cell > > projectionMap;
+
+	CellIntensityFeature( final List< DoublePropertyMap< Cell >[] > maps, final String units )
+	{
+		this.maps = maps;
+		this.projectionMap = new LinkedHashMap<>( PROJECTION_SPECS.length * maps.size() );
+		for ( int iSource = 0; iSource < maps.size(); iSource++ )
+		{
+			final DoublePropertyMap< Cell >[] sourceMaps = maps.get( iSource );
+			for ( int i = 0; i < PROJECTION_SPECS.length; i++ )
+			{
+				final FeatureProjectionKey key = key( PROJECTION_SPECS[ i ], iSource );
+				projectionMap.put( key, FeatureProjections.project( key, sourceMaps[ i ], units ) );
+			}
+		}
+	}
+
+	@Plugin( type = FeatureSpec.class )
+	public static class Spec extends FeatureSpec< CellIntensityFeature, Cell > implements FeatureReach.HasReach
+	{
+		public Spec()
+		{
+			super(
+					KEY,
+					HELP_STRING,
+					CellIntensityFeature.class,
+					Cell.class,
+					Multiplicity.ON_SOURCES,
+					PROJECTION_SPECS );
+		}
+
+		@Override
+		public FeatureReach getReach()
+		{
+			return FeatureReach.MEMBRANE;
+		}
+	}
+
+	/**
+	 * Returns the number of sources this feature was computed on.
+	 *
+	 * @return the number of sources.
+	 */
+	public int getNumSources()
+	{
+		return maps.size();
+	}
+
+	public double getInteriorMean( final Cell cell, final int source )
+	{
+		return maps.get( source )[ INTERIOR * STATS.length ].getDouble( cell );
+	}
+
+	public double getMembraneMean( final Cell cell, final int source )
+	{
+		return maps.get( source )[ MEMBRANE * STATS.length ].getDouble( cell );
+	}
+
+	@Override
+	public FeatureProjection< Cell > project( final FeatureProjectionKey key )
+	{
+		return projectionMap.get( key );
+	}
+
+	@Override
+	public Set< FeatureProjection< Cell > > projections()
+	{
+		return new LinkedHashSet<>( projectionMap.values() );
+	}
+
+	@Override
+	public Spec getSpec()
+	{
+		return SPEC;
+	}
+
+	@Override
+	public void invalidate( final Cell cell )
+	{
+		for ( final DoublePropertyMap< Cell >[] sourceMaps : maps )
+			for ( final DoublePropertyMap< Cell > map : sourceMaps )
+				map.remove( cell );
+	}
+
+	private static FeatureProjectionSpec[] projectionSpecs()
+	{
+		final FeatureProjectionSpec[] specs = new FeatureProjectionSpec[ REGIONS.length * STATS.length ];
+		for ( int r = 0; r < REGIONS.length; r++ )
+			for ( int s = 0; s < STATS.length; s++ )
+				specs[ r * STATS.length + s ] = new FeatureProjectionSpec( REGIONS[ r ] + " " + STATS[ s ], Dimension.INTENSITY );
+		return specs;
+	}
+}
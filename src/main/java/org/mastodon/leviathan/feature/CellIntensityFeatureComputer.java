@@ -0,0 +1,362 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.feature;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.mastodon.collection.RefPool;
+import org.mastodon.feature.Dimension;
+import org.mastodon.leviathan.algorithms.PolygonRasterizer;
+import org.mastodon.leviathan.model.DoubleSlice;
+import org.mastodon.leviathan.model.cell.Cell;
+import org.mastodon.leviathan.model.cell.CellModel;
+import org.mastodon.properties.DoublePropertyMap;
+import org.mastodon.views.bdv.SharedBigDataViewerData;
+import org.scijava.ItemIO;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+
+import bdv.viewer.Source;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.RealType;
+
+@Plugin( type = CellIntensityFeatureComputer.class )
+public class CellIntensityFeatureComputer implements CellFeatureComputer
+{
+
+	/**
+	 * Block size used to order the cells when the source image is not a cell
+	 * image.
+	 */
+	private static final int DEFAULT_BLOCK_SIZE = 64;
+
+	@Parameter
+	private CellModel model;
+
+	@Parameter
+	private SharedBigDataViewerData bdvData;
+
+	@Parameter
+	private FeatureComputationSettings settings;
+
+	@Parameter
+	private AtomicBoolean forceComputeAll;
+
+	@Parameter
+	private DirtyCells dirtyCells;
+
+	@Parameter
+	private ComputationLock lock;
+
+	@Parameter( type = ItemIO.OUTPUT )
+	private CellIntensityFeature output;
+
+	/**
+	 * Whether the output was just created, in which case all cells have to be
+	 * computed.
+	 */
+	private boolean outputCreated;
+
+	private final PolygonRasterizer rasterizer = new PolygonRasterizer();
+
+	private final IntensitySamples samples = new IntensitySamples();
+
+	private final double[] pos = new double[ 3 ];
+
+	private double[] xy = new double[ 256 ];
+
+	private final DoubleSlice slice = new DoubleSlice();
+
+	@Override
+	public void run()
+	{
+		if ( null == bdvData || output.maps.isEmpty() )
+			return;
+
+		/*
+		 * Take the dirty cells only now that we know we will compute them. If
+		 * the computation is canceled or discarded, the computer service puts
+		 * them back so that the next run visits them.
+		 */
+		final BitSet dirty = dirtyCells.take( CellIntensityFeature.SPEC );
+
+		final boolean recomputeAll = forceComputeAll.get() || outputCreated;
+		outputCreated = false;
+		if ( recomputeAll )
+			for ( final DoublePropertyMap< Cell >[] sourceMaps : output.maps )
+				for ( final DoublePropertyMap< Cell > map : sourceMaps )
+					map.beforeClearPool();
+
+		lock.lock();
+		try
+		{
+			/*
+			 * Collect the cells to compute, per time-point: all of them or
+			 * only the cells marked dirty since the last computation.
+			 */
+
+			final TIntObjectHashMap< TIntArrayList > toCompute = new TIntObjectHashMap<>();
+			if ( recomputeAll )
+			{
+				for ( final Cell cell : model.getGraph().vertices() )
+				{
+					if ( !lock.next() )
+						return;
+					add( cell, toCompute );
+				}
+			}
+			else
+			{
+				final Cell ref = model.getGraph().vertexRef();
+				final RefPool< Cell > pool = model.getGraph().vertices().getRefPool();
+				for ( int id = dirty.nextSetBit( 0 ); id >= 0; id = dirty.nextSetBit( id + 1 ) )
+					add( pool.getObject( id, ref ), toCompute );
+				model.getGraph().releaseRef( ref );
+			}
+
+			final int[] timepoints = toCompute.keys();
+			Arrays.sort( timepoints );
+			for ( final int t : timepoints )
+				for ( int iSource = 0; iSource < output.maps.size(); iSource++ )
+					if ( !process( t, iSource, toCompute.get( t ) ) )
+						return;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	private static void add( final Cell cell, final TIntObjectHashMap< TIntArrayList > toCompute )
+	{
+		final int t = cell.getTimepoint();
+		TIntArrayList list = toCompute.get( t );
+		if ( list == null )
+		{
+			list = new TIntArrayList();
+			toCompute.put( t, list );
+		}
+		list.add( cell.getInternalPoolIndex() );
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private < T extends RealType< T > > boolean process( final int timepoint, final int iSource, final TIntArrayList cellIndices )
+	{
+		final DoublePropertyMap< Cell >[] maps = output.maps.get( iSource );
+		final RefPool< Cell > pool = model.getGraph().vertices().getRefPool();
+		final Cell cell = pool.createRef();
+		final Source< ? > source = bdvData.getSources().get( iSource ).getSpimSource();
+		if ( !source.isPresent( timepoint ) )
+		{
+			for ( int i = 0; i < cellIndices.size(); i++ )
+			{
+				pool.getObject( cellIndices.get( i ), cell );
+				for ( final DoublePropertyMap< Cell > map : maps )
+					map.set( cell, Double.NaN );
+			}
+			pool.releaseRef( cell );
+			return true;
+		}
+
+		final int level = Math.min( settings.getResolutionLevel(), source.getNumMipmapLevels() - 1 );
+		final RandomAccessibleInterval< T > img = ( RandomAccessibleInterval< T > ) source.getSource( timepoint, level );
+		final AffineTransform3D transform = new AffineTransform3D();
+		source.getSourceTransform( timepoint, level, transform );
+
+		/*
+		 * Sort the cells by the image block their center falls in, so that
+		 * blocks are loaded once and read while they are in the cache.
+		 */
+
+		final int[] blockSize = new int[] { DEFAULT_BLOCK_SIZE, DEFAULT_BLOCK_SIZE, 1 };
+		if ( img instanceof AbstractCellImg )
+		{
+			final int[] cellDims = new int[ img.numDimensions() ];
+			( ( AbstractCellImg< ?, ?, ?, ? > ) img ).getCellGrid().cellDimensions( cellDims );
+			blockSize[ 0 ] = cellDims[ 0 ];
+			blockSize[ 1 ] = cellDims[ 1 ];
+		}
+		final long nBlocksX = img.dimension( 0 ) / blockSize[ 0 ] + 1;
+		final long[] keys = new long[ cellIndices.size() ];
+		for ( int i = 0; i < keys.length; i++ )
+		{
+			final int index = cellIndices.get( i );
+			pool.getObject( index, cell );
+			cell.localize( pos );
+			transform.applyInverse( pos, pos );
+			final long bx = Math.max( 0, ( long ) pos[ 0 ] - img.min( 0 ) ) / blockSize[ 0 ];
+			final long by = Math.max( 0, ( long ) pos[ 1 ] - img.min( 1 ) ) / blockSize[ 1 ];
+			keys[ i ] = ( ( by * nBlocksX + bx ) << 32 ) | index;
+		}
+		Arrays.sort( keys );
+
+		final RandomAccess< T > ra = img.randomAccess();
+		final long minX = img.min( 0 );
+		final long maxX = img.max( 0 );
+		final long minY = img.min( 1 );
+		final long maxY = img.max( 1 );
+		final boolean is3D = img.numDimensions() > 2;
+		final PolygonRasterizer.SpanConsumer interior = ( y, xmin, xmax ) -> {
+			if ( y < minY || y > maxY )
+				return;
+			final long x0 = Math.max( xmin, minX );
+			final long x1 = Math.min( xmax, maxX );
+			if ( x0 > x1 )
+				return;
+			ra.setPosition( x0, 0 );
+			ra.setPosition( y, 1 );
+			for ( long x = x0; x <= x1; x++ )
+			{
+				samples.add( ra.get().getRealDouble() );
+				ra.fwd( 0 );
+			}
+		};
+		final PolygonRasterizer.PixelConsumer membrane = ( x, y ) -> {
+			if ( x < minX || x > maxX || y < minY || y > maxY )
+				return;
+			ra.setPosition( x, 0 );
+			ra.setPosition( y, 1 );
+			samples.add( ra.get().getRealDouble() );
+		};
+
+		for ( final long key : keys )
+		{
+			if ( !lock.next() )
+			{
+				pool.releaseRef( cell );
+				return false;
+			}
+			pool.getObject( ( int ) ( key & 0xFFFFFFFFL ), cell );
+			final DoubleSlice boundary = cell.getBoundary( slice );
+			if ( boundary == null || boundary.size() < 2 )
+			{
+				for ( final DoublePropertyMap< Cell > map : maps )
+					map.set( cell, Double.NaN );
+				continue;
+			}
+
+			// Boundary in the source pixel coordinates.
+			final int n = toSource( cell, boundary, transform );
+			if ( is3D )
+				ra.setPosition( Math.max( img.min( 2 ), Math.min( img.max( 2 ), Math.round( pos[ 2 ] ) ) ), 2 );
+
+			samples.reset();
+			rasterizer.fill( xy, n, interior );
+			store( maps, CellIntensityFeature.INTERIOR, cell );
+
+			samples.reset();
+			PolygonRasterizer.trace( xy, n, true, membrane );
+			store( maps, CellIntensityFeature.MEMBRANE, cell );
+		}
+		pool.releaseRef( cell );
+		return true;
+	}
+
+	/**
+	 * Writes the cell boundary, transformed in the source pixel coordinates,
+	 * in the {@link #xy} buffer. On return, {@link #pos} contains the cell
+	 * center in source pixel coordinates.
+	 *
+	 * @return the number of points in the boundary.
+	 */
+	private int toSource( final Cell cell, final DoubleSlice boundary, final AffineTransform3D transform )
+	{
+		final int n = boundary.size() / 2;
+		if ( xy.length < boundary.size() )
+			xy = new double[ boundary.size() ];
+
+		final double x = cell.getDoublePosition( 0 );
+		final double y = cell.getDoublePosition( 1 );
+		final double z = cell.getDoublePosition( 2 );
+		for ( int i = 0; i < n; i++ )
+		{
+			pos[ 0 ] = x + boundary.get( 2 * i );
+			pos[ 1 ] = y + boundary.get( 2 * i + 1 );
+			pos[ 2 ] = z;
+			transform.applyInverse( pos, pos );
+			xy[ 2 * i ] = pos[ 0 ];
+			xy[ 2 * i + 1 ] = pos[ 1 ];
+		}
+		pos[ 0 ] = x;
+		pos[ 1 ] = y;
+		pos[ 2 ] = z;
+		transform.applyInverse( pos, pos );
+		return n;
+	}
+
+	private void store( final DoublePropertyMap< Cell >[] maps, final int region, final Cell cell )
+	{
+		final int offset = region * CellIntensityFeature.STATS.length;
+		maps[ offset ].set( cell, samples.mean() );
+		maps[ offset + 1 ].set( cell, samples.std() );
+		for ( int i = 0; i < CellIntensityFeature.PERCENTILES.length; i++ )
+			maps[ offset + 2 + i ].set( cell, samples.percentile( CellIntensityFeature.PERCENTILES[ i ] ) );
+	}
+
+	@Override
+	public void createOutput()
+	{
+		final String units = Dimension.INTENSITY.getUnits( model.getSpaceUnits(), model.getTimeUnits() );
+		if ( null == output )
+		{
+			final int nSources = ( null == bdvData ) ? 0 : bdvData.getSources().size();
+			final List< DoublePropertyMap< Cell >[] > maps = new ArrayList<>( nSources );
+			for ( int iSource = 0; iSource < nSources; iSource++ )
+				maps.add( createMaps( model.getGraph().vertices().getRefPool() ) );
+			output = new CellIntensityFeature( maps, units );
+			outputCreated = true;
+		}
+		else
+		{
+			// Compute into a copy of the published feature.
+			final List< DoublePropertyMap< Cell >[] > maps = new ArrayList<>( output.maps.size() );
+			for ( final DoublePropertyMap< Cell >[] sourceMaps : output.maps )
+				maps.add( FeatureMaps.copy( sourceMaps, model.getGraph().vertices().getRefPool(), model.getGraph().vertices() , lock ) );
+			output = new CellIntensityFeature( maps, units );
+		}
+	}
+
+	@SuppressWarnings( "unchecked" )
+	static DoublePropertyMap< Cell >[] createMaps( final RefPool< Cell > pool )
+	{
+		final DoublePropertyMap< Cell >[] maps = new DoublePropertyMap[ CellIntensityFeature.PROJECTION_SPECS.length ];
+		for ( int i = 0; i < maps.length; i++ )
+			maps[ i ] = new DoublePropertyMap<>( pool, Double.NaN );
+		return maps;
+	}
+}
@@ -0,0 +1,107 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.feature;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The read lock of a graph, held by feature computers in short sections.
+ * <p>
+ * Feature computers take the lock with {@link #lock()}, then call
+ * {@link #next()} before visiting each object. Every {@link #SECTION_SIZE}
+ * objects, the lock is released and taken back, so that edits made on the EDT
+ * do not wait for the whole computation. {@link #next()} returns
+ * <code>false</code> when the computation is canceled or when the model was
+ * edited since it started. The computer must then stop: its results are
+ * discarded and the objects it did not visit may have changed.
+ */
+public class ComputationLock
+{
+
+	/**
+	 * The number of objects visited while holding the lock.
+	 */
+	public static final int SECTION_SIZE = 256;
+
+	private final ReadWriteLock lock;
+
+	private final BooleanSupplier stale;
+
+	private int count;
+
+	/**
+	 * Creates a new computation lock.
+	 *
+	 * @param lock
+	 *            the lock of the graph whose features are computed.
+	 * @param stale
+	 *            returns whether the computation is canceled or its results
+	 *            out of date.
+	 */
+	public ComputationLock( final ReadWriteLock lock, final BooleanSupplier stale )
+	{
+		this.lock = lock;
+		this.stale = stale;
+	}
+
+	/**
+	 * Takes the read lock, starting a new section.
+	 */
+	public void lock()
+	{
+		lock.readLock().lock();
+		count = 0;
+	}
+
+	/**
+	 * Releases the read lock.
+	 */
+	public void unlock()
+	{
+		lock.readLock().unlock();
+	}
+
+	/**
+	 * Must be called while holding the lock, before visiting an object. Ends
+	 * the current section if it is complete.
+	 *
+	 * @return <code>false</code> if the computation must stop.
+	 */
+	public boolean next()
+	{
+		if ( ++count >= SECTION_SIZE )
+		{
+			count = 0;
+			lock.readLock().unlock();
+			lock.readLock().lock();
+		}
+		return !stale.getAsBoolean();
+	}
+}
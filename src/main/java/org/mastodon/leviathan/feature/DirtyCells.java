@@ -0,0 +1,157 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.feature;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.mastodon.feature.FeatureSpec;
+
+/**
+ * The cells that need to be recomputed, for each feature spec.
+ * <p>
+ * Cells are stored by their internal pool index, in one bitset per feature
+ * spec. Edits of the model mark cells with
+ * {@link #mark(FeatureSpec, int)}, and feature computers take the set of cells
+ * they have to recompute with {@link #take(FeatureSpec)}. This makes the
+ * incremental computation proportional to the size of the edit instead of the
+ * size of the model.
+ * <p>
+ * The cells taken by a computation are kept until its results are passed to
+ * the feature model, with {@link #commit()}, or discarded, with
+ * {@link #rollback()}. In the latter case they are marked dirty again.
+ * <p>
+ * This class is thread-safe.
+ */
+public class DirtyCells
+{
+
+	/**
+	 * Dirty sets, stored by feature key.
+	 */
+	private final Map< String, BitSet > dirty = new HashMap<>();
+
+	/**
+	 * Cells taken by the current computation, stored by feature key.
+	 */
+	private final Map< String, BitSet > taken = new HashMap<>();
+
+	/**
+	 * Marks the cell with the specified pool index as dirty for the specified
+	 * feature.
+	 *
+	 * @param spec
+	 *            the feature spec.
+	 * @param index
+	 *            the internal pool index of the cell.
+	 */
+	public synchronized void mark( final FeatureSpec< ?, ? > spec, final int index )
+	{
+		dirty.computeIfAbsent( spec.getKey(), k -> new BitSet() ).set( index );
+	}
+
+	/**
+	 * Marks the cell with the specified pool index as dirty for all the
+	 * specified features.
+	 *
+	 * @param specs
+	 *            the feature specs.
+	 * @param index
+	 *            the internal pool index of the cell.
+	 */
+	public synchronized void markAll( final Iterable< FeatureSpec< ?, ? > > specs, final int index )
+	{
+		for ( final FeatureSpec< ?, ? > spec : specs )
+			mark( spec, index );
+	}
+
+	/**
+	 * Removes the cell with the specified pool index from all the dirty sets.
+	 * Must be called when a cell is removed from the model, so that feature
+	 * computers do not visit a pool index that is not in use.
+	 *
+	 * @param index
+	 *            the internal pool index of the cell.
+	 */
+	public synchronized void unmark( final int index )
+	{
+		for ( final BitSet bits : dirty.values() )
+			bits.clear( index );
+		for ( final BitSet bits : taken.values() )
+			bits.clear( index );
+	}
+
+	/**
+	 * Returns the cells that are dirty for the specified feature, and resets
+	 * the dirty set of this feature.
+	 *
+	 * @param spec
+	 *            the feature spec.
+	 * @return a new bitset, indexed by cell internal pool index. Never
+	 *         <code>null</code>.
+	 */
+	public synchronized BitSet take( final FeatureSpec< ?, ? > spec )
+	{
+		final BitSet bits = dirty.remove( spec.getKey() );
+		if ( bits == null )
+			return new BitSet();
+		taken.computeIfAbsent( spec.getKey(), k -> new BitSet() ).or( bits );
+		return bits;
+	}
+
+	/**
+	 * Forgets the cells taken since the last commit or rollback, once the
+	 * results computed for them are passed to the feature model.
+	 */
+	public synchronized void commit()
+	{
+		taken.clear();
+	}
+
+	/**
+	 * Marks the cells taken since the last commit or rollback dirty again,
+	 * when the results computed for them are discarded.
+	 */
+	public synchronized void rollback()
+	{
+		for ( final Map.Entry< String, BitSet > entry : taken.entrySet() )
+			dirty.computeIfAbsent( entry.getKey(), k -> new BitSet() ).or( entry.getValue() );
+		taken.clear();
+	}
+
+	/**
+	 * Resets all the dirty sets.
+	 */
+	public synchronized void clear()
+	{
+		dirty.clear();
+		taken.clear();
+	}
+}
@@ -0,0 +1,184 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.feature;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.mastodon.feature.FeatureComputerService;
+import org.mastodon.feature.FeatureModel;
+import org.mastodon.feature.FeatureSpec;
+import org.mastodon.graph.GraphChangeListener;
+
+/**
+ * Recomputes features in the background after the model is edited.
+ * <p>
+ * Each call to {@link #graphChanged()} (re)starts a countdown. When no change
+ * has been received for the debounce delay, the features currently present in
+ * the feature model are recomputed on a low-priority worker thread. The
+ * computation is not forced, so that feature computers only visit the objects
+ * invalidated by the edits. The feature computers only hold the read lock of
+ * the graph in short sections, so edits made on the EDT do not wait for the
+ * computation. The feature model is updated in one go, on the EDT, by the
+ * wrapped computer service when the computation completes. A change received
+ * while a computation runs cancels it, and a new one is scheduled.
+ * <p>
+ * The recomputation is disabled by default.
+ */
+public class FeatureAutoRecomputation implements GraphChangeListener
+{
+
+	/**
+	 * The default debounce delay, in milliseconds.
+	 */
+	public static final long DEFAULT_DELAY = 500;
+
+	private final FeatureComputerService computerService;
+
+	private final FeatureModel featureModel;
+
+	private final ScheduledExecutorService executor;
+
+	private volatile boolean enabled = false;
+
+	private volatile long delay = DEFAULT_DELAY;
+
+	private ScheduledFuture< ? > pending;
+
+	private volatile boolean running = false;
+
+	/**
+	 * Creates a new auto-recomputation.
+	 *
+	 * @param computerService
+	 *            the computer service to use. It must update the feature model
+	 *            with the results of the computation.
+	 * @param featureModel
+	 *            the feature model, used to determine what features to
+	 *            recompute.
+	 * @param name
+	 *            the name of the worker thread.
+	 */
+	public FeatureAutoRecomputation( final FeatureComputerService computerService, final FeatureModel featureModel, final String name )
+	{
+		this.computerService = computerService;
+		this.featureModel = featureModel;
+		this.executor = Executors.newSingleThreadScheduledExecutor( r -> {
+			final Thread thread = new Thread( r, name );
+			thread.setDaemon( true );
+			thread.setPriority( Thread.MIN_PRIORITY );
+			return thread;
+		} );
+	}
+
+	@Override
+	public synchronized void graphChanged()
+	{
+		if ( !enabled || executor.isShutdown() )
+			return;
+
+		if ( pending != null )
+			pending.cancel( false );
+		if ( running )
+			computerService.cancel( "Model changed." );
+		pending = executor.schedule( this::recompute, delay, TimeUnit.MILLISECONDS );
+	}
+
+	/**
+	 * Enables or disables the background recomputation. Enabling it triggers
+	 * a recomputation.
+	 *
+	 * @param enabled
+	 *            whether features should be recomputed after edits.
+	 */
+	public void setEnabled( final boolean enabled )
+	{
+		this.enabled = enabled;
+		if ( enabled )
+			graphChanged();
+	}
+
+	public boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * Sets the delay without model change after which the recomputation
+	 * starts.
+	 *
+	 * @param delay
+	 *            the delay, in milliseconds.
+	 */
+	public void setDelay( final long delay )
+	{
+		this.delay = Math.max( 0, delay );
+	}
+
+	/**
+	 * Stops the worker thread. Pending recomputations are discarded.
+	 */
+	public synchronized void shutdown()
+	{
+		enabled = false;
+		if ( pending != null )
+			pending.cancel( false );
+		if ( running )
+			computerService.cancel( "Shutting down." );
+		executor.shutdown();
+	}
+
+	private void recompute()
+	{
+		if ( !enabled )
+			return;
+
+		// Only recompute the features that have already been computed.
+		final Collection< FeatureSpec< ?, ? > > specs = new ArrayList<>();
+		for ( final FeatureSpec< ?, ? > spec : featureModel.getFeatureSpecs() )
+			if ( null != computerService.getFeatureComputerFor( spec ) )
+				specs.add( spec );
+		if ( specs.isEmpty() )
+			return;
+
+		running = true;
+		try
+		{
+			computerService.compute( false, specs );
+		}
+		finally
+		{
+			running = false;
+		}
+	}
+}
@@ -0,0 +1,63 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.feature;
+
+/**
+ * Settings shared by the feature computers of Leviathan, passed to them by
+ * the feature computer service.
+ */
+public class FeatureComputationSettings
+{
+
+	private volatile int resolutionLevel = 0;
+
+	/**
+	 * Returns the resolution level at which image data is sampled by
+	 * intensity features. Level 0 is the full resolution.
+	 *
+	 * @return the resolution level.
+	 */
+	public int getResolutionLevel()
+	{
+		return resolutionLevel;
+	}
+
+	/**
+	 * Sets the resolution level at which image data is sampled by intensity
+	 * features. Values larger than the number of levels available in a source
+	 * are clamped to its coarsest level.
+	 *
+	 * @param resolutionLevel
+	 *            the resolution level, 0 being the full resolution.
+	 */
+	public void setResolutionLevel( final int resolutionLevel )
+	{
+		this.resolutionLevel = Math.max( 0, resolutionLevel );
+	}
+}
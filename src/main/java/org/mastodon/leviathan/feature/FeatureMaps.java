@@ -0,0 +1,92 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.feature;
+
+import org.mastodon.collection.RefPool;
+import org.mastodon.properties.DoublePropertyMap;
+import org.mastodon.properties.IntPropertyMap;
+
+/**
+ * Copies of the property maps of features.
+ * <p>
+ * Feature computers compute into a copy of the feature published in the
+ * feature model, so that the feature model is left untouched until the
+ * results are swapped in on the EDT. The copy is made while holding the
+ * read lock of the graph, since the published feature is invalidated by
+ * edits.
+ */
+final class FeatureMaps
+{
+
+	static < O > DoublePropertyMap< O > copy( final DoublePropertyMap< O > map, final RefPool< O > pool, final Iterable< O > objects, final ComputationLock lock )
+	{
+		final DoublePropertyMap< O > copy = new DoublePropertyMap<>( pool, Double.NaN );
+		lock.lock();
+		try
+		{
+			for ( final O o : objects )
+				if ( map.isSet( o ) )
+					copy.set( o, map.getDouble( o ) );
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		return copy;
+	}
+
+	@SuppressWarnings( "unchecked" )
+	static < O > DoublePropertyMap< O >[] copy( final DoublePropertyMap< O >[] maps, final RefPool< O > pool, final Iterable< O > objects, final ComputationLock lock )
+	{
+		final DoublePropertyMap< O >[] copy = new DoublePropertyMap[ maps.length ];
+		for ( int i = 0; i < maps.length; i++ )
+			copy[ i ] = copy( maps[ i ], pool, objects, lock );
+		return copy;
+	}
+
+	static < O > IntPropertyMap< O > copy( final IntPropertyMap< O > map, final RefPool< O > pool, final Iterable< O > objects, final ComputationLock lock )
+	{
+		final IntPropertyMap< O > copy = new IntPropertyMap<>( pool, -1 );
+		lock.lock();
+		try
+		{
+			for ( final O o : objects )
+				if ( map.isSet( o ) )
+					copy.set( o, map.getInt( o ) );
+		}
+		finally
+		{
+			lock.unlock();
+		}
+		return copy;
+	}
+
+	private FeatureMaps()
+	{}
+}
@@ -0,0 +1,670 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.feature;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.Supplier;
+
+import org.mastodon.collection.RefCollection;
+import org.mastodon.collection.RefPool;
+import org.mastodon.feature.FeatureProjection;
+import org.mastodon.ui.coloring.feature.FeatureProjectionId;
+import org.mastodon.ui.coloring.feature.FeatureRangeCalculator;
+import org.mastodon.ui.coloring.feature.Projections;
+
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+
+/**
+ * Caches the range of values of feature projections, per time-point.
+ * <p>
+ * The objects are grouped by time-point once. The first time the range of a
+ * projection is requested, its values are read in one pass, with the
+ * time-points scanned concurrently, and the minimum, maximum, count and a
+ * histogram of the values of each time-point are stored. The range over all
+ * time-points is then merged from the time-points without visiting the
+ * objects again.
+ * <p>
+ * The cache is kept up to date incrementally: added and removed objects and
+ * edits are reported with {@link #added(Object)}, {@link #removed(Object)},
+ * {@link #changed(Object)} and {@link #invalidateTimepoint(int)}, which mark
+ * their time-point dirty. When the feature model changes, the time-points
+ * edited since the previous change are scanned again, even if a range was
+ * queried in between. Projections that were replaced or removed are
+ * discarded. A feature model change without any edit since the previous one
+ * rescans all the time-points, and so does a forced recomputation reported
+ * with {@link #invalidateAll()}.
+ * <p>
+ * Ranges are read under the read lock of the graph. The notification methods
+ * must be called under the write lock, or from the graph listeners.
+ *
+ * @param <O>
+ *            the type of objects whose feature values are cached.
+ */
+public class FeatureRangeCache< O > implements FeatureRangeCalculator
+{
+
+	/**
+	 * Number of bins of the histogram stored for each time-point.
+	 */
+	public static final int HISTOGRAM_BINS = 256;
+
+	/**
+	 * Reads the time-point of objects. Instances are not thread-safe, one is
+	 * created for each scanning thread.
+	 */
+	public interface Timepoints< O >
+	{
+		public int timepoint( O o );
+
+		public void release();
+	}
+
+	private final RefCollection< O > objects;
+
+	private final RefPool< O > pool;
+
+	private final ReadWriteLock lock;
+
+	private final Projections projections;
+
+	private final Class< O > targetClass;
+
+	private final Supplier< Timepoints< O > > timepointsFactory;
+
+	/**
+	 * Time-points of the objects added and removed, used by the listener
+	 * methods.
+	 */
+	private final Timepoints< O > timepoints;
+
+	/**
+	 * The pool indices of the objects of each time-point, or <code>null</code>
+	 * if they are not collected yet.
+	 */
+	private TIntObjectHashMap< TIntHashSet > ids;
+
+	private final Map< FeatureProjectionId, Entry > entries = new HashMap<>();
+
+	/**
+	 * Time-points of the objects added, removed or edited since the last
+	 * feature model change. Unlike the dirty time-points of the entries, they
+	 * are not consumed by range queries, so that the values recomputed after
+	 * the edits are scanned again.
+	 */
+	private final TIntHashSet edited = new TIntHashSet();
+
+	/**
+	 * Scans the time-points concurrently, or <code>null</code> if no range was
+	 * computed over several time-points yet.
+	 */
+	private ExecutorService executor;
+
+	/**
+	 * Creates a new cache.
+	 *
+	 * @param objects
+	 *            the objects whose feature values are cached, typically the
+	 *            vertices or the edges of a graph.
+	 * @param lock
+	 *            the lock of the graph.
+	 * @param projections
+	 *            the projections of the feature model.
+	 * @param targetClass
+	 *            the class of the objects.
+	 * @param timepointsFactory
+	 *            creates the readers of the time-point of objects.
+	 */
+	public FeatureRangeCache(
+			final RefCollection< O > objects,
+			final ReadWriteLock lock,
+			final Projections projections,
+			final Class< O > targetClass,
+			final Supplier< Timepoints< O > > timepointsFactory )
+	{
+		this.objects = objects;
+		this.pool = objects.getRefPool();
+		this.lock = lock;
+		this.projections = projections;
+		this.targetClass = targetClass;
+		this.timepointsFactory = timepointsFactory;
+		this.timepoints = timepointsFactory.get();
+	}
+
+	/*
+	 * Ranges.
+	 */
+
+	@Override
+	public double[] computeMinMax( final FeatureProjectionId id )
+	{
+		if ( id == null )
+			return null;
+
+		lock.readLock().lock();
+		try
+		{
+			final Entry entry = getEntry( id );
+			return entry == null ? null : entry.range();
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the range of the values of a projection at a time-point.
+	 *
+	 * @param id
+	 *            the projection.
+	 * @param timepoint
+	 *            the time-point.
+	 * @return a new <code>{ min, max }</code> array, or <code>null</code> if
+	 *         no object of the time-point has a value.
+	 */
+	public double[] computeMinMax( final FeatureProjectionId id, final int timepoint )
+	{
+		lock.readLock().lock();
+		try
+		{
+			final Entry entry = getEntry( id );
+			if ( entry == null )
+				return null;
+			final Stats stats = entry.stats.get( timepoint );
+			return stats == null || stats.count == 0 ? null : new double[] { stats.min, stats.max };
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the histogram of the values of a projection at a time-point.
+	 * <p>
+	 * The histogram is rebinned from the histogram stored for the time-point,
+	 * which has {@value #HISTOGRAM_BINS} bins over the range of the
+	 * time-point. Values outside the specified range are counted in the first
+	 * or last bin.
+	 *
+	 * @param id
+	 *            the projection.
+	 * @param timepoint
+	 *            the time-point, or -1 for all time-points.
+	 * @param min
+	 *            the lower bound of the first bin.
+	 * @param max
+	 *            the upper bound of the last bin.
+	 * @param nBins
+	 *            the number of bins.
+	 * @return a new array of counts, or <code>null</code> if the projection
+	 *         does not exist.
+	 */
+	public int[] getHistogram( final FeatureProjectionId id, final int timepoint, final double min, final double max, final int nBins )
+	{
+		lock.readLock().lock();
+		try
+		{
+			final Entry entry = getEntry( id );
+			if ( entry == null )
+				return null;
+			final int[] histogram = new int[ nBins ];
+			if ( timepoint < 0 )
+			{
+				for ( final Stats stats : entry.stats.valueCollection() )
+					stats.rebin( min, max, histogram );
+			}
+			else
+			{
+				final Stats stats = entry.stats.get( timepoint );
+				if ( stats != null )
+					stats.rebin( min, max, histogram );
+			}
+			return histogram;
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the time-points that contain objects, in increasing order.
+	 *
+	 * @return a new array.
+	 */
+	public int[] getTimepoints()
+	{
+		lock.readLock().lock();
+		try
+		{
+			synchronized ( this )
+			{
+				final int[] array = collectIds().keys();
+				Arrays.sort( array );
+				return array;
+			}
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * Notifications.
+	 */
+
+	/**
+	 * Marks the time-point of an added object dirty.
+	 *
+	 * @param o
+	 *            the object.
+	 */
+	public synchronized void added( final O o )
+	{
+		final int t = timepoints.timepoint( o );
+		if ( ids != null )
+			idsOf( t ).add( pool.getId( o ) );
+		markDirty( t );
+	}
+
+	/**
+	 * Marks the time-point of an object about to be removed dirty.
+	 *
+	 * @param o
+	 *            the object.
+	 */
+	public synchronized void removed( final O o )
+	{
+		final int t = timepoints.timepoint( o );
+		if ( ids != null )
+		{
+			final TIntHashSet set = ids.get( t );
+			if ( set != null )
+				set.remove( pool.getId( o ) );
+		}
+		markDirty( t );
+	}
+
+	/**
+	 * Marks the time-point of an edited object dirty.
+	 *
+	 * @param o
+	 *            the object.
+	 */
+	public synchronized void changed( final O o )
+	{
+		markDirty( timepoints.timepoint( o ) );
+	}
+
+	/**
+	 * Marks a time-point dirty, for instance after an object was edited.
+	 *
+	 * @param timepoint
+	 *            the time-point.
+	 */
+	public synchronized void invalidateTimepoint( final int timepoint )
+	{
+		markDirty( timepoint );
+	}
+
+	/**
+	 * Reports a change of the feature model. Discards the projections that were
+	 * replaced or removed, and marks the time-points edited since the last
+	 * change dirty. If nothing was edited, marks all the time-points dirty.
+	 */
+	public synchronized void featuresChanged()
+	{
+		entries.values().removeIf( entry -> entry.projection != projections.getFeatureProjection( entry.id, targetClass ) );
+		if ( edited.isEmpty() )
+		{
+			for ( final Entry entry : entries.values() )
+				entry.stale = true;
+			return;
+		}
+		final int[] tps = edited.toArray();
+		for ( final Entry entry : entries.values() )
+			for ( final int t : tps )
+				entry.markDirty( t );
+		edited.clear();
+	}
+
+	/**
+	 * Marks all the time-points of all the projections dirty. Must be called
+	 * when all the feature values are recomputed, for instance by a forced
+	 * computation, since the feature instances are reused and the projections
+	 * do not change.
+	 */
+	public synchronized void invalidateAll()
+	{
+		for ( final Entry entry : entries.values() )
+			entry.stale = true;
+	}
+
+	/**
+	 * Discards all the cached ranges and the grouping of objects by time-point,
+	 * for instance after the graph was rebuilt.
+	 */
+	public synchronized void clear()
+	{
+		ids = null;
+		entries.clear();
+		edited.clear();
+	}
+
+	/**
+	 * Releases the resources of this cache and stops its scanning threads.
+	 */
+	public synchronized void dispose()
+	{
+		clear();
+		timepoints.release();
+		if ( executor != null )
+		{
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+	private void markDirty( final int timepoint )
+	{
+		edited.add( timepoint );
+		for ( final Entry entry : entries.values() )
+			entry.markDirty( timepoint );
+	}
+
+	/*
+	 * Scanning.
+	 */
+
+	/**
+	 * Returns the up-to-date entry of a projection, scanning the time-points
+	 * that need it. Must be called under the read lock of the graph.
+	 */
+	private synchronized Entry getEntry( final FeatureProjectionId id )
+	{
+		final FeatureProjection< O > projection = projections.getFeatureProjection( id, targetClass );
+		if ( projection == null )
+		{
+			entries.remove( id );
+			return null;
+		}
+
+		Entry entry = entries.get( id );
+		if ( entry == null || entry.projection != projection )
+		{
+			entry = new Entry( id, projection );
+			entry.stale = true;
+			entries.put( id, entry );
+		}
+
+		final TIntObjectHashMap< TIntHashSet > byTimepoint = collectIds();
+		if ( entry.stale )
+		{
+			entry.stale = false;
+			entry.stats.clear();
+			scan( entry, byTimepoint.keys(), byTimepoint );
+		}
+		else if ( !entry.dirty.isEmpty() )
+		{
+			final int[] dirty = entry.dirty.toArray();
+			for ( final int t : dirty )
+				entry.stats.remove( t );
+			scan( entry, dirty, byTimepoint );
+		}
+		entry.dirty.clear();
+		return entry;
+	}
+
+	private TIntObjectHashMap< TIntHashSet > collectIds()
+	{
+		if ( ids == null )
+		{
+			ids = new TIntObjectHashMap<>();
+			for ( final O o : objects )
+				idsOf( timepoints.timepoint( o ) ).add( pool.getId( o ) );
+		}
+		return ids;
+	}
+
+	private TIntHashSet idsOf( final int timepoint )
+	{
+		TIntHashSet set = ids.get( timepoint );
+		if ( set == null )
+		{
+			set = new TIntHashSet();
+			ids.put( timepoint, set );
+		}
+		return set;
+	}
+
+	/**
+	 * Computes the statistics of the specified time-points, concurrently if
+	 * there are several.
+	 */
+	private void scan( final Entry entry, final int[] timepoints, final TIntObjectHashMap< TIntHashSet > byTimepoint )
+	{
+		if ( timepoints.length == 1 )
+		{
+			final TIntHashSet set = byTimepoint.get( timepoints[ 0 ] );
+			if ( set != null )
+				entry.stats.put( timepoints[ 0 ], scan( entry.projection, set ) );
+			return;
+		}
+
+		final ExecutorService executor = executor();
+		try
+		{
+			final Collection< Future< Stats > > futures = new ArrayList<>( timepoints.length );
+			for ( final int t : timepoints )
+			{
+				final TIntHashSet set = byTimepoint.get( t );
+				futures.add( set == null ? null : executor.submit( () -> scan( entry.projection, set ) ) );
+			}
+			int i = 0;
+			for ( final Future< Stats > future : futures )
+			{
+				final int t = timepoints[ i++ ];
+				if ( future != null )
+					entry.stats.put( t, future.get() );
+			}
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			entry.stale = true;
+		}
+		catch ( final ExecutionException e )
+		{
+			throw new RuntimeException( e.getCause() );
+		}
+	}
+
+	/**
+	 * Returns the executor scanning the time-points, creating it the first
+	 * time. It has one daemon thread per processor, kept until
+	 * {@link #dispose()}.
+	 */
+	private ExecutorService executor()
+	{
+		if ( executor == null )
+		{
+			final int nThreads = Math.max( 1, Runtime.getRuntime().availableProcessors() );
+			final AtomicInteger count = new AtomicInteger();
+			executor = Executors.newFixedThreadPool( nThreads, r -> {
+				final Thread thread = new Thread( r, "Leviathan feature range scanner " + count.incrementAndGet() );
+				thread.setDaemon( true );
+				return thread;
+			} );
+		}
+		return executor;
+	}
+
+	private Stats scan( final FeatureProjection< O > projection, final TIntHashSet set )
+	{
+		final O ref = pool.createRef();
+		final double[] values = new double[ set.size() ];
+		int n = 0;
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		try
+		{
+			final TIntIterator it = set.iterator();
+			while ( it.hasNext() )
+			{
+				final O o = pool.getObject( it.next(), ref );
+				if ( !projection.isSet( o ) )
+					continue;
+				final double value = projection.value( o );
+				if ( Double.isNaN( value ) )
+					continue;
+				values[ n++ ] = value;
+				min = Math.min( min, value );
+				max = Math.max( max, value );
+			}
+		}
+		finally
+		{
+			pool.releaseRef( ref );
+		}
+
+		final Stats stats = new Stats( min, max, n );
+		for ( int i = 0; i < n; i++ )
+			stats.bins[ stats.bin( values[ i ] ) ]++;
+		return stats;
+	}
+
+	/**
+	 * The cached ranges of a projection.
+	 */
+	private final class Entry
+	{
+
+		private final FeatureProjectionId id;
+
+		private final FeatureProjection< O > projection;
+
+		private final TIntObjectHashMap< Stats > stats = new TIntObjectHashMap<>();
+
+		private final TIntHashSet dirty = new TIntHashSet();
+
+		/**
+		 * Whether all the time-points have to be scanned.
+		 */
+		private boolean stale;
+
+		private Entry( final FeatureProjectionId id, final FeatureProjection< O > projection )
+		{
+			this.id = id;
+			this.projection = projection;
+		}
+
+		private void markDirty( final int timepoint )
+		{
+			dirty.add( timepoint );
+		}
+
+		private double[] range()
+		{
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for ( final Stats s : stats.valueCollection() )
+			{
+				if ( s.count == 0 )
+					continue;
+				min = Math.min( min, s.min );
+				max = Math.max( max, s.max );
+			}
+			return min > max ? null : new double[] { min, max };
+		}
+	}
+
+	/**
+	 * The values of a projection at one time-point.
+	 */
+	private static final class Stats
+	{
+
+		private final double min;
+
+		private final double max;
+
+		private final int count;
+
+		private final int[] bins = new int[ HISTOGRAM_BINS ];
+
+		private Stats( final double min, final double max, final int count )
+		{
+			this.min = min;
+			this.max = max;
+			this.count = count;
+		}
+
+		private int bin( final double value )
+		{
+			if ( !( max > min ) )
+				return 0;
+			final int bin = ( int ) ( ( value - min ) / ( max - min ) * HISTOGRAM_BINS );
+			return Math.max( 0, Math.min( HISTOGRAM_BINS - 1, bin ) );
+		}
+
+		/**
+		 * Adds the counts of this histogram to a histogram over another
+		 * range, using the centers of the bins.
+		 */
+		private void rebin( final double from, final double to, final int[] histogram )
+		{
+			if ( count == 0 )
+				return;
+			final int n = histogram.length;
+			final double width = ( max - min ) / HISTOGRAM_BINS;
+			for ( int i = 0; i < HISTOGRAM_BINS; i++ )
+			{
+				if ( bins[ i ] == 0 )
+					continue;
+				final double center = min + ( i + 0.5 ) * width;
+				final int j = to > from ? ( int ) ( ( center - from ) / ( to - from ) * n ) : 0;
+				histogram[ Math.max( 0, Math.min( n - 1, j ) ) ] += bins[ i ];
+			}
+		}
+	}
+}
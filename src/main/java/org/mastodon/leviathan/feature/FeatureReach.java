@@ -0,0 +1,66 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.feature;
+
+/**
+ * The set of cells whose value of a feature becomes out of sync when the
+ * model is edited.
+ */
+public enum FeatureReach
+{
+	/**
+	 * The feature value of a cell only depends on the cell itself. Editing a
+	 * cell only invalidates this cell.
+	 */
+	SELF,
+
+	/**
+	 * The feature value of a cell depends on the membranes it is made of.
+	 * Editing a cell invalidates this cell, and editing a membrane invalidates
+	 * the two cells on each side of it.
+	 */
+	MEMBRANE,
+
+	/**
+	 * The feature value of a cell depends on its neighbors, the cells it
+	 * shares a membrane with. Editing a cell or one of its membranes
+	 * invalidates the cell and all its neighbors.
+	 */
+	NEIGHBORS;
+
+	/**
+	 * Interface for feature specs that declare their reach. Feature specs that
+	 * do not implement it are considered to have a {@link FeatureReach#SELF}
+	 * reach.
+	 */
+	public interface HasReach
+	{
+		public FeatureReach getReach();
+	}
+}
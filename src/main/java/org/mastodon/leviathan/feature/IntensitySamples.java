@@ -0,0 +1,116 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.feature;
+
+import java.util.Arrays;
+
+/**
+ * Growable buffer of intensity samples, used to compute the mean, standard
+ * deviation and percentiles of the pixel values collected for one object.
+ * <p>
+ * The buffer is meant to be reused across objects with {@link #reset()}, so
+ * that no allocation happens once it has reached its working size.
+ */
+class IntensitySamples
+{
+
+	private double[] values = new double[ 256 ];
+
+	private int size = 0;
+
+	private boolean sorted = true;
+
+	void reset()
+	{
+		size = 0;
+		sorted = true;
+	}
+
+	void add( final double value )
+	{
+		if ( size == values.length )
+			values = Arrays.copyOf( values, 2 * size );
+		values[ size++ ] = value;
+		sorted = false;
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	double mean()
+	{
+		if ( size == 0 )
+			return Double.NaN;
+		double sum = 0.;
+		for ( int i = 0; i < size; i++ )
+			sum += values[ i ];
+		return sum / size;
+	}
+
+	double std()
+	{
+		if ( size == 0 )
+			return Double.NaN;
+		final double mean = mean();
+		double sum = 0.;
+		for ( int i = 0; i < size; i++ )
+		{
+			final double d = values[ i ] - mean;
+			sum += d * d;
+		}
+		return Math.sqrt( sum / size );
+	}
+
+	/**
+	 * Returns the specified percentile of the samples, with linear
+	 * interpolation between the closest ranks.
+	 *
+	 * @param p
+	 *            the percentile, from 0 to 100.
+	 * @return the percentile value, or {@link Double#NaN} if there are no
+	 *         samples.
+	 */
+	double percentile( final double p )
+	{
+		if ( size == 0 )
+			return Double.NaN;
+		if ( !sorted )
+		{
+			Arrays.sort( values, 0, size );
+			sorted = true;
+		}
+		final double rank = p / 100. * ( size - 1 );
+		final int lo = ( int ) Math.floor( rank );
+		final int hi = Math.min( lo + 1, size - 1 );
+		final double w = rank - lo;
+		return ( 1. - w ) * values[ lo ] + w * values[ hi ];
+	}
+}
@@ -28,18 +28,27 @@
  */
 package org.mastodon.leviathan.feature;
 
-import java.util.ArrayList;
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 
+import javax.swing.JCheckBox;
 import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JSpinner;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingUtilities;
 
 import org.mastodon.feature.Feature;
 import org.mastodon.feature.FeatureComputer;
 import org.mastodon.feature.FeatureComputerService;
-import org.mastodon.feature.FeatureModel;
 import org.mastodon.feature.FeatureSpec;
 import org.mastodon.feature.ui.FeatureComputationController;
 import org.mastodon.leviathan.app.LeviathanCellAppModel;
@@ -47,48 +56,135 @@ import org.mastodon.leviathan.model.cell.Cell;
 import org.mastodon.leviathan.model.cell.CellGraph;
 import org.mastodon.leviathan.model.cell.CellPool;
 import org.mastodon.leviathan.model.cell.Link;
+import org.mastodon.properties.PropertyChangeListener;
+import org.mastodon.views.bdv.SharedBigDataViewerData;
 import org.scijava.Context;
 import org.scijava.service.AbstractService;
 
+import bdv.viewer.SourceAndConverter;
+
 public class LeviathanCellFeatureComputation
 {
 
-	public static final JDialog getDialog( final LeviathanCellAppModel appModel, final Context context )
+	/**
+	 * Creates the feature computation dialog of a cell model.
+	 *
+	 * @param appModel
+	 *            the app model.
+	 * @param context
+	 *            the context providing the computer service.
+	 * @param forcedComputationListener
+	 *            run on the EDT before the results of a forced computation
+	 *            are passed to the feature model.
+	 * @return the dialog.
+	 */
+	public static final JDialog getDialog( final LeviathanCellAppModel appModel, final Context context, final Runnable forcedComputationListener )
 	{
 		// Prepare services.
 		final LeviathanCellFeatureComputerService computerService = context.getService( LeviathanCellFeatureComputerService.class );
 		computerService.setModel( appModel.getModel() );
 		computerService.setSharedBdvData( appModel.getSharedBdvData() );
-		final MyFeatureComputerService myComputerService = new MyFeatureComputerService( computerService, appModel.getModel().getFeatureModel() );
+		final MyFeatureComputerService myComputerService = new MyFeatureComputerService( computerService, forcedComputationListener );
 
 		// Controller.
 		final Collection< Class< ? > > targets = Arrays.asList( Cell.class, Link.class );
 		final FeatureComputationController controller = new FeatureComputationController( myComputerService, targets );
 		computerService.computationStatusListeners().add( controller.getComputationStatusListener() );
 
+		// Optional background recomputation after edits.
+		final FeatureAutoRecomputation autoRecomputation = new FeatureAutoRecomputation( myComputerService, appModel.getModel().getFeatureModel(), "Leviathan cell feature recomputation" );
+
 		// Listen to model changes and echo in the GUI
 		final CellGraph graph = appModel.getModel().getGraph();
 		graph.addGraphChangeListener( controller );
+		graph.addGraphChangeListener( autoRecomputation );
 		// Listen to changes in spot properties.
+		final PropertyChangeListener< Cell > propertyListener = ( o ) -> {
+			controller.graphChanged();
+			autoRecomputation.graphChanged();
+		};
 		final CellPool cellPool = ( CellPool ) graph.vertices().getRefPool();
-		cellPool.positionProperty().propertyChangeListeners().add( ( o ) -> controller.graphChanged() );
-		cellPool.boundaryProperty().propertyChangeListeners().add( ( o ) -> controller.graphChanged() );
-		cellPool.membraneProperty().propertyChangeListeners().add( ( o ) -> controller.graphChanged() );
+		cellPool.positionProperty().propertyChangeListeners().add( propertyListener );
+		cellPool.boundaryProperty().propertyChangeListeners().add( propertyListener );
+		cellPool.membraneProperty().propertyChangeListeners().add( propertyListener );
+
+		final JDialog dialog = controller.getDialog();
+		addSettingsPanel( dialog, computerService.getSettings(), appModel.getSharedBdvData(), autoRecomputation );
+		/*
+		 * The dialog is only hidden when the user closes it. When it is
+		 * disposed, because the model is replaced, remove the listeners so
+		 * that the model, the controller and the worker thread of the
+		 * recomputation can be released.
+		 */
+		dialog.addWindowListener( new WindowAdapter()
+		{
+			@Override
+			public void windowClosed( final WindowEvent e )
+			{
+				graph.removeGraphChangeListener( controller );
+				graph.removeGraphChangeListener( autoRecomputation );
+				cellPool.positionProperty().propertyChangeListeners().remove( propertyListener );
+				cellPool.boundaryProperty().propertyChangeListeners().remove( propertyListener );
+				cellPool.membraneProperty().propertyChangeListeners().remove( propertyListener );
+				computerService.computationStatusListeners().remove( controller.getComputationStatusListener() );
+				autoRecomputation.shutdown();
+			}
+		} );
+		return dialog;
+	}
+
+	/**
+	 * Adds a panel to the feature computation dialog that lets the user choose
+	 * the resolution level at which image data is sampled, and whether
+	 * features are recomputed in the background after edits.
+	 */
+	static void addSettingsPanel(
+			final JDialog dialog,
+			final FeatureComputationSettings settings,
+			final SharedBigDataViewerData sharedBdvData,
+			final FeatureAutoRecomputation autoRecomputation )
+	{
+		int nLevels = 1;
+		if ( sharedBdvData != null )
+			for ( final SourceAndConverter< ? > sac : sharedBdvData.getSources() )
+				nLevels = Math.max( nLevels, sac.getSpimSource().getNumMipmapLevels() );
 
-		return controller.getDialog();
+		final int level = Math.min( settings.getResolutionLevel(), nLevels - 1 );
+		final JSpinner spinner = new JSpinner( new SpinnerNumberModel( level, 0, nLevels - 1, 1 ) );
+		spinner.addChangeListener( e -> settings.setResolutionLevel( ( ( Number ) spinner.getValue() ).intValue() ) );
+		spinner.setEnabled( nLevels > 1 );
+
+		final JPanel levelPanel = new JPanel( new FlowLayout( FlowLayout.LEADING ) );
+		levelPanel.add( new JLabel( "Image resolution level for intensity features:" ) );
+		levelPanel.add( spinner );
+
+		final JCheckBox autoCheckBox = new JCheckBox( "Recompute features automatically after edits", autoRecomputation.isEnabled() );
+		autoCheckBox.addActionListener( e -> autoRecomputation.setEnabled( autoCheckBox.isSelected() ) );
+		final JPanel autoPanel = new JPanel( new FlowLayout( FlowLayout.LEADING ) );
+		autoPanel.add( autoCheckBox );
+
+		final JPanel settingsPanel = new JPanel( new BorderLayout() );
+		settingsPanel.add( levelPanel, BorderLayout.NORTH );
+		settingsPanel.add( autoPanel, BorderLayout.SOUTH );
+
+		final JPanel content = new JPanel( new BorderLayout() );
+		content.add( dialog.getContentPane(), BorderLayout.CENTER );
+		content.add( settingsPanel, BorderLayout.SOUTH );
+		dialog.setContentPane( content );
+		dialog.pack();
 	}
 
-	private static final class MyFeatureComputerService extends AbstractService implements FeatureComputerService
+	static final class MyFeatureComputerService extends AbstractService implements FeatureComputerService
 	{
 
-		private final FeatureComputerService wrapped;
+		private final AbstractLeviathanFeatureComputerService< ?, ? > wrapped;
 
-		private final FeatureModel featureModel;
+		private final Runnable forcedComputationListener;
 
-		public MyFeatureComputerService( final FeatureComputerService wrapped, final FeatureModel featureModel )
+		public MyFeatureComputerService( final AbstractLeviathanFeatureComputerService< ?, ? > wrapped, final Runnable forcedComputationListener )
 		{
 			this.wrapped = wrapped;
-			this.featureModel = featureModel;
+			this.forcedComputationListener = forcedComputationListener;
 		}
 
 		@Override
@@ -133,28 +229,44 @@ public class LeviathanCellFeatureComputation
 			return wrapped.getFeatureSpecs();
 		}
 
+		/*
+		 * Synchronized so that computations triggered from the dialog and from
+		 * the background recomputation do not run concurrently.
+		 */
 		@Override
-		public Map< FeatureSpec< ?, ? >, Feature< ? > > compute( final boolean forceComputeAll, final Collection< FeatureSpec< ?, ? > > featureKeys )
+		public synchronized Map< FeatureSpec< ?, ? >, Feature< ? > > compute( final boolean forceComputeAll, final Collection< FeatureSpec< ?, ? > > featureKeys )
 		{
 			final Map< FeatureSpec< ?, ? >, Feature< ? > > map = wrapped.compute( forceComputeAll, featureKeys );
 			if ( wrapped.isCanceled() )
 				return null;
 
-			featureModel.pauseListeners();
-			// Clear feature we can compute
-			final Collection< FeatureSpec< ?, ? > > featureSpecs = featureModel.getFeatureSpecs();
-			final Collection< FeatureSpec< ?, ? > > toClear = new ArrayList<>();
-			for ( final FeatureSpec< ?, ? > featureSpec : featureSpecs )
-				if ( null != wrapped.getFeatureComputerFor( featureSpec ) )
-					toClear.add( featureSpec );
-
-			for ( final FeatureSpec< ?, ? > featureSpec : toClear )
-				featureModel.clear( featureSpec );
-
-			// Pass the feature map to the feature model.
-			map.values().forEach( featureModel::declareFeature );
-
-			featureModel.resumeListeners();
+			/*
+			 * Swap the results in the feature model on the EDT, where the
+			 * model is edited and the listeners of the feature model expect to
+			 * be notified. Wait for it, so that the next computation starts
+			 * from the published features.
+			 */
+			final Runnable beforePublish = forceComputeAll ? forcedComputationListener : null;
+			final Runnable publish = () -> wrapped.publish( map, beforePublish );
+			if ( SwingUtilities.isEventDispatchThread() )
+			{
+				publish.run();
+			}
+			else
+			{
+				try
+				{
+					SwingUtilities.invokeAndWait( publish );
+				}
+				catch ( final InvocationTargetException e )
+				{
+					e.printStackTrace();
+				}
+				catch ( final InterruptedException e )
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
 			return map;
 		}
 
@@ -28,59 +28,40 @@
  */
 package org.mastodon.leviathan.feature;
 
-import java.util.Collection;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
 
-import org.mastodon.feature.DefaultFeatureComputerService;
 import org.mastodon.feature.Feature;
 import org.mastodon.feature.FeatureModel;
 import org.mastodon.feature.FeatureSpec;
-import org.mastodon.feature.FeatureSpecsService;
 import org.mastodon.feature.update.GraphFeatureUpdateListeners;
 import org.mastodon.leviathan.model.cell.Cell;
 import org.mastodon.leviathan.model.cell.CellGraph;
 import org.mastodon.leviathan.model.cell.CellModel;
 import org.mastodon.leviathan.model.cell.CellPool;
 import org.mastodon.leviathan.model.cell.Link;
+import org.mastodon.leviathan.model.junction.JunctionGraph;
+import org.mastodon.leviathan.model.junction.MembranePartPool;
 import org.mastodon.properties.PropertyChangeListener;
-import org.mastodon.views.bdv.SharedBigDataViewerData;
 import org.scijava.command.CommandModule;
 import org.scijava.module.ModuleItem;
-import org.scijava.plugin.Parameter;
 import org.scijava.plugin.Plugin;
 
 @Plugin( type = LeviathanCellFeatureComputerService.class )
-public class LeviathanCellFeatureComputerService extends DefaultFeatureComputerService
+public class LeviathanCellFeatureComputerService extends AbstractLeviathanFeatureComputerService< CellModel, CellGraph >
 {
 
-	private SharedBigDataViewerData sharedBdvData;
+	private final DirtyCells dirtyCells = new DirtyCells();
 
-	private CellModel model;
-
-	private final AtomicBoolean shouldRecomputeAll = new AtomicBoolean( false );
+	private PropertyChangeListener< Cell > vertexPropertyListener;
 
-	@Parameter
-	private FeatureSpecsService featureSpecsService;
+	private CellFeatureInvalidation invalidation;
 
-	private PropertyChangeListener< Cell > vertexPropertyListener;
+	private JunctionGraph junctionGraph;
 
 	public LeviathanCellFeatureComputerService()
 	{
-		super( CellFeatureComputer.class );
-	}
-
-	@Override
-	public Map< FeatureSpec< ?, ? >, Feature< ? > > compute( final boolean forceComputeAll, final Collection< FeatureSpec< ?, ? > > featureKeys )
-	{
-		// Set the force flag.
-		shouldRecomputeAll.set( forceComputeAll );
-
-		final Map< FeatureSpec< ?, ? >, Feature< ? > > results = super.compute( forceComputeAll, featureKeys );
-		if ( isCanceled() )
-			return null;
-
-		return results;
+		super( CellFeatureComputer.class, CellModel.class, CellGraph.class );
 	}
 
 	@Override
@@ -89,77 +70,68 @@ public class LeviathanCellFeatureComputerService extends DefaultFeatureComputerS
 			final CommandModule module, final Class< ? > parameterClass,
 			final Map< FeatureSpec< ?, ? >, Feature< ? > > featureModel )
 	{
-
-		// Pass the model is required.
-		if ( CellModel.class.isAssignableFrom( parameterClass ) )
+		// Pass the dirty cells.
+		if ( DirtyCells.class.isAssignableFrom( parameterClass ) )
 		{
 			@SuppressWarnings( "unchecked" )
-			final ModuleItem< CellModel > modelItem = ( ModuleItem< CellModel > ) item;
-			modelItem.setValue( module, model );
+			final ModuleItem< DirtyCells > dirtyItem = ( ModuleItem< DirtyCells > ) item;
+			dirtyItem.setValue( module, dirtyCells );
 			return;
 		}
 
-		// Pass the model graph.
-		if ( CellGraph.class.isAssignableFrom( parameterClass ) )
-		{
-			@SuppressWarnings( "unchecked" )
-			final ModuleItem< CellGraph > graphItem = ( ModuleItem< CellGraph > ) item;
-			graphItem.setValue( module, model.getGraph() );
-			return;
-		}
+		super.provideParameters( item, module, parameterClass, featureModel );
+	}
 
-		// Pass the BDV data.
-		if ( SharedBigDataViewerData.class.isAssignableFrom( parameterClass ) )
-		{
-			@SuppressWarnings( "unchecked" )
-			final ModuleItem< SharedBigDataViewerData > bdvItem = ( ModuleItem< SharedBigDataViewerData > ) item;
-			bdvItem.setValue( module, sharedBdvData );
-			return;
-		}
+	@Override
+	protected CellGraph getGraph( final CellModel model )
+	{
+		return model.getGraph();
+	}
 
-		// Pass the "force recompute" flag.
-		if ( AtomicBoolean.class.isAssignableFrom( parameterClass ) )
-		{
-			@SuppressWarnings( "unchecked" )
-			final ModuleItem< AtomicBoolean > forceRecomputeAllItem = ( ModuleItem< AtomicBoolean > ) item;
-			forceRecomputeAllItem.setValue( module, shouldRecomputeAll );
-			return;
-		}
+	@Override
+	protected ReadWriteLock getLock( final CellModel model )
+	{
+		return model.getGraph().getLock();
+	}
 
-		super.provideParameters( item, module, parameterClass, featureModel );
+	@Override
+	protected FeatureModel getFeatureModel( final CellModel model )
+	{
+		return model.getFeatureModel();
 	}
 
-	/**
-	 * Sets the image data to be used by the feature computers.
-	 *
-	 * @param sharedBdvData
-	 *            the image data.
-	 */
-	public void setSharedBdvData( final SharedBigDataViewerData sharedBdvData )
+	@Override
+	protected void computationPublished()
 	{
-		this.sharedBdvData = sharedBdvData;
+		dirtyCells.commit();
 	}
 
-	/**
-	 * Sets the model to be used by the feature computers.
-	 *
-	 * @param model
-	 *            the model.
-	 */
-	public void setModel( final CellModel model )
+	@Override
+	protected void computationDiscarded()
 	{
-		/*
-		 * Unregister listeners from previous this.model.getGraph().
-		 */
+		dirtyCells.rollback();
+	}
 
-		if ( this.model != null )
-		{
-			final CellPool previousSpotPool = ( CellPool ) this.model.getGraph().vertices().getRefPool();
-			previousSpotPool.positionProperty().propertyChangeListeners().remove( vertexPropertyListener );
-			previousSpotPool.boundaryProperty().propertyChangeListeners().remove( vertexPropertyListener );
-			previousSpotPool.membraneProperty().propertyChangeListeners().remove( vertexPropertyListener );
-		}
+	@Override
+	protected void unregisterListeners( final CellModel model )
+	{
+		final CellPool previousSpotPool = ( CellPool ) model.getGraph().vertices().getRefPool();
+		previousSpotPool.positionProperty().propertyChangeListeners().remove( vertexPropertyListener );
+		previousSpotPool.boundaryProperty().propertyChangeListeners().remove( vertexPropertyListener );
+		previousSpotPool.membraneProperty().propertyChangeListeners().remove( vertexPropertyListener );
+		previousSpotPool.positionProperty().propertyChangeListeners().remove( invalidation.cellListener );
+		previousSpotPool.boundaryProperty().propertyChangeListeners().remove( invalidation.cellListener );
+		previousSpotPool.membraneProperty().propertyChangeListeners().remove( invalidation.cellListener );
+		model.getGraph().removeGraphListener( invalidation );
+		if ( junctionGraph != null )
+			membranePool( junctionGraph ).pixelsProperty().propertyChangeListeners().remove( invalidation.membraneListener );
+		invalidation.release();
+		invalidation = null;
+	}
 
+	@Override
+	protected void registerListeners( final CellModel model )
+	{
 		/*
 		 * Listen to graph changes to support incremental computation.
 		 *
@@ -172,14 +144,13 @@ public class LeviathanCellFeatureComputerService extends DefaultFeatureComputerS
 		 * can then only compute values for objects not present in the feature
 		 * map(s). Unless the #shoudRecomputeAll flag is set.
 		 *
-		 * This does not eliminate out-of-sync values for all possibilities.
-		 * Indeed, there might be feature values that depend on the neighbor
-		 * values. If a neighbor of an object is changed, a feature value of the
-		 * object that depends on the neighbors will become out of sync.
+		 * Feature values that depend on neighbor cells or on membranes are
+		 * kept in sync by the CellFeatureInvalidation listener, following the
+		 * FeatureReach declared by each feature spec. It also marks the cells
+		 * to recompute in the DirtyCells, so that feature computers only visit
+		 * the cells affected by the edits.
 		 */
 
-		this.model = model;
-
 		// Create listener.
 		final FeatureModel featureModel = model.getFeatureModel();
 		this.vertexPropertyListener = GraphFeatureUpdateListeners.vertexPropertyListener( featureModel, Cell.class, Link.class );
@@ -190,5 +161,46 @@ public class LeviathanCellFeatureComputerService extends DefaultFeatureComputerS
 		spotPool.positionProperty().propertyChangeListeners().add( vertexPropertyListener );
 		spotPool.boundaryProperty().propertyChangeListeners().add( vertexPropertyListener );
 		spotPool.membraneProperty().propertyChangeListeners().add( vertexPropertyListener );
+
+		// Propagate changes to neighbors and track dirty cells.
+		dirtyCells.clear();
+		this.invalidation = new CellFeatureInvalidation( graph, featureModel, dirtyCells, this::getFeatureSpecs, this::modified );
+		spotPool.positionProperty().propertyChangeListeners().add( invalidation.cellListener );
+		spotPool.boundaryProperty().propertyChangeListeners().add( invalidation.cellListener );
+		spotPool.membraneProperty().propertyChangeListeners().add( invalidation.cellListener );
+		graph.addGraphListener( invalidation );
+		if ( junctionGraph != null )
+		{
+			invalidation.setJunctionGraph( junctionGraph );
+			membranePool( junctionGraph ).pixelsProperty().propertyChangeListeners().add( invalidation.membraneListener );
+		}
+	}
+
+	/**
+	 * Sets the junction graph the cells of the model are built from. It is
+	 * used to find the neighbors of cells and to listen to membrane edits, so
+	 * that features that depend on neighbors or membranes stay in sync.
+	 *
+	 * @param junctionGraph
+	 *            the junction graph, or <code>null</code>.
+	 */
+	public void setJunctionGraph( final JunctionGraph junctionGraph )
+	{
+		if ( invalidation != null && this.junctionGraph != null )
+			membranePool( this.junctionGraph ).pixelsProperty().propertyChangeListeners().remove( invalidation.membraneListener );
+
+		this.junctionGraph = junctionGraph;
+
+		if ( invalidation != null )
+		{
+			invalidation.setJunctionGraph( junctionGraph );
+			if ( junctionGraph != null )
+				membranePool( junctionGraph ).pixelsProperty().propertyChangeListeners().add( invalidation.membraneListener );
+		}
+	}
+
+	private static MembranePartPool membranePool( final JunctionGraph junctionGraph )
+	{
+		return ( MembranePartPool ) junctionGraph.edges().getRefPool();
 	}
 }
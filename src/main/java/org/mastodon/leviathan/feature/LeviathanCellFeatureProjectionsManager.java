@@ -31,13 +31,17 @@ package org.mastodon.leviathan.feature;
 import static org.mastodon.feature.ui.AvailableFeatureProjectionsImp.createAvailableFeatureProjections;
 
 import org.mastodon.feature.FeatureModel;
+import org.mastodon.feature.FeatureModel.FeatureModelListener;
 import org.mastodon.feature.FeatureSpecsService;
 import org.mastodon.feature.ui.AvailableFeatureProjections;
 import org.mastodon.feature.ui.FeatureProjectionsManager;
+import org.mastodon.graph.GraphListener;
 import org.mastodon.leviathan.model.cell.Cell;
+import org.mastodon.leviathan.model.cell.CellGraph;
 import org.mastodon.leviathan.model.cell.CellModel;
+import org.mastodon.leviathan.model.cell.CellPool;
 import org.mastodon.leviathan.model.cell.Link;
-import org.mastodon.ui.coloring.feature.DefaultFeatureRangeCalculator;
+import org.mastodon.properties.PropertyChangeListener;
 import org.mastodon.ui.coloring.feature.FeatureColorModeManager;
 import org.mastodon.ui.coloring.feature.FeatureProjectionId;
 import org.mastodon.ui.coloring.feature.FeatureRangeCalculator;
@@ -60,6 +64,12 @@ public class LeviathanCellFeatureProjectionsManager implements FeatureProjection
 
 	private int numSources = 1;
 
+	private FeatureRangeCache< Cell > vertexRanges;
+
+	private FeatureRangeCache< Link > edgeRanges;
+
+	private ModelListener modelListener;
+
 	public LeviathanCellFeatureProjectionsManager(
 			final FeatureSpecsService featureSpecsService,
 			final FeatureColorModeManager featureColorModeManager )
@@ -81,19 +91,57 @@ public class LeviathanCellFeatureProjectionsManager implements FeatureProjection
 	 */
 	public void setModel( final CellModel model, final int numSources )
 	{
+		if ( modelListener != null )
+		{
+			modelListener.dispose();
+			modelListener = null;
+		}
 		this.model = model;
 		this.numSources = Math.max( 1, numSources );
 
 		if ( model != null )
 		{
+			final CellGraph graph = model.getGraph();
 			final FeatureModel featureModel = model.getFeatureModel();
 			final Projections projections = new ProjectionsFromFeatureModel( featureModel );
-			featureRangeCalculator.vertexCalculator = new DefaultFeatureRangeCalculator<>( model.getGraph().vertices(), projections );
-			featureRangeCalculator.edgeCalculator = new DefaultFeatureRangeCalculator<>( model.getGraph().edges(), projections );
-			featureModel.listeners().add( this::notifyAvailableFeatureProjectionsChanged );
+			vertexRanges = new FeatureRangeCache<>( graph.vertices(), graph.getLock(), projections, Cell.class,
+					() -> new FeatureRangeCache.Timepoints< Cell >()
+					{
+						@Override
+						public int timepoint( final Cell cell )
+						{
+							return cell.getTimepoint();
+						}
+
+						@Override
+						public void release()
+						{}
+					} );
+			edgeRanges = new FeatureRangeCache<>( graph.edges(), graph.getLock(), projections, Link.class,
+					() -> new FeatureRangeCache.Timepoints< Link >()
+					{
+						private final Cell ref = graph.vertexRef();
+
+						@Override
+						public int timepoint( final Link link )
+						{
+							return link.getSource( ref ).getTimepoint();
+						}
+
+						@Override
+						public void release()
+						{
+							graph.releaseRef( ref );
+						}
+					} );
+			featureRangeCalculator.vertexCalculator = vertexRanges;
+			featureRangeCalculator.edgeCalculator = edgeRanges;
+			modelListener = new ModelListener( graph, featureModel );
 		}
 		else
 		{
+			vertexRanges = null;
+			edgeRanges = null;
 			featureRangeCalculator.vertexCalculator = null;
 			featureRangeCalculator.edgeCalculator = null;
 		}
@@ -101,6 +149,40 @@ public class LeviathanCellFeatureProjectionsManager implements FeatureProjection
 		notifyAvailableFeatureProjectionsChanged();
 	}
 
+	/**
+	 * Marks all the cached ranges stale. Called when all the cell and link
+	 * features are recomputed.
+	 */
+	public void invalidateRanges()
+	{
+		if ( vertexRanges != null )
+			vertexRanges.invalidateAll();
+		if ( edgeRanges != null )
+			edgeRanges.invalidateAll();
+	}
+
+	/**
+	 * Returns the cached ranges of the cell feature projections, which also
+	 * provides per time-point ranges and histograms.
+	 *
+	 * @return the range cache, or <code>null</code> if there is no model.
+	 */
+	public FeatureRangeCache< Cell > getVertexRangeCache()
+	{
+		return vertexRanges;
+	}
+
+	/**
+	 * Returns the cached ranges of the link feature projections, which also
+	 * provides per time-point ranges and histograms.
+	 *
+	 * @return the range cache, or <code>null</code> if there is no model.
+	 */
+	public FeatureRangeCache< Link > getEdgeRangeCache()
+	{
+		return edgeRanges;
+	}
+
 	/**
 	 * Exposes the list of listeners that are notified when a change happens to
 	 */
@@ -160,4 +242,95 @@ public class LeviathanCellFeatureProjectionsManager implements FeatureProjection
 	{
 		return featureRangeCalculator;
 	}
+
+	/**
+	 * Reports the edits of the model to the range caches. A link belongs to
+	 * the time-point of its source, so editing a cell also marks the
+	 * time-point of the links coming from the previous time-point.
+	 */
+	private class ModelListener implements GraphListener< Cell, Link >, PropertyChangeListener< Cell >, FeatureModelListener
+	{
+
+		private final CellGraph graph;
+
+		private final CellPool pool;
+
+		private final FeatureModel featureModel;
+
+		private final FeatureRangeCache< Cell > vertexRanges;
+
+		private final FeatureRangeCache< Link > edgeRanges;
+
+		private ModelListener( final CellGraph graph, final FeatureModel featureModel )
+		{
+			this.graph = graph;
+			this.pool = ( CellPool ) graph.vertices().getRefPool();
+			this.featureModel = featureModel;
+			this.vertexRanges = LeviathanCellFeatureProjectionsManager.this.vertexRanges;
+			this.edgeRanges = LeviathanCellFeatureProjectionsManager.this.edgeRanges;
+			graph.addGraphListener( this );
+			pool.positionProperty().propertyChangeListeners().add( this );
+			pool.boundaryProperty().propertyChangeListeners().add( this );
+			featureModel.listeners().add( this );
+		}
+
+		private void dispose()
+		{
+			graph.removeGraphListener( this );
+			pool.positionProperty().propertyChangeListeners().remove( this );
+			pool.boundaryProperty().propertyChangeListeners().remove( this );
+			featureModel.listeners().remove( this );
+			vertexRanges.dispose();
+			edgeRanges.dispose();
+		}
+
+		@Override
+		public void graphRebuilt()
+		{
+			vertexRanges.clear();
+			edgeRanges.clear();
+		}
+
+		@Override
+		public void vertexAdded( final Cell vertex )
+		{
+			vertexRanges.added( vertex );
+		}
+
+		@Override
+		public void vertexRemoved( final Cell vertex )
+		{
+			vertexRanges.removed( vertex );
+		}
+
+		@Override
+		public void edgeAdded( final Link edge )
+		{
+			edgeRanges.added( edge );
+		}
+
+		@Override
+		public void edgeRemoved( final Link edge )
+		{
+			edgeRanges.removed( edge );
+		}
+
+		@Override
+		public void propertyChanged( final Cell cell )
+		{
+			final int t = cell.getTimepoint();
+			vertexRanges.invalidateTimepoint( t );
+			edgeRanges.invalidateTimepoint( t - 1 );
+			edgeRanges.invalidateTimepoint( t );
+		}
+
+		@Override
+		public void featureModelChanged()
+		{
+			// Update the caches before the projections are reported changed.
+			vertexRanges.featuresChanged();
+			edgeRanges.featuresChanged();
+			notifyAvailableFeatureProjectionsChanged();
+		}
+	}
 }
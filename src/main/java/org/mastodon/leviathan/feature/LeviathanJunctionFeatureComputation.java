@@ -0,0 +1,117 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.feature;
+
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.Arrays;
+import java.util.Collection;
+
+import javax.swing.JDialog;
+
+import org.mastodon.feature.ui.FeatureComputationController;
+import org.mastodon.leviathan.app.LeviathanJunctionAppModel;
+import org.mastodon.leviathan.feature.LeviathanCellFeatureComputation.MyFeatureComputerService;
+import org.mastodon.leviathan.model.junction.Junction;
+import org.mastodon.leviathan.model.junction.JunctionGraph;
+import org.mastodon.leviathan.model.junction.JunctionPool;
+import org.mastodon.leviathan.model.junction.MembranePart;
+import org.mastodon.leviathan.model.junction.MembranePartPool;
+import org.mastodon.properties.PropertyChangeListener;
+import org.scijava.Context;
+
+public class LeviathanJunctionFeatureComputation
+{
+
+	/**
+	 * Creates the feature computation dialog of a junction model.
+	 *
+	 * @param appModel
+	 *            the app model.
+	 * @param context
+	 *            the context providing the computer service.
+	 * @param forcedComputationListener
+	 *            run on the EDT before the results of a forced computation
+	 *            are passed to the feature model.
+	 * @return the dialog.
+	 */
+	public static final JDialog getDialog( final LeviathanJunctionAppModel appModel, final Context context, final Runnable forcedComputationListener )
+	{
+		// Prepare services.
+		final LeviathanJunctionFeatureComputerService computerService = context.getService( LeviathanJunctionFeatureComputerService.class );
+		computerService.setModel( appModel.getModel() );
+		computerService.setSharedBdvData( appModel.getSharedBdvData() );
+		final MyFeatureComputerService myComputerService = new MyFeatureComputerService( computerService, forcedComputationListener );
+
+		// Controller.
+		final Collection< Class< ? > > targets = Arrays.asList( Junction.class, MembranePart.class );
+		final FeatureComputationController controller = new FeatureComputationController( myComputerService, targets );
+		computerService.computationStatusListeners().add( controller.getComputationStatusListener() );
+
+		// Optional background recomputation after edits.
+		final FeatureAutoRecomputation autoRecomputation = new FeatureAutoRecomputation( myComputerService, appModel.getModel().getFeatureModel(), "Leviathan junction feature recomputation" );
+
+		// Listen to model changes and echo in the GUI
+		final JunctionGraph graph = appModel.getModel().getGraph();
+		graph.addGraphChangeListener( controller );
+		graph.addGraphChangeListener( autoRecomputation );
+		// Listen to changes in junction and membrane properties.
+		final PropertyChangeListener< Junction > junctionListener = ( o ) -> {
+			controller.graphChanged();
+			autoRecomputation.graphChanged();
+		};
+		final PropertyChangeListener< MembranePart > membraneListener = ( o ) -> {
+			controller.graphChanged();
+			autoRecomputation.graphChanged();
+		};
+		final JunctionPool junctionPool = ( JunctionPool ) graph.vertices().getRefPool();
+		junctionPool.positionProperty().propertyChangeListeners().add( junctionListener );
+		final MembranePartPool membranePool = ( MembranePartPool ) graph.edges().getRefPool();
+		membranePool.pixelsProperty().propertyChangeListeners().add( membraneListener );
+
+		final JDialog dialog = controller.getDialog();
+		dialog.setTitle( "Junction features" );
+		LeviathanCellFeatureComputation.addSettingsPanel( dialog, computerService.getSettings(), appModel.getSharedBdvData(), autoRecomputation );
+		// Release the model and the worker thread when the dialog is disposed.
+		dialog.addWindowListener( new WindowAdapter()
+		{
+			@Override
+			public void windowClosed( final WindowEvent e )
+			{
+				graph.removeGraphChangeListener( controller );
+				graph.removeGraphChangeListener( autoRecomputation );
+				junctionPool.positionProperty().propertyChangeListeners().remove( junctionListener );
+				membranePool.pixelsProperty().propertyChangeListeners().remove( membraneListener );
+				computerService.computationStatusListeners().remove( controller.getComputationStatusListener() );
+				autoRecomputation.shutdown();
+			}
+		} );
+		return dialog;
+	}
+}
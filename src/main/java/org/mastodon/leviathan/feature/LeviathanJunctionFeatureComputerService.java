@@ -0,0 +1,191 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.feature;
+
+import java.util.concurrent.locks.ReadWriteLock;
+
+import org.mastodon.feature.FeatureModel;
+import org.mastodon.feature.update.GraphFeatureUpdateListeners;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.leviathan.model.junction.Junction;
+import org.mastodon.leviathan.model.junction.JunctionGraph;
+import org.mastodon.leviathan.model.junction.JunctionModel;
+import org.mastodon.leviathan.model.junction.JunctionPool;
+import org.mastodon.leviathan.model.junction.MembranePart;
+import org.mastodon.leviathan.model.junction.MembranePartPool;
+import org.mastodon.properties.PropertyChangeListener;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Feature computer service for the junction model, computing junction and
+ * membrane features with the {@link JunctionFeatureComputer}s.
+ */
+@Plugin( type = LeviathanJunctionFeatureComputerService.class )
+public class LeviathanJunctionFeatureComputerService extends AbstractLeviathanFeatureComputerService< JunctionModel, JunctionGraph >
+{
+
+	private PropertyChangeListener< Junction > vertexPropertyListener;
+
+	private PropertyChangeListener< MembranePart > edgePropertyListener;
+
+	private DegreeUpdateListener degreeListener;
+
+	public LeviathanJunctionFeatureComputerService()
+	{
+		super( JunctionFeatureComputer.class, JunctionModel.class, JunctionGraph.class );
+	}
+
+	@Override
+	protected JunctionGraph getGraph( final JunctionModel model )
+	{
+		return model.getGraph();
+	}
+
+	@Override
+	protected ReadWriteLock getLock( final JunctionModel model )
+	{
+		return model.getGraph().getLock();
+	}
+
+	@Override
+	protected FeatureModel getFeatureModel( final JunctionModel model )
+	{
+		return model.getFeatureModel();
+	}
+
+	@Override
+	protected void unregisterListeners( final JunctionModel model )
+	{
+		final JunctionGraph previousGraph = model.getGraph();
+		final JunctionPool previousJunctionPool = ( JunctionPool ) previousGraph.vertices().getRefPool();
+		previousJunctionPool.positionProperty().propertyChangeListeners().remove( vertexPropertyListener );
+		final MembranePartPool previousMembranePool = ( MembranePartPool ) previousGraph.edges().getRefPool();
+		previousMembranePool.pixelsProperty().propertyChangeListeners().remove( edgePropertyListener );
+		previousGraph.removeGraphListener( degreeListener );
+		degreeListener.release();
+		degreeListener = null;
+	}
+
+	@Override
+	protected void registerListeners( final JunctionModel model )
+	{
+		/*
+		 * Listen to graph changes to support incremental computation, as for
+		 * the cell features. Moving a junction invalidates it and its
+		 * membranes. Editing the pixels of a membrane invalidates it. Adding
+		 * or removing a membrane invalidates the two junctions it connects,
+		 * since their degree changes. All of them report the edit to the
+		 * computations running meanwhile.
+		 */
+
+		// Create listeners.
+		final FeatureModel featureModel = model.getFeatureModel();
+		final PropertyChangeListener< Junction > positionListener = GraphFeatureUpdateListeners.vertexPropertyListener( featureModel, Junction.class, MembranePart.class );
+		this.vertexPropertyListener = junction -> {
+			modified();
+			positionListener.propertyChanged( junction );
+		};
+		this.edgePropertyListener = membrane -> {
+			modified();
+			invalidate( featureModel, MembranePart.class, membrane );
+		};
+		this.degreeListener = new DegreeUpdateListener( featureModel, model.getGraph(), this::modified );
+
+		// Listen to changes in junction and membrane properties.
+		final JunctionGraph graph = model.getGraph();
+		final JunctionPool junctionPool = ( JunctionPool ) graph.vertices().getRefPool();
+		junctionPool.positionProperty().propertyChangeListeners().add( vertexPropertyListener );
+		final MembranePartPool membranePool = ( MembranePartPool ) graph.edges().getRefPool();
+		membranePool.pixelsProperty().propertyChangeListeners().add( edgePropertyListener );
+		graph.addGraphListener( degreeListener );
+	}
+
+	private static final class DegreeUpdateListener implements GraphListener< Junction, MembranePart >
+	{
+
+		private final FeatureModel featureModel;
+
+		private final JunctionGraph graph;
+
+		private final Junction ref;
+
+		private final Runnable onEdit;
+
+		public DegreeUpdateListener( final FeatureModel featureModel, final JunctionGraph graph, final Runnable onEdit )
+		{
+			this.featureModel = featureModel;
+			this.graph = graph;
+			this.ref = graph.vertexRef();
+			this.onEdit = onEdit;
+		}
+
+		private void release()
+		{
+			graph.releaseRef( ref );
+		}
+
+		@Override
+		public void graphRebuilt()
+		{
+			onEdit.run();
+		}
+
+		@Override
+		public void vertexAdded( final Junction vertex )
+		{
+			onEdit.run();
+		}
+
+		@Override
+		public void vertexRemoved( final Junction vertex )
+		{
+			onEdit.run();
+		}
+
+		@Override
+		public void edgeAdded( final MembranePart edge )
+		{
+			onEdit.run();
+			invalidateEnds( edge );
+		}
+
+		@Override
+		public void edgeRemoved( final MembranePart edge )
+		{
+			onEdit.run();
+			invalidateEnds( edge );
+		}
+
+		private void invalidateEnds( final MembranePart edge )
+		{
+			invalidate( featureModel, Junction.class, edge.getSource( ref ) );
+			invalidate( featureModel, Junction.class, edge.getTarget( ref ) );
+		}
+	}
+}
@@ -0,0 +1,346 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.feature;
+
+import static org.mastodon.feature.ui.AvailableFeatureProjectionsImp.createAvailableFeatureProjections;
+
+import org.mastodon.feature.FeatureModel;
+import org.mastodon.feature.FeatureModel.FeatureModelListener;
+import org.mastodon.feature.FeatureSpecsService;
+import org.mastodon.feature.ui.AvailableFeatureProjections;
+import org.mastodon.feature.ui.FeatureProjectionsManager;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.leviathan.model.junction.Junction;
+import org.mastodon.leviathan.model.junction.JunctionGraph;
+import org.mastodon.leviathan.model.junction.JunctionModel;
+import org.mastodon.leviathan.model.junction.JunctionPool;
+import org.mastodon.leviathan.model.junction.MembranePart;
+import org.mastodon.leviathan.model.junction.MembranePartPool;
+import org.mastodon.properties.PropertyChangeListener;
+import org.mastodon.ui.coloring.feature.FeatureColorModeManager;
+import org.mastodon.ui.coloring.feature.FeatureProjectionId;
+import org.mastodon.ui.coloring.feature.FeatureRangeCalculator;
+import org.mastodon.ui.coloring.feature.Projections;
+import org.mastodon.ui.coloring.feature.ProjectionsFromFeatureModel;
+import org.mastodon.ui.coloring.feature.TargetType;
+import org.scijava.listeners.Listeners;
+
+public class LeviathanJunctionFeatureProjectionsManager implements FeatureProjectionsManager
+{
+	private final FeatureSpecsService featureSpecsService;
+
+	private final FeatureColorModeManager featureColorModeManager;
+
+	private final AggregateFeatureRangeCalculator featureRangeCalculator;
+
+	private final Listeners.List< AvailableFeatureProjectionsListener > listeners;
+
+	private JunctionModel model;
+
+	private int numSources = 1;
+
+	private FeatureRangeCache< Junction > vertexRanges;
+
+	private FeatureRangeCache< MembranePart > edgeRanges;
+
+	private ModelListener modelListener;
+
+	public LeviathanJunctionFeatureProjectionsManager(
+			final FeatureSpecsService featureSpecsService,
+			final FeatureColorModeManager featureColorModeManager )
+	{
+		this.featureSpecsService = featureSpecsService;
+		this.featureColorModeManager = featureColorModeManager;
+		this.featureRangeCalculator = new AggregateFeatureRangeCalculator();
+		this.listeners = new Listeners.List<>();
+	}
+
+	/**
+	 * Sets the current {@code JunctionModel}. This will update the available
+	 * projections and listen to the model's {@code FeatureModel}.
+	 *
+	 * @param model
+	 *            the current {@link JunctionModel} or <code>null</code>.
+	 * @param numSources
+	 *            the number of sources in the image data.
+	 */
+	public void setModel( final JunctionModel model, final int numSources )
+	{
+		if ( modelListener != null )
+		{
+			modelListener.dispose();
+			modelListener = null;
+		}
+		this.model = model;
+		this.numSources = Math.max( 1, numSources );
+
+		if ( model != null )
+		{
+			final JunctionGraph graph = model.getGraph();
+			final FeatureModel featureModel = model.getFeatureModel();
+			final Projections projections = new ProjectionsFromFeatureModel( featureModel );
+			vertexRanges = new FeatureRangeCache<>( graph.vertices(), graph.getLock(), projections, Junction.class,
+					() -> new FeatureRangeCache.Timepoints< Junction >()
+					{
+						@Override
+						public int timepoint( final Junction junction )
+						{
+							return junction.getTimepoint();
+						}
+
+						@Override
+						public void release()
+						{}
+					} );
+			edgeRanges = new FeatureRangeCache<>( graph.edges(), graph.getLock(), projections, MembranePart.class,
+					() -> new FeatureRangeCache.Timepoints< MembranePart >()
+					{
+						private final Junction ref = graph.vertexRef();
+
+						@Override
+						public int timepoint( final MembranePart membrane )
+						{
+							return membrane.getSource( ref ).getTimepoint();
+						}
+
+						@Override
+						public void release()
+						{
+							graph.releaseRef( ref );
+						}
+					} );
+			featureRangeCalculator.vertexCalculator = vertexRanges;
+			featureRangeCalculator.edgeCalculator = edgeRanges;
+			modelListener = new ModelListener( graph, featureModel );
+		}
+		else
+		{
+			vertexRanges = null;
+			edgeRanges = null;
+			featureRangeCalculator.vertexCalculator = null;
+			featureRangeCalculator.edgeCalculator = null;
+		}
+
+		notifyAvailableFeatureProjectionsChanged();
+	}
+
+	/**
+	 * Marks all the cached ranges stale. Called when all the junction and membrane
+	 * features are recomputed.
+	 */
+	public void invalidateRanges()
+	{
+		if ( vertexRanges != null )
+			vertexRanges.invalidateAll();
+		if ( edgeRanges != null )
+			edgeRanges.invalidateAll();
+	}
+
+	/**
+	 * Returns the cached ranges of the junction feature projections, which also
+	 * provides per time-point ranges and histograms.
+	 *
+	 * @return the range cache, or <code>null</code> if there is no model.
+	 */
+	public FeatureRangeCache< Junction > getVertexRangeCache()
+	{
+		return vertexRanges;
+	}
+
+	/**
+	 * Returns the cached ranges of the membrane feature projections, which also
+	 * provides per time-point ranges and histograms.
+	 *
+	 * @return the range cache, or <code>null</code> if there is no model.
+	 */
+	public FeatureRangeCache< MembranePart > getEdgeRangeCache()
+	{
+		return edgeRanges;
+	}
+
+	/**
+	 * Exposes the list of listeners that are notified when a change happens to
+	 */
+	@Override
+	public Listeners< AvailableFeatureProjectionsListener > listeners()
+	{
+		return listeners;
+	}
+
+	@Override
+	public AvailableFeatureProjections getAvailableFeatureProjections()
+	{
+		final FeatureModel featureModel = ( model != null ) ? model.getFeatureModel() : null;
+		return createAvailableFeatureProjections(
+				featureSpecsService,
+				numSources,
+				featureModel,
+				featureColorModeManager,
+				Junction.class,
+				MembranePart.class );
+	}
+
+	private void notifyAvailableFeatureProjectionsChanged()
+	{
+		listeners.list.forEach( AvailableFeatureProjectionsListener::availableFeatureProjectionsChanged );
+	}
+
+	private static class AggregateFeatureRangeCalculator implements FeatureRangeCalculator
+	{
+		FeatureRangeCalculator vertexCalculator;
+
+		FeatureRangeCalculator edgeCalculator;
+
+		@Override
+		public double[] computeMinMax( final FeatureProjectionId projection )
+		{
+			if ( projection == null )
+				return null;
+
+			if ( projection.getTargetType() == TargetType.VERTEX )
+			{
+				return vertexCalculator == null
+						? null
+						: vertexCalculator.computeMinMax( projection );
+			}
+			else // if ( projection.getTargetType() == TargetType.EDGE )
+			{
+				return edgeCalculator == null
+						? null
+						: edgeCalculator.computeMinMax( projection );
+			}
+		}
+	};
+
+	@Override
+	public FeatureRangeCalculator getFeatureRangeCalculator()
+	{
+		return featureRangeCalculator;
+	}
+
+	/**
+	 * Reports the edits of the model to the range caches. Membranes belong to
+	 * the time-point of their junctions.
+	 */
+	private class ModelListener implements GraphListener< Junction, MembranePart >, FeatureModelListener
+	{
+
+		private final JunctionGraph graph;
+
+		private final JunctionPool junctionPool;
+
+		private final MembranePartPool membranePool;
+
+		private final FeatureModel featureModel;
+
+		private final FeatureRangeCache< Junction > vertexRanges;
+
+		private final FeatureRangeCache< MembranePart > edgeRanges;
+
+		private final PropertyChangeListener< Junction > junctionListener = this::junctionChanged;
+
+		private final PropertyChangeListener< MembranePart > membraneListener = this::membraneChanged;
+
+		private ModelListener( final JunctionGraph graph, final FeatureModel featureModel )
+		{
+			this.graph = graph;
+			this.junctionPool = ( JunctionPool ) graph.vertices().getRefPool();
+			this.membranePool = ( MembranePartPool ) graph.edges().getRefPool();
+			this.featureModel = featureModel;
+			this.vertexRanges = LeviathanJunctionFeatureProjectionsManager.this.vertexRanges;
+			this.edgeRanges = LeviathanJunctionFeatureProjectionsManager.this.edgeRanges;
+			graph.addGraphListener( this );
+			junctionPool.positionProperty().propertyChangeListeners().add( junctionListener );
+			membranePool.pixelsProperty().propertyChangeListeners().add( membraneListener );
+			featureModel.listeners().add( this );
+		}
+
+		private void dispose()
+		{
+			graph.removeGraphListener( this );
+			junctionPool.positionProperty().propertyChangeListeners().remove( junctionListener );
+			membranePool.pixelsProperty().propertyChangeListeners().remove( membraneListener );
+			featureModel.listeners().remove( this );
+			vertexRanges.dispose();
+			edgeRanges.dispose();
+		}
+
+		@Override
+		public void graphRebuilt()
+		{
+			vertexRanges.clear();
+			edgeRanges.clear();
+		}
+
+		@Override
+		public void vertexAdded( final Junction vertex )
+		{
+			vertexRanges.added( vertex );
+		}
+
+		@Override
+		public void vertexRemoved( final Junction vertex )
+		{
+			vertexRanges.removed( vertex );
+		}
+
+		@Override
+		public void edgeAdded( final MembranePart edge )
+		{
+			edgeRanges.added( edge );
+		}
+
+		@Override
+		public void edgeRemoved( final MembranePart edge )
+		{
+			edgeRanges.removed( edge );
+		}
+
+		private void junctionChanged( final Junction junction )
+		{
+			final int t = junction.getTimepoint();
+			vertexRanges.invalidateTimepoint( t );
+			edgeRanges.invalidateTimepoint( t );
+		}
+
+		private void membraneChanged( final MembranePart membrane )
+		{
+			edgeRanges.changed( membrane );
+		}
+
+		@Override
+		public void featureModelChanged()
+		{
+			// Update the caches before the projections are reported changed.
+			vertexRanges.featuresChanged();
+			edgeRanges.featuresChanged();
+			notifyAvailableFeatureProjectionsChanged();
+		}
+	}
+}
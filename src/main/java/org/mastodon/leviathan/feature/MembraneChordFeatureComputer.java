@@ -0,0 +1,108 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.feature;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.mastodon.feature.Dimension;
+import org.mastodon.leviathan.model.junction.Junction;
+import org.mastodon.leviathan.model.junction.JunctionModel;
+import org.mastodon.leviathan.model.junction.MembranePart;
+import org.mastodon.properties.DoublePropertyMap;
+import org.scijava.ItemIO;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+
+import net.imglib2.util.LinAlgHelpers;
+
+@Plugin( type = MembraneChordFeatureComputer.class )
+public class MembraneChordFeatureComputer implements JunctionFeatureComputer
+{
+
+	@Parameter
+	private JunctionModel model;
+
+	@Parameter
+	private AtomicBoolean forceComputeAll;
+
+	@Parameter
+	private ComputationLock lock;
+
+	@Parameter( type = ItemIO.OUTPUT )
+	private MembraneChordFeature output;
+
+	@Override
+	public void run()
+	{
+		final boolean recomputeAll = forceComputeAll.get();
+		if ( recomputeAll )
+			output.map.beforeClearPool();
+
+		final Junction ref1 = model.getGraph().vertexRef();
+		final Junction ref2 = model.getGraph().vertexRef();
+		final double[] p1 = new double[ 3 ];
+		final double[] p2 = new double[ 3 ];
+		lock.lock();
+		try
+		{
+			for ( final MembranePart membrane : model.getGraph().edges() )
+			{
+				if ( !lock.next() )
+					break;
+				if ( !recomputeAll && output.map.isSet( membrane ) )
+					continue;
+
+				membrane.getSource( ref1 ).localize( p1 );
+				membrane.getTarget( ref2 ).localize( p2 );
+				output.map.set( membrane, LinAlgHelpers.distance( p1, p2 ) );
+			}
+		}
+		finally
+		{
+			lock.unlock();
+			model.getGraph().releaseRef( ref1 );
+			model.getGraph().releaseRef( ref2 );
+		}
+	}
+
+	@Override
+	public void createOutput()
+	{
+		final String units = Dimension.LENGTH.getUnits( model.getSpaceUnits(), model.getTimeUnits() );
+		if ( null == output )
+			output = new MembraneChordFeature(
+					new DoublePropertyMap<>( model.getGraph().edges().getRefPool(), Double.NaN ),
+					units );
+		else
+			// Compute into a copy of the published feature.
+			output = new MembraneChordFeature(
+					FeatureMaps.copy( output.map, model.getGraph().edges().getRefPool(), model.getGraph().edges() , lock ),
+					units );
+	}
+}
@@ -0,0 +1,142 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.feature;
+
+import static org.mastodon.feature.FeatureProjectionKey.key;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.mastodon.feature.Dimension;
+import org.mastodon.feature.Feature;
+import org.mastodon.feature.FeatureProjection;
+import org.mastodon.feature.FeatureProjectionKey;
+import org.mastodon.feature.FeatureProjectionSpec;
+import org.mastodon.feature.FeatureProjections;
+import org.mastodon.feature.FeatureSpec;
+import org.mastodon.feature.Multiplicity;
+import org.mastodon.leviathan.model.junction.MembranePart;
+import org.mastodon.properties.DoublePropertyMap;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Local curvature of membranes, measured from the turning angles of the
+ * membrane polyline after simplification of the pixel staircase.
+ * <p>
+ * The mean curvature is the total absolute turning angle divided by the
+ * membrane length. The max curvature is the largest turning angle divided by
+ * the mean length of the two segments around it.
+ */
+public class MembraneCurvatureFeature implements Feature< MembranePart >
+{
+
+	private static final String KEY = "Membrane curvature";
+
+	private static final String HELP_STRING = "Computes the mean and max local curvature of a membrane.";
+
+	private static final FeatureProjectionSpec MEAN_PROJECTION_SPEC = new FeatureProjectionSpec( "Mean curvature", Dimension.NONE );
+
+	private static final FeatureProjectionSpec MAX_PROJECTION_SPEC = new FeatureProjectionSpec( "Max curvature", Dimension.NONE );
+
+	public static final Spec SPEC = new Spec();
+
+	final DoublePropertyMap< MembranePart > mean;
+
+	final DoublePropertyMap< MembranePart > max;
+
+	private final FeatureProjection< MembranePart > meanProjection;
+
+	private final FeatureProjection< MembranePart > maxProjection;
+
+	MembraneCurvatureFeature( final DoublePropertyMap< MembranePart > mean, final DoublePropertyMap< MembranePart > max, final String units )
+	{
+		this.mean = mean;
+		this.max = max;
+		this.meanProjection = FeatureProjections.project( key( MEAN_PROJECTION_SPEC ), mean, units );
+		this.maxProjection = FeatureProjections.project( key( MAX_PROJECTION_SPEC ), max, units );
+	}
+
+	@Plugin( type = FeatureSpec.class )
+	public static class Spec extends FeatureSpec< MembraneCurvatureFeature, MembranePart >
+	{
+		public Spec()
+		{
+			super(
+					KEY,
+					HELP_STRING,
+					MembraneCurvatureFeature.class,
+					MembranePart.class,
+					Multiplicity.SINGLE,
+					MEAN_PROJECTION_SPEC,
+					MAX_PROJECTION_SPEC );
+		}
+	}
+
+	public double getMean( final MembranePart membrane )
+	{
+		return mean.getDouble( membrane );
+	}
+
+	public double getMax( final MembranePart membrane )
+	{
+		return max.getDouble( membrane );
+	}
+
+	@Override
+	public FeatureProjection< MembranePart > project( final FeatureProjectionKey key )
+	{
+		if ( meanProjection.getKey().equals( key ) )
+			return meanProjection;
+		if ( maxProjection.getKey().equals( key ) )
+			return maxProjection;
+		return null;
+	}
+
+	@Override
+	public Set< FeatureProjection< MembranePart > > projections()
+	{
+		final Set< FeatureProjection< MembranePart > > projections = new LinkedHashSet<>( 2 );
+		projections.add( meanProjection );
+		projections.add( maxProjection );
+		return projections;
+	}
+
+	@Override
+	public Spec getSpec()
+	{
+		return SPEC;
+	}
+
+	@Override
+	public void invalidate( final MembranePart membrane )
+	{
+		mean.remove( membrane );
+		max.remove( membrane );
+	}
+}
@@ -0,0 +1,162 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.feature;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.mastodon.leviathan.model.junction.JunctionModel;
+import org.mastodon.leviathan.model.junction.MembranePart;
+import org.mastodon.leviathan.views.bdv.overlay.common.DouglasPeucker;
+import org.mastodon.properties.DoublePropertyMap;
+import org.scijava.ItemIO;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+import org.scijava.util.DoubleArray;
+
+@Plugin( type = MembraneCurvatureFeatureComputer.class )
+public class MembraneCurvatureFeatureComputer implements JunctionFeatureComputer
+{
+
+	/**
+	 * Tolerance, in pixels, used to simplify the membrane pixel path before
+	 * measuring turning angles. Without it the 8-connected pixel staircase
+	 * dominates the curvature.
+	 */
+	private static final double SIMPLIFICATION_EPSILON = 1.;
+
+	@Parameter
+	private JunctionModel model;
+
+	@Parameter
+	private AtomicBoolean forceComputeAll;
+
+	@Parameter
+	private ComputationLock lock;
+
+	@Parameter( type = ItemIO.OUTPUT )
+	private MembraneCurvatureFeature output;
+
+	@Override
+	public void run()
+	{
+		final boolean recomputeAll = forceComputeAll.get();
+		if ( recomputeAll )
+		{
+			output.mean.beforeClearPool();
+			output.max.beforeClearPool();
+		}
+
+		final DoubleArray in = new DoubleArray();
+		final DoubleArray out = new DoubleArray();
+		lock.lock();
+		try
+		{
+			for ( final MembranePart membrane : model.getGraph().edges() )
+			{
+				if ( !lock.next() )
+					return;
+				if ( !recomputeAll && output.mean.isSet( membrane ) )
+					continue;
+
+				final double[] pixels = membrane.getPixels();
+				if ( pixels == null || pixels.length < 4 )
+				{
+					output.mean.set( membrane, Double.NaN );
+					output.max.set( membrane, Double.NaN );
+					continue;
+				}
+
+				in.clear();
+				for ( final double v : pixels )
+					in.addValue( v );
+				out.clear();
+				DouglasPeucker.douglasPeucker( in, out, SIMPLIFICATION_EPSILON );
+
+				/*
+				 * Walk the simplified polyline, skipping zero-length segments.
+				 */
+
+				double totalLength = 0.;
+				double totalTurning = 0.;
+				double maxCurvature = 0.;
+				double prevDx = Double.NaN;
+				double prevDy = Double.NaN;
+				double prevLength = 0.;
+				double x0 = out.getValue( 0 );
+				double y0 = out.getValue( 1 );
+				for ( int i = 2; i < out.size() - 1; i = i + 2 )
+				{
+					final double x1 = out.getValue( i );
+					final double y1 = out.getValue( i + 1 );
+					final double dx = x1 - x0;
+					final double dy = y1 - y0;
+					final double l = Math.sqrt( dx * dx + dy * dy );
+					if ( l == 0. )
+						continue;
+
+					if ( !Double.isNaN( prevDx ) )
+					{
+						final double turning = Math.abs( Math.atan2( prevDx * dy - prevDy * dx, prevDx * dx + prevDy * dy ) );
+						totalTurning += turning;
+						maxCurvature = Math.max( maxCurvature, 2. * turning / ( prevLength + l ) );
+					}
+					totalLength += l;
+					prevDx = dx;
+					prevDy = dy;
+					prevLength = l;
+					x0 = x1;
+					y0 = y1;
+				}
+
+				output.mean.set( membrane, totalLength > 0. ? totalTurning / totalLength : Double.NaN );
+				output.max.set( membrane, totalLength > 0. ? maxCurvature : Double.NaN );
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void createOutput()
+	{
+		if ( null == output )
+			output = new MembraneCurvatureFeature(
+					new DoublePropertyMap<>( model.getGraph().edges().getRefPool(), Double.NaN ),
+					new DoublePropertyMap<>( model.getGraph().edges().getRefPool(), Double.NaN ),
+					"1/" + model.getSpaceUnits() );
+		else
+			// Compute into a copy of the published feature.
+			output = new MembraneCurvatureFeature(
+					FeatureMaps.copy( output.mean, model.getGraph().edges().getRefPool(), model.getGraph().edges() , lock ),
+					FeatureMaps.copy( output.max, model.getGraph().edges().getRefPool(), model.getGraph().edges() , lock ),
+					"1/" + model.getSpaceUnits() );
+	}
+}
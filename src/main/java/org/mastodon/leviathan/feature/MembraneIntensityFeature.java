@@ -0,0 +1,155 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.feature;
+
+import static org.mastodon.feature.FeatureProjectionKey.key;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.mastodon.feature.Dimension;
+import org.mastodon.feature.Feature;
+import org.mastodon.feature.FeatureProjection;
+import org.mastodon.feature.FeatureProjectionKey;
+import org.mastodon.feature.FeatureProjectionSpec;
+import org.mastodon.feature.FeatureProjections;
+import org.mastodon.feature.FeatureSpec;
+import org.mastodon.feature.Multiplicity;
+import org.mastodon.leviathan.model.junction.MembranePart;
+import org.mastodon.properties.DoublePropertyMap;
+import org.scijava.plugin.Plugin;
+
+/**
+ * Intensity statistics along the pixel path of a membrane, measured in each
+ * image source.
+ */
+public class MembraneIntensityFeature implements Feature< MembranePart >
+{
+
+	private static final String KEY = "Membrane intensity";
+
+	private static final String HELP_STRING = "Computes intensity statistics along the pixels of a membrane, "
+			+ "for each source. The image data is sampled at the resolution level specified in the "
+			+ "feature computation dialog.";
+
+	static final FeatureProjectionSpec[] PROJECTION_SPECS = projectionSpecs();
+
+	public static final Spec SPEC = new Spec();
+
+	/**
+	 * The maps for each source, indexed as
+	 * <code>maps.get( source )[ stat ]</code>.
+	 */
+	final List< DoublePropertyMap< MembranePart >[] > maps;
+
+	private final Map< FeatureProjectionKey, FeatureProjection< MembranePart > > projectionMap;
+
+	MembraneIntensityFeature( final List< DoublePropertyMap< MembranePart >[] > maps, final String units )
+	{
+		this.maps = maps;
+		this.projectionMap = new LinkedHashMap<>( PROJECTION_SPECS.length * maps.size() );
+		for ( int iSource = 0; iSource < maps.size(); iSource++ )
+		{
+			final DoublePropertyMap< MembranePart >[] sourceMaps = maps.get( iSource );
+			for ( int i = 0; i < PROJECTION_SPECS.length; i++ )
+			{
+				final FeatureProjectionKey key = key( PROJECTION_SPECS[ i ], iSource );
+				projectionMap.put( key, FeatureProjections.project( key, sourceMaps[ i ], units ) );
+			}
+		}
+	}
+
+	@Plugin( type = FeatureSpec.class )
+	public static class Spec extends FeatureSpec< MembraneIntensityFeature, MembranePart >
+	{
+		public Spec()
+		{
+			super(
+					KEY,
+					HELP_STRING,
+					MembraneIntensityFeature.class,
+					MembranePart.class,
+					Multiplicity.ON_SOURCES,
+					PROJECTION_SPECS );
+		}
+	}
+
+	/**
+	 * Returns the number of sources this feature was computed on.
+	 *
+	 * @return the number of sources.
+	 */
+	public int getNumSources()
+	{
+		return maps.size();
+	}
+
+	public double getMean( final MembranePart membrane, final int source )
+	{
+		return maps.get( source )[ 0 ].getDouble( membrane );
+	}
+
+	@Override
+	public FeatureProjection< MembranePart > project( final FeatureProjectionKey key )
+	{
+		return projectionMap.get( key );
+	}
+
+	@Override
+	public Set< FeatureProjection< MembranePart > > projections()
+	{
+		return new LinkedHashSet<>( projectionMap.values() );
+	}
+
+	@Override
+	public Spec getSpec()
+	{
+		return SPEC;
+	}
+
+	@Override
+	public void invalidate( final MembranePart membrane )
+	{
+		for ( final DoublePropertyMap< MembranePart >[] sourceMaps : maps )
+			for ( final DoublePropertyMap< MembranePart > map : sourceMaps )
+				map.remove( membrane );
+	}
+
+	private static FeatureProjectionSpec[] projectionSpecs()
+	{
+		final String[] stats = CellIntensityFeature.STATS;
+		final FeatureProjectionSpec[] specs = new FeatureProjectionSpec[ stats.length ];
+		for ( int s = 0; s < stats.length; s++ )
+			specs[ s ] = new FeatureProjectionSpec( "Intensity " + stats[ s ], Dimension.INTENSITY );
+		return specs;
+	}
+}
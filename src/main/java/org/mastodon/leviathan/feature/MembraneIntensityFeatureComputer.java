@@ -0,0 +1,297 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.feature;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.mastodon.collection.RefPool;
+import org.mastodon.feature.Dimension;
+import org.mastodon.leviathan.algorithms.PolygonRasterizer;
+import org.mastodon.leviathan.model.junction.Junction;
+import org.mastodon.leviathan.model.junction.JunctionModel;
+import org.mastodon.leviathan.model.junction.MembranePart;
+import org.mastodon.properties.DoublePropertyMap;
+import org.mastodon.views.bdv.SharedBigDataViewerData;
+import org.scijava.ItemIO;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+
+import bdv.viewer.Source;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.RealType;
+
+@Plugin( type = MembraneIntensityFeatureComputer.class )
+public class MembraneIntensityFeatureComputer implements JunctionFeatureComputer
+{
+
+	/**
+	 * Block size used to order the membranes when the source image is not a
+	 * cell image.
+	 */
+	private static final int DEFAULT_BLOCK_SIZE = 64;
+
+	@Parameter
+	private JunctionModel model;
+
+	@Parameter
+	private SharedBigDataViewerData bdvData;
+
+	@Parameter
+	private FeatureComputationSettings settings;
+
+	@Parameter
+	private AtomicBoolean forceComputeAll;
+
+	@Parameter
+	private ComputationLock lock;
+
+	@Parameter( type = ItemIO.OUTPUT )
+	private MembraneIntensityFeature output;
+
+	private final IntensitySamples samples = new IntensitySamples();
+
+	private final double[] pos = new double[ 3 ];
+
+	private double[] xy = new double[ 256 ];
+
+	@Override
+	public void run()
+	{
+		if ( null == bdvData || output.maps.isEmpty() )
+			return;
+
+		final boolean recomputeAll = forceComputeAll.get();
+		if ( recomputeAll )
+			for ( final DoublePropertyMap< MembranePart >[] sourceMaps : output.maps )
+				for ( final DoublePropertyMap< MembranePart > map : sourceMaps )
+					map.beforeClearPool();
+
+		lock.lock();
+		try
+		{
+			/*
+			 * Collect the membranes to compute, per time-point.
+			 */
+
+			final DoublePropertyMap< MembranePart > flag = output.maps.get( 0 )[ 0 ];
+			final TIntObjectHashMap< TIntArrayList > toCompute = new TIntObjectHashMap<>();
+			final Junction ref = model.getGraph().vertexRef();
+			for ( final MembranePart membrane : model.getGraph().edges() )
+			{
+				if ( !lock.next() )
+				{
+					model.getGraph().releaseRef( ref );
+					return;
+				}
+				if ( !recomputeAll && flag.isSet( membrane ) )
+					continue;
+
+				final int t = membrane.getSource( ref ).getTimepoint();
+				TIntArrayList list = toCompute.get( t );
+				if ( list == null )
+				{
+					list = new TIntArrayList();
+					toCompute.put( t, list );
+				}
+				list.add( membrane.getInternalPoolIndex() );
+			}
+			model.getGraph().releaseRef( ref );
+
+			final int[] timepoints = toCompute.keys();
+			Arrays.sort( timepoints );
+			for ( final int t : timepoints )
+				for ( int iSource = 0; iSource < output.maps.size(); iSource++ )
+					if ( !process( t, iSource, toCompute.get( t ) ) )
+						return;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private < T extends RealType< T > > boolean process( final int timepoint, final int iSource, final TIntArrayList membraneIndices )
+	{
+		final DoublePropertyMap< MembranePart >[] maps = output.maps.get( iSource );
+		final RefPool< MembranePart > pool = model.getGraph().edges().getRefPool();
+		final MembranePart membrane = pool.createRef();
+		final Source< ? > source = bdvData.getSources().get( iSource ).getSpimSource();
+		if ( !source.isPresent( timepoint ) )
+		{
+			for ( int i = 0; i < membraneIndices.size(); i++ )
+			{
+				pool.getObject( membraneIndices.get( i ), membrane );
+				for ( final DoublePropertyMap< MembranePart > map : maps )
+					map.set( membrane, Double.NaN );
+			}
+			pool.releaseRef( membrane );
+			return true;
+		}
+
+		final int level = Math.min( settings.getResolutionLevel(), source.getNumMipmapLevels() - 1 );
+		final RandomAccessibleInterval< T > img = ( RandomAccessibleInterval< T > ) source.getSource( timepoint, level );
+		final AffineTransform3D transform = new AffineTransform3D();
+		source.getSourceTransform( timepoint, level, transform );
+
+		/*
+		 * Sort the membranes by the image block their first pixel falls in,
+		 * so that blocks are loaded once and read while they are in the
+		 * cache.
+		 */
+
+		final int[] blockSize = new int[] { DEFAULT_BLOCK_SIZE, DEFAULT_BLOCK_SIZE };
+		if ( img instanceof AbstractCellImg )
+		{
+			final int[] cellDims = new int[ img.numDimensions() ];
+			( ( AbstractCellImg< ?, ?, ?, ? > ) img ).getCellGrid().cellDimensions( cellDims );
+			blockSize[ 0 ] = cellDims[ 0 ];
+			blockSize[ 1 ] = cellDims[ 1 ];
+		}
+		final long nBlocksX = img.dimension( 0 ) / blockSize[ 0 ] + 1;
+		final long[] keys = new long[ membraneIndices.size() ];
+		int nKeys = 0;
+		for ( int i = 0; i < membraneIndices.size(); i++ )
+		{
+			final int index = membraneIndices.get( i );
+			pool.getObject( index, membrane );
+			final double[] pixels = membrane.getPixels();
+			if ( pixels == null || pixels.length < 2 )
+			{
+				for ( final DoublePropertyMap< MembranePart > map : maps )
+					map.set( membrane, Double.NaN );
+				continue;
+			}
+			pos[ 0 ] = pixels[ 0 ];
+			pos[ 1 ] = pixels[ 1 ];
+			pos[ 2 ] = 0.;
+			transform.applyInverse( pos, pos );
+			final long bx = Math.max( 0, ( long ) pos[ 0 ] - img.min( 0 ) ) / blockSize[ 0 ];
+			final long by = Math.max( 0, ( long ) pos[ 1 ] - img.min( 1 ) ) / blockSize[ 1 ];
+			keys[ nKeys++ ] = ( ( by * nBlocksX + bx ) << 32 ) | index;
+		}
+		Arrays.sort( keys, 0, nKeys );
+
+		final RandomAccess< T > ra = img.randomAccess();
+		final long minX = img.min( 0 );
+		final long maxX = img.max( 0 );
+		final long minY = img.min( 1 );
+		final long maxY = img.max( 1 );
+		if ( img.numDimensions() > 2 )
+			ra.setPosition( Math.max( img.min( 2 ), Math.min( img.max( 2 ), Math.round( pos[ 2 ] ) ) ), 2 );
+		final PolygonRasterizer.PixelConsumer sampler = ( x, y ) -> {
+			if ( x < minX || x > maxX || y < minY || y > maxY )
+				return;
+			ra.setPosition( x, 0 );
+			ra.setPosition( y, 1 );
+			samples.add( ra.get().getRealDouble() );
+		};
+
+		for ( int k = 0; k < nKeys; k++ )
+		{
+			if ( !lock.next() )
+			{
+				pool.releaseRef( membrane );
+				return false;
+			}
+			pool.getObject( ( int ) ( keys[ k ] & 0xFFFFFFFFL ), membrane );
+			final double[] pixels = membrane.getPixels();
+			final int n = toSource( pixels, transform );
+
+			samples.reset();
+			PolygonRasterizer.trace( xy, n, false, sampler );
+			maps[ 0 ].set( membrane, samples.mean() );
+			maps[ 1 ].set( membrane, samples.std() );
+			for ( int i = 0; i < CellIntensityFeature.PERCENTILES.length; i++ )
+				maps[ 2 + i ].set( membrane, samples.percentile( CellIntensityFeature.PERCENTILES[ i ] ) );
+		}
+		pool.releaseRef( membrane );
+		return true;
+	}
+
+	/**
+	 * Writes the membrane pixels, transformed in the source pixel
+	 * coordinates, in the {@link #xy} buffer.
+	 *
+	 * @return the number of points.
+	 */
+	private int toSource( final double[] pixels, final AffineTransform3D transform )
+	{
+		final int n = pixels.length / 2;
+		if ( xy.length < pixels.length )
+			xy = new double[ pixels.length ];
+
+		for ( int i = 0; i < n; i++ )
+		{
+			pos[ 0 ] = pixels[ 2 * i ];
+			pos[ 1 ] = pixels[ 2 * i + 1 ];
+			pos[ 2 ] = 0.;
+			transform.applyInverse( pos, pos );
+			xy[ 2 * i ] = pos[ 0 ];
+			xy[ 2 * i + 1 ] = pos[ 1 ];
+		}
+		return n;
+	}
+
+	@Override
+	public void createOutput()
+	{
+		final String units = Dimension.INTENSITY.getUnits( model.getSpaceUnits(), model.getTimeUnits() );
+		if ( null == output )
+		{
+			final int nSources = ( null == bdvData ) ? 0 : bdvData.getSources().size();
+			final List< DoublePropertyMap< MembranePart >[] > maps = new ArrayList<>( nSources );
+			for ( int iSource = 0; iSource < nSources; iSource++ )
+			{
+				@SuppressWarnings( "unchecked" )
+				final DoublePropertyMap< MembranePart >[] sourceMaps = new DoublePropertyMap[ MembraneIntensityFeature.PROJECTION_SPECS.length ];
+				for ( int i = 0; i < sourceMaps.length; i++ )
+					sourceMaps[ i ] = new DoublePropertyMap<>( model.getGraph().edges().getRefPool(), Double.NaN );
+				maps.add( sourceMaps );
+			}
+			output = new MembraneIntensityFeature( maps, units );
+		}
+		else
+		{
+			// Compute into a copy of the published feature.
+			final List< DoublePropertyMap< MembranePart >[] > maps = new ArrayList<>( output.maps.size() );
+			for ( final DoublePropertyMap< MembranePart >[] sourceMaps : output.maps )
+				maps.add( FeatureMaps.copy( sourceMaps, model.getGraph().edges().getRefPool(), model.getGraph().edges() , lock ) );
+			output = new MembraneIntensityFeature( maps, units );
+		}
+	}
+}
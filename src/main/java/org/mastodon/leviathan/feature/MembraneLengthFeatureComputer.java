@@ -0,0 +1,106 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.feature;
+
+import static org.mastodon.leviathan.algorithms.GraphUtils.pathLength;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.mastodon.feature.Dimension;
+import org.mastodon.leviathan.model.junction.JunctionModel;
+import org.mastodon.leviathan.model.junction.MembranePart;
+import org.mastodon.properties.DoublePropertyMap;
+import org.scijava.ItemIO;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+
+@Plugin( type = MembraneLengthFeatureComputer.class )
+public class MembraneLengthFeatureComputer implements JunctionFeatureComputer
+{
+
+	@Parameter
+	private JunctionModel model;
+
+	@Parameter
+	private AtomicBoolean forceComputeAll;
+
+	@Parameter
+	private ComputationLock lock;
+
+	@Parameter( type = ItemIO.OUTPUT )
+	private MembraneLengthFeature output;
+
+	@Override
+	public void run()
+	{
+		final boolean recomputeAll = forceComputeAll.get();
+		if ( recomputeAll )
+			output.map.beforeClearPool();
+
+		lock.lock();
+		try
+		{
+			for ( final MembranePart membrane : model.getGraph().edges() )
+			{
+				if ( !lock.next() )
+					return;
+				if ( !recomputeAll && output.map.isSet( membrane ) )
+					continue;
+
+				final double[] pixels = membrane.getPixels();
+				if ( pixels == null || pixels.length < 4 )
+				{
+					output.map.set( membrane, Double.NaN );
+					continue;
+				}
+
+				output.map.set( membrane, pathLength( pixels ) );
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void createOutput()
+	{
+		final String units = Dimension.LENGTH.getUnits( model.getSpaceUnits(), model.getTimeUnits() );
+		if ( null == output )
+			output = new MembraneLengthFeature(
+					new DoublePropertyMap<>( model.getGraph().edges().getRefPool(), Double.NaN ),
+					units );
+		else
+			// Compute into a copy of the published feature.
+			output = new MembraneLengthFeature(
+					FeatureMaps.copy( output.map, model.getGraph().edges().getRefPool(), model.getGraph().edges() , lock ),
+					units );
+	}
+}
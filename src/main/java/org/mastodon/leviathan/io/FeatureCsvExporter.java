@@ -0,0 +1,427 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.io;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
+
+import org.mastodon.collection.RefCollection;
+import org.mastodon.collection.RefPool;
+import org.mastodon.feature.Feature;
+import org.mastodon.feature.FeatureModel;
+import org.mastodon.feature.FeatureProjection;
+import org.mastodon.feature.FeatureSpec;
+import org.mastodon.leviathan.model.cell.Cell;
+import org.mastodon.leviathan.model.cell.CellGraph;
+import org.mastodon.leviathan.model.cell.CellModel;
+import org.mastodon.leviathan.model.junction.Junction;
+import org.mastodon.leviathan.model.junction.JunctionGraph;
+import org.mastodon.leviathan.model.junction.JunctionModel;
+import org.mastodon.leviathan.model.junction.MembranePart;
+import org.mastodon.model.tag.ObjTagMap;
+import org.mastodon.model.tag.ObjTags;
+import org.mastodon.model.tag.TagSetStructure.Tag;
+import org.mastodon.model.tag.TagSetStructure.TagSet;
+
+import com.opencsv.CSVWriter;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+/**
+ * Exports the feature values of cells and membranes to CSV files.
+ * <p>
+ * Rows are streamed to a buffered writer in pool-index order, one object at a
+ * time, so that no table is built in memory. There is one row per object and
+ * one column per feature projection, after the columns describing the object
+ * (id, time-point, position, label...) and before one column per tag set.
+ * <p>
+ * The export can be split in one file per time-point. In that case, the files
+ * are written concurrently.
+ */
+public class FeatureCsvExporter
+{
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Exports the features of all the cells of a model.
+	 *
+	 * @param model
+	 *            the cell model.
+	 * @param file
+	 *            the CSV file to write. When splitting per time-point, the
+	 *            time-point is appended to the file name.
+	 * @param splitPerTimepoint
+	 *            whether to write one file per time-point.
+	 * @throws IOException
+	 *             if a file cannot be written.
+	 */
+	public static void exportCells( final CellModel model, final File file, final boolean splitPerTimepoint ) throws IOException
+	{
+		final CellGraph graph = model.getGraph();
+		final String[] fixedHeader = new String[] { "ID", "Label", "Timepoint", "X", "Y", "Z" };
+		final Supplier< RowFiller< Cell > > fillers = () -> new RowFiller< Cell >()
+		{
+			@Override
+			public int timepoint( final Cell cell )
+			{
+				return cell.getTimepoint();
+			}
+
+			@Override
+			public void fill( final Cell cell, final String[] row )
+			{
+				row[ 0 ] = Integer.toString( cell.getInternalPoolIndex() );
+				row[ 1 ] = cell.getLabel();
+				row[ 2 ] = Integer.toString( cell.getTimepoint() );
+				row[ 3 ] = Double.toString( cell.getDoublePosition( 0 ) );
+				row[ 4 ] = Double.toString( cell.getDoublePosition( 1 ) );
+				row[ 5 ] = Double.toString( cell.getDoublePosition( 2 ) );
+			}
+
+			@Override
+			public void release()
+			{}
+		};
+
+		graph.getLock().readLock().lock();
+		try
+		{
+			final Table< Cell > table = new Table<>(
+					graph.vertices(),
+					graph.vertices().getRefPool(),
+					Cell.class,
+					model.getFeatureModel(),
+					model.getTagSetModel().getTagSetStructure().getTagSets(),
+					model.getTagSetModel().getVertexTags(),
+					fixedHeader,
+					fillers );
+			table.export( file, splitPerTimepoint );
+		}
+		finally
+		{
+			graph.getLock().readLock().unlock();
+		}
+	}
+
+	/**
+	 * Exports the features of all the membranes of a junction model.
+	 *
+	 * @param model
+	 *            the junction model.
+	 * @param file
+	 *            the CSV file to write. When splitting per time-point, the
+	 *            time-point is appended to the file name.
+	 * @param splitPerTimepoint
+	 *            whether to write one file per time-point.
+	 * @throws IOException
+	 *             if a file cannot be written.
+	 */
+	public static void exportMembranes( final JunctionModel model, final File file, final boolean splitPerTimepoint ) throws IOException
+	{
+		final JunctionGraph graph = model.getGraph();
+		final String[] fixedHeader = new String[] { "ID", "Source junction", "Target junction", "Cell CW", "Cell CCW", "Timepoint", "X", "Y", "Z" };
+		final Supplier< RowFiller< MembranePart > > fillers = () -> new RowFiller< MembranePart >()
+		{
+			private final Junction ref1 = graph.vertexRef();
+
+			private final Junction ref2 = graph.vertexRef();
+
+			@Override
+			public int timepoint( final MembranePart membrane )
+			{
+				return membrane.getSource( ref1 ).getTimepoint();
+			}
+
+			@Override
+			public void fill( final MembranePart membrane, final String[] row )
+			{
+				final Junction source = membrane.getSource( ref1 );
+				final Junction target = membrane.getTarget( ref2 );
+				row[ 0 ] = Integer.toString( membrane.getInternalPoolIndex() );
+				row[ 1 ] = Integer.toString( source.getInternalPoolIndex() );
+				row[ 2 ] = Integer.toString( target.getInternalPoolIndex() );
+				row[ 3 ] = Integer.toString( membrane.getCellIdCW() );
+				row[ 4 ] = Integer.toString( membrane.getCellIdCCW() );
+				row[ 5 ] = Integer.toString( source.getTimepoint() );
+				// Position of the membrane is the middle of its junctions.
+				for ( int d = 0; d < 3; d++ )
+					row[ 6 + d ] = Double.toString( 0.5 * ( source.getDoublePosition( d ) + target.getDoublePosition( d ) ) );
+			}
+
+			@Override
+			public void release()
+			{
+				graph.releaseRef( ref1 );
+				graph.releaseRef( ref2 );
+			}
+		};
+
+		graph.getLock().readLock().lock();
+		try
+		{
+			final Table< MembranePart > table = new Table<>(
+					graph.edges(),
+					graph.edges().getRefPool(),
+					MembranePart.class,
+					model.getFeatureModel(),
+					model.getTagSetModel().getTagSetStructure().getTagSets(),
+					model.getTagSetModel().getEdgeTags(),
+					fixedHeader,
+					fillers );
+			table.export( file, splitPerTimepoint );
+		}
+		finally
+		{
+			graph.getLock().readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the file to use for the specified time-point when splitting the
+	 * export per time-point.
+	 *
+	 * @param file
+	 *            the file specified by the user.
+	 * @param timepoint
+	 *            the time-point.
+	 * @return a new file, in the same folder.
+	 */
+	public static File timepointFile( final File file, final int timepoint )
+	{
+		final String name = file.getName();
+		final int dot = name.lastIndexOf( '.' );
+		final String base = dot < 0 ? name : name.substring( 0, dot );
+		final String ext = dot < 0 ? "" : name.substring( dot );
+		return new File( file.getParentFile(), String.format( "%s-t%04d%s", base, timepoint, ext ) );
+	}
+
+	/**
+	 * Fills the columns describing an object. Instances are not thread-safe,
+	 * one is created for each writer thread.
+	 */
+	private interface RowFiller< O >
+	{
+		public int timepoint( O o );
+
+		public void fill( O o, String[] row );
+
+		public void release();
+	}
+
+	private static final class Table< O >
+	{
+
+		private final RefCollection< O > objects;
+
+		private final RefPool< O > pool;
+
+		private final String[] header;
+
+		private final int nFixed;
+
+		private final List< FeatureProjection< O > > projections;
+
+		private final List< ObjTagMap< O, Tag > > tagMaps;
+
+		private final Supplier< RowFiller< O > > fillers;
+
+		@SuppressWarnings( "unchecked" )
+		public Table(
+				final RefCollection< O > objects,
+				final RefPool< O > pool,
+				final Class< O > targetClass,
+				final FeatureModel featureModel,
+				final List< TagSet > tagSets,
+				final ObjTags< O > tags,
+				final String[] fixedHeader,
+				final Supplier< RowFiller< O > > fillers )
+		{
+			this.objects = objects;
+			this.pool = pool;
+			this.fillers = fillers;
+			this.nFixed = fixedHeader.length;
+
+			this.projections = new ArrayList<>();
+			final List< String > columns = new ArrayList<>();
+			for ( final String c : fixedHeader )
+				columns.add( c );
+			for ( final FeatureSpec< ?, ? > spec : featureModel.getFeatureSpecs() )
+			{
+				if ( !targetClass.equals( spec.getTargetClass() ) )
+					continue;
+				final Feature< O > feature = ( Feature< O > ) featureModel.getFeature( spec );
+				for ( final FeatureProjection< O > projection : feature.projections() )
+				{
+					projections.add( projection );
+					final String units = projection.units();
+					columns.add( ( units == null || units.isEmpty() )
+							? projection.getKey().toString()
+							: projection.getKey().toString() + " (" + units + ")" );
+				}
+			}
+
+			this.tagMaps = new ArrayList<>( tagSets.size() );
+			for ( final TagSet tagSet : tagSets )
+			{
+				tagMaps.add( tags.tags( tagSet ) );
+				columns.add( tagSet.getName() );
+			}
+			this.header = columns.toArray( new String[ 0 ] );
+		}
+
+		void export( final File file, final boolean splitPerTimepoint ) throws IOException
+		{
+			if ( !splitPerTimepoint )
+			{
+				final RowFiller< O > filler = fillers.get();
+				try (final CSVWriter writer = csvWriter( file ))
+				{
+					writer.writeNext( header, false );
+					final String[] row = new String[ header.length ];
+					for ( final O o : objects )
+						writeRow( o, filler, row, writer );
+				}
+				finally
+				{
+					filler.release();
+				}
+				return;
+			}
+
+			/*
+			 * Collect the pool indices per time-point, in pool-index order, then
+			 * write each time-point in its own file concurrently.
+			 */
+
+			final TIntObjectHashMap< TIntArrayList > perTimepoint = new TIntObjectHashMap<>();
+			final RowFiller< O > filler = fillers.get();
+			for ( final O o : objects )
+			{
+				final int t = filler.timepoint( o );
+				TIntArrayList list = perTimepoint.get( t );
+				if ( list == null )
+				{
+					list = new TIntArrayList();
+					perTimepoint.put( t, list );
+				}
+				list.add( pool.getId( o ) );
+			}
+			filler.release();
+
+			final int nThreads = Math.max( 1, Math.min( perTimepoint.size(), Runtime.getRuntime().availableProcessors() ) );
+			final ExecutorService executor = Executors.newFixedThreadPool( nThreads );
+			try
+			{
+				final Collection< Future< Void > > futures = new ArrayList<>( perTimepoint.size() );
+				for ( final int t : perTimepoint.keys() )
+				{
+					final TIntArrayList ids = perTimepoint.get( t );
+					futures.add( executor.submit( () -> {
+						writeTimepoint( timepointFile( file, t ), ids );
+						return null;
+					} ) );
+				}
+				for ( final Future< Void > future : futures )
+					future.get();
+			}
+			catch ( final InterruptedException e )
+			{
+				Thread.currentThread().interrupt();
+				throw new IOException( "Interrupted while exporting " + file, e );
+			}
+			catch ( final ExecutionException e )
+			{
+				if ( e.getCause() instanceof IOException )
+					throw ( IOException ) e.getCause();
+				throw new IOException( e.getCause() );
+			}
+			finally
+			{
+				executor.shutdown();
+			}
+		}
+
+		private void writeTimepoint( final File file, final TIntArrayList ids ) throws IOException
+		{
+			final RowFiller< O > filler = fillers.get();
+			final O ref = pool.createRef();
+			try (final CSVWriter writer = csvWriter( file ))
+			{
+				writer.writeNext( header, false );
+				final String[] row = new String[ header.length ];
+				for ( int i = 0; i < ids.size(); i++ )
+					writeRow( pool.getObject( ids.get( i ), ref ), filler, row, writer );
+			}
+			finally
+			{
+				pool.releaseRef( ref );
+				filler.release();
+			}
+		}
+
+		private void writeRow( final O o, final RowFiller< O > filler, final String[] row, final CSVWriter writer )
+		{
+			filler.fill( o, row );
+			int c = nFixed;
+			for ( final FeatureProjection< O > projection : projections )
+				row[ c++ ] = projection.isSet( o ) ? Double.toString( projection.value( o ) ) : "";
+			for ( final ObjTagMap< O, Tag > tagMap : tagMaps )
+			{
+				final Tag tag = tagMap.get( o );
+				row[ c++ ] = tag == null ? "" : tag.label();
+			}
+			writer.writeNext( row, false );
+		}
+	}
+
+	private static CSVWriter csvWriter( final File file ) throws IOException
+	{
+		final Writer writer = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( file ), StandardCharsets.UTF_8 ), BUFFER_SIZE );
+		return new CSVWriter( writer );
+	}
+
+	private FeatureCsvExporter()
+	{}
+}
@@ -0,0 +1,724 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.io;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import org.mastodon.collection.RefCollection;
+import org.mastodon.collection.RefPool;
+import org.mastodon.feature.Feature;
+import org.mastodon.feature.FeatureModel;
+import org.mastodon.feature.FeatureProjection;
+import org.mastodon.feature.FeatureSpec;
+import org.mastodon.leviathan.model.cell.Cell;
+import org.mastodon.leviathan.model.cell.CellGraph;
+import org.mastodon.leviathan.model.cell.CellModel;
+import org.mastodon.leviathan.model.junction.Junction;
+import org.mastodon.leviathan.model.junction.JunctionGraph;
+import org.mastodon.leviathan.model.junction.JunctionModel;
+import org.mastodon.leviathan.model.junction.MembranePart;
+import org.mastodon.model.tag.ObjTagMap;
+import org.mastodon.model.tag.ObjTags;
+import org.mastodon.model.tag.TagSetStructure.Tag;
+import org.mastodon.model.tag.TagSetStructure.TagSet;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+/**
+ * Exports the cell polygons and the membrane polylines as GeoJSON or WKB.
+ * <p>
+ * The polygon of a cell is made of its position plus its boundary, the
+ * polyline of a membrane of its pixels, both in global coordinates.
+ * <ul>
+ * <li>In GeoJSON, each object is a <code>Feature</code> of a
+ * <code>FeatureCollection</code>, with the object description, the feature
+ * projection values and the tags as properties.
+ * <li>In WKB, the file is a sequence of records made of the object id, its
+ * time-point and the length of its geometry as big-endian 32-bit integers,
+ * followed by the geometry in big-endian WKB. WKB has no properties; they can
+ * be joined on the id with the export of {@link FeatureCsvExporter}.
+ * </ul>
+ * Objects are streamed one at a time, so that memory use does not depend on
+ * the model size. The export can be split in one file per time-point. In that
+ * case, the files are written concurrently.
+ */
+public class GeometryExporter
+{
+
+	public enum Format
+	{
+		GEOJSON,
+		WKB;
+	}
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private static final byte WKB_BIG_ENDIAN = 0;
+
+	private static final int WKB_LINE_STRING = 2;
+
+	private static final int WKB_POLYGON = 3;
+
+	/**
+	 * Exports the polygons of all the cells of a model.
+	 *
+	 * @param model
+	 *            the cell model.
+	 * @param file
+	 *            the file to write. When splitting per time-point, the
+	 *            time-point is appended to the file name.
+	 * @param format
+	 *            the output format.
+	 * @param splitPerTimepoint
+	 *            whether to write one file per time-point.
+	 * @throws IOException
+	 *             if a file cannot be written.
+	 */
+	public static void exportCells( final CellModel model, final File file, final Format format, final boolean splitPerTimepoint ) throws IOException
+	{
+		final CellGraph graph = model.getGraph();
+		final Supplier< Shape< Cell > > shapes = () -> new Shape< Cell >()
+		{
+			@Override
+			public int timepoint( final Cell cell )
+			{
+				return cell.getTimepoint();
+			}
+
+			@Override
+			public boolean isPolygon()
+			{
+				return true;
+			}
+
+			@Override
+			public int coordinates( final Cell cell, final Coordinates xy )
+			{
+				final double[] boundary = cell.getBoundary();
+				if ( boundary == null || boundary.length < 6 )
+					return 0;
+				final double xc = cell.getDoublePosition( 0 );
+				final double yc = cell.getDoublePosition( 1 );
+				final int n = boundary.length / 2;
+				final double[] buffer = xy.ensureCapacity( n + 1 );
+				for ( int i = 0; i < n; i++ )
+				{
+					buffer[ 2 * i ] = xc + boundary[ 2 * i ];
+					buffer[ 2 * i + 1 ] = yc + boundary[ 2 * i + 1 ];
+				}
+				// Close the ring.
+				buffer[ 2 * n ] = buffer[ 0 ];
+				buffer[ 2 * n + 1 ] = buffer[ 1 ];
+				return n + 1;
+			}
+
+			@Override
+			public void properties( final Cell cell, final JsonWriter json ) throws IOException
+			{
+				json.property( "Label", cell.getLabel() );
+				json.property( "Timepoint", cell.getTimepoint() );
+				json.property( "X", cell.getDoublePosition( 0 ) );
+				json.property( "Y", cell.getDoublePosition( 1 ) );
+			}
+
+			@Override
+			public void release()
+			{}
+		};
+
+		graph.getLock().readLock().lock();
+		try
+		{
+			new Export<>(
+					graph.vertices(),
+					graph.vertices().getRefPool(),
+					Cell.class,
+					model.getFeatureModel(),
+					model.getTagSetModel().getTagSetStructure().getTagSets(),
+					model.getTagSetModel().getVertexTags(),
+					shapes,
+					format )
+							.export( file, splitPerTimepoint );
+		}
+		finally
+		{
+			graph.getLock().readLock().unlock();
+		}
+	}
+
+	/**
+	 * Exports the polylines of all the membranes of a junction model.
+	 *
+	 * @param model
+	 *            the junction model.
+	 * @param file
+	 *            the file to write. When splitting per time-point, the
+	 *            time-point is appended to the file name.
+	 * @param format
+	 *            the output format.
+	 * @param splitPerTimepoint
+	 *            whether to write one file per time-point.
+	 * @throws IOException
+	 *             if a file cannot be written.
+	 */
+	public static void exportMembranes( final JunctionModel model, final File file, final Format format, final boolean splitPerTimepoint ) throws IOException
+	{
+		final JunctionGraph graph = model.getGraph();
+		final Supplier< Shape< MembranePart > > shapes = () -> new Shape< MembranePart >()
+		{
+			private final Junction ref1 = graph.vertexRef();
+
+			private final Junction ref2 = graph.vertexRef();
+
+			@Override
+			public int timepoint( final MembranePart membrane )
+			{
+				return membrane.getSource( ref1 ).getTimepoint();
+			}
+
+			@Override
+			public boolean isPolygon()
+			{
+				return false;
+			}
+
+			@Override
+			public int coordinates( final MembranePart membrane, final Coordinates xy )
+			{
+				final double[] pixels = membrane.getPixels();
+				if ( pixels == null || pixels.length < 4 )
+					return 0;
+				final int n = pixels.length / 2;
+				System.arraycopy( pixels, 0, xy.ensureCapacity( n ), 0, 2 * n );
+				return n;
+			}
+
+			@Override
+			public void properties( final MembranePart membrane, final JsonWriter json ) throws IOException
+			{
+				final Junction source = membrane.getSource( ref1 );
+				final Junction target = membrane.getTarget( ref2 );
+				json.property( "Source junction", source.getInternalPoolIndex() );
+				json.property( "Target junction", target.getInternalPoolIndex() );
+				json.property( "Cell CW", membrane.getCellIdCW() );
+				json.property( "Cell CCW", membrane.getCellIdCCW() );
+				json.property( "Timepoint", source.getTimepoint() );
+			}
+
+			@Override
+			public void release()
+			{
+				graph.releaseRef( ref1 );
+				graph.releaseRef( ref2 );
+			}
+		};
+
+		graph.getLock().readLock().lock();
+		try
+		{
+			new Export<>(
+					graph.edges(),
+					graph.edges().getRefPool(),
+					MembranePart.class,
+					model.getFeatureModel(),
+					model.getTagSetModel().getTagSetStructure().getTagSets(),
+					model.getTagSetModel().getEdgeTags(),
+					shapes,
+					format )
+							.export( file, splitPerTimepoint );
+		}
+		finally
+		{
+			graph.getLock().readLock().unlock();
+		}
+	}
+
+	/**
+	 * Describes the geometry of an object. Instances are not thread-safe, one
+	 * is created for each writer thread.
+	 */
+	private interface Shape< O >
+	{
+		public int timepoint( O o );
+
+		public boolean isPolygon();
+
+		/**
+		 * Writes the coordinates of the object. Polygon rings must be closed.
+		 *
+		 * @return the number of points written, 0 if the object has no
+		 *         geometry.
+		 */
+		public int coordinates( O o, Coordinates xy );
+
+		public void properties( O o, JsonWriter json ) throws IOException;
+
+		public void release();
+	}
+
+	/**
+	 * Reusable coordinate buffer.
+	 */
+	private static final class Coordinates
+	{
+		private double[] xy = new double[ 256 ];
+
+		double[] ensureCapacity( final int nPoints )
+		{
+			if ( xy.length < 2 * nPoints )
+				xy = new double[ Math.max( 2 * nPoints, 2 * xy.length ) ];
+			return xy;
+		}
+	}
+
+	private static final class Export< O >
+	{
+
+		private final RefCollection< O > objects;
+
+		private final RefPool< O > pool;
+
+		private final List< FeatureProjection< O > > projections;
+
+		private final List< String > projectionNames;
+
+		private final List< ObjTagMap< O, Tag > > tagMaps;
+
+		private final List< String > tagSetNames;
+
+		private final Supplier< Shape< O > > shapes;
+
+		private final Format format;
+
+		@SuppressWarnings( "unchecked" )
+		public Export(
+				final RefCollection< O > objects,
+				final RefPool< O > pool,
+				final Class< O > targetClass,
+				final FeatureModel featureModel,
+				final List< TagSet > tagSets,
+				final ObjTags< O > tags,
+				final Supplier< Shape< O > > shapes,
+				final Format format )
+		{
+			this.objects = objects;
+			this.pool = pool;
+			this.shapes = shapes;
+			this.format = format;
+
+			this.projections = new ArrayList<>();
+			this.projectionNames = new ArrayList<>();
+			for ( final FeatureSpec< ?, ? > spec : featureModel.getFeatureSpecs() )
+			{
+				if ( !targetClass.equals( spec.getTargetClass() ) )
+					continue;
+				final Feature< O > feature = ( Feature< O > ) featureModel.getFeature( spec );
+				for ( final FeatureProjection< O > projection : feature.projections() )
+				{
+					projections.add( projection );
+					projectionNames.add( projection.getKey().toString() );
+				}
+			}
+
+			this.tagMaps = new ArrayList<>( tagSets.size() );
+			this.tagSetNames = new ArrayList<>( tagSets.size() );
+			for ( final TagSet tagSet : tagSets )
+			{
+				tagMaps.add( tags.tags( tagSet ) );
+				tagSetNames.add( tagSet.getName() );
+			}
+		}
+
+		void export( final File file, final boolean splitPerTimepoint ) throws IOException
+		{
+			if ( !splitPerTimepoint )
+			{
+				final Shape< O > shape = shapes.get();
+				try (final Sink< O > sink = sink( file, shape ))
+				{
+					for ( final O o : objects )
+						sink.write( o );
+				}
+				finally
+				{
+					shape.release();
+				}
+				return;
+			}
+
+			/*
+			 * Collect the pool indices per time-point, in pool-index order, then
+			 * write each time-point in its own file concurrently.
+			 */
+
+			final TIntObjectHashMap< TIntArrayList > perTimepoint = new TIntObjectHashMap<>();
+			final Shape< O > shape = shapes.get();
+			for ( final O o : objects )
+			{
+				final int t = shape.timepoint( o );
+				TIntArrayList list = perTimepoint.get( t );
+				if ( list == null )
+				{
+					list = new TIntArrayList();
+					perTimepoint.put( t, list );
+				}
+				list.add( pool.getId( o ) );
+			}
+			shape.release();
+
+			final int nThreads = Math.max( 1, Math.min( perTimepoint.size(), Runtime.getRuntime().availableProcessors() ) );
+			final ExecutorService executor = Executors.newFixedThreadPool( nThreads );
+			try
+			{
+				final Collection< Future< Void > > futures = new ArrayList<>( perTimepoint.size() );
+				for ( final int t : perTimepoint.keys() )
+				{
+					final TIntArrayList ids = perTimepoint.get( t );
+					futures.add( executor.submit( () -> {
+						writeTimepoint( FeatureCsvExporter.timepointFile( file, t ), ids );
+						return null;
+					} ) );
+				}
+				for ( final Future< Void > future : futures )
+					future.get();
+			}
+			catch ( final InterruptedException e )
+			{
+				Thread.currentThread().interrupt();
+				throw new IOException( "Interrupted while exporting " + file, e );
+			}
+			catch ( final ExecutionException e )
+			{
+				if ( e.getCause() instanceof IOException )
+					throw ( IOException ) e.getCause();
+				throw new IOException( e.getCause() );
+			}
+			finally
+			{
+				executor.shutdown();
+			}
+		}
+
+		private void writeTimepoint( final File file, final TIntArrayList ids ) throws IOException
+		{
+			final Shape< O > shape = shapes.get();
+			final O ref = pool.createRef();
+			try (final Sink< O > sink = sink( file, shape ))
+			{
+				for ( int i = 0; i < ids.size(); i++ )
+					sink.write( pool.getObject( ids.get( i ), ref ) );
+			}
+			finally
+			{
+				pool.releaseRef( ref );
+				shape.release();
+			}
+		}
+
+		private Sink< O > sink( final File file, final Shape< O > shape ) throws IOException
+		{
+			switch ( format )
+			{
+			case WKB:
+				return new WkbSink<>( file, pool, shape );
+			case GEOJSON:
+			default:
+				return new GeoJsonSink<>( file, pool, shape, this );
+			}
+		}
+
+		private void writeFeaturesAndTags( final O o, final JsonWriter json ) throws IOException
+		{
+			for ( int i = 0; i < projections.size(); i++ )
+			{
+				final FeatureProjection< O > projection = projections.get( i );
+				if ( projection.isSet( o ) )
+					json.property( projectionNames.get( i ), projection.value( o ) );
+			}
+			for ( int i = 0; i < tagMaps.size(); i++ )
+			{
+				final Tag tag = tagMaps.get( i ).get( o );
+				if ( tag != null )
+					json.property( tagSetNames.get( i ), tag.label() );
+			}
+		}
+	}
+
+	/*
+	 * Output formats.
+	 */
+
+	private interface Sink< O > extends AutoCloseable
+	{
+		public void write( O o ) throws IOException;
+
+		@Override
+		public void close() throws IOException;
+	}
+
+	private static final class GeoJsonSink< O > implements Sink< O >
+	{
+
+		private final RefPool< O > pool;
+
+		private final Shape< O > shape;
+
+		private final Export< O > export;
+
+		private final JsonWriter json;
+
+		private final Coordinates xy = new Coordinates();
+
+		private boolean first = true;
+
+		GeoJsonSink( final File file, final RefPool< O > pool, final Shape< O > shape, final Export< O > export ) throws IOException
+		{
+			this.pool = pool;
+			this.shape = shape;
+			this.export = export;
+			this.json = new JsonWriter( new BufferedWriter( new OutputStreamWriter( new FileOutputStream( file ), StandardCharsets.UTF_8 ), BUFFER_SIZE ) );
+			json.raw( "{\"type\":\"FeatureCollection\",\"features\":[" );
+		}
+
+		@Override
+		public void write( final O o ) throws IOException
+		{
+			final int n = shape.coordinates( o, xy );
+			if ( n == 0 )
+				return;
+
+			if ( !first )
+				json.raw( "," );
+			first = false;
+			json.raw( "\n{\"type\":\"Feature\",\"id\":" );
+			json.raw( Integer.toString( pool.getId( o ) ) );
+			json.raw( shape.isPolygon()
+					? ",\"geometry\":{\"type\":\"Polygon\",\"coordinates\":[["
+					: ",\"geometry\":{\"type\":\"LineString\",\"coordinates\":[" );
+			final double[] buffer = xy.xy;
+			for ( int i = 0; i < n; i++ )
+			{
+				if ( i > 0 )
+					json.raw( "," );
+				json.raw( "[" );
+				json.number( buffer[ 2 * i ] );
+				json.raw( "," );
+				json.number( buffer[ 2 * i + 1 ] );
+				json.raw( "]" );
+			}
+			json.raw( shape.isPolygon() ? "]]}" : "]}" );
+
+			json.raw( ",\"properties\":{" );
+			json.resetProperties();
+			shape.properties( o, json );
+			export.writeFeaturesAndTags( o, json );
+			json.raw( "}}" );
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			json.raw( "\n]}\n" );
+			json.close();
+		}
+	}
+
+	private static final class WkbSink< O > implements Sink< O >
+	{
+
+		private final RefPool< O > pool;
+
+		private final Shape< O > shape;
+
+		private final DataOutputStream out;
+
+		private final Coordinates xy = new Coordinates();
+
+		WkbSink( final File file, final RefPool< O > pool, final Shape< O > shape ) throws IOException
+		{
+			this.pool = pool;
+			this.shape = shape;
+			this.out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( file ), BUFFER_SIZE ) );
+		}
+
+		@Override
+		public void write( final O o ) throws IOException
+		{
+			final int n = shape.coordinates( o, xy );
+			if ( n == 0 )
+				return;
+
+			final boolean polygon = shape.isPolygon();
+			final int length = 1 + 4 + ( polygon ? 4 : 0 ) + 4 + 16 * n;
+			out.writeInt( pool.getId( o ) );
+			out.writeInt( shape.timepoint( o ) );
+			out.writeInt( length );
+
+			out.writeByte( WKB_BIG_ENDIAN );
+			out.writeInt( polygon ? WKB_POLYGON : WKB_LINE_STRING );
+			if ( polygon )
+				out.writeInt( 1 ); // one ring.
+			out.writeInt( n );
+			final double[] buffer = xy.xy;
+			for ( int i = 0; i < 2 * n; i++ )
+				out.writeDouble( buffer[ i ] );
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Minimal streaming JSON writer for the properties of a feature.
+	 */
+	private static final class JsonWriter
+	{
+
+		private final Writer writer;
+
+		private boolean firstProperty;
+
+		JsonWriter( final Writer writer )
+		{
+			this.writer = writer;
+		}
+
+		void raw( final String s ) throws IOException
+		{
+			writer.write( s );
+		}
+
+		void resetProperties()
+		{
+			firstProperty = true;
+		}
+
+		void number( final double value ) throws IOException
+		{
+			// JSON has no NaN nor infinity.
+			if ( Double.isNaN( value ) || Double.isInfinite( value ) )
+				writer.write( "null" );
+			else
+				writer.write( Double.toString( value ) );
+		}
+
+		void property( final String name, final double value ) throws IOException
+		{
+			name( name );
+			number( value );
+		}
+
+		void property( final String name, final int value ) throws IOException
+		{
+			name( name );
+			writer.write( Integer.toString( value ) );
+		}
+
+		void property( final String name, final String value ) throws IOException
+		{
+			name( name );
+			string( value );
+		}
+
+		private void name( final String name ) throws IOException
+		{
+			if ( !firstProperty )
+				writer.write( ',' );
+			firstProperty = false;
+			string( name );
+			writer.write( ':' );
+		}
+
+		private void string( final String s ) throws IOException
+		{
+			if ( s == null )
+			{
+				writer.write( "null" );
+				return;
+			}
+			writer.write( '"' );
+			for ( int i = 0; i < s.length(); i++ )
+			{
+				final char c = s.charAt( i );
+				switch ( c )
+				{
+				case '"':
+					writer.write( "\\\"" );
+					break;
+				case '\\':
+					writer.write( "\\\\" );
+					break;
+				case '\n':
+					writer.write( "\\n" );
+					break;
+				case '\r':
+					writer.write( "\\r" );
+					break;
+				case '\t':
+					writer.write( "\\t" );
+					break;
+				default:
+					if ( c < 0x20 )
+						writer.write( String.format( "\\u%04x", ( int ) c ) );
+					else
+						writer.write( c );
+				}
+			}
+			writer.write( '"' );
+		}
+
+		void close() throws IOException
+		{
+			writer.close();
+		}
+	}
+
+	private GeometryExporter()
+	{}
+}
@@ -0,0 +1,660 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.mastodon.leviathan.algorithms.PolygonRasterizer;
+import org.mastodon.leviathan.model.DoubleSlice;
+import org.mastodon.leviathan.model.cell.Cell;
+import org.mastodon.leviathan.model.cell.CellGraph;
+import org.mastodon.leviathan.model.cell.CellModel;
+import org.mastodon.leviathan.model.junction.Junction;
+import org.mastodon.leviathan.model.junction.JunctionGraph;
+import org.mastodon.leviathan.model.junction.JunctionModel;
+import org.mastodon.leviathan.model.junction.MembranePart;
+
+import bdv.viewer.Source;
+import gnu.trove.list.array.TIntArrayList;
+import net.imglib2.Cursor;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.img.DiskCachedCellImgFactory;
+import net.imglib2.cache.img.DiskCachedCellImgOptions;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.view.Views;
+
+/**
+ * Rasterizes the cells and membranes of a time-point back into label images.
+ * <p>
+ * Cell polygons, made of the cell position plus its boundary, are filled
+ * with the scanline algorithm of {@link PolygonRasterizer}, membranes are
+ * traced along their pixels. The label of a cell or of a membrane is its pool
+ * index plus 1, so that 0 is the background. The rows of the output are split
+ * in bands rasterized in parallel, each band writing only its own rows, so
+ * that the output can be any image, including a cell image cached on disk.
+ * <p>
+ * The polygons are transformed from the global coordinates to the output
+ * pixel coordinates with the inverse of the specified transform, typically
+ * the source transform of the image the model was built from.
+ * <p>
+ * The label images of all the time-points can be written to uncompressed
+ * 32-bit TIFF files, as one page per time-point or one file per time-point.
+ */
+public class LabelImageExporter
+{
+
+	/**
+	 * Default number of rows of the bands processed in parallel.
+	 */
+	public static final int DEFAULT_BAND_HEIGHT = 128;
+
+	private static final int DISK_CELL_SIZE = 256;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private LabelImageExporter()
+	{}
+
+	/**
+	 * Creates an empty 2D label image.
+	 *
+	 * @param width
+	 *            the image width.
+	 * @param height
+	 *            the image height.
+	 * @param onDisk
+	 *            if <code>true</code>, the image is a cell image cached on
+	 *            disk, otherwise an array image.
+	 * @return a new image.
+	 */
+	public static Img< UnsignedIntType > createImg( final long width, final long height, final boolean onDisk )
+	{
+		if ( !onDisk )
+			return ArrayImgs.unsignedInts( width, height );
+
+		final DiskCachedCellImgOptions options = DiskCachedCellImgOptions.options()
+				.cellDimensions( DISK_CELL_SIZE, DISK_CELL_SIZE )
+				.dirtyAccesses( true );
+		return new DiskCachedCellImgFactory<>( new UnsignedIntType(), options ).create( width, height );
+	}
+
+	/**
+	 * Fills the polygons of the cells of a time-point in a label image.
+	 *
+	 * @param model
+	 *            the cell model.
+	 * @param timepoint
+	 *            the time-point.
+	 * @param transform
+	 *            the transform from the output pixel coordinates to the
+	 *            global coordinates.
+	 * @param output
+	 *            the label image. Only its first two dimensions are written,
+	 *            other dimensions are set at their min.
+	 * @param numThreads
+	 *            the number of threads to use.
+	 */
+	public static void rasterizeCells(
+			final CellModel model,
+			final int timepoint,
+			final AffineTransform3D transform,
+			final RandomAccessibleInterval< UnsignedIntType > output,
+			final int numThreads )
+	{
+		final Polygons polygons = new Polygons();
+		final CellGraph graph = model.getGraph();
+		final double[] pos = new double[ 3 ];
+		final DoubleSlice slice = new DoubleSlice();
+		graph.getLock().readLock().lock();
+		try
+		{
+			for ( final Cell cell : model.getSpatioTemporalIndex().getSpatialIndex( timepoint ) )
+			{
+				final DoubleSlice boundary = cell.getBoundary( slice );
+				if ( boundary == null || boundary.size() < 6 )
+					continue;
+				final double xc = cell.getDoublePosition( 0 );
+				final double yc = cell.getDoublePosition( 1 );
+				final double zc = cell.numDimensions() > 2 ? cell.getDoublePosition( 2 ) : 0.;
+				polygons.start( cell.getInternalPoolIndex() + 1 );
+				for ( int i = 0; i < boundary.size() - 1; i += 2 )
+				{
+					pos[ 0 ] = xc + boundary.get( i );
+					pos[ 1 ] = yc + boundary.get( i + 1 );
+					pos[ 2 ] = zc;
+					transform.applyInverse( pos, pos );
+					polygons.add( pos[ 0 ], pos[ 1 ] );
+				}
+			}
+		}
+		finally
+		{
+			graph.getLock().readLock().unlock();
+		}
+		rasterize( polygons, true, output, numThreads );
+	}
+
+	/**
+	 * Traces the pixels of the membranes of a time-point in a label image.
+	 *
+	 * @param model
+	 *            the junction model.
+	 * @param timepoint
+	 *            the time-point.
+	 * @param transform
+	 *            the transform from the output pixel coordinates to the
+	 *            global coordinates.
+	 * @param output
+	 *            the label image. Only its first two dimensions are written,
+	 *            other dimensions are set at their min.
+	 * @param numThreads
+	 *            the number of threads to use.
+	 */
+	public static void rasterizeMembranes(
+			final JunctionModel model,
+			final int timepoint,
+			final AffineTransform3D transform,
+			final RandomAccessibleInterval< UnsignedIntType > output,
+			final int numThreads )
+	{
+		final Polygons polylines = new Polygons();
+		final JunctionGraph graph = model.getGraph();
+		final double[] pos = new double[ 3 ];
+		graph.getLock().readLock().lock();
+		try
+		{
+			for ( final Junction junction : model.getSpatioTemporalIndex().getSpatialIndex( timepoint ) )
+			{
+				final double zc = junction.numDimensions() > 2 ? junction.getDoublePosition( 2 ) : 0.;
+				// Each membrane is visited once, from its source.
+				for ( final MembranePart edge : junction.outgoingEdges() )
+				{
+					final double[] pixels = edge.getPixels();
+					if ( pixels == null || pixels.length < 2 )
+						continue;
+					polylines.start( edge.getInternalPoolIndex() + 1 );
+					for ( int i = 0; i < pixels.length - 1; i += 2 )
+					{
+						pos[ 0 ] = pixels[ i ];
+						pos[ 1 ] = pixels[ i + 1 ];
+						pos[ 2 ] = zc;
+						transform.applyInverse( pos, pos );
+						polylines.add( pos[ 0 ], pos[ 1 ] );
+					}
+				}
+			}
+		}
+		finally
+		{
+			graph.getLock().readLock().unlock();
+		}
+		rasterize( polylines, false, output, numThreads );
+	}
+
+	/**
+	 * Writes the cell label images of all the time-points of a reference
+	 * source to a TIFF file.
+	 *
+	 * @param model
+	 *            the cell model.
+	 * @param reference
+	 *            the source giving the size and the transform of the label
+	 *            image of each time-point, typically the image the model was
+	 *            built from.
+	 * @param numTimepoints
+	 *            the number of time-points.
+	 * @param file
+	 *            the TIFF file to write. When splitting per time-point, the
+	 *            time-point is appended to the file name.
+	 * @param splitPerTimepoint
+	 *            whether to write one file per time-point, instead of one
+	 *            page per time-point.
+	 * @param numThreads
+	 *            the number of threads to use.
+	 * @throws IOException
+	 *             if a file cannot be written.
+	 */
+	public static void exportCells(
+			final CellModel model,
+			final Source< ? > reference,
+			final int numTimepoints,
+			final File file,
+			final boolean splitPerTimepoint,
+			final int numThreads ) throws IOException
+	{
+		export( ( t, transform, output ) -> rasterizeCells( model, t, transform, output, numThreads ),
+				reference, numTimepoints, file, splitPerTimepoint );
+	}
+
+	/**
+	 * Writes the membrane label images of all the time-points of a reference
+	 * source to a TIFF file.
+	 *
+	 * @param model
+	 *            the junction model.
+	 * @param reference
+	 *            the source giving the size and the transform of the label
+	 *            image of each time-point, typically the image the model was
+	 *            built from.
+	 * @param numTimepoints
+	 *            the number of time-points.
+	 * @param file
+	 *            the TIFF file to write. When splitting per time-point, the
+	 *            time-point is appended to the file name.
+	 * @param splitPerTimepoint
+	 *            whether to write one file per time-point, instead of one
+	 *            page per time-point.
+	 * @param numThreads
+	 *            the number of threads to use.
+	 * @throws IOException
+	 *             if a file cannot be written.
+	 */
+	public static void exportMembranes(
+			final JunctionModel model,
+			final Source< ? > reference,
+			final int numTimepoints,
+			final File file,
+			final boolean splitPerTimepoint,
+			final int numThreads ) throws IOException
+	{
+		export( ( t, transform, output ) -> rasterizeMembranes( model, t, transform, output, numThreads ),
+				reference, numTimepoints, file, splitPerTimepoint );
+	}
+
+	private static void export(
+			final Rasterizer rasterizer,
+			final Source< ? > reference,
+			final int numTimepoints,
+			final File file,
+			final boolean splitPerTimepoint ) throws IOException
+	{
+		final AffineTransform3D transform = new AffineTransform3D();
+		final TiffWriter stack = splitPerTimepoint ? null : new TiffWriter( file );
+		try
+		{
+			for ( int t = 0; t < numTimepoints; t++ )
+			{
+				if ( !reference.isPresent( t ) )
+					continue;
+
+				final RandomAccessibleInterval< ? > img = reference.getSource( t, 0 );
+				reference.getSourceTransform( t, 0, transform );
+				final long width = img.dimension( 0 );
+				final long height = img.dimension( 1 );
+				// Large images go to disk rather than filling the heap.
+				final boolean onDisk = 4 * width * height > Runtime.getRuntime().maxMemory() / 4;
+				final Img< UnsignedIntType > labels = createImg( width, height, onDisk );
+				rasterizer.rasterize( t, transform, labels );
+
+				if ( stack != null )
+				{
+					stack.writePage( labels );
+				}
+				else
+				{
+					try (final TiffWriter writer = new TiffWriter( FeatureCsvExporter.timepointFile( file, t ) ))
+					{
+						writer.writePage( labels );
+					}
+				}
+			}
+		}
+		finally
+		{
+			if ( stack != null )
+				stack.close();
+		}
+	}
+
+	@FunctionalInterface
+	private static interface Rasterizer
+	{
+		public void rasterize( int timepoint, AffineTransform3D transform, RandomAccessibleInterval< UnsignedIntType > output );
+	}
+
+	/**
+	 * Fills the polygons, or traces the polylines, band per band.
+	 */
+	private static void rasterize(
+			final Polygons polygons,
+			final boolean fill,
+			final RandomAccessibleInterval< UnsignedIntType > output,
+			final int numThreads )
+	{
+		final int n = polygons.size();
+		if ( n == 0 )
+			return;
+
+		/*
+		 * Dispatch the polygons in the bands they overlap.
+		 */
+
+		final long minY = output.min( 1 );
+		final long maxY = output.max( 1 );
+		final int nBands = ( int ) ( ( maxY - minY ) / DEFAULT_BAND_HEIGHT + 1 );
+		final TIntArrayList[] bands = new TIntArrayList[ nBands ];
+		for ( int p = 0; p < n; p++ )
+		{
+			final double[] yrange = polygons.yRange( p );
+			final long y0 = Math.max( minY, ( long ) Math.floor( yrange[ 0 ] ) - 1 );
+			final long y1 = Math.min( maxY, ( long ) Math.ceil( yrange[ 1 ] ) + 1 );
+			if ( y0 > y1 )
+				continue;
+			final int b0 = ( int ) ( ( y0 - minY ) / DEFAULT_BAND_HEIGHT );
+			final int b1 = ( int ) ( ( y1 - minY ) / DEFAULT_BAND_HEIGHT );
+			for ( int b = b0; b <= b1; b++ )
+			{
+				if ( bands[ b ] == null )
+					bands[ b ] = new TIntArrayList();
+				bands[ b ].add( p );
+			}
+		}
+
+		final ExecutorService executor = Executors.newFixedThreadPool( Math.max( 1, numThreads ) );
+		try
+		{
+			final List< Future< ? > > futures = new ArrayList<>( nBands );
+			for ( int b = 0; b < nBands; b++ )
+			{
+				final TIntArrayList ids = bands[ b ];
+				if ( ids == null )
+					continue;
+				final long bandMin = minY + ( long ) b * DEFAULT_BAND_HEIGHT;
+				final long bandMax = Math.min( maxY, bandMin + DEFAULT_BAND_HEIGHT - 1 );
+				futures.add( executor.submit( () -> rasterizeBand( polygons, ids, fill, output, bandMin, bandMax ) ) );
+			}
+			for ( final Future< ? > future : futures )
+				future.get();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch ( final ExecutionException e )
+		{
+			throw new RuntimeException( e.getCause() );
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	private static void rasterizeBand(
+			final Polygons polygons,
+			final TIntArrayList ids,
+			final boolean fill,
+			final RandomAccessibleInterval< UnsignedIntType > output,
+			final long bandMin,
+			final long bandMax )
+	{
+		final RandomAccess< UnsignedIntType > ra = output.randomAccess();
+		for ( int d = 2; d < output.numDimensions(); d++ )
+			ra.setPosition( output.min( d ), d );
+		final long minX = output.min( 0 );
+		final long maxX = output.max( 0 );
+		final long[] label = new long[ 1 ];
+
+		final PolygonRasterizer.SpanConsumer span = ( y, xmin, xmax ) -> {
+			if ( y < bandMin || y > bandMax )
+				return;
+			final long x0 = Math.max( xmin, minX );
+			final long x1 = Math.min( xmax, maxX );
+			if ( x0 > x1 )
+				return;
+			ra.setPosition( x0, 0 );
+			ra.setPosition( y, 1 );
+			for ( long x = x0; x <= x1; x++ )
+			{
+				ra.get().set( label[ 0 ] );
+				ra.fwd( 0 );
+			}
+		};
+		final PolygonRasterizer.PixelConsumer pixel = ( x, y ) -> {
+			if ( y < bandMin || y > bandMax || x < minX || x > maxX )
+				return;
+			ra.setPosition( x, 0 );
+			ra.setPosition( y, 1 );
+			ra.get().set( label[ 0 ] );
+		};
+
+		final PolygonRasterizer rasterizer = new PolygonRasterizer();
+		for ( int i = 0; i < ids.size(); i++ )
+		{
+			final int p = ids.getQuick( i );
+			label[ 0 ] = polygons.label( p );
+			if ( fill )
+				rasterizer.fill( polygons.coords, polygons.offset( p ), polygons.numPoints( p ), span );
+			else
+				PolygonRasterizer.trace( polygons.coords, polygons.offset( p ), polygons.numPoints( p ), false, pixel );
+		}
+	}
+
+	/**
+	 * Polygons stored as flat arrays of interleaved coordinates.
+	 */
+	private static final class Polygons
+	{
+
+		private double[] coords = new double[ 1024 ];
+
+		private int size = 0;
+
+		private final TIntArrayList starts = new TIntArrayList();
+
+		private final TIntArrayList labels = new TIntArrayList();
+
+		void start( final int label )
+		{
+			starts.add( size );
+			labels.add( label );
+		}
+
+		void add( final double x, final double y )
+		{
+			if ( size + 2 > coords.length )
+				coords = Arrays.copyOf( coords, 2 * coords.length );
+			coords[ size++ ] = x;
+			coords[ size++ ] = y;
+		}
+
+		int size()
+		{
+			return starts.size();
+		}
+
+		int offset( final int p )
+		{
+			return starts.getQuick( p ) / 2;
+		}
+
+		int numPoints( final int p )
+		{
+			final int end = p + 1 < starts.size() ? starts.getQuick( p + 1 ) : size;
+			return ( end - starts.getQuick( p ) ) / 2;
+		}
+
+		long label( final int p )
+		{
+			return labels.getQuick( p ) & 0xFFFFFFFFL;
+		}
+
+		double[] yRange( final int p )
+		{
+			double ymin = Double.POSITIVE_INFINITY;
+			double ymax = Double.NEGATIVE_INFINITY;
+			final int end = p + 1 < starts.size() ? starts.getQuick( p + 1 ) : size;
+			for ( int i = starts.getQuick( p ) + 1; i < end; i += 2 )
+			{
+				ymin = Math.min( ymin, coords[ i ] );
+				ymax = Math.max( ymax, coords[ i ] );
+			}
+			return new double[] { ymin, ymax };
+		}
+	}
+
+	/**
+	 * Writes 2D 32-bit label images as the pages of an uncompressed, big-endian
+	 * TIFF file. The pixels of a page are written first, in one strip, then
+	 * the directory of the page, which is linked from the previous one.
+	 */
+	private static final class TiffWriter implements AutoCloseable
+	{
+
+		private static final short TYPE_SHORT = 3;
+
+		private static final short TYPE_LONG = 4;
+
+		private static final int NUM_ENTRIES = 10;
+
+		/**
+		 * TIFF offsets are unsigned 32-bit integers.
+		 */
+		private static final long MAX_SIZE = 0xFFFFFFFFL;
+
+		private final FileChannel channel;
+
+		/**
+		 * Position of the offset to the next directory, to update when a
+		 * page is written.
+		 */
+		private long nextDirectoryPointer = 4;
+
+		private long position;
+
+		private final ByteBuffer buffer = ByteBuffer.allocate( BUFFER_SIZE );
+
+		public TiffWriter( final File file ) throws IOException
+		{
+			this.channel = FileChannel.open( file.toPath(),
+					StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE );
+			final ByteBuffer header = ByteBuffer.allocate( 8 );
+			header.put( ( byte ) 'M' ).put( ( byte ) 'M' ).putShort( ( short ) 42 ).putInt( 0 );
+			header.flip();
+			write( header, 0 );
+			this.position = 8;
+		}
+
+		public void writePage( final RandomAccessibleInterval< UnsignedIntType > img ) throws IOException
+		{
+			final long width = img.dimension( 0 );
+			final long height = img.dimension( 1 );
+			final long dataSize = 4 * width * height;
+			final int directorySize = 2 + 12 * NUM_ENTRIES + 4;
+			if ( position + dataSize + directorySize > MAX_SIZE )
+				throw new IOException( "The label images exceed the 4 GB of a TIFF file. Write one file per time-point instead." );
+
+			// Pixels, row after row.
+			final long dataOffset = position;
+			final Cursor< UnsignedIntType > cursor = Views.flatIterable( img ).cursor();
+			buffer.clear();
+			while ( cursor.hasNext() )
+			{
+				if ( !buffer.hasRemaining() )
+					flushBuffer();
+				buffer.putInt( cursor.next().getInt() );
+			}
+			flushBuffer();
+
+			// Directory, with entries sorted by tag.
+			final long directoryOffset = position;
+			final ByteBuffer directory = ByteBuffer.allocate( directorySize );
+			directory.putShort( ( short ) NUM_ENTRIES );
+			entry( directory, 256, TYPE_LONG, width ); // ImageWidth
+			entry( directory, 257, TYPE_LONG, height ); // ImageLength
+			entry( directory, 258, TYPE_SHORT, 32 ); // BitsPerSample
+			entry( directory, 259, TYPE_SHORT, 1 ); // Compression: none
+			entry( directory, 262, TYPE_SHORT, 1 ); // Photometric: black is zero
+			entry( directory, 273, TYPE_LONG, dataOffset ); // StripOffsets
+			entry( directory, 277, TYPE_SHORT, 1 ); // SamplesPerPixel
+			entry( directory, 278, TYPE_LONG, height ); // RowsPerStrip
+			entry( directory, 279, TYPE_LONG, dataSize ); // StripByteCounts
+			entry( directory, 339, TYPE_SHORT, 1 ); // SampleFormat: unsigned
+			directory.putInt( 0 );
+			directory.flip();
+			write( directory, directoryOffset );
+			position += directorySize;
+
+			// Link the directory from the previous one.
+			final ByteBuffer pointer = ByteBuffer.allocate( 4 );
+			pointer.putInt( ( int ) directoryOffset );
+			pointer.flip();
+			write( pointer, nextDirectoryPointer );
+			nextDirectoryPointer = directoryOffset + directorySize - 4;
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			channel.close();
+		}
+
+		private void flushBuffer() throws IOException
+		{
+			buffer.flip();
+			final int n = buffer.remaining();
+			write( buffer, position );
+			position += n;
+			buffer.clear();
+		}
+
+		private void write( final ByteBuffer bytes, final long at ) throws IOException
+		{
+			long p = at;
+			while ( bytes.hasRemaining() )
+				p += channel.write( bytes, p );
+		}
+
+		private static void entry( final ByteBuffer directory, final int tag, final short type, final long value )
+		{
+			directory.putShort( ( short ) tag );
+			directory.putShort( type );
+			directory.putInt( 1 );
+			if ( type == TYPE_SHORT )
+				directory.putShort( ( short ) value ).putShort( ( short ) 0 );
+			else
+				directory.putInt( ( int ) value );
+		}
+	}
+}
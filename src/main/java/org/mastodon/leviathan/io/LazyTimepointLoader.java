@@ -0,0 +1,533 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.io;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.swing.SwingUtilities;
+
+import org.mastodon.graph.GraphListener;
+import org.mastodon.leviathan.model.SpatialIndexRebuildScheduler;
+import org.mastodon.leviathan.model.cell.Cell;
+import org.mastodon.leviathan.model.cell.CellGraph;
+import org.mastodon.leviathan.model.cell.CellModel;
+import org.mastodon.leviathan.model.cell.CellPool;
+import org.mastodon.leviathan.model.cell.Link;
+import org.mastodon.leviathan.model.junction.Junction;
+import org.mastodon.leviathan.model.junction.JunctionGraph;
+import org.mastodon.leviathan.model.junction.JunctionModel;
+import org.mastodon.leviathan.model.junction.JunctionPool;
+import org.mastodon.leviathan.model.junction.MembranePart;
+import org.mastodon.leviathan.model.junction.MembranePartPool;
+import org.mastodon.properties.PropertyChangeListener;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+
+/**
+ * Loads the time-points of a {@link TimepointChunkFile} into a junction model
+ * and a cell model on demand, and evicts the least recently used time-points
+ * when the estimated memory used by the loaded time-points exceeds a budget.
+ * <p>
+ * Edits made to a loaded time-point mark it as dirty. Dirty time-points are
+ * written back to the chunk file when they are evicted, and by
+ * {@link #flush()}. They are encoded while the graph locks are held, and
+ * appended to the file after the locks are released, so that evicting a
+ * time-point does not block the views on file I/O.
+ * <p>
+ * The graphs are changed on the thread loading or evicting time-points, but
+ * their graph-changed notifications are posted on the EDT.
+ */
+public class LazyTimepointLoader
+{
+
+	private final TimepointChunkFile file;
+
+	private final JunctionModel junctionModel;
+
+	private final CellModel cellModel;
+
+	/**
+	 * Loaded time-points and their estimated memory, in access order.
+	 */
+	private final LinkedHashMap< Integer, Long > loaded = new LinkedHashMap<>( 16, 0.75f, true );
+
+	/**
+	 * Edited time-points. Guarded by its own monitor, because it is updated by
+	 * model listeners while this loader may be waiting for the graph locks.
+	 */
+	private final TIntHashSet dirty = new TIntHashSet();
+
+	/**
+	 * Chunks of dirty time-points that were evicted or flushed, but not
+	 * written to the file yet. They are kept if writing fails, and written
+	 * again before the next read.
+	 */
+	private final TIntObjectHashMap< byte[] > pending = new TIntObjectHashMap<>();
+
+	private final ExecutorService executor;
+
+	private final DirtyTracker tracker = new DirtyTracker();
+
+	private long usedMemory = 0;
+
+	private volatile long memoryBudget;
+
+	/**
+	 * When <code>false</code>, changes to the graphs are made by this loader
+	 * and do not mark time-points as dirty.
+	 */
+	private volatile boolean tracking = true;
+
+	private volatile boolean closed = false;
+
+	/**
+	 * Creates a loader. The models must be empty, or only contain time-points
+	 * that are not in the file.
+	 *
+	 * @param file
+	 *            the chunk file.
+	 * @param junctionModel
+	 *            the junction model to load junctions and membranes into.
+	 * @param cellModel
+	 *            the cell model to load cells into.
+	 * @param memoryBudget
+	 *            the memory budget for loaded time-points, in bytes.
+	 */
+	public LazyTimepointLoader( final TimepointChunkFile file, final JunctionModel junctionModel, final CellModel cellModel, final long memoryBudget )
+	{
+		this.file = file;
+		this.junctionModel = junctionModel;
+		this.cellModel = cellModel;
+		this.memoryBudget = memoryBudget;
+		this.executor = Executors.newSingleThreadExecutor( r -> {
+			final Thread thread = new Thread( r, "Leviathan time-point loader" );
+			thread.setDaemon( true );
+			return thread;
+		} );
+
+		junctionModel.getGraph().addGraphListener( tracker.junctionListener );
+		cellModel.getGraph().addGraphListener( tracker.cellListener );
+		final JunctionPool junctionPool = ( JunctionPool ) junctionModel.getGraph().vertices().getRefPool();
+		junctionPool.positionProperty().propertyChangeListeners().add( tracker.junctionPropertyListener );
+		final MembranePartPool membranePool = ( MembranePartPool ) junctionModel.getGraph().edges().getRefPool();
+		membranePool.pixelsProperty().propertyChangeListeners().add( tracker.membranePropertyListener );
+		final CellPool cellPool = ( CellPool ) cellModel.getGraph().vertices().getRefPool();
+		cellPool.positionProperty().propertyChangeListeners().add( tracker.cellPropertyListener );
+		cellPool.boundaryProperty().propertyChangeListeners().add( tracker.cellPropertyListener );
+		cellPool.membraneProperty().propertyChangeListeners().add( tracker.cellPropertyListener );
+		cellPool.labelProperty().propertyChangeListeners().add( tracker.cellPropertyListener );
+	}
+
+	/**
+	 * Loads the specified time-point if it is not loaded yet, evicting other
+	 * time-points if needed.
+	 *
+	 * @param timepoint
+	 *            the time-point.
+	 * @throws IOException
+	 *             if an I/O error occurs while reading or writing back
+	 *             time-points.
+	 */
+	public synchronized void ensureLoaded( final int timepoint ) throws IOException
+	{
+		if ( closed || loaded.get( timepoint ) != null || !file.contains( timepoint ) )
+			return;
+
+		// The chunk of the time-point may be among the pending ones.
+		writePending();
+
+		final JunctionGraph junctionGraph = junctionModel.getGraph();
+		final CellGraph cellGraph = cellModel.getGraph();
+		final SpatialIndexRebuildScheduler rebuildScheduler = SpatialIndexRebuildScheduler.shared();
+		rebuildScheduler.pause();
+		junctionGraph.getLock().writeLock().lock();
+		cellGraph.getLock().writeLock().lock();
+		tracking = false;
+		try
+		{
+			final long memory = file.read( timepoint, junctionGraph, cellGraph );
+			loaded.put( timepoint, memory );
+			usedMemory += memory;
+			evictColdTimepoints( timepoint );
+		}
+		finally
+		{
+			tracking = true;
+			cellGraph.getLock().writeLock().unlock();
+			junctionGraph.getLock().writeLock().unlock();
+			rebuildScheduler.resume();
+		}
+		notifyGraphsChanged();
+		writePending();
+	}
+
+	/**
+	 * Loads the specified time-point in the background.
+	 *
+	 * @param timepoint
+	 *            the time-point.
+	 * @return a future that completes when the time-point is loaded, or
+	 *         <code>null</code> if this loader is closed.
+	 */
+	public Future< ? > requestLoad( final int timepoint )
+	{
+		try
+		{
+			return executor.submit( () -> {
+				ensureLoaded( timepoint );
+				return null;
+			} );
+		}
+		catch ( final RejectedExecutionException e )
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Removes the specified time-point from the models, writing it back to the
+	 * chunk file if it was edited.
+	 *
+	 * @param timepoint
+	 *            the time-point.
+	 * @throws IOException
+	 *             if an I/O error occurs while writing back the time-point.
+	 */
+	public synchronized void evict( final int timepoint ) throws IOException
+	{
+		final JunctionGraph junctionGraph = junctionModel.getGraph();
+		final CellGraph cellGraph = cellModel.getGraph();
+		junctionGraph.getLock().writeLock().lock();
+		cellGraph.getLock().writeLock().lock();
+		tracking = false;
+		try
+		{
+			final Long memory = loaded.remove( timepoint );
+			if ( memory == null )
+				return;
+			usedMemory -= memory;
+			remove( timepoint );
+		}
+		finally
+		{
+			tracking = true;
+			cellGraph.getLock().writeLock().unlock();
+			junctionGraph.getLock().writeLock().unlock();
+		}
+		notifyGraphsChanged();
+		writePending();
+	}
+
+	/**
+	 * Writes all the edited time-points back to the chunk file.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 */
+	public synchronized void flush() throws IOException
+	{
+		final JunctionGraph junctionGraph = junctionModel.getGraph();
+		final CellGraph cellGraph = cellModel.getGraph();
+		junctionGraph.getLock().readLock().lock();
+		cellGraph.getLock().readLock().lock();
+		try
+		{
+			final int[] timepoints;
+			synchronized ( dirty )
+			{
+				timepoints = dirty.toArray();
+				dirty.clear();
+			}
+			pending.putAll( TimepointChunkFile.encode( timepoints, junctionGraph, cellGraph ) );
+		}
+		finally
+		{
+			cellGraph.getLock().readLock().unlock();
+			junctionGraph.getLock().readLock().unlock();
+		}
+		writePending();
+	}
+
+	/**
+	 * Flushes the edited time-points, stops the background loading, stops
+	 * listening to the models, compacts and closes the chunk file.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs while flushing.
+	 */
+	public void close() throws IOException
+	{
+		// Pending background loads become no-ops.
+		closed = true;
+		executor.shutdown();
+		flush();
+		junctionModel.getGraph().removeGraphListener( tracker.junctionListener );
+		cellModel.getGraph().removeGraphListener( tracker.cellListener );
+		final JunctionPool junctionPool = ( JunctionPool ) junctionModel.getGraph().vertices().getRefPool();
+		junctionPool.positionProperty().propertyChangeListeners().remove( tracker.junctionPropertyListener );
+		final MembranePartPool membranePool = ( MembranePartPool ) junctionModel.getGraph().edges().getRefPool();
+		membranePool.pixelsProperty().propertyChangeListeners().remove( tracker.membranePropertyListener );
+		final CellPool cellPool = ( CellPool ) cellModel.getGraph().vertices().getRefPool();
+		cellPool.positionProperty().propertyChangeListeners().remove( tracker.cellPropertyListener );
+		cellPool.boundaryProperty().propertyChangeListeners().remove( tracker.cellPropertyListener );
+		cellPool.membraneProperty().propertyChangeListeners().remove( tracker.cellPropertyListener );
+		cellPool.labelProperty().propertyChangeListeners().remove( tracker.cellPropertyListener );
+		try
+		{
+			file.compact();
+		}
+		finally
+		{
+			file.close();
+		}
+	}
+
+	/**
+	 * Returns the junction model this loader loads time-points into.
+	 *
+	 * @return the junction model.
+	 */
+	public JunctionModel getJunctionModel()
+	{
+		return junctionModel;
+	}
+
+	/**
+	 * Returns the cell model this loader loads time-points into.
+	 *
+	 * @return the cell model.
+	 */
+	public CellModel getCellModel()
+	{
+		return cellModel;
+	}
+
+	public synchronized boolean isLoaded( final int timepoint )
+	{
+		return loaded.containsKey( timepoint );
+	}
+
+	/**
+	 * Returns the estimated memory used by the loaded time-points.
+	 *
+	 * @return the memory, in bytes.
+	 */
+	public synchronized long getUsedMemory()
+	{
+		return usedMemory;
+	}
+
+	public long getMemoryBudget()
+	{
+		return memoryBudget;
+	}
+
+	/**
+	 * Sets the memory budget. Time-points are evicted the next time one is
+	 * loaded.
+	 *
+	 * @param memoryBudget
+	 *            the memory budget, in bytes.
+	 */
+	public void setMemoryBudget( final long memoryBudget )
+	{
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * Evicts the least recently used time-points until the memory budget is
+	 * met, always keeping the specified time-point. Graph locks must be held.
+	 */
+	private void evictColdTimepoints( final int keep ) throws IOException
+	{
+		final Iterator< Map.Entry< Integer, Long > > it = loaded.entrySet().iterator();
+		while ( usedMemory > memoryBudget && it.hasNext() )
+		{
+			final Map.Entry< Integer, Long > entry = it.next();
+			final int t = entry.getKey();
+			if ( t == keep )
+				continue;
+			it.remove();
+			usedMemory -= entry.getValue();
+			remove( t );
+		}
+	}
+
+	/**
+	 * Removes a time-point from the graphs, encoding it to the pending chunks
+	 * first if it is dirty. Graph locks must be held.
+	 */
+	private void remove( final int timepoint ) throws IOException
+	{
+		final JunctionGraph junctionGraph = junctionModel.getGraph();
+		final CellGraph cellGraph = cellModel.getGraph();
+		final boolean wasDirty;
+		synchronized ( dirty )
+		{
+			wasDirty = dirty.remove( timepoint );
+		}
+		if ( wasDirty )
+			pending.putAll( TimepointChunkFile.encode( new int[] { timepoint }, junctionGraph, cellGraph ) );
+
+		final TIntArrayList cellIds = new TIntArrayList();
+		for ( final Cell cell : cellGraph.vertices() )
+			if ( cell.getTimepoint() == timepoint )
+				cellIds.add( cell.getInternalPoolIndex() );
+		final Cell cref = cellGraph.vertexRef();
+		for ( int i = 0; i < cellIds.size(); i++ )
+			cellGraph.remove( cellGraph.vertices().getRefPool().getObject( cellIds.get( i ), cref ) );
+		cellGraph.releaseRef( cref );
+
+		final TIntArrayList junctionIds = new TIntArrayList();
+		for ( final Junction junction : junctionGraph.vertices() )
+			if ( junction.getTimepoint() == timepoint )
+				junctionIds.add( junction.getInternalPoolIndex() );
+		final Junction jref = junctionGraph.vertexRef();
+		for ( int i = 0; i < junctionIds.size(); i++ )
+			junctionGraph.remove( junctionGraph.vertices().getRefPool().getObject( junctionIds.get( i ), jref ) );
+		junctionGraph.releaseRef( jref );
+	}
+
+	/**
+	 * Appends the pending chunks to the file. Graph locks must not be held.
+	 */
+	private void writePending() throws IOException
+	{
+		if ( pending.isEmpty() )
+			return;
+		file.write( pending );
+		pending.clear();
+	}
+
+	/**
+	 * Posts the graph-changed notifications on the EDT, where the views
+	 * listening to them expect them.
+	 */
+	private void notifyGraphsChanged()
+	{
+		final JunctionGraph junctionGraph = junctionModel.getGraph();
+		final CellGraph cellGraph = cellModel.getGraph();
+		SwingUtilities.invokeLater( () -> {
+			junctionGraph.notifyGraphChanged();
+			cellGraph.notifyGraphChanged();
+		} );
+	}
+
+	private void markDirty( final int timepoint )
+	{
+		if ( !tracking )
+			return;
+		synchronized ( dirty )
+		{
+			dirty.add( timepoint );
+		}
+	}
+
+	/**
+	 * Marks the time-points of edited objects as dirty.
+	 */
+	private class DirtyTracker
+	{
+
+		private final Junction jref = junctionModel.getGraph().vertexRef();
+
+		private final GraphListener< Junction, MembranePart > junctionListener = new GraphListener< Junction, MembranePart >()
+		{
+			@Override
+			public void graphRebuilt()
+			{}
+
+			@Override
+			public void vertexAdded( final Junction vertex )
+			{
+				markDirty( vertex.getTimepoint() );
+			}
+
+			@Override
+			public void vertexRemoved( final Junction vertex )
+			{
+				markDirty( vertex.getTimepoint() );
+			}
+
+			@Override
+			public void edgeAdded( final MembranePart edge )
+			{
+				markDirty( edge.getSource( jref ).getTimepoint() );
+			}
+
+			@Override
+			public void edgeRemoved( final MembranePart edge )
+			{
+				markDirty( edge.getSource( jref ).getTimepoint() );
+			}
+		};
+
+		private final GraphListener< Cell, Link > cellListener = new GraphListener< Cell, Link >()
+		{
+			@Override
+			public void graphRebuilt()
+			{}
+
+			@Override
+			public void vertexAdded( final Cell vertex )
+			{
+				markDirty( vertex.getTimepoint() );
+			}
+
+			@Override
+			public void vertexRemoved( final Cell vertex )
+			{
+				markDirty( vertex.getTimepoint() );
+			}
+
+			@Override
+			public void edgeAdded( final Link edge )
+			{}
+
+			@Override
+			public void edgeRemoved( final Link edge )
+			{}
+		};
+
+		private final PropertyChangeListener< Junction > junctionPropertyListener = junction -> markDirty( junction.getTimepoint() );
+
+		private final PropertyChangeListener< MembranePart > membranePropertyListener = membrane -> markDirty( membrane.getSource( jref ).getTimepoint() );
+
+		private final PropertyChangeListener< Cell > cellPropertyListener = cell -> markDirty( cell.getTimepoint() );
+	}
+}
@@ -0,0 +1,74 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.io;
+
+import org.mastodon.leviathan.model.cell.CellModel;
+import org.mastodon.leviathan.model.junction.JunctionModel;
+
+/**
+ * The content of a Leviathan project: the junction and cell models, and the
+ * path to the image data they were built from.
+ */
+public class LeviathanProject
+{
+
+	private final String imagePath;
+
+	private final JunctionModel junctionModel;
+
+	private final CellModel cellModel;
+
+	public LeviathanProject( final String imagePath, final JunctionModel junctionModel, final CellModel cellModel )
+	{
+		this.imagePath = imagePath;
+		this.junctionModel = junctionModel;
+		this.cellModel = cellModel;
+	}
+
+	/**
+	 * Returns the path to the image data, or <code>null</code> if the project
+	 * is not linked to image data.
+	 *
+	 * @return the image path.
+	 */
+	public String getImagePath()
+	{
+		return imagePath;
+	}
+
+	public JunctionModel getJunctionModel()
+	{
+		return junctionModel;
+	}
+
+	public CellModel getCellModel()
+	{
+		return cellModel;
+	}
+}
@@ -0,0 +1,599 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.mastodon.feature.Feature;
+import org.mastodon.feature.FeatureModel;
+import org.mastodon.feature.FeatureSpec;
+import org.mastodon.feature.FeatureSpecsService;
+import org.mastodon.feature.io.FeatureSerializationService;
+import org.mastodon.feature.io.FeatureSerializer;
+import org.mastodon.graph.Edge;
+import org.mastodon.graph.ReadOnlyGraph;
+import org.mastodon.graph.Vertex;
+import org.mastodon.graph.io.RawGraphIO.FileIdToGraphMap;
+import org.mastodon.graph.io.RawGraphIO.GraphToFileIdMap;
+import org.mastodon.io.ObjectToFileIdMap;
+import org.mastodon.leviathan.model.cell.Cell;
+import org.mastodon.leviathan.model.cell.CellGraph;
+import org.mastodon.leviathan.model.cell.CellModel;
+import org.mastodon.leviathan.model.cell.Link;
+import org.mastodon.leviathan.model.junction.Junction;
+import org.mastodon.leviathan.model.junction.JunctionGraph;
+import org.mastodon.leviathan.model.junction.JunctionModel;
+import org.mastodon.leviathan.model.junction.MembranePart;
+import org.scijava.Context;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+
+/**
+ * Saves and loads Leviathan projects.
+ * <p>
+ * A project is a folder containing:
+ * <ul>
+ * <li><code>project.properties</code>: the format version, the path to the
+ * image data and the physical units.
+ * <li><code>junctions/</code> and <code>cells/</code>: one folder per model,
+ * each with the raw model graph (<code>model.raw</code>), the raw tags
+ * (<code>tags.raw</code>), the pool indices of the objects at the time of
+ * saving (<code>index.raw</code>) and one file per feature in a
+ * <code>features/</code> folder.
+ * </ul>
+ * The two models are written and read concurrently. Files are read through
+ * NIO channels with large buffers.
+ * <p>
+ * Cells store the pool indices of their membranes, and membranes store the
+ * pool indices of the cells on their sides. Pool indices are not preserved
+ * by the raw graph format, so the indices saved with each model are used to
+ * remap these ids after loading.
+ */
+public class LeviathanProjectIO
+{
+
+	public static final String FORMAT_VERSION = "1";
+
+	private static final String PROJECT_FILE = "project.properties";
+
+	private static final String JUNCTION_FOLDER = "junctions";
+
+	private static final String CELL_FOLDER = "cells";
+
+	private static final String MODEL_FILE = "model.raw";
+
+	private static final String TAGS_FILE = "tags.raw";
+
+	private static final String INDEX_FILE = "index.raw";
+
+	private static final String FEATURE_FOLDER = "features";
+
+	private static final String VERSION_KEY = "version";
+
+	private static final String IMAGE_PATH_KEY = "image.path";
+
+	private static final String SPACE_UNITS_KEY = "space.units";
+
+	private static final String TIME_UNITS_KEY = "time.units";
+
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * Saves a project to the specified folder. Files of a previous project in
+	 * this folder are overwritten.
+	 *
+	 * @param folder
+	 *            the project folder, created if it does not exist.
+	 * @param project
+	 *            the project to save. Its models may be <code>null</code>.
+	 * @param context
+	 *            the context, used to discover feature serializers.
+	 * @throws IOException
+	 *             if an I/O error occurs while writing the project.
+	 */
+	public static void save( final File folder, final LeviathanProject project, final Context context ) throws IOException
+	{
+		mkdirs( folder );
+		final FeatureSerializationService serializationService = context.getService( FeatureSerializationService.class );
+		final JunctionModel junctionModel = project.getJunctionModel();
+		final CellModel cellModel = project.getCellModel();
+
+		final Properties properties = new Properties();
+		properties.setProperty( VERSION_KEY, FORMAT_VERSION );
+		if ( project.getImagePath() != null )
+			properties.setProperty( IMAGE_PATH_KEY, project.getImagePath() );
+		final String spaceUnits = junctionModel != null ? junctionModel.getSpaceUnits() : cellModel != null ? cellModel.getSpaceUnits() : null;
+		final String timeUnits = junctionModel != null ? junctionModel.getTimeUnits() : cellModel != null ? cellModel.getTimeUnits() : null;
+		if ( spaceUnits != null )
+			properties.setProperty( SPACE_UNITS_KEY, spaceUnits );
+		if ( timeUnits != null )
+			properties.setProperty( TIME_UNITS_KEY, timeUnits );
+		try (final OutputStream os = output( new File( folder, PROJECT_FILE ) ))
+		{
+			properties.store( os, "Leviathan project" );
+		}
+
+		final ExecutorService executor = Executors.newFixedThreadPool( 2 );
+		try
+		{
+			final Future< ? > junctionFuture = executor.submit( () -> {
+				if ( junctionModel != null )
+					saveJunctionModel( junctionModel, new File( folder, JUNCTION_FOLDER ), serializationService );
+				return null;
+			} );
+			final Future< ? > cellFuture = executor.submit( () -> {
+				if ( cellModel != null )
+					saveCellModel( cellModel, new File( folder, CELL_FOLDER ), serializationService );
+				return null;
+			} );
+			get( junctionFuture );
+			get( cellFuture );
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Loads a project from the specified folder.
+	 *
+	 * @param folder
+	 *            the project folder.
+	 * @param context
+	 *            the context, used to discover feature serializers.
+	 * @return a new project. Its models are <code>null</code> if they were not
+	 *         saved in the project.
+	 * @throws IOException
+	 *             if an I/O error occurs while reading the project.
+	 */
+	public static LeviathanProject load( final File folder, final Context context ) throws IOException
+	{
+		final Properties properties = new Properties();
+		try (final InputStream is = input( new File( folder, PROJECT_FILE ) ))
+		{
+			properties.load( is );
+		}
+		final String version = properties.getProperty( VERSION_KEY );
+		if ( !FORMAT_VERSION.equals( version ) )
+			throw new IOException( "Unsupported Leviathan project version: " + version );
+		final String imagePath = properties.getProperty( IMAGE_PATH_KEY );
+		final String spaceUnits = properties.getProperty( SPACE_UNITS_KEY, "pixel" );
+		final String timeUnits = properties.getProperty( TIME_UNITS_KEY, "frame" );
+
+		final FeatureSerializationService serializationService = context.getService( FeatureSerializationService.class );
+		final FeatureSpecsService specsService = context.getService( FeatureSpecsService.class );
+		final File junctionFolder = new File( folder, JUNCTION_FOLDER );
+		final File cellFolder = new File( folder, CELL_FOLDER );
+
+		final ExecutorService executor = Executors.newFixedThreadPool( 2 );
+		final Loaded< JunctionModel > junctions;
+		final Loaded< CellModel > cells;
+		try
+		{
+			final Future< Loaded< JunctionModel > > junctionFuture = executor.submit( () -> junctionFolder.isDirectory()
+					? loadJunctionModel( junctionFolder, spaceUnits, timeUnits, specsService, serializationService )
+					: null );
+			final Future< Loaded< CellModel > > cellFuture = executor.submit( () -> cellFolder.isDirectory()
+					? loadCellModel( cellFolder, spaceUnits, timeUnits, specsService, serializationService )
+					: null );
+			junctions = get( junctionFuture );
+			cells = get( cellFuture );
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+
+		if ( junctions != null && cells != null )
+			remapIds( junctions.model.getGraph(), junctions.edgeMap, cells.model.getGraph(), cells.vertexMap );
+
+		return new LeviathanProject(
+				imagePath,
+				junctions == null ? null : junctions.model,
+				cells == null ? null : cells.model );
+	}
+
+	/*
+	 * SAVING.
+	 */
+
+	private static void saveJunctionModel( final JunctionModel model, final File folder, final FeatureSerializationService serializationService ) throws IOException
+	{
+		mkdirs( folder );
+		final JunctionGraph graph = model.getGraph();
+		graph.getLock().readLock().lock();
+		try
+		{
+			final GraphToFileIdMap< Junction, MembranePart > idmap = model.saveRaw(
+					channelOutput( new File( folder, MODEL_FILE ) ),
+					channelOutput( new File( folder, TAGS_FILE ) ) );
+			writeIndex( graph, idmap, new File( folder, INDEX_FILE ) );
+			writeFeatures( model.getFeatureModel(), Junction.class, MembranePart.class, idmap, new File( folder, FEATURE_FOLDER ), serializationService );
+		}
+		finally
+		{
+			graph.getLock().readLock().unlock();
+		}
+	}
+
+	private static void saveCellModel( final CellModel model, final File folder, final FeatureSerializationService serializationService ) throws IOException
+	{
+		mkdirs( folder );
+		final CellGraph graph = model.getGraph();
+		graph.getLock().readLock().lock();
+		try
+		{
+			final GraphToFileIdMap< Cell, Link > idmap = model.saveRaw(
+					channelOutput( new File( folder, MODEL_FILE ) ),
+					channelOutput( new File( folder, TAGS_FILE ) ) );
+			writeIndex( graph, idmap, new File( folder, INDEX_FILE ) );
+			writeFeatures( model.getFeatureModel(), Cell.class, Link.class, idmap, new File( folder, FEATURE_FOLDER ), serializationService );
+		}
+		finally
+		{
+			graph.getLock().readLock().unlock();
+		}
+	}
+
+	/**
+	 * Writes the pool indices of the vertices then of the edges, in file-id
+	 * order.
+	 */
+	private static < V extends Vertex< E >, E extends Edge< V > > void writeIndex( final ReadOnlyGraph< V, E > graph, final GraphToFileIdMap< V, E > idmap, final File file ) throws IOException
+	{
+		final int[] vertexIndices = new int[ graph.vertices().size() ];
+		for ( final V v : graph.vertices() )
+			vertexIndices[ idmap.vertices().getId( v ) ] = graph.getGraphIdBimap().getVertexId( v );
+		final int[] edgeIndices = new int[ graph.edges().size() ];
+		for ( final E e : graph.edges() )
+			edgeIndices[ idmap.edges().getId( e ) ] = graph.getGraphIdBimap().getEdgeId( e );
+
+		try (final DataOutputStream dos = new DataOutputStream( output( file ) ))
+		{
+			writeInts( vertexIndices, dos );
+			writeInts( edgeIndices, dos );
+		}
+	}
+
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	private static < V extends Vertex< E >, E extends Edge< V > > void writeFeatures(
+			final FeatureModel featureModel,
+			final Class< V > vertexClass,
+			final Class< E > edgeClass,
+			final GraphToFileIdMap< V, E > idmap,
+			final File folder,
+			final FeatureSerializationService serializationService ) throws IOException
+	{
+		mkdirs( folder );
+		// Remove features of a previous save.
+		final File[] previous = folder.listFiles( ( dir, name ) -> name.endsWith( ".raw" ) );
+		if ( previous != null )
+			for ( final File file : previous )
+				Files.delete( file.toPath() );
+
+		int i = 0;
+		for ( final FeatureSpec< ?, ? > spec : featureModel.getFeatureSpecs() )
+		{
+			final ObjectToFileIdMap fileIdMap;
+			if ( vertexClass.equals( spec.getTargetClass() ) )
+				fileIdMap = idmap.vertices();
+			else if ( edgeClass.equals( spec.getTargetClass() ) )
+				fileIdMap = idmap.edges();
+			else
+				continue;
+
+			final FeatureSerializer serializer = serializationService.getFeatureSerializerFor( spec );
+			if ( serializer == null )
+				continue;
+
+			final Feature< ? > feature = featureModel.getFeature( spec );
+			final File file = new File( folder, String.format( "feature-%03d.raw", i++ ) );
+			try (final ObjectOutputStream oos = new ObjectOutputStream( output( file ) ))
+			{
+				oos.writeUTF( spec.getKey() );
+				serializer.serialize( feature, fileIdMap, oos );
+			}
+		}
+	}
+
+	/*
+	 * LOADING.
+	 */
+
+	private static Loaded< JunctionModel > loadJunctionModel(
+			final File folder,
+			final String spaceUnits,
+			final String timeUnits,
+			final FeatureSpecsService specsService,
+			final FeatureSerializationService serializationService ) throws IOException
+	{
+		final JunctionModel model = new JunctionModel( spaceUnits, timeUnits );
+		final FileIdToGraphMap< Junction, MembranePart > idmap = model.loadRaw(
+				channelInput( new File( folder, MODEL_FILE ) ),
+				optionalChannelInput( new File( folder, TAGS_FILE ) ) );
+		final Loaded< JunctionModel > loaded = new Loaded<>( model, model.getGraph(), idmap, new File( folder, INDEX_FILE ) );
+		readFeatures( model.getFeatureModel(), model.getGraph(), Junction.class, MembranePart.class, idmap, new File( folder, FEATURE_FOLDER ), specsService, serializationService );
+		return loaded;
+	}
+
+	private static Loaded< CellModel > loadCellModel(
+			final File folder,
+			final String spaceUnits,
+			final String timeUnits,
+			final FeatureSpecsService specsService,
+			final FeatureSerializationService serializationService ) throws IOException
+	{
+		final CellModel model = new CellModel( spaceUnits, timeUnits );
+		final FileIdToGraphMap< Cell, Link > idmap = model.loadRaw(
+				channelInput( new File( folder, MODEL_FILE ) ),
+				optionalChannelInput( new File( folder, TAGS_FILE ) ) );
+		final Loaded< CellModel > loaded = new Loaded<>( model, model.getGraph(), idmap, new File( folder, INDEX_FILE ) );
+		readFeatures( model.getFeatureModel(), model.getGraph(), Cell.class, Link.class, idmap, new File( folder, FEATURE_FOLDER ), specsService, serializationService );
+		return loaded;
+	}
+
+	@SuppressWarnings( { "unchecked", "rawtypes" } )
+	private static < V extends Vertex< E >, E extends Edge< V > > void readFeatures(
+			final FeatureModel featureModel,
+			final ReadOnlyGraph< V, E > graph,
+			final Class< V > vertexClass,
+			final Class< E > edgeClass,
+			final FileIdToGraphMap< V, E > idmap,
+			final File folder,
+			final FeatureSpecsService specsService,
+			final FeatureSerializationService serializationService ) throws IOException
+	{
+		final File[] files = folder.listFiles( ( dir, name ) -> name.endsWith( ".raw" ) );
+		if ( files == null )
+			return;
+		Arrays.sort( files );
+
+		featureModel.pauseListeners();
+		try
+		{
+			for ( final File file : files )
+			{
+				try (final ObjectInputStream ois = new ObjectInputStream( input( file ) ))
+				{
+					final String key = ois.readUTF();
+					final FeatureSpec< ?, ? > spec = specsService.getSpec( key );
+					if ( spec == null )
+						continue;
+					final FeatureSerializer serializer = serializationService.getFeatureSerializerFor( spec );
+					if ( serializer == null )
+						continue;
+
+					final Feature< ? > feature;
+					if ( vertexClass.equals( spec.getTargetClass() ) )
+						feature = serializer.deserialize( idmap.vertices(), graph.vertices(), ois );
+					else if ( edgeClass.equals( spec.getTargetClass() ) )
+						feature = serializer.deserialize( idmap.edges(), graph.edges(), ois );
+					else
+						continue;
+					featureModel.declareFeature( feature );
+				}
+				catch ( final ClassNotFoundException e )
+				{
+					throw new IOException( "Could not read feature file " + file, e );
+				}
+			}
+		}
+		finally
+		{
+			featureModel.resumeListeners();
+		}
+	}
+
+	/**
+	 * Updates the membrane ids stored in cells and the cell ids stored in
+	 * membranes, if the pool indices changed between saving and loading.
+	 */
+	private static void remapIds( final JunctionGraph junctionGraph, final TIntIntHashMap membraneMap, final CellGraph cellGraph, final TIntIntHashMap cellMap )
+	{
+		if ( membraneMap != null )
+		{
+			for ( final Cell cell : cellGraph.vertices() )
+			{
+				final int[] membranes = cell.getMembranes();
+				if ( membranes == null )
+					continue;
+				final int[] remapped = new int[ membranes.length ];
+				for ( int i = 0; i < membranes.length; i++ )
+					remapped[ i ] = membraneMap.get( membranes[ i ] );
+				cell.setMembranes( remapped );
+			}
+		}
+		if ( cellMap != null )
+		{
+			for ( final MembranePart membrane : junctionGraph.edges() )
+			{
+				final int cw = membrane.getCellIdCW();
+				if ( cw >= 0 )
+					membrane.setCellIdCW( cellMap.get( cw ) );
+				final int ccw = membrane.getCellIdCCW();
+				if ( ccw >= 0 )
+					membrane.setCellIdCCW( cellMap.get( ccw ) );
+			}
+		}
+	}
+
+	/**
+	 * A loaded model, with the maps from the pool indices at the time of
+	 * saving to the current ones. The maps are <code>null</code> when pool
+	 * indices are unchanged.
+	 */
+	private static final class Loaded< M >
+	{
+
+		private final M model;
+
+		private final TIntIntHashMap vertexMap;
+
+		private final TIntIntHashMap edgeMap;
+
+		< V extends Vertex< E >, E extends Edge< V > > Loaded( final M model, final ReadOnlyGraph< V, E > graph, final FileIdToGraphMap< V, E > idmap, final File indexFile ) throws IOException
+		{
+			this.model = model;
+			try (final DataInputStream dis = new DataInputStream( input( indexFile ) ))
+			{
+				final int[] vertexIndices = readInts( dis );
+				final int[] edgeIndices = readInts( dis );
+
+				final V vref = graph.vertexRef();
+				TIntIntHashMap vmap = null;
+				for ( int id = 0; id < vertexIndices.length; id++ )
+				{
+					final int index = graph.getGraphIdBimap().getVertexId( idmap.vertices().getObject( id, vref ) );
+					if ( vmap == null && index != vertexIndices[ id ] )
+						vmap = identity( vertexIndices, id );
+					if ( vmap != null )
+						vmap.put( vertexIndices[ id ], index );
+				}
+				graph.releaseRef( vref );
+				this.vertexMap = vmap;
+
+				final E eref = graph.edgeRef();
+				TIntIntHashMap emap = null;
+				for ( int id = 0; id < edgeIndices.length; id++ )
+				{
+					final int index = graph.getGraphIdBimap().getEdgeId( idmap.edges().getObject( id, eref ) );
+					if ( emap == null && index != edgeIndices[ id ] )
+						emap = identity( edgeIndices, id );
+					if ( emap != null )
+						emap.put( edgeIndices[ id ], index );
+				}
+				graph.releaseRef( eref );
+				this.edgeMap = emap;
+			}
+		}
+
+		private static TIntIntHashMap identity( final int[] indices, final int n )
+		{
+			final TIntIntHashMap map = new TIntIntHashMap( indices.length, 0.5f, -1, -1 );
+			for ( int i = 0; i < n; i++ )
+				map.put( indices[ i ], indices[ i ] );
+			return map;
+		}
+	}
+
+	/*
+	 * UTILITIES.
+	 */
+
+	private static void writeInts( final int[] values, final DataOutputStream dos ) throws IOException
+	{
+		dos.writeInt( values.length );
+		for ( final int value : values )
+			dos.writeInt( value );
+	}
+
+	private static int[] readInts( final DataInputStream dis ) throws IOException
+	{
+		final int[] values = new int[ dis.readInt() ];
+		for ( int i = 0; i < values.length; i++ )
+			values[ i ] = dis.readInt();
+		return values;
+	}
+
+	private static OutputStream channelOutput( final File file ) throws IOException
+	{
+		return Channels.newOutputStream( FileChannel.open( file.toPath(),
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE ) );
+	}
+
+	private static OutputStream output( final File file ) throws IOException
+	{
+		return new BufferedOutputStream( channelOutput( file ), BUFFER_SIZE );
+	}
+
+	private static InputStream channelInput( final File file ) throws IOException
+	{
+		return Channels.newInputStream( FileChannel.open( file.toPath(), StandardOpenOption.READ ) );
+	}
+
+	private static InputStream optionalChannelInput( final File file ) throws IOException
+	{
+		return file.exists() ? channelInput( file ) : null;
+	}
+
+	private static InputStream input( final File file ) throws IOException
+	{
+		return new BufferedInputStream( channelInput( file ), BUFFER_SIZE );
+	}
+
+	private static void mkdirs( final File folder ) throws IOException
+	{
+		if ( !folder.isDirectory() && !folder.mkdirs() )
+			throw new IOException( "Could not create folder " + folder );
+	}
+
+	private static < T > T get( final Future< T > future ) throws IOException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException( e );
+		}
+		catch ( final ExecutionException e )
+		{
+			if ( e.getCause() instanceof IOException )
+				throw ( IOException ) e.getCause();
+			if ( e.getCause() instanceof RuntimeException )
+				throw ( RuntimeException ) e.getCause();
+			throw new IOException( e.getCause() );
+		}
+	}
+
+	private LeviathanProjectIO()
+	{}
+}
@@ -0,0 +1,728 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.mastodon.Ref;
+import org.mastodon.leviathan.model.cell.Cell;
+import org.mastodon.leviathan.model.cell.CellGraph;
+import org.mastodon.leviathan.model.cell.CellModel;
+import org.mastodon.leviathan.model.io.CoordinatesPropertyMapSerializer;
+import org.mastodon.leviathan.model.io.VarintBlock;
+import org.mastodon.leviathan.model.junction.Junction;
+import org.mastodon.leviathan.model.junction.JunctionGraph;
+import org.mastodon.leviathan.model.junction.JunctionModel;
+import org.mastodon.leviathan.model.junction.MembranePart;
+import org.mastodon.spatial.HasTimepoint;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+
+/**
+ * A file storing the junctions, membranes and cells of a project chunked by
+ * time-point, so that time-points can be read independently.
+ * <p>
+ * The file starts with a fixed-size header giving the position of the index.
+ * The index lists the position and size of the chunk of each time-point. A
+ * chunk stores the junctions, membranes and cells of one time-point, with ids
+ * local to the chunk, encoded as a {@link VarintBlock}. Tags and features are
+ * not stored.
+ * <p>
+ * Existing chunks are never modified in place. Writing time-points appends
+ * their new chunks and a new index at the end of the file, then updates the
+ * header. An interrupted write leaves the previous index, and the chunks it
+ * points to, intact. Creating the file and {@link #compact() compacting} it
+ * write a complete file next to it, which then replaces it with an atomic
+ * move.
+ */
+public class TimepointChunkFile implements Closeable
+{
+
+	private static final int MAGIC = 0x4C565443; // LVTC
+
+	private static final int VERSION = 2;
+
+	private static final int HEADER_SIZE = 4 + 4 + 8;
+
+	private static final int NO_ID = -1;
+
+	private final Path path;
+
+	/**
+	 * Channel on the file, replaced when the file is compacted.
+	 */
+	private FileChannel channel;
+
+	/**
+	 * Time-point to chunk position and size.
+	 */
+	private TIntObjectHashMap< long[] > index;
+
+	private final String spaceUnits;
+
+	private final String timeUnits;
+
+	private TimepointChunkFile( final Path path, final FileChannel channel, final String spaceUnits, final String timeUnits, final TIntObjectHashMap< long[] > index )
+	{
+		this.path = path;
+		this.channel = channel;
+		this.spaceUnits = spaceUnits;
+		this.timeUnits = timeUnits;
+		this.index = index;
+	}
+
+	/**
+	 * Writes all the time-points of the specified models to a new chunk file,
+	 * and returns it open.
+	 *
+	 * @param file
+	 *            the file to write. It is overwritten if it exists.
+	 * @param junctionModel
+	 *            the junction model.
+	 * @param cellModel
+	 *            the cell model built from the junction model.
+	 * @return the chunk file, open for reading and rewriting.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 */
+	public static TimepointChunkFile create( final File file, final JunctionModel junctionModel, final CellModel cellModel ) throws IOException
+	{
+		final Path path = file.toPath();
+		final Path tmp = tempPath( path );
+		final JunctionGraph junctionGraph = junctionModel.getGraph();
+		final CellGraph cellGraph = cellModel.getGraph();
+		junctionGraph.getLock().readLock().lock();
+		cellGraph.getLock().readLock().lock();
+		try (final FileChannel out = FileChannel.open( tmp,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE ))
+		{
+			final TIntObjectHashMap< TIntArrayList > junctions = groupByTimepoint( junctionGraph.vertices() );
+			final TIntObjectHashMap< TIntArrayList > cells = groupByTimepoint( cellGraph.vertices() );
+			final TIntHashSet tps = new TIntHashSet( junctions.keySet() );
+			tps.addAll( cells.keySet() );
+			final int[] timepoints = tps.toArray();
+			Arrays.sort( timepoints );
+
+			final TIntObjectHashMap< long[] > index = new TIntObjectHashMap<>( 2 * timepoints.length );
+			long position = HEADER_SIZE;
+			for ( final int t : timepoints )
+			{
+				final byte[] bytes = encode( junctionGraph, orEmpty( junctions.get( t ) ), cellGraph, orEmpty( cells.get( t ) ) );
+				writeFully( out, ByteBuffer.wrap( bytes ), position );
+				index.put( t, new long[] { position, bytes.length } );
+				position += bytes.length;
+			}
+			writeIndex( out, junctionModel.getSpaceUnits(), junctionModel.getTimeUnits(), index, position );
+			out.force( true );
+		}
+		catch ( final IOException e )
+		{
+			Files.deleteIfExists( tmp );
+			throw e;
+		}
+		finally
+		{
+			cellGraph.getLock().readLock().unlock();
+			junctionGraph.getLock().readLock().unlock();
+		}
+		Files.move( tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+		return open( file );
+	}
+
+	/**
+	 * Opens an existing chunk file.
+	 *
+	 * @param file
+	 *            the file.
+	 * @return the chunk file, open for reading and rewriting.
+	 * @throws IOException
+	 *             if an I/O error occurs or if the file is not a chunk file.
+	 */
+	public static TimepointChunkFile open( final File file ) throws IOException
+	{
+		final Path path = file.toPath();
+		final FileChannel channel = FileChannel.open( path, StandardOpenOption.READ, StandardOpenOption.WRITE );
+		try
+		{
+			final ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE );
+			readFully( channel, header, 0 );
+			if ( header.getInt( 0 ) != MAGIC )
+				throw new IOException( "Not a Leviathan time-point chunk file: " + file );
+			if ( header.getInt( 4 ) != VERSION )
+				throw new IOException( "Unsupported chunk file version: " + header.getInt( 4 ) );
+			final long indexPosition = header.getLong( 8 );
+
+			final ByteBuffer buffer = ByteBuffer.allocate( ( int ) ( channel.size() - indexPosition ) );
+			readFully( channel, buffer, indexPosition );
+			try (final DataInputStream dis = new DataInputStream( new ByteArrayInputStream( buffer.array() ) ))
+			{
+				final String spaceUnits = dis.readUTF();
+				final String timeUnits = dis.readUTF();
+				final int n = dis.readInt();
+				final TIntObjectHashMap< long[] > index = new TIntObjectHashMap<>( 2 * n );
+				for ( int i = 0; i < n; i++ )
+				{
+					final int t = dis.readInt();
+					final long position = dis.readLong();
+					final long size = dis.readLong();
+					index.put( t, new long[] { position, size } );
+				}
+				return new TimepointChunkFile( path, channel, spaceUnits, timeUnits, index );
+			}
+		}
+		catch ( final IOException e )
+		{
+			channel.close();
+			throw e;
+		}
+	}
+
+	public String getSpaceUnits()
+	{
+		return spaceUnits;
+	}
+
+	public String getTimeUnits()
+	{
+		return timeUnits;
+	}
+
+	/**
+	 * Returns the time-points stored in this file, sorted.
+	 *
+	 * @return a new array.
+	 */
+	public synchronized int[] getTimepoints()
+	{
+		final int[] timepoints = index.keys();
+		Arrays.sort( timepoints );
+		return timepoints;
+	}
+
+	public synchronized boolean contains( final int timepoint )
+	{
+		return index.containsKey( timepoint );
+	}
+
+	/**
+	 * Reads the chunk of the specified time-point and adds its junctions,
+	 * membranes and cells to the specified graphs. The caller is responsible
+	 * for locking the graphs.
+	 *
+	 * @param timepoint
+	 *            the time-point.
+	 * @param junctionGraph
+	 *            the graph to add junctions and membranes to.
+	 * @param cellGraph
+	 *            the graph to add cells to.
+	 * @return an estimate of the memory used by the added objects, in bytes.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 */
+	public long read( final int timepoint, final JunctionGraph junctionGraph, final CellGraph cellGraph ) throws IOException
+	{
+		final ByteBuffer buffer;
+		synchronized ( this )
+		{
+			final long[] entry = index.get( timepoint );
+			if ( entry == null )
+				return 0;
+			buffer = ByteBuffer.allocate( ( int ) entry[ 1 ] );
+			readFully( channel, buffer, entry[ 0 ] );
+		}
+		try (final ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( buffer.array() ) ))
+		{
+			return decode( timepoint, VarintBlock.read( ois ), junctionGraph, cellGraph );
+		}
+	}
+
+	/**
+	 * Writes the specified time-point from the graphs, replacing its previous
+	 * chunk. The caller is responsible for locking the graphs.
+	 *
+	 * @param timepoint
+	 *            the time-point.
+	 * @param junctionGraph
+	 *            the junction graph.
+	 * @param cellGraph
+	 *            the cell graph.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 */
+	public void write( final int timepoint, final JunctionGraph junctionGraph, final CellGraph cellGraph ) throws IOException
+	{
+		write( new int[] { timepoint }, junctionGraph, cellGraph );
+	}
+
+	/**
+	 * Writes the specified time-points from the graphs, replacing their
+	 * previous chunks. The caller is responsible for locking the graphs.
+	 *
+	 * @param timepoints
+	 *            the time-points.
+	 * @param junctionGraph
+	 *            the junction graph.
+	 * @param cellGraph
+	 *            the cell graph.
+	 * @throws IOException
+	 *             if an I/O error occurs. The file is then left unchanged.
+	 */
+	public void write( final int[] timepoints, final JunctionGraph junctionGraph, final CellGraph cellGraph ) throws IOException
+	{
+		write( encode( timepoints, junctionGraph, cellGraph ) );
+	}
+
+	/**
+	 * Encodes the specified time-points of the graphs as chunks, to be written
+	 * later with {@link #write(TIntObjectHashMap)}. This only takes the time
+	 * needed to visit the graphs, so that the caller can hold the graph locks
+	 * while encoding, and release them before writing. The caller is
+	 * responsible for locking the graphs.
+	 *
+	 * @param timepoints
+	 *            the time-points.
+	 * @param junctionGraph
+	 *            the junction graph.
+	 * @param cellGraph
+	 *            the cell graph.
+	 * @return a new map, from time-point to chunk.
+	 * @throws IOException
+	 *             if an I/O error occurs while encoding.
+	 */
+	public static TIntObjectHashMap< byte[] > encode( final int[] timepoints, final JunctionGraph junctionGraph, final CellGraph cellGraph ) throws IOException
+	{
+		final TIntObjectHashMap< byte[] > chunks = new TIntObjectHashMap<>( 2 * timepoints.length );
+		if ( timepoints.length == 0 )
+			return chunks;
+		final TIntObjectHashMap< TIntArrayList > junctions = groupByTimepoint( junctionGraph.vertices() );
+		final TIntObjectHashMap< TIntArrayList > cells = groupByTimepoint( cellGraph.vertices() );
+		for ( final int t : timepoints )
+			chunks.put( t, encode( junctionGraph, orEmpty( junctions.get( t ) ), cellGraph, orEmpty( cells.get( t ) ) ) );
+		return chunks;
+	}
+
+	/**
+	 * Appends the specified chunks at the end of the file, replacing the
+	 * chunks of the same time-points, followed by a new index. The header is
+	 * updated last, so that an interrupted write leaves the previous index in
+	 * effect. The space of the replaced chunks is reclaimed by
+	 * {@link #compact()}.
+	 *
+	 * @param chunks
+	 *            the chunks, by time-point, as returned by
+	 *            {@link #encode(int[], JunctionGraph, CellGraph)}.
+	 * @throws IOException
+	 *             if an I/O error occurs. The file is then left unchanged.
+	 */
+	public synchronized void write( final TIntObjectHashMap< byte[] > chunks ) throws IOException
+	{
+		if ( chunks.isEmpty() )
+			return;
+
+		final TIntObjectHashMap< long[] > newIndex = new TIntObjectHashMap<>( index );
+		long position = channel.size();
+		final int[] timepoints = chunks.keys();
+		Arrays.sort( timepoints );
+		for ( final int t : timepoints )
+		{
+			final byte[] bytes = chunks.get( t );
+			writeFully( channel, ByteBuffer.wrap( bytes ), position );
+			newIndex.put( t, new long[] { position, bytes.length } );
+			position += bytes.length;
+		}
+		writeIndex( channel, spaceUnits, timeUnits, newIndex, position );
+		channel.force( true );
+		index = newIndex;
+	}
+
+	/**
+	 * Rewrites this file without the space left by replaced chunks and
+	 * indices, if it is larger than the space used by the current chunks.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs. The file is then left unchanged.
+	 */
+	public synchronized void compact() throws IOException
+	{
+		long used = HEADER_SIZE;
+		for ( final long[] entry : index.valueCollection() )
+			used += entry[ 1 ];
+		if ( channel.size() > 2 * used )
+			rewrite();
+	}
+
+	@Override
+	public synchronized void close() throws IOException
+	{
+		channel.close();
+	}
+
+	/*
+	 * FILE LAYOUT.
+	 */
+
+	/**
+	 * Writes a compacted copy of this file to a temporary file, then moves it
+	 * over this file.
+	 */
+	private void rewrite() throws IOException
+	{
+		final int[] timepoints = index.keys();
+		Arrays.sort( timepoints );
+
+		final Path tmp = tempPath( path );
+		final TIntObjectHashMap< long[] > newIndex = new TIntObjectHashMap<>( 2 * timepoints.length );
+		try (final FileChannel out = FileChannel.open( tmp,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE ))
+		{
+			long position = HEADER_SIZE;
+			for ( final int t : timepoints )
+			{
+				final long[] entry = index.get( t );
+				final ByteBuffer buffer = ByteBuffer.allocate( ( int ) entry[ 1 ] );
+				readFully( channel, buffer, entry[ 0 ] );
+				final int size = buffer.remaining();
+				writeFully( out, buffer, position );
+				newIndex.put( t, new long[] { position, size } );
+				position += size;
+			}
+			writeIndex( out, spaceUnits, timeUnits, newIndex, position );
+			out.force( true );
+		}
+		catch ( final IOException e )
+		{
+			Files.deleteIfExists( tmp );
+			throw e;
+		}
+
+		channel.close();
+		try
+		{
+			Files.move( tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+			index = newIndex;
+		}
+		finally
+		{
+			channel = FileChannel.open( path, StandardOpenOption.READ, StandardOpenOption.WRITE );
+		}
+	}
+
+	/**
+	 * Writes the index at the specified position, after the last chunk, then
+	 * the header pointing to it. The index is forced to the disk before the
+	 * header is written.
+	 */
+	private static void writeIndex( final FileChannel out, final String spaceUnits, final String timeUnits, final TIntObjectHashMap< long[] > index, final long position ) throws IOException
+	{
+		final int[] timepoints = index.keys();
+		Arrays.sort( timepoints );
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (final DataOutputStream dos = new DataOutputStream( bos ))
+		{
+			dos.writeUTF( spaceUnits );
+			dos.writeUTF( timeUnits );
+			dos.writeInt( timepoints.length );
+			for ( final int t : timepoints )
+			{
+				final long[] entry = index.get( t );
+				dos.writeInt( t );
+				dos.writeLong( entry[ 0 ] );
+				dos.writeLong( entry[ 1 ] );
+			}
+		}
+		writeFully( out, ByteBuffer.wrap( bos.toByteArray() ), position );
+		out.force( false );
+
+		final ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE );
+		header.putInt( MAGIC ).putInt( VERSION ).putLong( position );
+		header.flip();
+		writeFully( out, header, 0 );
+	}
+
+	private static Path tempPath( final Path path )
+	{
+		return path.resolveSibling( path.getFileName() + ".tmp" );
+	}
+
+	private static void readFully( final FileChannel channel, final ByteBuffer buffer, final long position ) throws IOException
+	{
+		long p = position;
+		while ( buffer.hasRemaining() )
+		{
+			final int n = channel.read( buffer, p );
+			if ( n < 0 )
+				throw new IOException( "Unexpected end of file." );
+			p += n;
+		}
+		buffer.flip();
+	}
+
+	private static void writeFully( final FileChannel channel, final ByteBuffer buffer, final long position ) throws IOException
+	{
+		long p = position;
+		while ( buffer.hasRemaining() )
+			p += channel.write( buffer, p );
+	}
+
+	/*
+	 * CHUNK ENCODING.
+	 */
+
+	private static byte[] encode( final JunctionGraph junctionGraph, final TIntArrayList junctionIds, final CellGraph cellGraph, final TIntArrayList cellIds ) throws IOException
+	{
+		final VarintBlock block = new VarintBlock();
+		final Junction jref = junctionGraph.vertexRef();
+		final Junction jref2 = junctionGraph.vertexRef();
+		final MembranePart eref = junctionGraph.edgeRef();
+		final Cell cref = cellGraph.vertexRef();
+		final double[] pos = new double[ 3 ];
+
+		// Junctions.
+		final TIntIntHashMap junctionLocal = new TIntIntHashMap( 2 * junctionIds.size(), 0.5f, NO_ID, NO_ID );
+		block.writeVarint( junctionIds.size() );
+		for ( int i = 0; i < junctionIds.size(); i++ )
+		{
+			final Junction junction = junctionGraph.vertices().getRefPool().getObject( junctionIds.get( i ), jref );
+			junctionLocal.put( junctionIds.get( i ), i );
+			junction.localize( pos );
+			for ( final double p : pos )
+				block.writeDouble( p );
+		}
+
+		// Cells local ids.
+		final TIntIntHashMap cellLocal = new TIntIntHashMap( 2 * cellIds.size(), 0.5f, NO_ID, NO_ID );
+		for ( int i = 0; i < cellIds.size(); i++ )
+			cellLocal.put( cellIds.get( i ), i );
+
+		// Membranes, as the outgoing edges of the junctions.
+		final TIntArrayList membraneIds = new TIntArrayList();
+		for ( int i = 0; i < junctionIds.size(); i++ )
+		{
+			final Junction junction = junctionGraph.vertices().getRefPool().getObject( junctionIds.get( i ), jref );
+			for ( final MembranePart membrane : junction.outgoingEdges() )
+				membraneIds.add( membrane.getInternalPoolIndex() );
+		}
+		final TIntIntHashMap membraneLocal = new TIntIntHashMap( 2 * membraneIds.size(), 0.5f, NO_ID, NO_ID );
+		block.writeVarint( membraneIds.size() );
+		for ( int i = 0; i < membraneIds.size(); i++ )
+		{
+			final MembranePart membrane = junctionGraph.edges().getRefPool().getObject( membraneIds.get( i ), eref );
+			membraneLocal.put( membraneIds.get( i ), i );
+			block.writeVarint( junctionLocal.get( membrane.getSource( jref ).getInternalPoolIndex() ) );
+			block.writeVarint( junctionLocal.get( membrane.getTarget( jref2 ).getInternalPoolIndex() ) );
+			block.writeVarint( localCellId( membrane.getCellIdCW(), cellLocal ) );
+			block.writeVarint( localCellId( membrane.getCellIdCCW(), cellLocal ) );
+			final double[] pixels = membrane.getPixels();
+			if ( pixels == null )
+				block.writeVarint( -1 );
+			else
+				CoordinatesPropertyMapSerializer.encode( pixels, 2, block );
+		}
+
+		// Cells.
+		block.writeVarint( cellIds.size() );
+		for ( int i = 0; i < cellIds.size(); i++ )
+		{
+			final Cell cell = cellGraph.vertices().getRefPool().getObject( cellIds.get( i ), cref );
+			cell.localize( pos );
+			for ( final double p : pos )
+				block.writeDouble( p );
+			if ( cell.hasLabel() )
+			{
+				block.writeVarint( 1 );
+				block.writeString( cell.getLabel() );
+			}
+			else
+			{
+				block.writeVarint( 0 );
+			}
+			final double[] boundary = cell.getBoundary();
+			if ( boundary == null )
+				block.writeVarint( -1 );
+			else
+				CoordinatesPropertyMapSerializer.encode( boundary, 2, block );
+			final int[] membranes = cell.getMembranes();
+			if ( membranes == null )
+			{
+				block.writeVarint( -1 );
+			}
+			else
+			{
+				block.writeVarint( membranes.length );
+				for ( final int id : membranes )
+					block.writeVarint( membraneLocal.get( id ) );
+			}
+		}
+
+		junctionGraph.releaseRef( jref );
+		junctionGraph.releaseRef( jref2 );
+		junctionGraph.releaseRef( eref );
+		cellGraph.releaseRef( cref );
+
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (final ObjectOutputStream oos = new ObjectOutputStream( bos ))
+		{
+			block.write( oos, true );
+		}
+		return bos.toByteArray();
+	}
+
+	private static int localCellId( final int cellId, final TIntIntHashMap cellLocal )
+	{
+		if ( cellId < 0 )
+			return cellId;
+		final int local = cellLocal.get( cellId );
+		return local == NO_ID ? MembranePart.UNINITIALIZED : local;
+	}
+
+	private static long decode( final int timepoint, final VarintBlock block, final JunctionGraph junctionGraph, final CellGraph cellGraph )
+	{
+		final Junction jref = junctionGraph.vertexRef();
+		final Junction jref2 = junctionGraph.vertexRef();
+		final MembranePart eref = junctionGraph.edgeRef();
+		final Cell cref = cellGraph.vertexRef();
+		final double[] pos = new double[ 3 ];
+		long bytes = 0;
+
+		// Junctions.
+		final int[] junctionIds = new int[ block.readInt() ];
+		for ( int i = 0; i < junctionIds.length; i++ )
+		{
+			for ( int d = 0; d < pos.length; d++ )
+				pos[ d ] = block.readDouble();
+			junctionIds[ i ] = junctionGraph.addVertex( jref ).init( timepoint, pos ).getInternalPoolIndex();
+		}
+		bytes += 64L * junctionIds.length;
+
+		// Membranes.
+		final int[] membraneIds = new int[ block.readInt() ];
+		final int[][] membraneCells = new int[ membraneIds.length ][];
+		for ( int i = 0; i < membraneIds.length; i++ )
+		{
+			final Junction source = junctionGraph.vertices().getRefPool().getObject( junctionIds[ block.readInt() ], jref );
+			final Junction target = junctionGraph.vertices().getRefPool().getObject( junctionIds[ block.readInt() ], jref2 );
+			final MembranePart membrane = junctionGraph.addEdge( source, target, eref ).init();
+			membraneIds[ i ] = membrane.getInternalPoolIndex();
+			membraneCells[ i ] = new int[] { block.readInt(), block.readInt() };
+			final int length = block.readInt();
+			if ( length >= 0 )
+			{
+				membrane.setPixels( CoordinatesPropertyMapSerializer.decode( length, 2, block ) );
+				bytes += 8L * length;
+			}
+		}
+		bytes += 96L * membraneIds.length;
+
+		// Cells.
+		final int[] cellIds = new int[ block.readInt() ];
+		for ( int i = 0; i < cellIds.length; i++ )
+		{
+			for ( int d = 0; d < pos.length; d++ )
+				pos[ d ] = block.readDouble();
+			final Cell cell = cellGraph.addVertex( cref ).init( timepoint, pos );
+			cellIds[ i ] = cell.getInternalPoolIndex();
+			if ( block.readInt() != 0 )
+				cell.setLabel( block.readString() );
+			final int boundaryLength = block.readInt();
+			if ( boundaryLength >= 0 )
+			{
+				cell.setBoundary( CoordinatesPropertyMapSerializer.decode( boundaryLength, 2, block ) );
+				bytes += 8L * boundaryLength;
+			}
+			final int nMembranes = block.readInt();
+			if ( nMembranes >= 0 )
+			{
+				final int[] membranes = new int[ nMembranes ];
+				for ( int j = 0; j < nMembranes; j++ )
+				{
+					final int local = block.readInt();
+					membranes[ j ] = local < 0 ? NO_ID : membraneIds[ local ];
+				}
+				cell.setMembranes( membranes );
+				bytes += 4L * nMembranes;
+			}
+		}
+		bytes += 128L * cellIds.length;
+
+		// Cell ids of membranes, now that cells exist.
+		for ( int i = 0; i < membraneIds.length; i++ )
+		{
+			final MembranePart membrane = junctionGraph.edges().getRefPool().getObject( membraneIds[ i ], eref );
+			final int cw = membraneCells[ i ][ 0 ];
+			final int ccw = membraneCells[ i ][ 1 ];
+			membrane.setCellIdCW( cw < 0 ? cw : cellIds[ cw ] );
+			membrane.setCellIdCCW( ccw < 0 ? ccw : cellIds[ ccw ] );
+		}
+
+		junctionGraph.releaseRef( jref );
+		junctionGraph.releaseRef( jref2 );
+		junctionGraph.releaseRef( eref );
+		cellGraph.releaseRef( cref );
+		return bytes;
+	}
+
+	private static TIntArrayList orEmpty( final TIntArrayList list )
+	{
+		return list == null ? new TIntArrayList() : list;
+	}
+
+	private static < V extends HasTimepoint & Ref< V > > TIntObjectHashMap< TIntArrayList > groupByTimepoint( final Iterable< V > vertices )
+	{
+		final TIntObjectHashMap< TIntArrayList > map = new TIntObjectHashMap<>();
+		for ( final V v : vertices )
+		{
+			TIntArrayList list = map.get( v.getTimepoint() );
+			if ( list == null )
+			{
+				list = new TIntArrayList();
+				map.put( v.getTimepoint(), list );
+			}
+			list.add( v.getInternalPoolIndex() );
+		}
+		return map;
+	}
+}
@@ -0,0 +1,285 @@
+package org.mastodon.leviathan.model;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.mastodon.leviathan.algorithms.PolylineSimplifier;
+import org.mastodon.leviathan.algorithms.PolylineSimplifier.Method;
+
+/**
+ * Base class for caches of simplified polylines.
+ * <p>
+ * Instead of one simplified polyline per tolerance, the cache stores the
+ * significance of each point of the polyline of an object, computed once with
+ * the simplification {@link Method} of the cache, in an {@link ArrayArena}
+ * keyed by the pool index of the object. The polyline simplified with any
+ * tolerance is then extracted by keeping the points whose significance is
+ * above the tolerance, without recomputation. Significances are computed the
+ * first time a polyline is requested, or for all the objects at once with
+ * {@link #precompute(Iterable)}, typically after import or loading.
+ * Renderers pass a tolerance of about one screen pixel. Subclasses give
+ * access to the polylines of their objects and discard the significances
+ * when the objects change.
+ * <p>
+ * Polylines must be requested while holding the read lock of the graph. The
+ * slices returned point to a buffer of the calling thread, and stay readable
+ * until the next polyline is requested from the same thread. Lookups of
+ * cached significances only take the read lock of the cache, so that tile
+ * workers can request polylines in parallel. The write lock is only taken to
+ * compute missing significances and to discard significances.
+ *
+ * @param <O>
+ *            the type of objects whose polylines are cached.
+ */
+public abstract class AbstractContourCache< O >
+{
+
+	private final ArrayArena< double[] > significances = ArrayArena.ofDoubles();
+
+	private final ThreadLocal< Buffer > buffers = ThreadLocal.withInitial( Buffer::new );
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private volatile Method method = Method.DOUGLAS_PEUCKER;
+
+	/**
+	 * Cumulative time spent computing significances, written under the write
+	 * lock of this cache.
+	 */
+	private volatile long simplificationTime;
+
+	/**
+	 * Points the specified slice to the polyline of an object, simplified with
+	 * the specified tolerance.
+	 *
+	 * @param o
+	 *            the object.
+	 * @param tolerance
+	 *            the maximal distance between the simplified and the original
+	 *            polyline, in global units.
+	 * @param slice
+	 *            the slice to use.
+	 * @return the specified slice, or <code>null</code> if the object has no
+	 *         polyline.
+	 */
+	protected DoubleSlice getContour( final O o, final double tolerance, final DoubleSlice slice )
+	{
+		final Buffer buffer = buffers.get();
+		final DoubleSlice points = getPolyline( o, buffer.polyline );
+		if ( points == null || points.size() < 2 )
+			return null;
+
+		final int id = getId( o );
+		final int n = points.size() / 2;
+		if ( buffer.values.length < 2 * n )
+			buffer.values = new double[ 2 * n ];
+
+		lock.readLock().lock();
+		try
+		{
+			if ( significances.length( id ) == n )
+				return filter( points, id, n, tolerance, buffer, slice );
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+
+		// Miss: compute, then filter before letting writers in again.
+		lock.writeLock().lock();
+		try
+		{
+			if ( significances.length( id ) != n )
+				computeSignificance( id, points, n );
+			lock.readLock().lock();
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+		try
+		{
+			return filter( points, id, n, tolerance, buffer, slice );
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Filters a polyline with its cached significances. The read lock must be
+	 * held.
+	 */
+	private DoubleSlice filter( final DoubleSlice points, final int id, final int n, final double tolerance, final Buffer buffer, final DoubleSlice slice )
+	{
+		final int m = PolylineSimplifier.filter(
+				points.getArray(), points.getOffset(), n,
+				significances.page( id ), significances.offset( id ),
+				method.threshold( tolerance ), buffer.values );
+		return slice.wrap( buffer.values, 0, 2 * m );
+	}
+
+	/**
+	 * Computes the significances of the polylines of the specified objects that
+	 * are not cached yet.
+	 *
+	 * @param objects
+	 *            the objects.
+	 */
+	public void precompute( final Iterable< O > objects )
+	{
+		final DoubleSlice polyline = buffers.get().polyline;
+		lock.writeLock().lock();
+		try
+		{
+			for ( final O o : objects )
+			{
+				final DoubleSlice points = getPolyline( o, polyline );
+				if ( points == null || points.size() < 2 )
+					continue;
+				final int id = getId( o );
+				final int n = points.size() / 2;
+				if ( significances.length( id ) != n )
+					computeSignificance( id, points, n );
+			}
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void computeSignificance( final int id, final DoubleSlice points, final int n )
+	{
+		final double[] significance = new double[ n ];
+		final long start = System.nanoTime();
+		method.significance( points.getArray(), points.getOffset(), n, significance );
+		simplificationTime += System.nanoTime() - start;
+		significances.set( id, significance );
+	}
+
+	/**
+	 * Sets the simplification method, and discards the significances computed
+	 * with the previous one.
+	 *
+	 * @param method
+	 *            the method.
+	 */
+	public void setMethod( final Method method )
+	{
+		lock.writeLock().lock();
+		try
+		{
+			if ( this.method == method )
+				return;
+			this.method = method;
+			significances.clear();
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	public Method getMethod()
+	{
+		return method;
+	}
+
+	/**
+	 * Returns the key of an object, typically its internal pool index.
+	 *
+	 * @param o
+	 *            the object.
+	 * @return the key.
+	 */
+	protected abstract int getId( O o );
+
+	/**
+	 * Points a slice to the polyline of an object, as interleaved
+	 * <code>x, y</code> coordinates.
+	 *
+	 * @param o
+	 *            the object.
+	 * @param slice
+	 *            the slice to use.
+	 * @return the specified slice, or <code>null</code> if the object has no
+	 *         polyline.
+	 */
+	protected abstract DoubleSlice getPolyline( O o, DoubleSlice slice );
+
+	/**
+	 * Discards the cached significances of an object.
+	 *
+	 * @param id
+	 *            the key of the object.
+	 */
+	protected void invalidate( final int id )
+	{
+		lock.writeLock().lock();
+		try
+		{
+			significances.remove( id );
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Discards all the cached significances.
+	 */
+	public void clear()
+	{
+		lock.writeLock().lock();
+		try
+		{
+			significances.clear();
+		}
+		finally
+		{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the time spent computing significances since this cache was
+	 * created. Renderers sample it before and after a frame to measure the
+	 * computations the frame caused.
+	 *
+	 * @return the cumulative time, in nanoseconds.
+	 */
+	public long getSimplificationTime()
+	{
+		return simplificationTime;
+	}
+
+	/**
+	 * Returns an estimate of the memory used by this cache.
+	 *
+	 * @return the estimated size in bytes.
+	 */
+	public long estimateMemory()
+	{
+		lock.readLock().lock();
+		try
+		{
+			return significances.estimateMemory();
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Polyline slice and output buffer of a thread.
+	 */
+	private static final class Buffer
+	{
+		private final DoubleSlice polyline = new DoubleSlice();
+
+		private double[] values = new double[ 256 ];
+	}
+}
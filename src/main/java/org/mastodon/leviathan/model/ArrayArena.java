@@ -0,0 +1,347 @@
+package org.mastodon.leviathan.model;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Stores variable-length primitive arrays, one per key, packed in a few large
+ * pages instead of one small array per key.
+ * <p>
+ * Keys are small non-negative integers, typically the internal pool index of
+ * the objects the arrays belong to. The array of a key is a segment of a page,
+ * addressed by the page, the offset in the page and the length, so that
+ * sweeping the arrays of many objects reads contiguous memory and creates no
+ * garbage. A segment longer than a page gets its own page.
+ * <p>
+ * Replacing an array by a shorter one reuses its segment. Otherwise the old
+ * segment is left unused, and the arena is compacted when the unused
+ * elements outnumber the used ones. Compaction copies the segments in key
+ * order, so segments and slices obtained before a modification must not be
+ * used after it.
+ * <p>
+ * This class is not thread-safe. Like the pool it belongs to, it relies on
+ * the graph lock: modifications are made under the write lock, reads under
+ * the read lock.
+ *
+ * @param <A>
+ *            the type of the arrays, for instance <code>double[]</code>.
+ */
+public class ArrayArena< A >
+{
+
+	/**
+	 * Default number of elements per page.
+	 */
+	public static final int DEFAULT_PAGE_SIZE = 1 << 20;
+
+	private final IntFunction< A > factory;
+
+	private final int bytesPerElement;
+
+	private final int pageSize;
+
+	private final List< A > pages = new ArrayList<>();
+
+	/**
+	 * Index of the page new segments are appended to, or -1 if there is none.
+	 */
+	private int current = -1;
+
+	/**
+	 * Number of elements used in the current page.
+	 */
+	private int fill;
+
+	/*
+	 * Address of the segment of each key. A negative length means that the key
+	 * is not set.
+	 */
+
+	private int[] pageIndices = new int[ 0 ];
+
+	private int[] offsets = new int[ 0 ];
+
+	private int[] lengths = new int[ 0 ];
+
+	private int size;
+
+	private long used;
+
+	private long garbage;
+
+	private long capacity;
+
+	private ArrayArena( final IntFunction< A > factory, final int bytesPerElement, final int pageSize )
+	{
+		this.factory = factory;
+		this.bytesPerElement = bytesPerElement;
+		this.pageSize = pageSize;
+	}
+
+	/**
+	 * Creates an arena for <code>double[]</code> arrays.
+	 *
+	 * @return a new arena.
+	 */
+	public static ArrayArena< double[] > ofDoubles()
+	{
+		return new ArrayArena<>( double[]::new, 8, DEFAULT_PAGE_SIZE );
+	}
+
+	/**
+	 * Creates an arena for <code>int[]</code> arrays.
+	 *
+	 * @return a new arena.
+	 */
+	public static ArrayArena< int[] > ofInts()
+	{
+		return new ArrayArena<>( int[]::new, 4, DEFAULT_PAGE_SIZE );
+	}
+
+	/**
+	 * Stores a copy of the specified array for a key, replacing the array
+	 * stored previously.
+	 *
+	 * @param key
+	 *            the key.
+	 * @param values
+	 *            the array to copy.
+	 */
+	public void set( final int key, final A values )
+	{
+		final int length = Array.getLength( values );
+		ensureKeyCapacity( key );
+		final int previous = lengths[ key ];
+		if ( previous >= length )
+		{
+			// Reuse the segment in place.
+			System.arraycopy( values, 0, pages.get( pageIndices[ key ] ), offsets[ key ], length );
+			lengths[ key ] = length;
+			used -= previous - length;
+			garbage += previous - length;
+			compactIfNeeded();
+			return;
+		}
+
+		if ( previous >= 0 )
+		{
+			used -= previous;
+			garbage += previous;
+		}
+		else
+		{
+			size++;
+		}
+		allocate( key, length );
+		System.arraycopy( values, 0, pages.get( pageIndices[ key ] ), offsets[ key ], length );
+		used += length;
+		compactIfNeeded();
+	}
+
+	/**
+	 * Removes the array of a key.
+	 *
+	 * @param key
+	 *            the key.
+	 */
+	public void remove( final int key )
+	{
+		if ( !isSet( key ) )
+			return;
+		used -= lengths[ key ];
+		garbage += lengths[ key ];
+		lengths[ key ] = -1;
+		size--;
+		compactIfNeeded();
+	}
+
+	/**
+	 * Removes all the arrays and releases the pages.
+	 */
+	public void clear()
+	{
+		pages.clear();
+		current = -1;
+		fill = 0;
+		Arrays.fill( lengths, -1 );
+		size = 0;
+		used = 0;
+		garbage = 0;
+		capacity = 0;
+	}
+
+	public boolean isSet( final int key )
+	{
+		return key < lengths.length && lengths[ key ] >= 0;
+	}
+
+	/**
+	 * Returns the length of the array of a key.
+	 *
+	 * @param key
+	 *            the key.
+	 * @return the length, or -1 if the key is not set.
+	 */
+	public int length( final int key )
+	{
+		return key < lengths.length ? lengths[ key ] : -1;
+	}
+
+	/**
+	 * Returns the page that holds the array of a key. Only valid if the key is
+	 * set.
+	 *
+	 * @param key
+	 *            the key.
+	 * @return the page.
+	 */
+	public A page( final int key )
+	{
+		return pages.get( pageIndices[ key ] );
+	}
+
+	/**
+	 * Returns the offset of the array of a key in its page. Only valid if the
+	 * key is set.
+	 *
+	 * @param key
+	 *            the key.
+	 * @return the offset.
+	 */
+	public int offset( final int key )
+	{
+		return offsets[ key ];
+	}
+
+	/**
+	 * Returns a copy of the array of a key.
+	 *
+	 * @param key
+	 *            the key.
+	 * @return a new array, or <code>null</code> if the key is not set.
+	 */
+	public A copy( final int key )
+	{
+		if ( !isSet( key ) )
+			return null;
+		final A values = factory.apply( lengths[ key ] );
+		System.arraycopy( pages.get( pageIndices[ key ] ), offsets[ key ], values, 0, lengths[ key ] );
+		return values;
+	}
+
+	/**
+	 * Returns the number of keys set.
+	 *
+	 * @return the number of keys.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the number of elements used by the arrays stored.
+	 *
+	 * @return the number of elements.
+	 */
+	public long getUsed()
+	{
+		return used;
+	}
+
+	/**
+	 * Returns the number of elements left unused by removed or replaced arrays,
+	 * until the next compaction.
+	 *
+	 * @return the number of elements.
+	 */
+	public long getGarbage()
+	{
+		return garbage;
+	}
+
+	/**
+	 * Returns an estimate of the memory used by this arena: the pages and the
+	 * address of each key.
+	 *
+	 * @return the estimated size in bytes.
+	 */
+	public long estimateMemory()
+	{
+		return capacity * bytesPerElement + 12L * lengths.length + 16L * pages.size();
+	}
+
+	/**
+	 * Copies the arrays in new pages, in key order, without the unused
+	 * elements.
+	 */
+	public void compact()
+	{
+		final List< A > oldPages = new ArrayList<>( pages );
+		pages.clear();
+		current = -1;
+		fill = 0;
+		capacity = 0;
+		garbage = 0;
+		for ( int key = 0; key < lengths.length; key++ )
+		{
+			final int length = lengths[ key ];
+			if ( length < 0 )
+				continue;
+			final A source = oldPages.get( pageIndices[ key ] );
+			final int offset = offsets[ key ];
+			allocate( key, length );
+			System.arraycopy( source, offset, pages.get( pageIndices[ key ] ), offsets[ key ], length );
+		}
+	}
+
+	private void compactIfNeeded()
+	{
+		if ( garbage > pageSize && garbage > used )
+			compact();
+	}
+
+	/**
+	 * Reserves a segment for a key and sets its address.
+	 */
+	private void allocate( final int key, final int length )
+	{
+		if ( length > pageSize )
+		{
+			// Dedicated page, the current page stays open.
+			pages.add( factory.apply( length ) );
+			capacity += length;
+			pageIndices[ key ] = pages.size() - 1;
+			offsets[ key ] = 0;
+			lengths[ key ] = length;
+			return;
+		}
+
+		if ( current < 0 || fill + length > pageSize )
+		{
+			pages.add( factory.apply( pageSize ) );
+			capacity += pageSize;
+			current = pages.size() - 1;
+			fill = 0;
+		}
+		pageIndices[ key ] = current;
+		offsets[ key ] = fill;
+		lengths[ key ] = length;
+		fill += length;
+	}
+
+	private void ensureKeyCapacity( final int key )
+	{
+		if ( key < lengths.length )
+			return;
+		final int oldLength = lengths.length;
+		final int newLength = Math.max( key + 1, oldLength + ( oldLength >> 1 ) + 16 );
+		pageIndices = Arrays.copyOf( pageIndices, newLength );
+		offsets = Arrays.copyOf( offsets, newLength );
+		lengths = Arrays.copyOf( lengths, newLength );
+		Arrays.fill( lengths, oldLength, newLength, -1 );
+	}
+}
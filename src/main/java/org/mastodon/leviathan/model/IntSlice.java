@@ -0,0 +1,75 @@
+package org.mastodon.leviathan.model;
+
+import java.util.Arrays;
+
+/**
+ * Flyweight view on a segment of a <code>int[]</code> array, used to read
+ * the arrays stored in an {@link ArrayArena} without copying them.
+ * <p>
+ * A slice is only valid until the next modification of the arena it was
+ * obtained from. Indices are not checked against the slice length.
+ */
+public final class IntSlice
+{
+
+	private int[] array;
+
+	private int offset;
+
+	private int length;
+
+	/**
+	 * Points this slice to a segment of an array.
+	 *
+	 * @param array
+	 *            the array.
+	 * @param offset
+	 *            the index of the first element of the segment.
+	 * @param length
+	 *            the length of the segment.
+	 * @return this slice.
+	 */
+	public IntSlice wrap( final int[] array, final int offset, final int length )
+	{
+		this.array = array;
+		this.offset = offset;
+		this.length = length;
+		return this;
+	}
+
+	public int get( final int i )
+	{
+		return array[ offset + i ];
+	}
+
+	public int size()
+	{
+		return length;
+	}
+
+	/**
+	 * Returns the array this slice points to. The slice starts at
+	 * {@link #getOffset()} in this array.
+	 *
+	 * @return the backing array.
+	 */
+	public int[] getArray()
+	{
+		return array;
+	}
+
+	public int getOffset()
+	{
+		return offset;
+	}
+
+	/**
+	 * Returns a copy of the elements of this slice.
+	 *
+	 * @return a new array.
+	 */
+	public int[] toArray()
+	{
+		return Arrays.copyOfRange( array, offset, offset + length );
+	}
+}
@@ -0,0 +1,323 @@
+package org.mastodon.leviathan.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.mastodon.collection.RefCollection;
+import org.mastodon.feature.Feature;
+import org.mastodon.feature.FeatureModel;
+import org.mastodon.feature.FeatureProjection;
+import org.mastodon.feature.FeatureSpec;
+import org.mastodon.graph.ref.AbstractEdgePool;
+import org.mastodon.leviathan.model.cell.Cell;
+import org.mastodon.leviathan.model.cell.CellGraph;
+import org.mastodon.leviathan.model.cell.CellModel;
+import org.mastodon.leviathan.model.cell.CellPool;
+import org.mastodon.leviathan.model.cell.Link;
+import org.mastodon.leviathan.model.junction.Junction;
+import org.mastodon.leviathan.model.junction.JunctionGraph;
+import org.mastodon.leviathan.model.junction.JunctionModel;
+import org.mastodon.leviathan.model.junction.JunctionPool;
+import org.mastodon.leviathan.model.junction.MembranePart;
+import org.mastodon.leviathan.model.junction.MembranePartPool;
+import org.mastodon.model.tag.ObjTags;
+import org.mastodon.model.tag.TagSetStructure.TagSet;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+
+/**
+ * Object counts per time-point and estimated memory use of the junction and
+ * cell models.
+ * <p>
+ * Memory use is estimated from the pool layouts and capacities, the sizes of the arrays
+ * stored in the property maps and in the arenas, the number of feature values
+ * and tags set, and the spatial indices. Object headers and hash map overheads are approximated
+ * with typical values for a 64-bit JVM with compressed references, so the
+ * figures are meant to compare the parts of a model, not to be exact.
+ */
+public class ModelStatistics
+{
+
+	private static final long ARRAY_HEADER = 16;
+
+	/**
+	 * Approximate cost of one entry of a hash map keyed by pool index.
+	 */
+	private static final long MAP_ENTRY = 24;
+
+	/**
+	 * Approximate cost of one vertex in a KD-tree of a spatial index.
+	 */
+	private static final long KDTREE_ENTRY = 40;
+
+	/**
+	 * Initial capacity of the pools of the graphs, which double their capacity
+	 * when full.
+	 */
+	private static final long INITIAL_POOL_CAPACITY = 1024;
+
+	private final TIntIntHashMap junctions = new TIntIntHashMap();
+
+	private final TIntIntHashMap membranes = new TIntIntHashMap();
+
+	private final TIntIntHashMap cells = new TIntIntHashMap();
+
+	private final TIntIntHashMap links = new TIntIntHashMap();
+
+	private final Map< String, Long > memory = new LinkedHashMap<>();
+
+	private ModelStatistics()
+	{}
+
+	/**
+	 * Computes the statistics of the specified models.
+	 *
+	 * @param junctionModel
+	 *            the junction model, may be <code>null</code>.
+	 * @param cellModel
+	 *            the cell model, may be <code>null</code>.
+	 * @return new statistics.
+	 */
+	public static ModelStatistics compute( final JunctionModel junctionModel, final CellModel cellModel )
+	{
+		final ModelStatistics stats = new ModelStatistics();
+		if ( junctionModel != null )
+			stats.addJunctionModel( junctionModel );
+		if ( cellModel != null )
+			stats.addCellModel( cellModel );
+		return stats;
+	}
+
+	private void addJunctionModel( final JunctionModel model )
+	{
+		final JunctionGraph graph = model.getGraph();
+		graph.getLock().readLock().lock();
+		try
+		{
+			int junctionSlots = 0;
+			for ( final Junction junction : graph.vertices() )
+			{
+				junctions.adjustOrPutValue( junction.getTimepoint(), 1, 1 );
+				junctionSlots = Math.max( junctionSlots, junction.getInternalPoolIndex() + 1 );
+			}
+
+			final Junction ref = graph.vertexRef();
+			long pixels = 0;
+			int membraneSlots = 0;
+			for ( final MembranePart membrane : graph.edges() )
+			{
+				membranes.adjustOrPutValue( membrane.getSource( ref ).getTimepoint(), 1, 1 );
+				membraneSlots = Math.max( membraneSlots, membrane.getInternalPoolIndex() + 1 );
+				final double[] p = membrane.getPixels();
+				if ( p != null )
+					pixels += ARRAY_HEADER + 8L * p.length + MAP_ENTRY;
+			}
+			graph.releaseRef( ref );
+
+			final long nJunctions = graph.vertices().size();
+			memory.put( "Junction pool", poolCapacity( junctionSlots ) * JunctionPool.layout.getSizeInBytes() );
+			memory.put( "Membrane pool", poolCapacity( membraneSlots ) * MembranePartPool.layout.getSizeInBytes() );
+			memory.put( "Membrane pixels", pixels );
+			memory.put( "Junction features", featureMemory( model.getFeatureModel(), Junction.class, graph.vertices() )
+					+ featureMemory( model.getFeatureModel(), MembranePart.class, graph.edges() ) );
+			final List< TagSet > tagSets = model.getTagSetModel().getTagSetStructure().getTagSets();
+			memory.put( "Junction tags", tagMemory( tagSets, model.getTagSetModel().getVertexTags(), graph.vertices() )
+					+ tagMemory( tagSets, model.getTagSetModel().getEdgeTags(), graph.edges() ) );
+			memory.put( "Junction spatial index", nJunctions * KDTREE_ENTRY );
+			memory.put( "Membrane segment index", model.getSegmentIndex().estimateMemory() );
+			memory.put( "Membrane contour cache", model.getContourCache().estimateMemory() );
+		}
+		finally
+		{
+			graph.getLock().readLock().unlock();
+		}
+	}
+
+	private void addCellModel( final CellModel model )
+	{
+		final CellGraph graph = model.getGraph();
+		graph.getLock().readLock().lock();
+		try
+		{
+			long labels = 0;
+			int cellSlots = 0;
+			for ( final Cell cell : graph.vertices() )
+			{
+				cells.adjustOrPutValue( cell.getTimepoint(), 1, 1 );
+				cellSlots = Math.max( cellSlots, cell.getInternalPoolIndex() + 1 );
+				// Cells without a label return their pool index, not stored.
+				if ( cell.hasLabel() )
+					labels += 24 + ARRAY_HEADER + 2L * cell.getLabel().length() + MAP_ENTRY;
+			}
+
+			final Cell ref = graph.vertexRef();
+			int linkSlots = 0;
+			for ( final Link link : graph.edges() )
+			{
+				links.adjustOrPutValue( link.getSource( ref ).getTimepoint(), 1, 1 );
+				linkSlots = Math.max( linkSlots, link.getInternalPoolIndex() + 1 );
+			}
+			graph.releaseRef( ref );
+
+			final long nCells = graph.vertices().size();
+			final CellPool pool = ( CellPool ) graph.vertices().getRefPool();
+			memory.put( "Cell pool", poolCapacity( cellSlots ) * CellPool.layout.getSizeInBytes() );
+			memory.put( "Link pool", poolCapacity( linkSlots ) * AbstractEdgePool.layout.getSizeInBytes() );
+			memory.put( "Cell membrane ids", pool.membraneArena().estimateMemory() );
+			memory.put( "Cell boundaries", pool.boundaryArena().estimateMemory() );
+			memory.put( "Cell labels", labels );
+			memory.put( "Cell features", featureMemory( model.getFeatureModel(), Cell.class, graph.vertices() ) );
+			final List< TagSet > tagSets = model.getTagSetModel().getTagSetStructure().getTagSets();
+			memory.put( "Cell tags", tagMemory( tagSets, model.getTagSetModel().getVertexTags(), graph.vertices() ) );
+			memory.put( "Cell spatial index", nCells * KDTREE_ENTRY );
+			memory.put( "Cell polygon index", model.getPolygonIndex().estimateMemory() );
+			memory.put( "Cell contour cache", model.getContourCache().estimateMemory() );
+		}
+		finally
+		{
+			graph.getLock().readLock().unlock();
+		}
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private static < O > long featureMemory( final FeatureModel featureModel, final Class< O > targetClass, final RefCollection< O > objects )
+	{
+		long bytes = 0;
+		for ( final FeatureSpec< ?, ? > spec : featureModel.getFeatureSpecs() )
+		{
+			if ( !targetClass.equals( spec.getTargetClass() ) )
+				continue;
+			final Feature< O > feature = ( Feature< O > ) featureModel.getFeature( spec );
+			for ( final FeatureProjection< O > projection : feature.projections() )
+			{
+				long nSet = 0;
+				for ( final O o : objects )
+					if ( projection.isSet( o ) )
+						nSet++;
+				bytes += nSet * MAP_ENTRY;
+			}
+		}
+		return bytes;
+	}
+
+	private static < O > long tagMemory( final List< TagSet > tagSets, final ObjTags< O > tags, final RefCollection< O > objects )
+	{
+		long bytes = 0;
+		for ( final TagSet tagSet : tagSets )
+		{
+			long nSet = 0;
+			for ( final O o : objects )
+				if ( tags.tags( tagSet ).get( o ) != null )
+					nSet++;
+			bytes += nSet * MAP_ENTRY;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns the time-points that contain at least one object, in increasing
+	 * order.
+	 *
+	 * @return a new array.
+	 */
+	public int[] getTimepoints()
+	{
+		final TIntHashSet timepoints = new TIntHashSet();
+		timepoints.addAll( junctions.keys() );
+		timepoints.addAll( membranes.keys() );
+		timepoints.addAll( cells.keys() );
+		timepoints.addAll( links.keys() );
+		final int[] array = timepoints.toArray();
+		Arrays.sort( array );
+		return array;
+	}
+
+	public int getJunctionCount( final int timepoint )
+	{
+		return junctions.get( timepoint );
+	}
+
+	public int getMembraneCount( final int timepoint )
+	{
+		return membranes.get( timepoint );
+	}
+
+	public int getCellCount( final int timepoint )
+	{
+		return cells.get( timepoint );
+	}
+
+	public int getLinkCount( final int timepoint )
+	{
+		return links.get( timepoint );
+	}
+
+	/**
+	 * Returns the estimated memory use of each part of the models, in bytes.
+	 *
+	 * @return an unmodifiable map from part name to size, in reporting order.
+	 */
+	public Map< String, Long > getMemoryEstimates()
+	{
+		return Collections.unmodifiableMap( memory );
+	}
+
+	public long getTotalMemoryEstimate()
+	{
+		long total = 0;
+		for ( final long bytes : memory.values() )
+			total += bytes;
+		return total;
+	}
+
+	/**
+	 * Returns a text report of these statistics.
+	 */
+	@Override
+	public String toString()
+	{
+		final StringBuilder str = new StringBuilder();
+		str.append( String.format( Locale.US, "%-10s %12s %12s %12s %12s%n", "Timepoint", "Junctions", "Membranes", "Cells", "Links" ) );
+		for ( final int t : getTimepoints() )
+			str.append( String.format( Locale.US, "%-10d %12d %12d %12d %12d%n",
+					t, getJunctionCount( t ), getMembraneCount( t ), getCellCount( t ), getLinkCount( t ) ) );
+
+		str.append( String.format( "%n%-26s %12s%n", "Estimated memory", "" ) );
+		for ( final Map.Entry< String, Long > entry : memory.entrySet() )
+			str.append( String.format( Locale.US, "%-26s %12s%n", entry.getKey(), formatBytes( entry.getValue() ) ) );
+		str.append( String.format( Locale.US, "%-26s %12s%n", "Total", formatBytes( getTotalMemoryEstimate() ) ) );
+
+		final Runtime runtime = Runtime.getRuntime();
+		str.append( String.format( Locale.US, "%-26s %12s%n", "JVM heap used", formatBytes( runtime.totalMemory() - runtime.freeMemory() ) ) );
+		str.append( String.format( Locale.US, "%-26s %12s%n", "JVM heap max", formatBytes( runtime.maxMemory() ) ) );
+		return str.toString();
+	}
+
+	/**
+	 * Estimates the capacity of a pool from the number of slots it uses,
+	 * including the slots of removed objects below the highest pool index.
+	 */
+	private static long poolCapacity( final int slots )
+	{
+		long capacity = INITIAL_POOL_CAPACITY;
+		while ( capacity < slots )
+			capacity <<= 1;
+		return capacity;
+	}
+
+	private static String formatBytes( final long bytes )
+	{
+		if ( bytes < 1024 )
+			return bytes + " B";
+		if ( bytes < 1024 * 1024 )
+			return String.format( Locale.US, "%.1f kB", bytes / 1024. );
+		if ( bytes < 1024L * 1024 * 1024 )
+			return String.format( Locale.US, "%.1f MB", bytes / ( 1024. * 1024. ) );
+		return String.format( Locale.US, "%.2f GB", bytes / ( 1024. * 1024. * 1024. ) );
+	}
+}
@@ -0,0 +1,219 @@
+package org.mastodon.leviathan.model;
+
+import java.util.Arrays;
+
+/**
+ * Static 2D R-tree over axis-aligned boxes, bulk-loaded with the
+ * Sort-Tile-Recursive algorithm.
+ * <p>
+ * Entries are identified by their index in the box array given to
+ * {@link #build(float[], int)}. The tree stores only this index and the boxes,
+ * so callers keep their payload in their own arrays, in the same order. The
+ * tree is immutable and can be searched concurrently.
+ */
+public class PackedRTree
+{
+
+	/**
+	 * Receives the entries found by a search.
+	 */
+	@FunctionalInterface
+	public interface Visitor
+	{
+		/**
+		 * Called for each entry whose box intersects the search box.
+		 *
+		 * @param entry
+		 *            the index of the entry in the array the tree was built
+		 *            from.
+		 */
+		public void visit( int entry );
+	}
+
+	private static final int NODE_CAPACITY = 16;
+
+	private static final PackedRTree EMPTY = new PackedRTree( new int[ 0 ], new float[][] { new float[ 0 ] } );
+
+	/**
+	 * Entry indices, in tree order.
+	 */
+	private final int[] entries;
+
+	/**
+	 * Bounding boxes per level, as <code>xmin, ymin, xmax, ymax</code>. Level
+	 * 0 holds the boxes of the entries in tree order, level <code>k</code> the
+	 * boxes of the groups of {@link #NODE_CAPACITY} nodes of level
+	 * <code>k - 1</code>.
+	 */
+	private final float[][] levels;
+
+	private PackedRTree( final int[] entries, final float[][] levels )
+	{
+		this.entries = entries;
+		this.levels = levels;
+	}
+
+	/**
+	 * Builds a tree over the first <code>n</code> boxes of the specified
+	 * array.
+	 *
+	 * @param boxes
+	 *            the boxes, as <code>xmin, ymin, xmax, ymax</code> for each
+	 *            entry.
+	 * @param n
+	 *            the number of entries.
+	 * @return a new tree.
+	 */
+	public static PackedRTree build( final float[] boxes, final int n )
+	{
+		if ( n == 0 )
+			return EMPTY;
+
+		final long[] keys = new long[ n ];
+		for ( int i = 0; i < n; i++ )
+			keys[ i ] = key( boxes[ 4 * i ] + boxes[ 4 * i + 2 ], i );
+		Arrays.sort( keys );
+
+		// Cut in vertical slices, sorted along Y.
+		final int leafCount = ( n + NODE_CAPACITY - 1 ) / NODE_CAPACITY;
+		final int sliceSize = NODE_CAPACITY * ( int ) Math.ceil( Math.sqrt( leafCount ) );
+		for ( int start = 0; start < n; start += sliceSize )
+		{
+			final int end = Math.min( n, start + sliceSize );
+			for ( int k = start; k < end; k++ )
+			{
+				final int i = ( int ) keys[ k ];
+				keys[ k ] = key( boxes[ 4 * i + 1 ] + boxes[ 4 * i + 3 ], i );
+			}
+			Arrays.sort( keys, start, end );
+		}
+
+		final int[] entries = new int[ n ];
+		final float[] level0 = new float[ 4 * n ];
+		for ( int k = 0; k < n; k++ )
+		{
+			final int i = ( int ) keys[ k ];
+			entries[ k ] = i;
+			System.arraycopy( boxes, 4 * i, level0, 4 * k, 4 );
+		}
+
+		int nLevels = 1;
+		for ( int count = n; count > NODE_CAPACITY; count = ( count + NODE_CAPACITY - 1 ) / NODE_CAPACITY )
+			nLevels++;
+		final float[][] levels = new float[ nLevels ][];
+		levels[ 0 ] = level0;
+		for ( int l = 1; l < nLevels; l++ )
+		{
+			final float[] children = levels[ l - 1 ];
+			final int childCount = children.length / 4;
+			final int count = ( childCount + NODE_CAPACITY - 1 ) / NODE_CAPACITY;
+			final float[] nodes = new float[ 4 * count ];
+			for ( int node = 0; node < count; node++ )
+			{
+				float xmin = Float.POSITIVE_INFINITY;
+				float ymin = Float.POSITIVE_INFINITY;
+				float xmax = Float.NEGATIVE_INFINITY;
+				float ymax = Float.NEGATIVE_INFINITY;
+				final int end = Math.min( childCount, ( node + 1 ) * NODE_CAPACITY );
+				for ( int c = node * NODE_CAPACITY; c < end; c++ )
+				{
+					xmin = Math.min( xmin, children[ 4 * c ] );
+					ymin = Math.min( ymin, children[ 4 * c + 1 ] );
+					xmax = Math.max( xmax, children[ 4 * c + 2 ] );
+					ymax = Math.max( ymax, children[ 4 * c + 3 ] );
+				}
+				nodes[ 4 * node ] = xmin;
+				nodes[ 4 * node + 1 ] = ymin;
+				nodes[ 4 * node + 2 ] = xmax;
+				nodes[ 4 * node + 3 ] = ymax;
+			}
+			levels[ l ] = nodes;
+		}
+		return new PackedRTree( entries, levels );
+	}
+
+	/**
+	 * Returns the number of entries in this tree.
+	 *
+	 * @return the number of entries.
+	 */
+	public int size()
+	{
+		return entries.length;
+	}
+
+	/**
+	 * Visits the entries whose box intersects the specified box.
+	 *
+	 * @param xmin
+	 *            the min X of the search box.
+	 * @param ymin
+	 *            the min Y of the search box.
+	 * @param xmax
+	 *            the max X of the search box.
+	 * @param ymax
+	 *            the max Y of the search box.
+	 * @param visitor
+	 *            the visitor.
+	 */
+	public void search( final double xmin, final double ymin, final double xmax, final double ymax, final Visitor visitor )
+	{
+		final int top = levels.length - 1;
+		final int count = levels[ top ].length / 4;
+		for ( int node = 0; node < count; node++ )
+			search( top, node, xmin, ymin, xmax, ymax, visitor );
+	}
+
+	private void search( final int level, final int node, final double xmin, final double ymin, final double xmax, final double ymax, final Visitor visitor )
+	{
+		final float[] boxes = levels[ level ];
+		if ( boxes[ 4 * node ] > xmax || boxes[ 4 * node + 1 ] > ymax || boxes[ 4 * node + 2 ] < xmin || boxes[ 4 * node + 3 ] < ymin )
+			return;
+
+		if ( level == 0 )
+		{
+			visitor.visit( entries[ node ] );
+			return;
+		}
+
+		final int childCount = levels[ level - 1 ].length / 4;
+		final int end = Math.min( childCount, ( node + 1 ) * NODE_CAPACITY );
+		for ( int child = node * NODE_CAPACITY; child < end; child++ )
+			search( level - 1, child, xmin, ymin, xmax, ymax, visitor );
+	}
+
+	/**
+	 * Writes the bounds of a box, rounded outwards to float precision.
+	 *
+	 * @param boxes
+	 *            the box array.
+	 * @param entry
+	 *            the entry index.
+	 * @param xmin
+	 *            the min X of the box.
+	 * @param ymin
+	 *            the min Y of the box.
+	 * @param xmax
+	 *            the max X of the box.
+	 * @param ymax
+	 *            the max Y of the box.
+	 */
+	public static void setBox( final float[] boxes, final int entry, final double xmin, final double ymin, final double xmax, final double ymax )
+	{
+		boxes[ 4 * entry ] = Math.nextDown( ( float ) xmin );
+		boxes[ 4 * entry + 1 ] = Math.nextDown( ( float ) ymin );
+		boxes[ 4 * entry + 2 ] = Math.nextUp( ( float ) xmax );
+		boxes[ 4 * entry + 3 ] = Math.nextUp( ( float ) ymax );
+	}
+
+	/**
+	 * Packs a float sort key and an index in a long, so that sorting the longs
+	 * sorts the indices by key.
+	 */
+	private static long key( final float value, final int index )
+	{
+		int bits = Float.floatToIntBits( value );
+		bits ^= ( bits >> 31 ) & 0x7fffffff;
+		return ( ( long ) bits << 32 ) | index;
+	}
+}
@@ -0,0 +1,526 @@
+package org.mastodon.leviathan.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.mastodon.graph.Edge;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.graph.ListenableGraph;
+import org.mastodon.graph.Vertex;
+import org.mastodon.properties.Property;
+import org.mastodon.properties.PropertyChangeListener;
+import org.mastodon.spatial.HasTimepoint;
+import org.mastodon.spatial.SpatioTemporalIndexImp;
+import org.mastodon.spatial.SpatioTemporalIndexImpAccess;
+
+import gnu.trove.set.hash.TIntHashSet;
+
+/**
+ * Rebuilds spatial indices of several models from a single background
+ * thread.
+ * <p>
+ * Each registered index is polled regularly. It is rebuilt as soon as it has
+ * accumulated more than a threshold number of modifications, or when it has
+ * been modified and the oldest pending modification is older than a maximal
+ * delay. Rebuilds can be paused during bulk operations, so that an import
+ * does not trigger one rebuild per batch of modifications.
+ * <p>
+ * Use {@link #shared()} to get the instance used by the Leviathan models.
+ */
+public class SpatialIndexRebuildScheduler
+{
+
+	/**
+	 * Default number of modifications above which an index is rebuilt.
+	 */
+	public static final int DEFAULT_MOD_COUNT_THRESHOLD = 100;
+
+	/**
+	 * Default maximal delay, in milliseconds, before a modified index is
+	 * rebuilt.
+	 */
+	public static final long DEFAULT_MAX_DELAY = 1000;
+
+	private static final long POLL_INTERVAL = 100;
+
+	private static SpatialIndexRebuildScheduler shared;
+
+	/**
+	 * Returns the scheduler shared by all the models of the application.
+	 *
+	 * @return the shared scheduler.
+	 */
+	public static synchronized SpatialIndexRebuildScheduler shared()
+	{
+		if ( shared == null )
+			shared = new SpatialIndexRebuildScheduler( "Rebuild spatial indices" );
+		return shared;
+	}
+
+	/**
+	 * Interface for indices that can be rebuilt by this scheduler.
+	 */
+	public interface Rebuildable
+	{
+		/**
+		 * Returns the number of modifications since the last rebuild.
+		 *
+		 * @return the number of modifications.
+		 */
+		public int getModCount();
+
+		/**
+		 * Rebuilds the index and resets the modification count.
+		 */
+		public void rebuild();
+
+		/**
+		 * Releases the resources used to track modifications. Called when the
+		 * index is unregistered.
+		 */
+		public default void dispose()
+		{}
+	}
+
+	private final ScheduledExecutorService executor;
+
+	private final List< Registration > registrations = new CopyOnWriteArrayList<>();
+
+	private volatile int modCountThreshold = DEFAULT_MOD_COUNT_THRESHOLD;
+
+	private volatile long maxDelay = DEFAULT_MAX_DELAY;
+
+	private int pauseCount = 0;
+
+	public SpatialIndexRebuildScheduler( final String threadName )
+	{
+		executor = Executors.newSingleThreadScheduledExecutor( r -> {
+			final Thread thread = new Thread( r, threadName );
+			thread.setDaemon( true );
+			thread.setPriority( Thread.MIN_PRIORITY );
+			return thread;
+		} );
+		executor.scheduleWithFixedDelay( this::poll, POLL_INTERVAL, POLL_INTERVAL, TimeUnit.MILLISECONDS );
+	}
+
+	/**
+	 * Registers an index to be rebuilt by this scheduler.
+	 *
+	 * @param name
+	 *            the name of the index, used in the metrics.
+	 * @param rebuildable
+	 *            the index.
+	 * @return the registration, used to unregister the index and to query its
+	 *         metrics.
+	 * @throws IllegalStateException
+	 *             if this scheduler has been shut down.
+	 */
+	public Registration register( final String name, final Rebuildable rebuildable )
+	{
+		if ( executor.isShutdown() )
+			throw new IllegalStateException( "The spatial index rebuild scheduler has been shut down." );
+		final Registration registration = new Registration( name, rebuildable );
+		registrations.add( registration );
+		return registration;
+	}
+
+	/**
+	 * Registers a {@link SpatioTemporalIndexImp} to be rebuilt by this
+	 * scheduler. Modifications are counted by listening to the graph and to
+	 * the vertex position property, and only the time-points that were
+	 * modified are rebuilt.
+	 *
+	 * @param name
+	 *            the name of the index, used in the metrics.
+	 * @param graph
+	 *            the graph indexed.
+	 * @param lock
+	 *            the graph lock, held for reading while the index of a
+	 *            time-point is rebuilt.
+	 * @param position
+	 *            the vertex position property.
+	 * @param index
+	 *            the index to rebuild.
+	 * @return the registration.
+	 */
+	public < V extends Vertex< E > & HasTimepoint, E extends Edge< V > > Registration register(
+			final String name,
+			final ListenableGraph< V, E > graph,
+			final ReentrantReadWriteLock lock,
+			final Property< V > position,
+			final SpatioTemporalIndexImp< ?, ? > index )
+	{
+		return register( name, new SpatioTemporalIndexRebuildable<>( graph, lock, position, index ) );
+	}
+
+	/**
+	 * Sets the number of modifications above which an index is rebuilt.
+	 *
+	 * @param modCountThreshold
+	 *            the threshold.
+	 */
+	public void setModCountThreshold( final int modCountThreshold )
+	{
+		this.modCountThreshold = Math.max( 1, modCountThreshold );
+	}
+
+	public int getModCountThreshold()
+	{
+		return modCountThreshold;
+	}
+
+	/**
+	 * Sets the maximal delay after which a modified index is rebuilt, even if
+	 * it has fewer modifications than the threshold.
+	 *
+	 * @param maxDelay
+	 *            the delay in milliseconds.
+	 */
+	public void setMaxDelay( final long maxDelay )
+	{
+		this.maxDelay = Math.max( 0, maxDelay );
+	}
+
+	public long getMaxDelay()
+	{
+		return maxDelay;
+	}
+
+	/**
+	 * Suspends the rebuilds until {@link #resume()} is called. Calls can be
+	 * nested, the rebuilds restart when each call to this method has been
+	 * matched by a call to {@link #resume()}.
+	 */
+	public synchronized void pause()
+	{
+		pauseCount++;
+	}
+
+	/**
+	 * Resumes the rebuilds suspended by {@link #pause()}.
+	 */
+	public synchronized void resume()
+	{
+		if ( pauseCount > 0 )
+			pauseCount--;
+	}
+
+	public synchronized boolean isPaused()
+	{
+		return pauseCount > 0;
+	}
+
+	/**
+	 * Unregisters all the indices and stops the background thread.
+	 */
+	public void shutdown()
+	{
+		executor.shutdownNow();
+		for ( final Registration registration : registrations )
+			registration.unregister();
+	}
+
+	/**
+	 * Returns the metrics of all the registered indices.
+	 *
+	 * @return a new list of metrics.
+	 */
+	public List< Metrics > getMetrics()
+	{
+		final List< Metrics > metrics = new ArrayList<>( registrations.size() );
+		for ( final Registration registration : registrations )
+			metrics.add( registration.getMetrics() );
+		return metrics;
+	}
+
+	private void poll()
+	{
+		if ( isPaused() )
+			return;
+
+		final long now = System.currentTimeMillis();
+		for ( final Registration registration : registrations )
+		{
+			if ( Thread.currentThread().isInterrupted() )
+				return;
+			try
+			{
+				registration.poll( now );
+			}
+			catch ( final RuntimeException e )
+			{
+				// Do not let a failing index stop the rebuild of the others.
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * The registration of an index with the scheduler.
+	 */
+	public class Registration
+	{
+
+		private final String name;
+
+		private final Rebuildable rebuildable;
+
+		/**
+		 * Time at which modifications were first seen since the last
+		 * rebuild, or -1 if there were none.
+		 */
+		private long firstModTime = -1;
+
+		private int rebuildCount;
+
+		private long totalNanos;
+
+		private long maxNanos;
+
+		private long lastNanos;
+
+		private Registration( final String name, final Rebuildable rebuildable )
+		{
+			this.name = name;
+			this.rebuildable = rebuildable;
+		}
+
+		private void poll( final long now )
+		{
+			final int modCount = rebuildable.getModCount();
+			if ( modCount == 0 )
+			{
+				firstModTime = -1;
+				return;
+			}
+			if ( firstModTime < 0 )
+				firstModTime = now;
+			if ( modCount < modCountThreshold && now - firstModTime < maxDelay )
+				return;
+
+			final long start = System.nanoTime();
+			rebuildable.rebuild();
+			final long duration = System.nanoTime() - start;
+			firstModTime = -1;
+			synchronized ( this )
+			{
+				rebuildCount++;
+				totalNanos += duration;
+				lastNanos = duration;
+				maxNanos = Math.max( maxNanos, duration );
+			}
+		}
+
+		/**
+		 * Stops rebuilding the index and stops tracking its modifications.
+		 */
+		public void unregister()
+		{
+			if ( registrations.remove( this ) )
+				rebuildable.dispose();
+		}
+
+		public synchronized Metrics getMetrics()
+		{
+			return new Metrics( name, rebuildCount, totalNanos, maxNanos, lastNanos );
+		}
+	}
+
+	/**
+	 * Rebuild statistics of one index.
+	 */
+	public static class Metrics
+	{
+
+		private final String name;
+
+		private final int rebuildCount;
+
+		private final long totalNanos;
+
+		private final long maxNanos;
+
+		private final long lastNanos;
+
+		private Metrics( final String name, final int rebuildCount, final long totalNanos, final long maxNanos, final long lastNanos )
+		{
+			this.name = name;
+			this.rebuildCount = rebuildCount;
+			this.totalNanos = totalNanos;
+			this.maxNanos = maxNanos;
+			this.lastNanos = lastNanos;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public int getRebuildCount()
+		{
+			return rebuildCount;
+		}
+
+		/**
+		 * Returns the cumulated duration of all rebuilds, in nanoseconds.
+		 *
+		 * @return the total duration.
+		 */
+		public long getTotalNanos()
+		{
+			return totalNanos;
+		}
+
+		public long getMaxNanos()
+		{
+			return maxNanos;
+		}
+
+		public long getLastNanos()
+		{
+			return lastNanos;
+		}
+
+		public double getMeanMillis()
+		{
+			return rebuildCount == 0 ? 0. : totalNanos / 1e6 / rebuildCount;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format( "%s: %d rebuilds, mean %.1f ms, max %.1f ms, last %.1f ms",
+					name, rebuildCount, getMeanMillis(), maxNanos / 1e6, lastNanos / 1e6 );
+		}
+	}
+
+	/**
+	 * Counts the modifications of a graph, tracks the time-points they
+	 * happened in, and rebuilds the spatial indices of these time-points in a
+	 * {@link SpatioTemporalIndexImp}. The graph lock is taken separately for
+	 * each time-point, so that edits are not blocked for the whole rebuild.
+	 */
+	private static class SpatioTemporalIndexRebuildable< V extends Vertex< E > & HasTimepoint, E extends Edge< V > >
+			implements Rebuildable, GraphListener< V, E >, PropertyChangeListener< V >
+	{
+
+		private final ListenableGraph< V, E > graph;
+
+		private final ReentrantReadWriteLock lock;
+
+		private final Property< V > position;
+
+		private final SpatioTemporalIndexImp< ?, ? > index;
+
+		private final AtomicInteger modCount = new AtomicInteger();
+
+		/**
+		 * Time-points modified since the last rebuild. Guarded by its own
+		 * monitor.
+		 */
+		private final TIntHashSet dirty = new TIntHashSet();
+
+		public SpatioTemporalIndexRebuildable(
+				final ListenableGraph< V, E > graph,
+				final ReentrantReadWriteLock lock,
+				final Property< V > position,
+				final SpatioTemporalIndexImp< ?, ? > index )
+		{
+			this.graph = graph;
+			this.lock = lock;
+			this.position = position;
+			this.index = index;
+			graph.addGraphListener( this );
+			position.propertyChangeListeners().add( this );
+		}
+
+		@Override
+		public int getModCount()
+		{
+			return modCount.get();
+		}
+
+		@Override
+		public void rebuild()
+		{
+			final int[] timepoints;
+			synchronized ( dirty )
+			{
+				modCount.set( 0 );
+				timepoints = dirty.toArray();
+				dirty.clear();
+			}
+			for ( final int t : timepoints )
+			{
+				lock.readLock().lock();
+				try
+				{
+					SpatioTemporalIndexImpAccess.rebuild( index, t );
+				}
+				finally
+				{
+					lock.readLock().unlock();
+				}
+			}
+		}
+
+		private void modified( final V vertex )
+		{
+			synchronized ( dirty )
+			{
+				dirty.add( vertex.getTimepoint() );
+				modCount.incrementAndGet();
+			}
+		}
+
+		@Override
+		public void dispose()
+		{
+			graph.removeGraphListener( this );
+			position.propertyChangeListeners().remove( this );
+		}
+
+		@Override
+		public void propertyChanged( final V vertex )
+		{
+			modified( vertex );
+		}
+
+		@Override
+		public void graphRebuilt()
+		{
+			// The index rebuilds itself when the whole graph is rebuilt.
+			synchronized ( dirty )
+			{
+				modCount.set( 0 );
+				dirty.clear();
+			}
+		}
+
+		@Override
+		public void vertexAdded( final V vertex )
+		{
+			modified( vertex );
+		}
+
+		@Override
+		public void vertexRemoved( final V vertex )
+		{
+			modified( vertex );
+		}
+
+		@Override
+		public void edgeAdded( final E edge )
+		{}
+
+		@Override
+		public void edgeRemoved( final E edge )
+		{}
+	}
+}
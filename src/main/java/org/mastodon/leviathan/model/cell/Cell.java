@@ -1,5 +1,8 @@
 package org.mastodon.leviathan.model.cell;
 
+import org.mastodon.leviathan.model.ArrayArena;
+import org.mastodon.leviathan.model.DoubleSlice;
+import org.mastodon.leviathan.model.IntSlice;
 import org.mastodon.model.AbstractSpot;
 import org.mastodon.model.HasLabel;
 import org.mastodon.pool.ByteMappedElement;
@@ -50,6 +53,17 @@ public class Cell extends AbstractSpot< Cell, Link, CellPool, ByteMappedElement,
 			return Integer.toString( getInternalPoolIndex() );
 	}
 
+	/**
+	 * Returns whether a label was set for this cell. When it was not,
+	 * {@link #getLabel()} returns the pool index of the cell.
+	 *
+	 * @return <code>true</code> if the cell has a label.
+	 */
+	public boolean hasLabel()
+	{
+		return pool.label.isSet( this );
+	}
+
 	@Override
 	public void setLabel( final String label )
 	{
@@ -61,21 +75,70 @@ public class Cell extends AbstractSpot< Cell, Link, CellPool, ByteMappedElement,
 		pool.membranes.set( this, ids );
 	}
 
+	/**
+	 * Returns a copy of the ids of the membranes of this cell.
+	 *
+	 * @return a new array, or <code>null</code> if the membranes are not set.
+	 */
 	public int[] getMembranes()
 	{
 		return pool.membranes.get( this );
 	}
 
+	/**
+	 * Points the specified slice to the ids of the membranes of this cell,
+	 * without copying them. The slice is valid until the next modification of
+	 * the cell membranes in the graph.
+	 *
+	 * @param slice
+	 *            the slice to use.
+	 * @return the specified slice, or <code>null</code> if the membranes are
+	 *         not set.
+	 */
+	public IntSlice getMembranes( final IntSlice slice )
+	{
+		final ArrayArena< int[] > arena = pool.membranes.arena();
+		final int id = getInternalPoolIndex();
+		if ( !arena.isSet( id ) )
+			return null;
+		return slice.wrap( arena.page( id ), arena.offset( id ), arena.length( id ) );
+	}
+
 	public void setBoundary( final double[] boundary )
 	{
 		pool.boundary.set( this, boundary );
 	}
 
+	/**
+	 * Returns a copy of the boundary of this cell, as interleaved
+	 * <code>x, y</code> coordinates relative to the cell position.
+	 *
+	 * @return a new array, or <code>null</code> if the boundary is not set.
+	 */
 	public double[] getBoundary()
 	{
 		return pool.boundary.get( this );
 	}
 
+	/**
+	 * Points the specified slice to the boundary of this cell, without
+	 * copying it. The slice is valid until the next modification of the cell
+	 * boundaries in the graph.
+	 *
+	 * @param slice
+	 *            the slice to use.
+	 * @return the specified slice, or <code>null</code> if the boundary is not
+	 *         set.
+	 */
+	public DoubleSlice getBoundary( final DoubleSlice slice )
+	{
+		final ArrayArena< double[] > arena = pool.boundary.arena();
+		final int id = getInternalPoolIndex();
+		if ( !arena.isSet( id ) )
+			return null;
+		return slice.wrap( arena.page( id ), arena.offset( id ), arena.length( id ) );
+	}
+
 	@Override
 	public String toString()
 	{
@@ -0,0 +1,264 @@
+package org.mastodon.leviathan.model.cell;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.mastodon.collection.RefObjectMap;
+import org.mastodon.leviathan.model.ArrayArena;
+import org.mastodon.properties.ObjPropertyMap;
+
+/**
+ * Property map of variable-length primitive arrays of cells, stored in an
+ * {@link ArrayArena} instead of one array object per cell.
+ * <p>
+ * {@link #set(Cell, Object)} copies the array into the arena and
+ * {@link #get(Cell)} returns a new copy, so that existing code keeps working.
+ * Code that sweeps many cells should read the arena directly through the
+ * slice accessors of {@link Cell}. Listeners are notified as for a regular
+ * {@link ObjPropertyMap}. {@link #getMap()} returns a read-only view of the
+ * arena.
+ *
+ * @param <A>
+ *            the type of the arrays.
+ */
+class CellArenaPropertyMap< A > extends ObjPropertyMap< Cell, A >
+{
+
+	private final CellPool pool;
+
+	private final ArrayArena< A > arena;
+
+	private final MapView view = new MapView();
+
+	CellArenaPropertyMap( final CellPool pool, final ArrayArena< A > arena )
+	{
+		super( pool );
+		this.pool = pool;
+		this.arena = arena;
+	}
+
+	ArrayArena< A > arena()
+	{
+		return arena;
+	}
+
+	/**
+	 * Stores a copy of the specified array for a cell.
+	 *
+	 * @return always <code>null</code>: the previous array is not copied.
+	 */
+	@Override
+	public A set( final Cell key, final A value )
+	{
+		if ( value == null )
+			return remove( key );
+
+		notifyBeforePropertyChange( key );
+		arena.set( key.getInternalPoolIndex(), value );
+		notifyPropertyChanged( key );
+		return null;
+	}
+
+	/**
+	 * Removes the array of a cell.
+	 *
+	 * @return always <code>null</code>: the previous array is not copied.
+	 */
+	@Override
+	public A remove( final Cell key )
+	{
+		notifyBeforePropertyChange( key );
+		arena.remove( key.getInternalPoolIndex() );
+		notifyPropertyChanged( key );
+		return null;
+	}
+
+	@Override
+	public A get( final Cell key )
+	{
+		return arena.copy( key.getInternalPoolIndex() );
+	}
+
+	@Override
+	public boolean isSet( final Cell key )
+	{
+		return arena.isSet( key.getInternalPoolIndex() );
+	}
+
+	@Override
+	public void beforeDeleteObject( final Cell key )
+	{
+		arena.remove( key.getInternalPoolIndex() );
+	}
+
+	@Override
+	public void beforeClearPool()
+	{
+		arena.clear();
+	}
+
+	@Override
+	public void clear()
+	{
+		arena.clear();
+	}
+
+	/**
+	 * Returns a read-only view of the arrays, from each cell with an array to
+	 * a copy of its array. Keys are visited in pool order, with a reused
+	 * reference, as in other ref collections. Modifications must go through
+	 * the property map.
+	 */
+	@Override
+	public RefObjectMap< Cell, A > getMap()
+	{
+		return view;
+	}
+
+	private final class MapView extends AbstractMap< Cell, A > implements RefObjectMap< Cell, A >
+	{
+
+		private final Set< Cell > keySet = new AbstractSet< Cell >()
+		{
+			@Override
+			public Iterator< Cell > iterator()
+			{
+				return new KeyIterator();
+			}
+
+			@Override
+			public int size()
+			{
+				return arena.size();
+			}
+
+			@Override
+			public boolean contains( final Object o )
+			{
+				return containsKey( o );
+			}
+		};
+
+		private final Set< Entry< Cell, A > > entrySet = new AbstractSet< Entry< Cell, A > >()
+		{
+			@Override
+			public Iterator< Entry< Cell, A > > iterator()
+			{
+				final KeyIterator keys = new KeyIterator();
+				return new Iterator< Entry< Cell, A > >()
+				{
+					@Override
+					public boolean hasNext()
+					{
+						return keys.hasNext();
+					}
+
+					@Override
+					public Entry< Cell, A > next()
+					{
+						// Entries may be kept, so they get their own reference.
+						final Cell key = pool.createRef().refTo( keys.next() );
+						return new SimpleImmutableEntry<>( key, CellArenaPropertyMap.this.get( key ) );
+					}
+				};
+			}
+
+			@Override
+			public int size()
+			{
+				return arena.size();
+			}
+		};
+
+		@Override
+		public int size()
+		{
+			return arena.size();
+		}
+
+		@Override
+		public boolean containsKey( final Object key )
+		{
+			return key instanceof Cell && isSet( ( Cell ) key );
+		}
+
+		@Override
+		public A get( final Object key )
+		{
+			return containsKey( key ) ? CellArenaPropertyMap.this.get( ( Cell ) key ) : null;
+		}
+
+		@Override
+		public Set< Cell > keySet()
+		{
+			return keySet;
+		}
+
+		@Override
+		public Set< Entry< Cell, A > > entrySet()
+		{
+			return entrySet;
+		}
+
+		@Override
+		public Cell createKeyRef()
+		{
+			return pool.createRef();
+		}
+
+		@Override
+		public void releaseKeyRef( final Cell ref )
+		{
+			pool.releaseRef( ref );
+		}
+	}
+
+	/**
+	 * Iterates over the cells that have an array, in pool order, with a reused
+	 * reference.
+	 */
+	private final class KeyIterator implements Iterator< Cell >
+	{
+
+		private final Iterator< Cell > cells = pool.iterator();
+
+		private final Cell ref = pool.createRef();
+
+		private boolean found;
+
+		private boolean hasNext;
+
+		@Override
+		public boolean hasNext()
+		{
+			if ( !found )
+			{
+				hasNext = false;
+				while ( cells.hasNext() )
+				{
+					final Cell cell = cells.next();
+					if ( isSet( cell ) )
+					{
+						ref.refTo( cell );
+						hasNext = true;
+						break;
+					}
+				}
+				found = true;
+			}
+			return hasNext;
+		}
+
+		@Override
+		public Cell next()
+		{
+			if ( !hasNext() )
+				throw new NoSuchElementException();
+			found = false;
+			return ref;
+		}
+	}
+}
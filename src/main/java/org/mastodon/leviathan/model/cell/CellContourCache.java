@@ -0,0 +1,134 @@
+package org.mastodon.leviathan.model.cell;
+
+import org.mastodon.graph.GraphListener;
+import org.mastodon.leviathan.model.AbstractContourCache;
+import org.mastodon.leviathan.model.DoubleSlice;
+import org.mastodon.properties.PropertyChangeListener;
+
+/**
+ * Cache of the simplified contours of cells.
+ * <p>
+ * Contours are made of the boundary points, relative to the cell position.
+ * Moving a cell therefore does not invalidate the significances of its
+ * points. They are discarded when the boundary of the cell changes or when
+ * the cell is removed.
+ */
+public class CellContourCache extends AbstractContourCache< Cell >
+{
+
+	private final CellGraph graph;
+
+	private final CellPool pool;
+
+	private final Listener listener;
+
+	public CellContourCache( final CellGraph graph )
+	{
+		this.graph = graph;
+		this.pool = ( CellPool ) graph.vertices().getRefPool();
+		this.listener = new Listener();
+		graph.addGraphListener( listener );
+		pool.boundaryProperty().propertyChangeListeners().add( listener );
+	}
+
+	/**
+	 * Points the specified slice to the contour of a cell, simplified with the
+	 * specified tolerance. The contour is made of interleaved <code>x, y</code>
+	 * coordinates relative to the cell position. The slice stays readable until
+	 * the next contour is requested from the same thread.
+	 *
+	 * @param cell
+	 *            the cell.
+	 * @param tolerance
+	 *            the maximal distance between the contour and the boundary,
+	 *            in global units.
+	 * @param slice
+	 *            the slice to use.
+	 * @return the specified slice, or <code>null</code> if the cell has no
+	 *         boundary.
+	 */
+	@Override
+	public DoubleSlice getContour( final Cell cell, final double tolerance, final DoubleSlice slice )
+	{
+		return super.getContour( cell, tolerance, slice );
+	}
+
+	/**
+	 * Computes the significances of the boundary points of all the cells, so
+	 * that the first paint does not have to.
+	 */
+	public void precompute()
+	{
+		graph.getLock().readLock().lock();
+		try
+		{
+			precompute( graph.vertices() );
+		}
+		finally
+		{
+			graph.getLock().readLock().unlock();
+		}
+	}
+
+	/**
+	 * Stops tracking the modifications of the graph.
+	 */
+	public void dispose()
+	{
+		graph.removeGraphListener( listener );
+		pool.boundaryProperty().propertyChangeListeners().remove( listener );
+	}
+
+	@Override
+	protected int getId( final Cell cell )
+	{
+		return cell.getInternalPoolIndex();
+	}
+
+	@Override
+	protected DoubleSlice getPolyline( final Cell cell, final DoubleSlice slice )
+	{
+		return cell.getBoundary( slice );
+	}
+
+	/*
+	 * Invalidation.
+	 */
+
+	private class Listener implements GraphListener< Cell, Link >, PropertyChangeListener< Cell >
+	{
+
+		@Override
+		public void graphRebuilt()
+		{
+			clear();
+		}
+
+		@Override
+		public void vertexAdded( final Cell vertex )
+		{
+			// The pool index may have been used by a removed cell.
+			invalidate( vertex.getInternalPoolIndex() );
+		}
+
+		@Override
+		public void vertexRemoved( final Cell vertex )
+		{
+			invalidate( vertex.getInternalPoolIndex() );
+		}
+
+		@Override
+		public void edgeAdded( final Link edge )
+		{}
+
+		@Override
+		public void edgeRemoved( final Link edge )
+		{}
+
+		@Override
+		public void propertyChanged( final Cell cell )
+		{
+			invalidate( cell.getInternalPoolIndex() );
+		}
+	}
+}
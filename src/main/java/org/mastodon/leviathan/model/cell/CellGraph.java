@@ -1,14 +1,49 @@
 package org.mastodon.leviathan.model.cell;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+
 import org.mastodon.graph.GraphIdBimap;
+import org.mastodon.graph.io.GraphSerializer;
+import org.mastodon.graph.io.RawGraphIO;
+import org.mastodon.graph.io.RawGraphIO.FileIdToGraphMap;
 import org.mastodon.io.properties.ObjPropertyMapSerializer;
+import org.mastodon.io.properties.PropertyMapSerializers;
+import org.mastodon.io.properties.RawPropertyIO;
 import org.mastodon.io.properties.StringPropertyMapSerializer;
+import org.mastodon.leviathan.model.io.CoordinatesPropertyMapSerializer;
+import org.mastodon.leviathan.model.io.IdArrayPropertyMapSerializer;
 import org.mastodon.model.AbstractModelGraph;
 import org.mastodon.pool.ByteMappedElement;
 
 public class CellGraph extends AbstractModelGraph< CellGraph, CellPool, LinkPool, Cell, Link, ByteMappedElement >
 {
 
+	/*
+	 * Keys of the property maps. The varint encoded maps use new keys, so that
+	 * files written with the previous encoding are not misread.
+	 */
+
+	static final String MEMBRANES_KEY = "membranes-varint";
+
+	static final String BOUNDARY_KEY = "boundary-varint";
+
+	static final String LABEL_KEY = "label";
+
+	/**
+	 * Key of the membrane ids in files written before they were varint
+	 * encoded, as serialized Java arrays.
+	 */
+	static final String LEGACY_MEMBRANES_KEY = "membranes";
+
+	/**
+	 * Serializers used when reading: the current ones, plus the ones of the
+	 * previous encodings.
+	 */
+	private final PropertyMapSerializers< Cell > readVertexPropertySerializers;
+
 	public CellGraph()
 	{
 		this( 1024 );
@@ -18,8 +53,36 @@ public class CellGraph extends AbstractModelGraph< CellGraph, CellPool, LinkPool
 	{
 		super( new LinkPool( initialCapacity, new CellPool( initialCapacity ) ) );
 
-		vertexPropertySerializers.put( "membranes", new ObjPropertyMapSerializer<>( vertexPool.membranes ) );
-		vertexPropertySerializers.put( "label", new StringPropertyMapSerializer<>( vertexPool.label ) );
+		// Arrays stored in arenas are written by visiting all the cells.
+		final IdArrayPropertyMapSerializer< Cell > membranes = new IdArrayPropertyMapSerializer<>( vertexPool.membranes, vertices(), true );
+		final CoordinatesPropertyMapSerializer< Cell > boundary = new CoordinatesPropertyMapSerializer<>( vertexPool.boundary, vertices(), 2, true );
+		final StringPropertyMapSerializer< Cell > label = new StringPropertyMapSerializer<>( vertexPool.label );
+		vertexPropertySerializers.put( MEMBRANES_KEY, membranes );
+		vertexPropertySerializers.put( BOUNDARY_KEY, boundary );
+		vertexPropertySerializers.put( LABEL_KEY, label );
+
+		readVertexPropertySerializers = new PropertyMapSerializers<>();
+		readVertexPropertySerializers.put( MEMBRANES_KEY, membranes );
+		readVertexPropertySerializers.put( BOUNDARY_KEY, boundary );
+		readVertexPropertySerializers.put( LABEL_KEY, label );
+		readVertexPropertySerializers.put( LEGACY_MEMBRANES_KEY, new ObjPropertyMapSerializer<>( vertexPool.membranes ) );
+	}
+
+	/**
+	 * Same as the base class, but also reads the property maps written with
+	 * the previous encodings.
+	 */
+	@Override
+	public FileIdToGraphMap< Cell, Link > loadRaw( final InputStream is, final GraphSerializer< Cell, Link > serializer ) throws IOException
+	{
+		final ObjectInputStream ois = new ObjectInputStream( new BufferedInputStream( is, 1024 * 1024 ) );
+		pauseListeners();
+		clear();
+		final FileIdToGraphMap< Cell, Link > fileIdMap = RawGraphIO.read( this, idmap, serializer, ois );
+		RawPropertyIO.readPropertyMaps( fileIdMap.vertices(), readVertexPropertySerializers, ois );
+		ois.close();
+		resumeListeners();
+		return fileIdMap;
 	}
 
 	CellPool getVertexPool()
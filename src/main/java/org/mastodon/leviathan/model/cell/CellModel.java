@@ -16,6 +16,7 @@ import org.mastodon.feature.FeatureModel;
 import org.mastodon.graph.io.RawGraphIO.FileIdToGraphMap;
 import org.mastodon.graph.io.RawGraphIO.GraphToFileIdMap;
 import org.mastodon.labels.LabelSets;
+import org.mastodon.leviathan.model.SpatialIndexRebuildScheduler;
 import org.mastodon.mamut.project.MamutProject;
 import org.mastodon.model.AbstractModel;
 import org.mastodon.model.tag.DefaultTagSetModel;
@@ -24,7 +25,6 @@ import org.mastodon.model.tag.TagSetModel;
 import org.mastodon.properties.Property;
 import org.mastodon.spatial.SpatioTemporalIndex;
 import org.mastodon.spatial.SpatioTemporalIndexImp;
-import org.mastodon.spatial.SpatioTemporalIndexImpRebuilderThread;
 import org.mastodon.undo.GraphUndoRecorder;
 import org.mastodon.undo.Recorder;
 import org.mastodon.undo.UndoPointMarker;
@@ -46,19 +46,28 @@ public class CellModel extends AbstractModel< CellGraph, Cell, Link > implements
 
 	private final String timeUnits;
 
+	private final SpatialIndexRebuildScheduler.Registration indexRebuild;
+
+	private final CellPolygonIndex polygonIndex;
+
+	private final SpatialIndexRebuildScheduler.Registration polygonIndexRebuild;
+
+	private final CellContourCache contourCache;
+
 	public CellModel( final String spaceUnits, final String timeUnits )
 	{
 		super( new CellGraph() );
 		this.spaceUnits = spaceUnits;
 		this.timeUnits = timeUnits;
 		final SpatioTemporalIndexImp< Cell, Link > theIndex = new SpatioTemporalIndexImp<>( modelGraph, modelGraph.idmap().vertexIdBimap() );
-		/*
-		 * Every 1 second, rebuild spatial indices with more than 100
-		 * modifications
-		 */
-		new SpatioTemporalIndexImpRebuilderThread( "Rebuild spatial indices", theIndex, 100, 1000, true ).start();
 		index = theIndex;
 		lock = modelGraph.getLock();
+		indexRebuild = SpatialIndexRebuildScheduler.shared().register(
+				"Cell spatial index",
+				modelGraph, lock, modelGraph.getVertexPool().positionProperty(), theIndex );
+		polygonIndex = new CellPolygonIndex( modelGraph );
+		polygonIndexRebuild = SpatialIndexRebuildScheduler.shared().register( "Cell polygon index", polygonIndex );
+		contourCache = new CellContourCache( modelGraph );
 
 		final int initialCapacity = 1024;
 
@@ -115,19 +124,47 @@ public class CellModel extends AbstractModel< CellGraph, Cell, Link > implements
 	 */
 	public FileIdToGraphMap< Cell, Link > loadRaw( final MamutProject.ProjectReader reader ) throws IOException
 	{
-		final FileIdToGraphMap< Cell, Link > idmap = modelGraph.loadRaw( reader.getRawModelInputStream(), CellModelSerializer.getInstance() );
+		InputStream tis;
+		try
+		{
+			tis = reader.getRawTagsInputStream();
+		}
+		catch ( final FileNotFoundException e )
+		{
+			tis = null;
+		}
+		return loadRaw( reader.getRawModelInputStream(), tis );
+	}
+
+	/**
+	 * Clears this model and loads the model graph and the tags from the
+	 * specified streams. The streams are closed after reading.
+	 *
+	 * @param modelInputStream
+	 *            the stream to read the raw model graph from.
+	 * @param tagsInputStream
+	 *            the stream to read the raw tags from. May be
+	 *            <code>null</code>, in which case the model has no tags.
+	 * @return the {@link FileIdToGraphMap} object generated by loading the
+	 *         model graph.
+	 * @throws IOException
+	 *             if an I/O error occurs while reading the streams.
+	 */
+	public FileIdToGraphMap< Cell, Link > loadRaw( final InputStream modelInputStream, final InputStream tagsInputStream ) throws IOException
+	{
+		final FileIdToGraphMap< Cell, Link > idmap = modelGraph.loadRaw( modelInputStream, CellModelSerializer.getInstance() );
 
 		tagSetModel.pauseListeners();
 		tagSetModel.clear();
-		try (
-				final InputStream tis = reader.getRawTagsInputStream();
-				final ObjectInputStream ois = new ObjectInputStream( new BufferedInputStream( tis, 1024 * 1024 ) ))
+		if ( tagsInputStream != null )
 		{
-			RawTagSetModelIO.read( tagSetModel, idmap, ois );
+			try (final ObjectInputStream ois = new ObjectInputStream( new BufferedInputStream( tagsInputStream, 1024 * 1024 ) ))
+			{
+				RawTagSetModelIO.read( tagSetModel, idmap, ois );
+			}
 		}
-		catch ( final FileNotFoundException e )
-		{}
 		tagSetModel.resumeListeners();
+		contourCache.precompute();
 
 		return idmap;
 	}
@@ -144,11 +181,27 @@ public class CellModel extends AbstractModel< CellGraph, Cell, Link > implements
 	 */
 	public GraphToFileIdMap< Cell, Link > saveRaw( final MamutProject.ProjectWriter writer ) throws IOException
 	{
-		final GraphToFileIdMap< Cell, Link > idmap = modelGraph.saveRaw( writer.getRawModelOutputStream(), CellModelSerializer.getInstance() );
+		return saveRaw( writer.getRawModelOutputStream(), writer.getRawTagsOutputStream() );
+	}
+
+	/**
+	 * Saves the model graph and the tags of this model to the specified
+	 * streams. The streams are closed after writing.
+	 *
+	 * @param modelOutputStream
+	 *            the stream to write the raw model graph to.
+	 * @param tagsOutputStream
+	 *            the stream to write the raw tags to.
+	 * @return the {@link GraphToFileIdMap} object generated by saving the model
+	 *         graph.
+	 * @throws IOException
+	 *             if an I/O error occurs while writing the streams.
+	 */
+	public GraphToFileIdMap< Cell, Link > saveRaw( final OutputStream modelOutputStream, final OutputStream tagsOutputStream ) throws IOException
+	{
+		final GraphToFileIdMap< Cell, Link > idmap = modelGraph.saveRaw( modelOutputStream, CellModelSerializer.getInstance() );
 
-		try (
-				final OutputStream fos = writer.getRawTagsOutputStream();
-				final ObjectOutputStream oos = new ObjectOutputStream( new BufferedOutputStream( fos, 1024 * 1024 ) ))
+		try (final ObjectOutputStream oos = new ObjectOutputStream( new BufferedOutputStream( tagsOutputStream, 1024 * 1024 ) ))
 		{
 			RawTagSetModelIO.write( tagSetModel, idmap, oos );
 		}
@@ -166,6 +219,39 @@ public class CellModel extends AbstractModel< CellGraph, Cell, Link > implements
 		return index;
 	}
 
+	/**
+	 * Exposes the index of the cell polygons of this model, used to find the
+	 * cell containing a point or the cells intersecting a box.
+	 *
+	 * @return the polygon index.
+	 */
+	public CellPolygonIndex getPolygonIndex()
+	{
+		return polygonIndex;
+	}
+
+	/**
+	 * Exposes the cache of the simplified cell contours of this model, used
+	 * by the views to draw the cells.
+	 *
+	 * @return the contour cache.
+	 */
+	public CellContourCache getContourCache()
+	{
+		return contourCache;
+	}
+
+	/**
+	 * Stops the background rebuild of the spatial indices of this model. Must
+	 * be called when this model is discarded.
+	 */
+	public void dispose()
+	{
+		indexRebuild.unregister();
+		polygonIndexRebuild.unregister();
+		contourCache.dispose();
+	}
+
 	public void undo()
 	{
 		lock.writeLock().lock();
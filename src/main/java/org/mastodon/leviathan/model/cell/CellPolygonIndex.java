@@ -0,0 +1,570 @@
+package org.mastodon.leviathan.model.cell;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+import org.mastodon.collection.RefCollection;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.leviathan.model.DoubleSlice;
+import org.mastodon.leviathan.model.PackedRTree;
+import org.mastodon.leviathan.model.SpatialIndexRebuildScheduler;
+import org.mastodon.properties.PropertyChangeListener;
+
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+
+/**
+ * Per-timepoint R-tree over the bounding boxes of the cell polygons, with
+ * exact point-in-polygon refinement.
+ * <p>
+ * The polygon of a cell is its boundary, relative to the cell position. Each
+ * timepoint has a {@link PackedRTree}. Cells added, moved or reshaped after
+ * the tree was built are kept in a small pending set that is searched
+ * linearly, and the tree entries they replace are skipped. The trees are compacted by {@link #rebuild()}, called
+ * by the {@link SpatialIndexRebuildScheduler} once enough modifications have
+ * accumulated.
+ * <p>
+ * Queries must be made while holding the read lock of the cell graph.
+ */
+public class CellPolygonIndex implements SpatialIndexRebuildScheduler.Rebuildable
+{
+
+	private final CellGraph graph;
+
+	private final CellPool pool;
+
+	private final Listener listener;
+
+	private final TIntObjectHashMap< Tree > trees = new TIntObjectHashMap<>();
+
+	/**
+	 * Slice used to read the cell boundaries, guarded by this index.
+	 */
+	private final DoubleSlice slice = new DoubleSlice();
+
+	/**
+	 * Box used to update the extent of the trees, guarded by this index.
+	 */
+	private final float[] box = new float[ 4 ];
+
+	/**
+	 * If <code>true</code>, the trees must be built from the whole graph
+	 * before the next query.
+	 */
+	private boolean invalid = true;
+
+	private volatile int modCount;
+
+	public CellPolygonIndex( final CellGraph graph )
+	{
+		this.graph = graph;
+		this.pool = ( CellPool ) graph.vertices().getRefPool();
+		this.listener = new Listener();
+		graph.addGraphListener( listener );
+		pool.positionProperty().propertyChangeListeners().add( listener );
+		pool.boundaryProperty().propertyChangeListeners().add( listener );
+	}
+
+	/**
+	 * Returns the cell whose polygon contains the specified point.
+	 *
+	 * @param x
+	 *            the X coordinate of the point, in global coordinates.
+	 * @param y
+	 *            the Y coordinate of the point, in global coordinates.
+	 * @param timepoint
+	 *            the timepoint of the cell.
+	 * @param ref
+	 *            a cell reference, used to return the cell found.
+	 * @return the cell containing the point, or <code>null</code> if there is
+	 *         none.
+	 */
+	public synchronized Cell getCellAt( final double x, final double y, final int timepoint, final Cell ref )
+	{
+		ensureValid();
+		final Tree tree = trees.get( timepoint );
+		if ( tree == null )
+			return null;
+
+		final int[] found = new int[] { -1 };
+		tree.search( x, y, x, y, id -> {
+			if ( found[ 0 ] < 0 && contains( pool.getObject( id, ref ), x, y, slice ) )
+				found[ 0 ] = id;
+		} );
+		if ( found[ 0 ] < 0 )
+			return null;
+		return pool.getObject( found[ 0 ], ref );
+	}
+
+	/**
+	 * Adds the cells whose polygon intersects the specified box to a
+	 * collection.
+	 *
+	 * @param timepoint
+	 *            the timepoint of the cells.
+	 * @param xmin
+	 *            the min X of the box, in global coordinates.
+	 * @param ymin
+	 *            the min Y of the box, in global coordinates.
+	 * @param xmax
+	 *            the max X of the box, in global coordinates.
+	 * @param ymax
+	 *            the max Y of the box, in global coordinates.
+	 * @param result
+	 *            the collection to add the cells to.
+	 */
+	public synchronized void getCellsIntersecting(
+			final int timepoint,
+			final double xmin,
+			final double ymin,
+			final double xmax,
+			final double ymax,
+			final RefCollection< Cell > result )
+	{
+		ensureValid();
+		final Tree tree = trees.get( timepoint );
+		if ( tree == null )
+			return;
+
+		final Cell ref = graph.vertexRef();
+		try
+		{
+			tree.search( xmin, ymin, xmax, ymax, id -> {
+				final Cell cell = pool.getObject( id, ref );
+				if ( intersects( cell, xmin, ymin, xmax, ymax, slice ) )
+					result.add( cell );
+			} );
+		}
+		finally
+		{
+			graph.releaseRef( ref );
+		}
+	}
+
+	/**
+	 * Returns an upper bound of the extent of the cell polygons of a
+	 * timepoint: along each axis, no point of a polygon is farther than this
+	 * from the position of its cell. Renderers use it to widen their queries,
+	 * so that cells whose position is outside a region but whose polygon
+	 * overlaps it are found.
+	 * <p>
+	 * The bound is exact after the trees are built, and only grows with the
+	 * modifications made since.
+	 *
+	 * @param timepoint
+	 *            the timepoint.
+	 * @return the extent, in global units, or 0 if there are no cells at this
+	 *         timepoint.
+	 */
+	public synchronized double getMaxExtent( final int timepoint )
+	{
+		ensureValid();
+		final Tree tree = trees.get( timepoint );
+		return tree == null ? 0. : tree.extent;
+	}
+
+	/**
+	 * Returns an estimate of the memory used by this index.
+	 *
+	 * @return the estimated size in bytes.
+	 */
+	public synchronized long estimateMemory()
+	{
+		long bytes = 0;
+		for ( final Tree tree : trees.valueCollection() )
+		{
+			// Ids, boxes, R-tree entries and boxes, upper levels.
+			final long n = tree.ids.length;
+			bytes += n * ( 4 + 16 + 4 + 16 ) + n * 16 / 15;
+			bytes += 16L * ( tree.stale.size() + tree.pending.size() );
+		}
+		return bytes;
+	}
+
+	@Override
+	public int getModCount()
+	{
+		return modCount;
+	}
+
+	/**
+	 * Rebuilds the trees of the timepoints that were modified, so that the
+	 * pending cells are searched through the tree again.
+	 */
+	@Override
+	public void rebuild()
+	{
+		graph.getLock().readLock().lock();
+		try
+		{
+			synchronized ( this )
+			{
+				modCount = 0;
+				if ( invalid )
+					return;
+
+				final Cell ref = graph.vertexRef();
+				for ( final int t : trees.keys() )
+				{
+					final Tree tree = trees.get( t );
+					if ( tree.pending.isEmpty() && tree.stale.isEmpty() )
+						continue;
+
+					final int capacity = tree.ids.length + tree.pending.size();
+					final TIntArrayList ids = new TIntArrayList( capacity );
+					final float[] boxes = new float[ 4 * capacity ];
+					for ( int i = 0; i < tree.ids.length; i++ )
+					{
+						final int id = tree.ids[ i ];
+						if ( tree.stale.contains( id ) )
+							continue;
+						System.arraycopy( tree.boxes, 4 * i, boxes, 4 * ids.size(), 4 );
+						ids.add( id );
+					}
+					final TIntIterator it = tree.pending.iterator();
+					while ( it.hasNext() )
+					{
+						final int id = it.next();
+						boundingBox( pool.getObject( id, ref ), box, slice );
+						System.arraycopy( box, 0, boxes, 4 * ids.size(), 4 );
+						ids.add( id );
+					}
+					if ( ids.isEmpty() )
+						trees.remove( t );
+					else
+						trees.put( t, new Tree( ids.toArray(), boxes, ids.size() ) );
+				}
+				graph.releaseRef( ref );
+			}
+		}
+		finally
+		{
+			graph.getLock().readLock().unlock();
+		}
+	}
+
+	@Override
+	public void dispose()
+	{
+		graph.removeGraphListener( listener );
+		pool.positionProperty().propertyChangeListeners().remove( listener );
+		pool.boundaryProperty().propertyChangeListeners().remove( listener );
+	}
+
+	/**
+	 * Builds the trees of all timepoints from the graph.
+	 */
+	private void ensureValid()
+	{
+		if ( !invalid )
+			return;
+
+		trees.clear();
+		final TIntObjectHashMap< TIntArrayList > idsPerTimepoint = new TIntObjectHashMap<>();
+		for ( final Cell cell : graph.vertices() )
+		{
+			TIntArrayList ids = idsPerTimepoint.get( cell.getTimepoint() );
+			if ( ids == null )
+			{
+				ids = new TIntArrayList();
+				idsPerTimepoint.put( cell.getTimepoint(), ids );
+			}
+			ids.add( cell.getInternalPoolIndex() );
+		}
+
+		final Cell ref = graph.vertexRef();
+		for ( final int t : idsPerTimepoint.keys() )
+		{
+			final int[] ids = idsPerTimepoint.get( t ).toArray();
+			final float[] boxes = new float[ 4 * ids.length ];
+			for ( int i = 0; i < ids.length; i++ )
+			{
+				boundingBox( pool.getObject( ids[ i ], ref ), box, slice );
+				System.arraycopy( box, 0, boxes, 4 * i, 4 );
+			}
+			trees.put( t, new Tree( ids, boxes, ids.length ) );
+		}
+		graph.releaseRef( ref );
+		invalid = false;
+	}
+
+	private synchronized void cellChanged( final Cell cell )
+	{
+		modCount++;
+		if ( invalid )
+			return;
+		final int t = cell.getTimepoint();
+		Tree tree = trees.get( t );
+		if ( tree == null )
+		{
+			tree = new Tree( new int[ 0 ], new float[ 0 ], 0 );
+			trees.put( t, tree );
+		}
+		final int id = cell.getInternalPoolIndex();
+		tree.stale.add( id );
+		tree.pending.add( id );
+		boundingBox( cell, box, slice );
+		tree.extent = Math.max( tree.extent, Tree.extent( box, 0 ) );
+	}
+
+	private synchronized void cellRemoved( final Cell cell )
+	{
+		modCount++;
+		if ( invalid )
+			return;
+		final Tree tree = trees.get( cell.getTimepoint() );
+		if ( tree == null )
+			return;
+		final int id = cell.getInternalPoolIndex();
+		tree.stale.add( id );
+		tree.pending.remove( id );
+	}
+
+	private synchronized void invalidate()
+	{
+		invalid = true;
+		trees.clear();
+	}
+
+	/*
+	 * Geometry.
+	 */
+
+	/**
+	 * Computes the bounding box of the polygon of a cell, rounded outwards to
+	 * float precision.
+	 */
+	private static void boundingBox( final Cell cell, final float[] box, final DoubleSlice slice )
+	{
+		final double xc = cell.getDoublePosition( 0 );
+		final double yc = cell.getDoublePosition( 1 );
+		double xmin = xc;
+		double ymin = yc;
+		double xmax = xc;
+		double ymax = yc;
+		final DoubleSlice boundary = cell.getBoundary( slice );
+		if ( boundary != null )
+		{
+			for ( int i = 0; i < boundary.size() - 1; i += 2 )
+			{
+				final double x = xc + boundary.get( i );
+				final double y = yc + boundary.get( i + 1 );
+				xmin = Math.min( xmin, x );
+				ymin = Math.min( ymin, y );
+				xmax = Math.max( xmax, x );
+				ymax = Math.max( ymax, y );
+			}
+		}
+		PackedRTree.setBox( box, 0, xmin, ymin, xmax, ymax );
+	}
+
+	/**
+	 * Even-odd point-in-polygon test.
+	 */
+	static boolean contains( final Cell cell, final double x, final double y, final DoubleSlice slice )
+	{
+		final DoubleSlice boundary = cell.getBoundary( slice );
+		if ( boundary == null || boundary.size() < 6 )
+			return false;
+
+		// Work relative to the cell position.
+		final double px = x - cell.getDoublePosition( 0 );
+		final double py = y - cell.getDoublePosition( 1 );
+		final int n = boundary.size() / 2;
+		boolean inside = false;
+		double x0 = boundary.get( 2 * n - 2 );
+		double y0 = boundary.get( 2 * n - 1 );
+		for ( int i = 0; i < n; i++ )
+		{
+			final double x1 = boundary.get( 2 * i );
+			final double y1 = boundary.get( 2 * i + 1 );
+			if ( ( y1 > py ) != ( y0 > py ) && px < x1 + ( py - y1 ) * ( x0 - x1 ) / ( y0 - y1 ) )
+				inside = !inside;
+			x0 = x1;
+			y0 = y1;
+		}
+		return inside;
+	}
+
+	/**
+	 * Returns <code>true</code> if the polygon of a cell intersects a box: one
+	 * of its segments crosses the box, or the box is inside the polygon.
+	 */
+	static boolean intersects( final Cell cell, final double xmin, final double ymin, final double xmax, final double ymax, final DoubleSlice slice )
+	{
+		final DoubleSlice boundary = cell.getBoundary( slice );
+		final double xc = cell.getDoublePosition( 0 );
+		final double yc = cell.getDoublePosition( 1 );
+		if ( boundary == null || boundary.size() < 6 )
+			return xc >= xmin && xc <= xmax && yc >= ymin && yc <= ymax;
+
+		final int n = boundary.size() / 2;
+		double x0 = xc + boundary.get( 2 * n - 2 );
+		double y0 = yc + boundary.get( 2 * n - 1 );
+		for ( int i = 0; i < n; i++ )
+		{
+			final double x1 = xc + boundary.get( 2 * i );
+			final double y1 = yc + boundary.get( 2 * i + 1 );
+			if ( segmentIntersectsBox( x0, y0, x1, y1, xmin, ymin, xmax, ymax ) )
+				return true;
+			x0 = x1;
+			y0 = y1;
+		}
+		return contains( cell, xmin, ymin, slice );
+	}
+
+	/**
+	 * Liang-Barsky clipping of a segment against a box.
+	 */
+	private static boolean segmentIntersectsBox(
+			final double x0, final double y0, final double x1, final double y1,
+			final double xmin, final double ymin, final double xmax, final double ymax )
+	{
+		final double dx = x1 - x0;
+		final double dy = y1 - y0;
+		final double[] p = new double[] { -dx, dx, -dy, dy };
+		final double[] q = new double[] { x0 - xmin, xmax - x0, y0 - ymin, ymax - y0 };
+		double u0 = 0.;
+		double u1 = 1.;
+		for ( int k = 0; k < 4; k++ )
+		{
+			if ( p[ k ] == 0. )
+			{
+				if ( q[ k ] < 0. )
+					return false;
+				continue;
+			}
+			final double u = q[ k ] / p[ k ];
+			if ( p[ k ] < 0. )
+				u0 = Math.max( u0, u );
+			else
+				u1 = Math.min( u1, u );
+			if ( u0 > u1 )
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Index of one timepoint.
+	 */
+
+	private static final class Tree implements PackedRTree.Visitor
+	{
+
+		/**
+		 * Pool indices of the cells in the tree.
+		 */
+		private final int[] ids;
+
+		/**
+		 * Bounding boxes of the cells in the tree, in the same order.
+		 */
+		private final float[] boxes;
+
+		private final PackedRTree rtree;
+
+		/**
+		 * Upper bound of the largest side of the boxes of the valid and
+		 * pending cells.
+		 */
+		private float extent;
+
+		/**
+		 * Cells in the tree that are no longer valid.
+		 */
+		private final TIntHashSet stale = new TIntHashSet();
+
+		/**
+		 * Cells that are not in the tree, or whose tree entry is stale.
+		 */
+		private final TIntHashSet pending = new TIntHashSet();
+
+		private IntConsumer consumer;
+
+		Tree( final int[] ids, final float[] boxes, final int n )
+		{
+			this.ids = ids.length == n ? ids : Arrays.copyOf( ids, n );
+			this.boxes = boxes.length == 4 * n ? boxes : Arrays.copyOf( boxes, 4 * n );
+			this.rtree = PackedRTree.build( this.boxes, n );
+			for ( int i = 0; i < n; i++ )
+				extent = Math.max( extent, extent( this.boxes, i ) );
+		}
+
+		/**
+		 * Returns the largest side of a box. The box of a cell contains its
+		 * position, so this bounds the distance from the position to the
+		 * polygon along each axis.
+		 */
+		static float extent( final float[] boxes, final int entry )
+		{
+			return Math.max(
+					boxes[ 4 * entry + 2 ] - boxes[ 4 * entry ],
+					boxes[ 4 * entry + 3 ] - boxes[ 4 * entry + 1 ] );
+		}
+
+		/**
+		 * Visits the valid cells whose box intersects the specified box, then
+		 * the pending cells.
+		 */
+		void search( final double xmin, final double ymin, final double xmax, final double ymax, final IntConsumer consumer )
+		{
+			this.consumer = consumer;
+			rtree.search( xmin, ymin, xmax, ymax, this );
+			this.consumer = null;
+			final TIntIterator it = pending.iterator();
+			while ( it.hasNext() )
+				consumer.accept( it.next() );
+		}
+
+		@Override
+		public void visit( final int entry )
+		{
+			final int id = ids[ entry ];
+			if ( !stale.contains( id ) )
+				consumer.accept( id );
+		}
+	}
+
+	/*
+	 * Incremental updates.
+	 */
+
+	private class Listener implements GraphListener< Cell, Link >, PropertyChangeListener< Cell >
+	{
+
+		@Override
+		public void graphRebuilt()
+		{
+			invalidate();
+		}
+
+		@Override
+		public void vertexAdded( final Cell vertex )
+		{
+			cellChanged( vertex );
+		}
+
+		@Override
+		public void vertexRemoved( final Cell vertex )
+		{
+			cellRemoved( vertex );
+		}
+
+		@Override
+		public void edgeAdded( final Link edge )
+		{}
+
+		@Override
+		public void edgeRemoved( final Link edge )
+		{}
+
+		@Override
+		public void propertyChanged( final Cell cell )
+		{
+			cellChanged( cell );
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package org.mastodon.leviathan.model.cell;
 
+import org.mastodon.leviathan.model.ArrayArena;
 import org.mastodon.model.AbstractSpotPool;
 import org.mastodon.pool.ByteMappedElement;
 import org.mastodon.pool.ByteMappedElementArray;
@@ -20,18 +21,18 @@ public class CellPool extends AbstractSpotPool< Cell, Link, ByteMappedElement, C
 
 	public static final CellLayout layout = new CellLayout();
 
-	final ObjPropertyMap< Cell, int[] > membranes;
+	final CellArenaPropertyMap< int[] > membranes;
 
-	final ObjPropertyMap< Cell, double[] > boundary;
+	final CellArenaPropertyMap< double[] > boundary;
 
 	final ObjPropertyMap< Cell, String > label;
 
 	CellPool( final int initialCapacity )
 	{
 		super( initialCapacity, layout, Cell.class, SingleArrayMemPool.factory( ByteMappedElementArray.factory ) );
-		membranes = new ObjPropertyMap<>( this );
+		membranes = new CellArenaPropertyMap<>( this, ArrayArena.ofInts() );
 		registerPropertyMap( membranes );
-		boundary = new ObjPropertyMap<>( this );
+		boundary = new CellArenaPropertyMap<>( this, ArrayArena.ofDoubles() );
 		registerPropertyMap( boundary );
 		label = new ObjPropertyMap<>( this );
 		registerPropertyMap( label );
@@ -58,6 +59,26 @@ public class CellPool extends AbstractSpotPool< Cell, Link, ByteMappedElement, C
 		return boundary;
 	}
 
+	/**
+	 * Returns the arena that stores the membrane ids of the cells.
+	 *
+	 * @return the arena.
+	 */
+	public ArrayArena< int[] > membraneArena()
+	{
+		return membranes.arena();
+	}
+
+	/**
+	 * Returns the arena that stores the boundaries of the cells.
+	 *
+	 * @return the arena.
+	 */
+	public ArrayArena< double[] > boundaryArena()
+	{
+		return boundary.arena();
+	}
+
 	public final Property< Cell > labelProperty()
 	{
 		return label;
@@ -0,0 +1,228 @@
+package org.mastodon.leviathan.model.io;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.mastodon.collection.RefCollection;
+import org.mastodon.io.FileIdToObjectMap;
+import org.mastodon.io.ObjectToFileIdMap;
+import org.mastodon.io.properties.PropertyMapSerializer;
+import org.mastodon.properties.ObjPropertyMap;
+
+/**
+ * Serializes a property map of interleaved coordinates, such as the pixels of
+ * a membrane or the boundary of a cell, stored as
+ * <code>x0, y0, x1, y1, ...</code>.
+ * <p>
+ * Arrays whose coordinates are all multiples of a unit step (1 or 0.5) are
+ * stored as the differences between consecutive points, in units of this
+ * step, encoded as variable-length integers. For paths made of neighbor
+ * pixels, this takes about one byte per coordinate instead of eight. Other
+ * arrays are stored as raw doubles. The whole map is written as one block,
+ * optionally compressed, and decoded directly into the arrays of the property
+ * map.
+ *
+ * @param <O>
+ *            the type of objects in the property map.
+ */
+public class CoordinatesPropertyMapSerializer< O > implements PropertyMapSerializer< O >
+{
+
+	/**
+	 * The unit steps tried when encoding an array, finest last.
+	 */
+	private static final int[] SCALES = new int[] { 1, 2 };
+
+	private static final int RAW = 0;
+
+	private final ObjPropertyMap< O, double[] > propertyMap;
+
+	/**
+	 * The objects to visit when writing, or <code>null</code> to visit the
+	 * keys of the property map.
+	 */
+	private final RefCollection< O > objects;
+
+	private final int stride;
+
+	private final boolean compress;
+
+	/**
+	 * Creates a new serializer.
+	 *
+	 * @param propertyMap
+	 *            the property map to serialize.
+	 * @param stride
+	 *            the number of coordinates per point.
+	 * @param compress
+	 *            whether to compress the encoded block.
+	 */
+	public CoordinatesPropertyMapSerializer( final ObjPropertyMap< O, double[] > propertyMap, final int stride, final boolean compress )
+	{
+		this( propertyMap, null, stride, compress );
+	}
+
+	/**
+	 * Creates a new serializer for a property map that does not expose its
+	 * keys, such as a map backed by an arena.
+	 *
+	 * @param propertyMap
+	 *            the property map to serialize.
+	 * @param objects
+	 *            the objects whose values are written, typically all the
+	 *            objects of the pool.
+	 * @param stride
+	 *            the number of coordinates per point.
+	 * @param compress
+	 *            whether to compress the encoded block.
+	 */
+	public CoordinatesPropertyMapSerializer( final ObjPropertyMap< O, double[] > propertyMap, final RefCollection< O > objects, final int stride, final boolean compress )
+	{
+		this.propertyMap = propertyMap;
+		this.objects = objects;
+		this.stride = stride;
+		this.compress = compress;
+	}
+
+	@Override
+	public void writePropertyMap( final ObjectToFileIdMap< O > idmap, final ObjectOutputStream oos ) throws IOException
+	{
+		final Iterable< O > keys = objects == null ? propertyMap.getMap().keySet() : objects;
+		int size = 0;
+		for ( final O key : keys )
+			if ( propertyMap.isSet( key ) )
+				size++;
+
+		final VarintBlock block = new VarintBlock();
+		block.writeVarint( size );
+		for ( final O key : keys )
+		{
+			if ( !propertyMap.isSet( key ) )
+				continue;
+			final double[] values = propertyMap.get( key );
+			block.writeVarint( idmap.getId( key ) );
+			if ( values == null )
+			{
+				block.writeVarint( -1 );
+				continue;
+			}
+
+			encode( values, stride, block );
+		}
+		block.write( oos, compress );
+	}
+
+	@Override
+	public void readPropertyMap( final FileIdToObjectMap< O > idmap, final ObjectInputStream ois ) throws IOException
+	{
+		propertyMap.clear();
+		final VarintBlock block = VarintBlock.read( ois );
+		final O ref = objects == null ? propertyMap.getMap().createKeyRef() : objects.createRef();
+		final int size = block.readInt();
+		for ( int k = 0; k < size; k++ )
+		{
+			final O key = idmap.getObject( block.readInt(), ref );
+			final int length = block.readInt();
+			if ( length < 0 )
+			{
+				propertyMap.remove( key );
+				continue;
+			}
+
+			propertyMap.set( key, decode( length, stride, block ) );
+		}
+		if ( objects == null )
+			propertyMap.getMap().releaseKeyRef( ref );
+		else
+			objects.releaseRef( ref );
+	}
+
+	/**
+	 * Writes the length and the values of the specified array of interleaved
+	 * coordinates to a block.
+	 *
+	 * @param values
+	 *            the coordinates.
+	 * @param stride
+	 *            the number of coordinates per point.
+	 * @param block
+	 *            the block to write to.
+	 */
+	public static void encode( final double[] values, final int stride, final VarintBlock block )
+	{
+		block.writeVarint( values.length );
+		final int scale = scale( values );
+		block.writeVarint( scale );
+		if ( scale == RAW )
+		{
+			for ( final double v : values )
+				block.writeDouble( v );
+			return;
+		}
+
+		for ( int i = 0; i < values.length; i++ )
+		{
+			final long v = Math.round( values[ i ] * scale );
+			final long previous = i < stride ? 0 : Math.round( values[ i - stride ] * scale );
+			block.writeVarint( v - previous );
+		}
+	}
+
+	/**
+	 * Reads an array of interleaved coordinates written by
+	 * {@link #encode(double[], int, VarintBlock)}, after its length.
+	 *
+	 * @param length
+	 *            the length of the array, already read from the block.
+	 * @param stride
+	 *            the number of coordinates per point.
+	 * @param block
+	 *            the block to read from.
+	 * @return a new array.
+	 */
+	public static double[] decode( final int length, final int stride, final VarintBlock block )
+	{
+		final double[] values = new double[ length ];
+		final int scale = block.readInt();
+		if ( scale == RAW )
+		{
+			for ( int i = 0; i < length; i++ )
+				values[ i ] = block.readDouble();
+			return values;
+		}
+
+		final long[] previous = new long[ stride ];
+		for ( int i = 0; i < length; i++ )
+		{
+			final int d = i % stride;
+			previous[ d ] += block.readVarint();
+			values[ i ] = ( double ) previous[ d ] / scale;
+		}
+		return values;
+	}
+
+	/**
+	 * Returns the smallest scale such that all the values multiplied by it are
+	 * integers, or {@link #RAW} if there is none.
+	 */
+	private static int scale( final double[] values )
+	{
+		for ( final int scale : SCALES )
+		{
+			boolean integral = true;
+			for ( final double v : values )
+			{
+				final double s = v * scale;
+				if ( s != Math.rint( s ) || Math.abs( s ) > 1L << 52 )
+				{
+					integral = false;
+					break;
+				}
+			}
+			if ( integral )
+				return scale;
+		}
+		return RAW;
+	}
+}
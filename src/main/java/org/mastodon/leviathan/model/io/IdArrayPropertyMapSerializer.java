@@ -0,0 +1,124 @@
+package org.mastodon.leviathan.model.io;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.mastodon.collection.RefCollection;
+import org.mastodon.io.FileIdToObjectMap;
+import org.mastodon.io.ObjectToFileIdMap;
+import org.mastodon.io.properties.PropertyMapSerializer;
+import org.mastodon.properties.ObjPropertyMap;
+
+/**
+ * Serializes a property map of <code>int</code> arrays, such as the ids of
+ * the membranes of a cell. Each array is stored as the differences between
+ * consecutive ids, encoded as variable-length integers. The whole map is
+ * written as one block, optionally compressed.
+ *
+ * @param <O>
+ *            the type of objects in the property map.
+ */
+public class IdArrayPropertyMapSerializer< O > implements PropertyMapSerializer< O >
+{
+
+	private final ObjPropertyMap< O, int[] > propertyMap;
+
+	/**
+	 * The objects to visit when writing, or <code>null</code> to visit the
+	 * keys of the property map.
+	 */
+	private final RefCollection< O > objects;
+
+	private final boolean compress;
+
+	public IdArrayPropertyMapSerializer( final ObjPropertyMap< O, int[] > propertyMap, final boolean compress )
+	{
+		this( propertyMap, null, compress );
+	}
+
+	/**
+	 * Creates a new serializer for a property map that does not expose its
+	 * keys, such as a map backed by an arena.
+	 *
+	 * @param propertyMap
+	 *            the property map to serialize.
+	 * @param objects
+	 *            the objects whose values are written, typically all the
+	 *            objects of the pool.
+	 * @param compress
+	 *            whether to compress the encoded block.
+	 */
+	public IdArrayPropertyMapSerializer( final ObjPropertyMap< O, int[] > propertyMap, final RefCollection< O > objects, final boolean compress )
+	{
+		this.propertyMap = propertyMap;
+		this.objects = objects;
+		this.compress = compress;
+	}
+
+	@Override
+	public void writePropertyMap( final ObjectToFileIdMap< O > idmap, final ObjectOutputStream oos ) throws IOException
+	{
+		final Iterable< O > keys = objects == null ? propertyMap.getMap().keySet() : objects;
+		int size = 0;
+		for ( final O key : keys )
+			if ( propertyMap.isSet( key ) )
+				size++;
+
+		final VarintBlock block = new VarintBlock();
+		block.writeVarint( size );
+		for ( final O key : keys )
+		{
+			if ( !propertyMap.isSet( key ) )
+				continue;
+			final int[] values = propertyMap.get( key );
+			block.writeVarint( idmap.getId( key ) );
+			if ( values == null )
+			{
+				block.writeVarint( -1 );
+				continue;
+			}
+
+			block.writeVarint( values.length );
+			long previous = 0;
+			for ( final int v : values )
+			{
+				block.writeVarint( v - previous );
+				previous = v;
+			}
+		}
+		block.write( oos, compress );
+	}
+
+	@Override
+	public void readPropertyMap( final FileIdToObjectMap< O > idmap, final ObjectInputStream ois ) throws IOException
+	{
+		propertyMap.clear();
+		final VarintBlock block = VarintBlock.read( ois );
+		final O ref = objects == null ? propertyMap.getMap().createKeyRef() : objects.createRef();
+		final int size = block.readInt();
+		for ( int k = 0; k < size; k++ )
+		{
+			final O key = idmap.getObject( block.readInt(), ref );
+			final int length = block.readInt();
+			if ( length < 0 )
+			{
+				propertyMap.remove( key );
+				continue;
+			}
+
+			final int[] values = new int[ length ];
+			long previous = 0;
+			for ( int i = 0; i < length; i++ )
+			{
+				previous += block.readVarint();
+				values[ i ] = ( int ) previous;
+			}
+			propertyMap.set( key, values );
+		}
+		if ( objects == null )
+			propertyMap.getMap().releaseKeyRef( ref );
+		else
+			objects.releaseRef( ref );
+	}
+}
@@ -0,0 +1,200 @@
+package org.mastodon.leviathan.model.io;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A block of bytes holding zig-zag encoded variable-length integers, written
+ * to and read from object streams in one piece, optionally compressed.
+ * <p>
+ * Small values take fewer bytes: values in <code>[-64, 63]</code> take one
+ * byte, values in <code>[-8192, 8191]</code> two bytes, etc. This is well
+ * suited to the differences between consecutive pixel coordinates, which are
+ * mostly -1, 0 or 1.
+ */
+public class VarintBlock
+{
+
+	private byte[] bytes;
+
+	private int size;
+
+	private int pos;
+
+	/**
+	 * Creates an empty block, to be filled with the <code>write*</code>
+	 * methods.
+	 */
+	public VarintBlock()
+	{
+		this.bytes = new byte[ 4096 ];
+	}
+
+	private VarintBlock( final byte[] bytes, final int size )
+	{
+		this.bytes = bytes;
+		this.size = size;
+	}
+
+	public void writeVarint( final long value )
+	{
+		long v = ( value << 1 ) ^ ( value >> 63 );
+		ensureCapacity( size + 10 );
+		while ( ( v & ~0x7FL ) != 0 )
+		{
+			bytes[ size++ ] = ( byte ) ( ( v & 0x7F ) | 0x80 );
+			v >>>= 7;
+		}
+		bytes[ size++ ] = ( byte ) v;
+	}
+
+	public void writeDouble( final double value )
+	{
+		final long v = Double.doubleToRawLongBits( value );
+		ensureCapacity( size + 8 );
+		for ( int shift = 56; shift >= 0; shift -= 8 )
+			bytes[ size++ ] = ( byte ) ( v >>> shift );
+	}
+
+	public void writeString( final String value )
+	{
+		writeVarint( value.length() );
+		for ( int i = 0; i < value.length(); i++ )
+			writeVarint( value.charAt( i ) );
+	}
+
+	public long readVarint()
+	{
+		long v = 0;
+		int shift = 0;
+		byte b;
+		do
+		{
+			b = bytes[ pos++ ];
+			v |= ( long ) ( b & 0x7F ) << shift;
+			shift += 7;
+		}
+		while ( b < 0 );
+		return ( v >>> 1 ) ^ -( v & 1 );
+	}
+
+	public int readInt()
+	{
+		return ( int ) readVarint();
+	}
+
+	public double readDouble()
+	{
+		long v = 0;
+		for ( int i = 0; i < 8; i++ )
+			v = ( v << 8 ) | ( bytes[ pos++ ] & 0xFF );
+		return Double.longBitsToDouble( v );
+	}
+
+	public String readString()
+	{
+		final char[] chars = new char[ readInt() ];
+		for ( int i = 0; i < chars.length; i++ )
+			chars[ i ] = ( char ) readVarint();
+		return new String( chars );
+	}
+
+	/**
+	 * Writes this block to the specified stream.
+	 *
+	 * @param oos
+	 *            the stream.
+	 * @param compress
+	 *            whether to compress the block.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 */
+	public void write( final ObjectOutputStream oos, final boolean compress ) throws IOException
+	{
+		oos.writeBoolean( compress );
+		oos.writeInt( size );
+		if ( !compress )
+		{
+			oos.write( bytes, 0, size );
+			return;
+		}
+
+		final Deflater deflater = new Deflater( Deflater.BEST_SPEED );
+		try
+		{
+			deflater.setInput( bytes, 0, size );
+			deflater.finish();
+			byte[] compressed = new byte[ Math.max( 64, size / 2 ) ];
+			int length = 0;
+			while ( !deflater.finished() )
+			{
+				if ( length == compressed.length )
+					compressed = Arrays.copyOf( compressed, 2 * length );
+				length += deflater.deflate( compressed, length, compressed.length - length );
+			}
+			oos.writeInt( length );
+			oos.write( compressed, 0, length );
+		}
+		finally
+		{
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Reads a block written by {@link #write(ObjectOutputStream, boolean)}.
+	 *
+	 * @param ois
+	 *            the stream.
+	 * @return a new block, positioned at its start.
+	 * @throws IOException
+	 *             if an I/O error occurs or if the data is corrupted.
+	 */
+	public static VarintBlock read( final ObjectInputStream ois ) throws IOException
+	{
+		final boolean compressed = ois.readBoolean();
+		final int size = ois.readInt();
+		final byte[] bytes = new byte[ size ];
+		if ( !compressed )
+		{
+			ois.readFully( bytes );
+			return new VarintBlock( bytes, size );
+		}
+
+		final byte[] input = new byte[ ois.readInt() ];
+		ois.readFully( input );
+		final Inflater inflater = new Inflater();
+		try
+		{
+			inflater.setInput( input );
+			int length = 0;
+			while ( length < size )
+			{
+				final int n = inflater.inflate( bytes, length, size - length );
+				if ( n == 0 && ( inflater.finished() || inflater.needsInput() ) )
+					throw new IOException( "Truncated compressed block." );
+				length += n;
+			}
+		}
+		catch ( final DataFormatException e )
+		{
+			throw new IOException( e );
+		}
+		finally
+		{
+			inflater.end();
+		}
+		return new VarintBlock( bytes, size );
+	}
+
+	private void ensureCapacity( final int capacity )
+	{
+		if ( capacity > bytes.length )
+			bytes = Arrays.copyOf( bytes, Math.max( capacity, 2 * bytes.length ) );
+	}
+}
@@ -1,14 +1,41 @@
 package org.mastodon.leviathan.model.junction;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
 import org.mastodon.graph.GraphIdBimap;
-import org.mastodon.io.properties.ObjPropertyMapSerializer;
+import org.mastodon.graph.io.GraphSerializer;
+import org.mastodon.graph.io.RawGraphIO;
+import org.mastodon.graph.io.RawGraphIO.FileIdToGraphMap;
+import org.mastodon.graph.io.RawGraphIO.GraphToFileIdMap;
 import org.mastodon.io.properties.PropertyMapSerializers;
+import org.mastodon.io.properties.RawPropertyIO;
+import org.mastodon.leviathan.model.io.CoordinatesPropertyMapSerializer;
 import org.mastodon.model.AbstractModelGraph;
 import org.mastodon.pool.ByteMappedElement;
 
 public class JunctionGraph extends AbstractModelGraph< JunctionGraph, JunctionPool, MembranePartPool, Junction, MembranePart, ByteMappedElement >
 {
 
+	/**
+	 * Key of the membrane pixels. The varint encoded pixels use a new key,
+	 * distinct from the one registered, but never written, before.
+	 */
+	static final String PIXELS_KEY = "pixels-varint";
+
+	/**
+	 * Version of the edge property maps section, written after the vertex
+	 * property maps. Files written before edge property maps were saved end
+	 * after the vertex property maps.
+	 */
+	private static final int EDGE_PROPERTIES_VERSION = 1;
+
 	protected final PropertyMapSerializers< MembranePart > edgePropertySerializers;
 
 	public JunctionGraph()
@@ -21,7 +48,61 @@ public class JunctionGraph extends AbstractModelGraph< JunctionGraph, JunctionPo
 		super( new MembranePartPool( initialCapacity, new JunctionPool( initialCapacity ) ) );
 
 		edgePropertySerializers = new PropertyMapSerializers<>();
-		edgePropertySerializers.put( "pixels", new ObjPropertyMapSerializer<>( edgePool.pixels ) );
+		edgePropertySerializers.put( PIXELS_KEY, new CoordinatesPropertyMapSerializer<>( edgePool.pixels, 2, true ) );
+	}
+
+	/**
+	 * Same as the base class, but also writes the edge property maps after
+	 * the vertex property maps, preceded by their version.
+	 */
+	@Override
+	public GraphToFileIdMap< Junction, MembranePart > saveRaw( final OutputStream os, final GraphSerializer< Junction, MembranePart > serializer ) throws IOException
+	{
+		final ObjectOutputStream oos = new ObjectOutputStream( new BufferedOutputStream( os, 1024 * 1024 ) );
+		final GraphToFileIdMap< Junction, MembranePart > fileIdMap = RawGraphIO.write( this, idmap, serializer, oos );
+		RawPropertyIO.writePropertyMaps( fileIdMap.vertices(), vertexPropertySerializers, oos );
+		oos.writeInt( EDGE_PROPERTIES_VERSION );
+		RawPropertyIO.writePropertyMaps( fileIdMap.edges(), edgePropertySerializers, oos );
+		oos.close();
+		return fileIdMap;
+	}
+
+	/**
+	 * Same as the base class, but also reads the edge property maps after the
+	 * vertex property maps, if the file has them.
+	 */
+	@Override
+	public FileIdToGraphMap< Junction, MembranePart > loadRaw( final InputStream is, final GraphSerializer< Junction, MembranePart > serializer ) throws IOException
+	{
+		final ObjectInputStream ois = new ObjectInputStream( new BufferedInputStream( is, 1024 * 1024 ) );
+		pauseListeners();
+		clear();
+		final FileIdToGraphMap< Junction, MembranePart > fileIdMap = RawGraphIO.read( this, idmap, serializer, ois );
+		RawPropertyIO.readPropertyMaps( fileIdMap.vertices(), vertexPropertySerializers, ois );
+		final int version = readEdgePropertiesVersion( ois );
+		if ( version > EDGE_PROPERTIES_VERSION )
+			throw new IOException( "Unsupported membrane properties version: " + version );
+		if ( version > 0 )
+			RawPropertyIO.readPropertyMaps( fileIdMap.edges(), edgePropertySerializers, ois );
+		ois.close();
+		resumeListeners();
+		return fileIdMap;
+	}
+
+	/**
+	 * Returns the version of the edge property maps, or 0 if the stream ends
+	 * before them.
+	 */
+	private static int readEdgePropertiesVersion( final ObjectInputStream ois ) throws IOException
+	{
+		try
+		{
+			return ois.readInt();
+		}
+		catch ( final EOFException e )
+		{
+			return 0;
+		}
 	}
 
 	JunctionPool getVertexPool()
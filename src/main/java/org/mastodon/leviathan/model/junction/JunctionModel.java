@@ -16,6 +16,7 @@ import org.mastodon.feature.FeatureModel;
 import org.mastodon.graph.io.RawGraphIO.FileIdToGraphMap;
 import org.mastodon.graph.io.RawGraphIO.GraphToFileIdMap;
 import org.mastodon.labels.LabelSets;
+import org.mastodon.leviathan.model.SpatialIndexRebuildScheduler;
 import org.mastodon.mamut.project.MamutProject;
 import org.mastodon.model.AbstractModel;
 import org.mastodon.model.tag.DefaultTagSetModel;
@@ -24,7 +25,6 @@ import org.mastodon.model.tag.TagSetModel;
 import org.mastodon.properties.Property;
 import org.mastodon.spatial.SpatioTemporalIndex;
 import org.mastodon.spatial.SpatioTemporalIndexImp;
-import org.mastodon.spatial.SpatioTemporalIndexImpRebuilderThread;
 import org.mastodon.undo.GraphUndoRecorder;
 import org.mastodon.undo.Recorder;
 import org.mastodon.undo.UndoPointMarker;
@@ -46,19 +46,28 @@ public class JunctionModel extends AbstractModel< JunctionGraph, Junction, Membr
 
 	private final String timeUnits;
 
+	private final SpatialIndexRebuildScheduler.Registration indexRebuild;
+
+	private final MembraneSegmentIndex segmentIndex;
+
+	private final SpatialIndexRebuildScheduler.Registration segmentIndexRebuild;
+
+	private final MembraneContourCache contourCache;
+
 	public JunctionModel( final String spaceUnits, final String timeUnits )
 	{
 		super( new JunctionGraph() );
 		this.spaceUnits = spaceUnits;
 		this.timeUnits = timeUnits;
 		final SpatioTemporalIndexImp< Junction, MembranePart > theIndex = new SpatioTemporalIndexImp<>( modelGraph, modelGraph.idmap().vertexIdBimap() );
-		/*
-		 * Every 1 second, rebuild spatial indices with more than 100
-		 * modifications
-		 */
-		new SpatioTemporalIndexImpRebuilderThread( "Rebuild spatial indices", theIndex, 100, 1000, true ).start();
 		index = theIndex;
 		lock = modelGraph.getLock();
+		indexRebuild = SpatialIndexRebuildScheduler.shared().register(
+				"Junction spatial index",
+				modelGraph, lock, modelGraph.getVertexPool().positionProperty(), theIndex );
+		segmentIndex = new MembraneSegmentIndex( modelGraph );
+		segmentIndexRebuild = SpatialIndexRebuildScheduler.shared().register( "Membrane segment index", segmentIndex );
+		contourCache = new MembraneContourCache( modelGraph );
 
 		final int initialCapacity = 1024;
 
@@ -114,19 +123,47 @@ public class JunctionModel extends AbstractModel< JunctionGraph, Junction, Membr
 	 */
 	public FileIdToGraphMap< Junction, MembranePart > loadRaw( final MamutProject.ProjectReader reader ) throws IOException
 	{
-		final FileIdToGraphMap< Junction, MembranePart > idmap = modelGraph.loadRaw( reader.getRawModelInputStream(), JunctionModelSerializer.getInstance() );
+		InputStream tis;
+		try
+		{
+			tis = reader.getRawTagsInputStream();
+		}
+		catch ( final FileNotFoundException e )
+		{
+			tis = null;
+		}
+		return loadRaw( reader.getRawModelInputStream(), tis );
+	}
+
+	/**
+	 * Clears this model and loads the model graph and the tags from the
+	 * specified streams. The streams are closed after reading.
+	 *
+	 * @param modelInputStream
+	 *            the stream to read the raw model graph from.
+	 * @param tagsInputStream
+	 *            the stream to read the raw tags from. May be
+	 *            <code>null</code>, in which case the model has no tags.
+	 * @return the {@link FileIdToGraphMap} object generated by loading the
+	 *         model graph.
+	 * @throws IOException
+	 *             if an I/O error occurs while reading the streams.
+	 */
+	public FileIdToGraphMap< Junction, MembranePart > loadRaw( final InputStream modelInputStream, final InputStream tagsInputStream ) throws IOException
+	{
+		final FileIdToGraphMap< Junction, MembranePart > idmap = modelGraph.loadRaw( modelInputStream, JunctionModelSerializer.getInstance() );
 
 		tagSetModel.pauseListeners();
 		tagSetModel.clear();
-		try (
-				final InputStream tis = reader.getRawTagsInputStream();
-				final ObjectInputStream ois = new ObjectInputStream( new BufferedInputStream( tis, 1024 * 1024 ) ))
+		if ( tagsInputStream != null )
 		{
-			RawTagSetModelIO.read( tagSetModel, idmap, ois );
+			try (final ObjectInputStream ois = new ObjectInputStream( new BufferedInputStream( tagsInputStream, 1024 * 1024 ) ))
+			{
+				RawTagSetModelIO.read( tagSetModel, idmap, ois );
+			}
 		}
-		catch ( final FileNotFoundException e )
-		{}
 		tagSetModel.resumeListeners();
+		contourCache.precompute();
 
 		return idmap;
 	}
@@ -143,11 +180,27 @@ public class JunctionModel extends AbstractModel< JunctionGraph, Junction, Membr
 	 */
 	public GraphToFileIdMap< Junction, MembranePart > saveRaw( final MamutProject.ProjectWriter writer ) throws IOException
 	{
-		final GraphToFileIdMap< Junction, MembranePart > idmap = modelGraph.saveRaw( writer.getRawModelOutputStream(), JunctionModelSerializer.getInstance() );
+		return saveRaw( writer.getRawModelOutputStream(), writer.getRawTagsOutputStream() );
+	}
+
+	/**
+	 * Saves the model graph and the tags of this model to the specified
+	 * streams. The streams are closed after writing.
+	 *
+	 * @param modelOutputStream
+	 *            the stream to write the raw model graph to.
+	 * @param tagsOutputStream
+	 *            the stream to write the raw tags to.
+	 * @return the {@link GraphToFileIdMap} object generated by saving the model
+	 *         graph.
+	 * @throws IOException
+	 *             if an I/O error occurs while writing the streams.
+	 */
+	public GraphToFileIdMap< Junction, MembranePart > saveRaw( final OutputStream modelOutputStream, final OutputStream tagsOutputStream ) throws IOException
+	{
+		final GraphToFileIdMap< Junction, MembranePart > idmap = modelGraph.saveRaw( modelOutputStream, JunctionModelSerializer.getInstance() );
 
-		try (
-				final OutputStream fos = writer.getRawTagsOutputStream();
-				final ObjectOutputStream oos = new ObjectOutputStream( new BufferedOutputStream( fos, 1024 * 1024 ) ))
+		try (final ObjectOutputStream oos = new ObjectOutputStream( new BufferedOutputStream( tagsOutputStream, 1024 * 1024 ) ))
 		{
 			RawTagSetModelIO.write( tagSetModel, idmap, oos );
 		}
@@ -165,6 +218,39 @@ public class JunctionModel extends AbstractModel< JunctionGraph, Junction, Membr
 		return index;
 	}
 
+	/**
+	 * Exposes the index of the membrane segments of this model, used to find
+	 * the membrane nearest to a point.
+	 *
+	 * @return the segment index.
+	 */
+	public MembraneSegmentIndex getSegmentIndex()
+	{
+		return segmentIndex;
+	}
+
+	/**
+	 * Exposes the cache of the simplified membrane polylines of this model,
+	 * used by the views to draw the membranes.
+	 *
+	 * @return the contour cache.
+	 */
+	public MembraneContourCache getContourCache()
+	{
+		return contourCache;
+	}
+
+	/**
+	 * Stops the background rebuild of the spatial indices of this model. Must
+	 * be called when this model is discarded.
+	 */
+	public void dispose()
+	{
+		indexRebuild.unregister();
+		segmentIndexRebuild.unregister();
+		contourCache.dispose();
+	}
+
 	public void undo()
 	{
 		lock.writeLock().lock();
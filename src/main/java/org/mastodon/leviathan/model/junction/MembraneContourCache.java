@@ -0,0 +1,136 @@
+package org.mastodon.leviathan.model.junction;
+
+import org.mastodon.graph.GraphListener;
+import org.mastodon.leviathan.model.AbstractContourCache;
+import org.mastodon.leviathan.model.DoubleSlice;
+import org.mastodon.properties.PropertyChangeListener;
+
+/**
+ * Cache of the simplified polylines of membranes.
+ * <p>
+ * Polylines are made of the membrane pixels, in global coordinates. The
+ * significances of their points are discarded when the pixels of the
+ * membrane change or when the membrane is removed.
+ */
+public class MembraneContourCache extends AbstractContourCache< MembranePart >
+{
+
+	private final JunctionGraph graph;
+
+	private final MembranePartPool pool;
+
+	private final Listener listener;
+
+	public MembraneContourCache( final JunctionGraph graph )
+	{
+		this.graph = graph;
+		this.pool = ( MembranePartPool ) graph.edges().getRefPool();
+		this.listener = new Listener();
+		graph.addGraphListener( listener );
+		pool.pixelsProperty().propertyChangeListeners().add( listener );
+	}
+
+	/**
+	 * Points the specified slice to the polyline of a membrane, simplified
+	 * with the specified tolerance. The polyline is made of interleaved
+	 * <code>x, y</code> global coordinates. The slice stays readable until the
+	 * next polyline is requested from the same thread.
+	 *
+	 * @param membrane
+	 *            the membrane.
+	 * @param tolerance
+	 *            the maximal distance between the polyline and the membrane
+	 *            pixels, in global units.
+	 * @param slice
+	 *            the slice to use.
+	 * @return the specified slice, or <code>null</code> if the membrane has
+	 *         no pixels.
+	 */
+	@Override
+	public DoubleSlice getContour( final MembranePart membrane, final double tolerance, final DoubleSlice slice )
+	{
+		return super.getContour( membrane, tolerance, slice );
+	}
+
+	/**
+	 * Computes the significances of the pixels of all the membranes, so that
+	 * the first paint does not have to.
+	 */
+	public void precompute()
+	{
+		graph.getLock().readLock().lock();
+		try
+		{
+			precompute( graph.edges() );
+		}
+		finally
+		{
+			graph.getLock().readLock().unlock();
+		}
+	}
+
+	/**
+	 * Stops tracking the modifications of the graph.
+	 */
+	public void dispose()
+	{
+		graph.removeGraphListener( listener );
+		pool.pixelsProperty().propertyChangeListeners().remove( listener );
+	}
+
+	@Override
+	protected int getId( final MembranePart membrane )
+	{
+		return membrane.getInternalPoolIndex();
+	}
+
+	@Override
+	protected DoubleSlice getPolyline( final MembranePart membrane, final DoubleSlice slice )
+	{
+		final double[] pixels = membrane.getPixels();
+		if ( pixels == null )
+			return null;
+		return slice.wrap( pixels, 0, pixels.length );
+	}
+
+	/*
+	 * Invalidation.
+	 */
+
+	private class Listener implements GraphListener< Junction, MembranePart >, PropertyChangeListener< MembranePart >
+	{
+
+		@Override
+		public void graphRebuilt()
+		{
+			clear();
+		}
+
+		@Override
+		public void vertexAdded( final Junction vertex )
+		{}
+
+		@Override
+		public void vertexRemoved( final Junction vertex )
+		{}
+
+		@Override
+		public void edgeAdded( final MembranePart edge )
+		{
+			// The pool index may have been used by a removed membrane.
+			invalidate( edge.getInternalPoolIndex() );
+		}
+
+		@Override
+		public void edgeRemoved( final MembranePart edge )
+		{
+			invalidate( edge.getInternalPoolIndex() );
+		}
+
+		@Override
+		public void propertyChanged( final MembranePart edge )
+		{
+			invalidate( edge.getInternalPoolIndex() );
+		}
+	}
+}
@@ -6,6 +6,7 @@ import org.mastodon.pool.ByteMappedElementArray;
 import org.mastodon.pool.SingleArrayMemPool;
 import org.mastodon.pool.attributes.IntAttribute;
 import org.mastodon.properties.ObjPropertyMap;
+import org.mastodon.properties.Property;
 
 public class MembranePartPool extends AbstractListenableEdgePool< MembranePart, Junction, ByteMappedElement >
 {
@@ -48,4 +49,9 @@ public class MembranePartPool extends AbstractListenableEdgePool< MembranePart,
 	{
 		return cellIdCCW;
 	}
+
+	public final Property< MembranePart > pixelsProperty()
+	{
+		return pixels;
+	}
 }
@@ -0,0 +1,509 @@
+package org.mastodon.leviathan.model.junction;
+
+import java.util.Arrays;
+
+import org.mastodon.graph.GraphListener;
+import org.mastodon.leviathan.model.PackedRTree;
+import org.mastodon.leviathan.model.SpatialIndexRebuildScheduler;
+import org.mastodon.properties.PropertyChangeListener;
+import org.mastodon.util.GeometryUtil;
+
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+
+/**
+ * Per-timepoint R-tree over the segments of the membrane polylines, used to
+ * find the membrane nearest to a point.
+ * <p>
+ * The polyline of a membrane is made of its pixels, in global coordinates.
+ * Consecutive segments are grouped in chunks of {@value #CHUNK_SIZE}, and
+ * each timepoint has a {@link PackedRTree} over the bounding boxes of the
+ * chunks. Membranes added or reshaped after the tree was built are kept in a
+ * small pending set that is searched linearly, and the tree entries they
+ * replace are skipped. The trees are compacted by {@link #rebuild()}, called
+ * by the {@link SpatialIndexRebuildScheduler} once enough modifications have
+ * accumulated.
+ * <p>
+ * Queries do not allocate, and must be made while holding the read lock of
+ * the junction graph.
+ */
+public class MembraneSegmentIndex implements SpatialIndexRebuildScheduler.Rebuildable, PackedRTree.Visitor
+{
+
+	private static final int CHUNK_SIZE = 8;
+
+	private final JunctionGraph graph;
+
+	private final MembranePartPool pool;
+
+	private final Listener listener;
+
+	private final TIntObjectHashMap< Tree > trees = new TIntObjectHashMap<>();
+
+	private final Junction vref;
+
+	/**
+	 * If <code>true</code>, the trees must be built from the whole graph
+	 * before the next query.
+	 */
+	private boolean invalid = true;
+
+	private volatile int modCount;
+
+	/*
+	 * State of the current nearest membrane query.
+	 */
+
+	private Tree queryTree;
+
+	private MembranePart queryRef;
+
+	private double qx;
+
+	private double qy;
+
+	private double bestSquDist;
+
+	private int bestId;
+
+	public MembraneSegmentIndex( final JunctionGraph graph )
+	{
+		this.graph = graph;
+		this.pool = ( MembranePartPool ) graph.edges().getRefPool();
+		this.vref = graph.vertexRef();
+		this.listener = new Listener();
+		graph.addGraphListener( listener );
+		pool.pixelsProperty().propertyChangeListeners().add( listener );
+	}
+
+	/**
+	 * Returns the membrane nearest to the specified point, within a maximal
+	 * distance.
+	 *
+	 * @param x
+	 *            the X coordinate of the point, in global coordinates.
+	 * @param y
+	 *            the Y coordinate of the point, in global coordinates.
+	 * @param timepoint
+	 *            the timepoint of the membrane.
+	 * @param maxDistance
+	 *            the maximal distance, in global units.
+	 * @param ref
+	 *            a membrane reference, used to return the membrane found.
+	 * @return the nearest membrane, or <code>null</code> if there is none
+	 *         within the maximal distance.
+	 */
+	public synchronized MembranePart getMembraneAt( final double x, final double y, final int timepoint, final double maxDistance, final MembranePart ref )
+	{
+		ensureValid();
+		final Tree tree = trees.get( timepoint );
+		if ( tree == null )
+			return null;
+
+		queryTree = tree;
+		queryRef = ref;
+		qx = x;
+		qy = y;
+		bestSquDist = maxDistance * maxDistance;
+		bestId = -1;
+		tree.rtree.search( x - maxDistance, y - maxDistance, x + maxDistance, y + maxDistance, this );
+		final TIntIterator it = tree.pending.iterator();
+		while ( it.hasNext() )
+			test( it.next(), 0, Integer.MAX_VALUE );
+		queryTree = null;
+		queryRef = null;
+
+		if ( bestId < 0 )
+			return null;
+		return pool.getObject( bestId, ref );
+	}
+
+	@Override
+	public void visit( final int entry )
+	{
+		final int id = queryTree.ids[ entry ];
+		if ( queryTree.stale.contains( id ) )
+			return;
+		final int first = queryTree.firsts[ entry ];
+		test( id, first, first + CHUNK_SIZE );
+	}
+
+	/**
+	 * Tests the segments of a membrane starting at points <code>from</code>
+	 * to <code>to - 1</code>.
+	 */
+	private void test( final int id, final int from, final int to )
+	{
+		final double[] pixels = pool.getObject( id, queryRef ).getPixels();
+		if ( pixels == null )
+			return;
+		final int last = Math.min( to, pixels.length / 2 - 1 );
+		for ( int i = from; i < last; i++ )
+		{
+			final double squDist = GeometryUtil.squSegmentDist( qx, qy,
+					pixels[ 2 * i ], pixels[ 2 * i + 1 ],
+					pixels[ 2 * i + 2 ], pixels[ 2 * i + 3 ] );
+			if ( squDist <= bestSquDist )
+			{
+				bestSquDist = squDist;
+				bestId = id;
+			}
+		}
+	}
+
+	/**
+	 * Returns an upper bound of the extent of the membranes of a timepoint:
+	 * along each axis, no pixel of a membrane is farther than this from the
+	 * junctions it connects. Renderers use it to widen their queries, so that
+	 * membranes whose junctions are outside a region but whose pixels overlap
+	 * it are found.
+	 * <p>
+	 * The bound only grows with the modifications made after the trees were
+	 * built.
+	 *
+	 * @param timepoint
+	 *            the timepoint.
+	 * @return the extent, in global units, or 0 if there are no membranes at
+	 *         this timepoint.
+	 */
+	public synchronized double getMaxExtent( final int timepoint )
+	{
+		ensureValid();
+		final Tree tree = trees.get( timepoint );
+		return tree == null ? 0. : tree.extent;
+	}
+
+	/**
+	 * Returns an estimate of the memory used by this index.
+	 *
+	 * @return the estimated size in bytes.
+	 */
+	public synchronized long estimateMemory()
+	{
+		long bytes = 0;
+		for ( final Tree tree : trees.valueCollection() )
+		{
+			// Ids, first points, boxes, R-tree entries and boxes, upper levels.
+			final long n = tree.ids.length;
+			bytes += n * ( 4 + 4 + 16 + 4 + 16 ) + n * 16 / 15;
+			bytes += 16L * ( tree.stale.size() + tree.pending.size() );
+		}
+		return bytes;
+	}
+
+	@Override
+	public int getModCount()
+	{
+		return modCount;
+	}
+
+	/**
+	 * Rebuilds the trees of the timepoints that were modified, so that the
+	 * pending membranes are searched through the tree again.
+	 */
+	@Override
+	public void rebuild()
+	{
+		graph.getLock().readLock().lock();
+		try
+		{
+			synchronized ( this )
+			{
+				modCount = 0;
+				if ( invalid )
+					return;
+
+				final MembranePart ref = graph.edgeRef();
+				for ( final int t : trees.keys() )
+				{
+					final Tree tree = trees.get( t );
+					if ( tree.pending.isEmpty() && tree.stale.isEmpty() )
+						continue;
+
+					final Builder builder = new Builder( tree.ids.length );
+					for ( int i = 0; i < tree.ids.length; i++ )
+						if ( !tree.stale.contains( tree.ids[ i ] ) )
+							builder.add( tree, i );
+					final TIntIterator it = tree.pending.iterator();
+					while ( it.hasNext() )
+						builder.add( pool.getObject( it.next(), ref ) );
+					if ( builder.size() == 0 )
+						trees.remove( t );
+					else
+						trees.put( t, builder.build() );
+				}
+				graph.releaseRef( ref );
+			}
+		}
+		finally
+		{
+			graph.getLock().readLock().unlock();
+		}
+	}
+
+	@Override
+	public void dispose()
+	{
+		graph.removeGraphListener( listener );
+		pool.pixelsProperty().propertyChangeListeners().remove( listener );
+	}
+
+	/**
+	 * Builds the trees of all timepoints from the graph.
+	 */
+	private void ensureValid()
+	{
+		if ( !invalid )
+			return;
+
+		trees.clear();
+		final TIntObjectHashMap< Builder > builders = new TIntObjectHashMap<>();
+		for ( final MembranePart edge : graph.edges() )
+		{
+			final int t = edge.getSource( vref ).getTimepoint();
+			Builder builder = builders.get( t );
+			if ( builder == null )
+			{
+				builder = new Builder( 1024 );
+				builders.put( t, builder );
+			}
+			builder.add( edge );
+		}
+		for ( final int t : builders.keys() )
+			trees.put( t, builders.get( t ).build() );
+		invalid = false;
+	}
+
+	private synchronized void membraneChanged( final MembranePart edge )
+	{
+		modCount++;
+		if ( invalid )
+			return;
+		final int t = edge.getSource( vref ).getTimepoint();
+		Tree tree = trees.get( t );
+		if ( tree == null )
+		{
+			tree = new Builder( 0 ).build();
+			trees.put( t, tree );
+		}
+		final int id = edge.getInternalPoolIndex();
+		tree.stale.add( id );
+		tree.pending.add( id );
+		tree.extent = Math.max( tree.extent, extent( edge.getPixels() ) );
+	}
+
+	private synchronized void membraneRemoved( final MembranePart edge )
+	{
+		modCount++;
+		if ( invalid )
+			return;
+		final Tree tree = trees.get( edge.getSource( vref ).getTimepoint() );
+		if ( tree == null )
+			return;
+		final int id = edge.getInternalPoolIndex();
+		tree.stale.add( id );
+		tree.pending.remove( id );
+	}
+
+	private synchronized void invalidate()
+	{
+		invalid = true;
+		trees.clear();
+	}
+
+	/**
+	 * Returns the largest side of the bounding box of a membrane. The pixels
+	 * of a membrane end at its junctions, so this bounds the distance from the
+	 * junctions to the pixels along each axis.
+	 */
+	private static float extent( final double[] pixels )
+	{
+		if ( pixels == null || pixels.length < 2 )
+			return 0f;
+		double xmin = Double.POSITIVE_INFINITY;
+		double ymin = Double.POSITIVE_INFINITY;
+		double xmax = Double.NEGATIVE_INFINITY;
+		double ymax = Double.NEGATIVE_INFINITY;
+		for ( int i = 0; i < pixels.length - 1; i += 2 )
+		{
+			xmin = Math.min( xmin, pixels[ i ] );
+			ymin = Math.min( ymin, pixels[ i + 1 ] );
+			xmax = Math.max( xmax, pixels[ i ] );
+			ymax = Math.max( ymax, pixels[ i + 1 ] );
+		}
+		return Math.nextUp( ( float ) Math.max( xmax - xmin, ymax - ymin ) );
+	}
+
+	/*
+	 * Index of one timepoint.
+	 */
+
+	private static final class Tree
+	{
+
+		/**
+		 * Pool index of the membrane of each chunk.
+		 */
+		private final int[] ids;
+
+		/**
+		 * Index of the first point of each chunk in the membrane pixels.
+		 */
+		private final int[] firsts;
+
+		/**
+		 * Bounding box of each chunk.
+		 */
+		private final float[] boxes;
+
+		private final PackedRTree rtree;
+
+		/**
+		 * Upper bound of the extent of the valid and pending membranes.
+		 */
+		private float extent;
+
+		/**
+		 * Membranes in the tree that are no longer valid.
+		 */
+		private final TIntHashSet stale = new TIntHashSet();
+
+		/**
+		 * Membranes that are not in the tree, or whose tree entries are stale.
+		 */
+		private final TIntHashSet pending = new TIntHashSet();
+
+		private Tree( final int[] ids, final int[] firsts, final float[] boxes, final float extent )
+		{
+			this.extent = extent;
+			this.ids = ids;
+			this.firsts = firsts;
+			this.boxes = boxes;
+			this.rtree = PackedRTree.build( boxes, ids.length );
+		}
+	}
+
+	/**
+	 * Accumulates the chunks of the membranes of one timepoint.
+	 */
+	private static final class Builder
+	{
+
+		private final TIntArrayList ids;
+
+		private final TIntArrayList firsts;
+
+		private float[] boxes;
+
+		private float extent;
+
+		Builder( final int capacity )
+		{
+			ids = new TIntArrayList( capacity );
+			firsts = new TIntArrayList( capacity );
+			boxes = new float[ 4 * Math.max( 1, capacity ) ];
+		}
+
+		int size()
+		{
+			return ids.size();
+		}
+
+		/**
+		 * Copies the chunk of an existing tree.
+		 */
+		void add( final Tree tree, final int entry )
+		{
+			ensureCapacity();
+			System.arraycopy( tree.boxes, 4 * entry, boxes, 4 * ids.size(), 4 );
+			ids.add( tree.ids[ entry ] );
+			firsts.add( tree.firsts[ entry ] );
+			extent = Math.max( extent, tree.extent );
+		}
+
+		/**
+		 * Cuts the polyline of a membrane in chunks.
+		 */
+		void add( final MembranePart edge )
+		{
+			final double[] pixels = edge.getPixels();
+			if ( pixels == null )
+				return;
+			final int nSegments = pixels.length / 2 - 1;
+			final int id = edge.getInternalPoolIndex();
+			extent = Math.max( extent, MembraneSegmentIndex.extent( pixels ) );
+			for ( int first = 0; first < nSegments; first += CHUNK_SIZE )
+			{
+				final int last = Math.min( nSegments, first + CHUNK_SIZE );
+				double xmin = Double.POSITIVE_INFINITY;
+				double ymin = Double.POSITIVE_INFINITY;
+				double xmax = Double.NEGATIVE_INFINITY;
+				double ymax = Double.NEGATIVE_INFINITY;
+				for ( int i = first; i <= last; i++ )
+				{
+					xmin = Math.min( xmin, pixels[ 2 * i ] );
+					ymin = Math.min( ymin, pixels[ 2 * i + 1 ] );
+					xmax = Math.max( xmax, pixels[ 2 * i ] );
+					ymax = Math.max( ymax, pixels[ 2 * i + 1 ] );
+				}
+				ensureCapacity();
+				PackedRTree.setBox( boxes, ids.size(), xmin, ymin, xmax, ymax );
+				ids.add( id );
+				firsts.add( first );
+			}
+		}
+
+		private void ensureCapacity()
+		{
+			if ( 4 * ( ids.size() + 1 ) > boxes.length )
+				boxes = Arrays.copyOf( boxes, 2 * boxes.length );
+		}
+
+		Tree build()
+		{
+			return new Tree( ids.toArray(), firsts.toArray(), Arrays.copyOf( boxes, 4 * ids.size() ), extent );
+		}
+	}
+
+	/*
+	 * Incremental updates.
+	 */
+
+	private class Listener implements GraphListener< Junction, MembranePart >, PropertyChangeListener< MembranePart >
+	{
+
+		@Override
+		public void graphRebuilt()
+		{
+			invalidate();
+		}
+
+		@Override
+		public void vertexAdded( final Junction vertex )
+		{}
+
+		@Override
+		public void vertexRemoved( final Junction vertex )
+		{}
+
+		@Override
+		public void edgeAdded( final MembranePart edge )
+		{
+			membraneChanged( edge );
+		}
+
+		@Override
+		public void edgeRemoved( final MembranePart edge )
+		{
+			membraneRemoved( edge );
+		}
+
+		@Override
+		public void propertyChanged( final MembranePart edge )
+		{
+			membraneChanged( edge );
+		}
+	}
+}
@@ -0,0 +1,119 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.views.bdv;
+
+import org.mastodon.ui.keymap.CommandDescriptionProvider;
+import org.mastodon.ui.keymap.CommandDescriptions;
+import org.mastodon.ui.keymap.KeyConfigContexts;
+import org.scijava.plugin.Plugin;
+import org.scijava.ui.behaviour.util.Actions;
+
+import bdv.viewer.SourceAndConverter;
+import bdv.viewer.ViewerPanel;
+import bdv.viewer.ViewerState;
+
+/**
+ * Action showing or hiding the rasterized cell source in a BDV view, an
+ * alternative to filling the cell polygons in the overlay.
+ */
+public class CellFillActions
+{
+
+	public static final String TOGGLE_CELL_FILL = "toggle cell fill source";
+
+	static final String[] TOGGLE_CELL_FILL_KEYS = new String[] { "not mapped" };
+
+	/*
+	 * Command descriptions for all provided commands
+	 */
+	@Plugin( type = CommandDescriptionProvider.class )
+	public static class Descriptions extends CommandDescriptionProvider
+	{
+		public Descriptions()
+		{
+			super( KeyConfigContexts.BIGDATAVIEWER );
+		}
+
+		@Override
+		public void getCommandDescriptions( final CommandDescriptions descriptions )
+		{
+			descriptions.add( TOGGLE_CELL_FILL, TOGGLE_CELL_FILL_KEYS, "Show or hide the cells as a filled label image, colored like the overlay." );
+		}
+	}
+
+	private CellFillActions()
+	{}
+
+	/**
+	 * Installs the toggle action.
+	 *
+	 * @param actions
+	 *            the actions of the view.
+	 * @param viewer
+	 *            the viewer to add the source to.
+	 * @param source
+	 *            the cell source and its converter.
+	 */
+	public static void install( final Actions actions, final ViewerPanel viewer, final SourceAndConverter< ? > source )
+	{
+		actions.runnableAction( () -> toggle( viewer, source ), TOGGLE_CELL_FILL, TOGGLE_CELL_FILL_KEYS );
+	}
+
+	/**
+	 * Returns whether the cell source is shown in a viewer.
+	 *
+	 * @param viewer
+	 *            the viewer.
+	 * @param source
+	 *            the cell source.
+	 * @return <code>true</code> if the source is added and active.
+	 */
+	public static boolean isShown( final ViewerPanel viewer, final SourceAndConverter< ? > source )
+	{
+		final ViewerState state = viewer.state();
+		return state.containsSource( source ) && state.isSourceActive( source );
+	}
+
+	private static void toggle( final ViewerPanel viewer, final SourceAndConverter< ? > source )
+	{
+		final ViewerState state = viewer.state();
+		synchronized ( state )
+		{
+			if ( state.containsSource( source ) )
+			{
+				state.removeSource( source );
+			}
+			else
+			{
+				state.addSource( source );
+				state.setSourceActive( source, true );
+			}
+		}
+	}
+}
@@ -47,8 +47,11 @@ import org.mastodon.leviathan.app.LeviathanMainWindow;
 import org.mastodon.leviathan.model.cell.Cell;
 import org.mastodon.leviathan.model.cell.CellGraph;
 import org.mastodon.leviathan.model.cell.CellModel;
+import org.mastodon.leviathan.model.cell.CellPool;
 import org.mastodon.leviathan.model.cell.Link;
 import org.mastodon.leviathan.views.LeviathanCellView;
+import org.mastodon.leviathan.views.bdv.overlay.cell.CellFillConverter;
+import org.mastodon.leviathan.views.bdv.overlay.cell.CellFillSource;
 import org.mastodon.leviathan.views.bdv.overlay.cell.CellModelOverlayProperties;
 import org.mastodon.leviathan.views.bdv.overlay.cell.CellOverlayGraphRenderer;
 import org.mastodon.leviathan.views.bdv.overlay.cell.CellRenderSettings;
@@ -56,10 +59,13 @@ import org.mastodon.leviathan.views.bdv.overlay.cell.CellRenderSettings.UpdateLi
 import org.mastodon.leviathan.views.bdv.overlay.cell.wrap.CellOverlayEdgeWrapper;
 import org.mastodon.leviathan.views.bdv.overlay.cell.wrap.CellOverlayGraphWrapper;
 import org.mastodon.leviathan.views.bdv.overlay.cell.wrap.CellOverlayVertexWrapper;
+import org.mastodon.leviathan.views.bdv.overlay.common.OverlayMetrics;
 import org.mastodon.leviathan.views.bdv.overlay.common.OverlayNavigation;
+import org.mastodon.leviathan.views.bdv.overlay.common.TiledOverlayRenderer;
 import org.mastodon.mamut.MamutMenuBuilder;
 import org.mastodon.mamut.UndoActions;
 import org.mastodon.model.AutoNavigateFocusModel;
+import org.mastodon.properties.PropertyChangeListener;
 import org.mastodon.ui.FocusActions;
 import org.mastodon.ui.SelectionActions;
 import org.mastodon.ui.coloring.ColoringModel;
@@ -76,6 +82,7 @@ import org.mastodon.views.bdv.overlay.OverlayActions;
 import bdv.BigDataViewerActions;
 import bdv.tools.InitializeViewerState;
 import bdv.viewer.NavigationActions;
+import bdv.viewer.SourceAndConverter;
 import bdv.viewer.ViewerPanel;
 
 public class LeviathanCellViewBdv extends LeviathanCellView< CellOverlayGraphWrapper< Cell, Link >, CellOverlayVertexWrapper< Cell, Link >, CellOverlayEdgeWrapper< Cell, Link > >
@@ -94,6 +101,8 @@ public class LeviathanCellViewBdv extends LeviathanCellView< CellOverlayGraphWra
 	 */
 	private final ColoringModel coloringModel;
 
+	private final TiledOverlayRenderer tiledRenderer;
+
 	public LeviathanCellViewBdv( final LeviathanCellAppModel appModel )
 	{
 		super( appModel,
@@ -102,8 +111,10 @@ public class LeviathanCellViewBdv extends LeviathanCellView< CellOverlayGraphWra
 						appModel.getModel().getGraphIdBimap(),
 						appModel.getModel().getSpatioTemporalIndex(),
 						appModel.getModel().getGraph().getLock(),
-						new CellModelOverlayProperties( appModel.getModel()
-								.getGraph() ) ),
+						new CellModelOverlayProperties(
+								appModel.getModel().getGraph(),
+								appModel.getModel().getPolygonIndex(),
+								appModel.getModel().getContourCache() ) ),
 				new String[] { KeyConfigContexts.BIGDATAVIEWER } );
 
 		sharedBdvData = appModel.getSharedBdvData();
@@ -131,6 +142,9 @@ public class LeviathanCellViewBdv extends LeviathanCellView< CellOverlayGraphWra
 				viewMenu(
 						colorMenu( menuHandle ),
 						separator(),
+						item( CellFillActions.TOGGLE_CELL_FILL ),
+						separator(),
+						item( OverlayMetricsActions.TOGGLE_OVERLAY_METRICS ),
 						item( MastodonFrameViewActions.TOGGLE_SETTINGS_PANEL ) ),
 				editMenu(
 						item( UndoActions.UNDO ),
@@ -161,19 +175,59 @@ public class LeviathanCellViewBdv extends LeviathanCellView< CellOverlayGraphWra
 		viewer.renderTransformListeners().add( cellOverlay );
 		viewer.addTimePointListener( cellOverlay );
 
+		// Paint the overlay in tiles, off the painting thread.
+		tiledRenderer = new TiledOverlayRenderer( cellOverlay::paint, () -> viewer.getDisplay().repaint() );
+		cellOverlay.setTiledRenderer( tiledRenderer );
+		onClose( tiledRenderer::cancel );
+		final Runnable repaintOverlay = () -> {
+			tiledRenderer.invalidate();
+			viewer.getDisplay().repaint();
+		};
+
 		final CellModel model = appModel.getModel();
 		final CellGraph modelGraph = model.getGraph();
 
+		// Render metrics, recorded while the HUD is shown.
+		final OverlayMetrics metrics = new OverlayMetrics( "Cell overlay", model.getContourCache()::getSimplificationTime );
+		tiledRenderer.setFrameListener( metrics::endFrame );
+		OverlayMetricsActions.install( viewActions, viewer, metrics, cellOverlay::setMetrics, repaintOverlay );
+
+		// Cells rasterized in a label source, as an alternative to filling them in the overlay.
+		final CellFillSource fillSource = new CellFillSource(
+				model,
+				sharedBdvData.getSources().get( 0 ).getSpimSource(),
+				sharedBdvData.getNumTimepoints(),
+				"Cells" );
+		final CellFillConverter< CellOverlayVertexWrapper< Cell, Link >, CellOverlayEdgeWrapper< Cell, Link > > fillConverter =
+				new CellFillConverter<>( viewGraph, coloring );
+		final SourceAndConverter< ? > fill = new SourceAndConverter<>( fillSource, fillConverter );
+		CellFillActions.install( viewActions, viewer, fill );
+		onClose( fillSource::dispose );
+		final Runnable repaintFill = () -> {
+			fillConverter.invalidate();
+			if ( CellFillActions.isShown( viewer, fill ) )
+				viewer.requestRepaint();
+		};
+		final Runnable repaintColors = () -> {
+			repaintFill.run();
+			repaintOverlay.run();
+		};
+
 		coloringModel = registerColoring( coloring, menuHandle,
-				() -> viewer.getDisplay().repaint() );
+				repaintColors::run );
 
-		registerTagSetMenu( tagSetMenuHandle, () -> viewer.getDisplay().repaint() );
+		registerTagSetMenu( tagSetMenuHandle, repaintColors::run );
 
-		highlightModel.listeners().add( () -> viewer.getDisplay().repaint() );
-		focusModel.listeners().add( () -> viewer.getDisplay().repaint() );
-		modelGraph.addGraphChangeListener( () -> viewer.getDisplay().repaint() );
-		modelGraph.addVertexPositionListener( v -> viewer.getDisplay().repaint() );
-		selectionModel.listeners().add( () -> viewer.getDisplay().repaint() );
+		highlightModel.listeners().add( repaintOverlay::run );
+		focusModel.listeners().add( repaintOverlay::run );
+		modelGraph.addGraphChangeListener( repaintColors::run );
+		modelGraph.addVertexPositionListener( v -> repaintColors.run() );
+		// Reshaped cells, also those drawn as ghost contours.
+		final CellPool cellPool = ( CellPool ) modelGraph.vertices().getRefPool();
+		final PropertyChangeListener< Cell > boundaryListener = c -> repaintColors.run();
+		cellPool.boundaryProperty().propertyChangeListeners().add( boundaryListener );
+		onClose( () -> cellPool.boundaryProperty().propertyChangeListeners().remove( boundaryListener ) );
+		selectionModel.listeners().add( repaintOverlay::run );
 
 		final OverlayNavigation< CellOverlayVertexWrapper< Cell, Link >, CellOverlayEdgeWrapper< Cell, Link > > overlayNavigation = new OverlayNavigation<>( viewer, viewGraph );
 		navigationHandler.listeners().add( overlayNavigation );
@@ -199,7 +253,10 @@ public class LeviathanCellViewBdv extends LeviathanCellView< CellOverlayGraphWra
 
 		final CellRenderSettings cellRenderSettings = appModel.getCellRenderSettingsManager().getForwardDefaultStyle();
 		cellOverlay.setCellRenderSettings( cellRenderSettings );
+		fillConverter.setCellRenderSettings( cellRenderSettings );
 		final UpdateListener updateListener = () -> {
+			tiledRenderer.invalidate();
+			repaintFill.run();
 			viewer.repaint();
 		};
 		cellRenderSettings.updateListeners().add( updateListener );
@@ -224,6 +281,7 @@ public class LeviathanCellViewBdv extends LeviathanCellView< CellOverlayGraphWra
 
 	public void requestRepaint()
 	{
+		tiledRenderer.invalidate();
 		viewer.requestRepaint();
 	}
 
@@ -50,7 +50,9 @@ import org.mastodon.leviathan.model.junction.JunctionModel;
 import org.mastodon.leviathan.model.junction.MembranePart;
 import org.mastodon.leviathan.views.LeviathanJunctionView;
 import org.mastodon.leviathan.views.bdv.overlay.common.EditJunctionBehaviours;
+import org.mastodon.leviathan.views.bdv.overlay.common.OverlayMetrics;
 import org.mastodon.leviathan.views.bdv.overlay.common.OverlayNavigation;
+import org.mastodon.leviathan.views.bdv.overlay.common.TiledOverlayRenderer;
 import org.mastodon.leviathan.views.bdv.overlay.junction.JunctionModelOverlayProperties;
 import org.mastodon.leviathan.views.bdv.overlay.junction.JunctionOverlayGraphRenderer;
 import org.mastodon.leviathan.views.bdv.overlay.junction.wrap.JunctionOverlayEdgeWrapper;
@@ -96,6 +98,8 @@ public class LeviathanJunctionViewBdv extends LeviathanJunctionView<
 	 */
 	private final ColoringModel coloringModel;
 
+	private final TiledOverlayRenderer tiledRenderer;
+
 	public LeviathanJunctionViewBdv( final LeviathanJunctionAppModel appModel, final FindFaces faceFinder )
 	{
 		super( appModel,
@@ -104,7 +108,10 @@ public class LeviathanJunctionViewBdv extends LeviathanJunctionView<
 						appModel.getModel().getGraphIdBimap(),
 						appModel.getModel().getSpatioTemporalIndex(),
 						appModel.getModel().getGraph().getLock(),
-						new JunctionModelOverlayProperties( appModel.getModel().getGraph() ) ),
+						new JunctionModelOverlayProperties(
+								appModel.getModel().getGraph(),
+								appModel.getModel().getSegmentIndex(),
+								appModel.getModel().getContourCache() ) ),
 				new String[] { KeyConfigContexts.BIGDATAVIEWER } );
 
 		sharedBdvData = appModel.getSharedBdvData();
@@ -132,6 +139,7 @@ public class LeviathanJunctionViewBdv extends LeviathanJunctionView<
 				viewMenu(
 						colorMenu( menuHandle ),
 						separator(),
+						item( OverlayMetricsActions.TOGGLE_OVERLAY_METRICS ),
 						item( MastodonFrameViewActions.TOGGLE_SETTINGS_PANEL ) ),
 				editMenu(
 						item( UndoActions.UNDO ),
@@ -163,20 +171,34 @@ public class LeviathanJunctionViewBdv extends LeviathanJunctionView<
 		viewer.renderTransformListeners().add( junctionOverlay );
 		viewer.addTimePointListener( junctionOverlay );
 
+		// Paint the overlay in tiles, off the painting thread.
+		tiledRenderer = new TiledOverlayRenderer( junctionOverlay::paint, () -> viewer.getDisplay().repaint() );
+		junctionOverlay.setTiledRenderer( tiledRenderer );
+		onClose( tiledRenderer::cancel );
+		final Runnable repaintOverlay = () -> {
+			tiledRenderer.invalidate();
+			viewer.getDisplay().repaint();
+		};
+
 		final JunctionModel model = appModel.getModel();
 		final JunctionGraph modelGraph = model.getGraph();
 
+		// Render metrics, recorded while the HUD is shown.
+		final OverlayMetrics metrics = new OverlayMetrics( "Junction overlay", model.getContourCache()::getSimplificationTime );
+		tiledRenderer.setFrameListener( metrics::endFrame );
+		OverlayMetricsActions.install( viewActions, viewer, metrics, junctionOverlay::setMetrics, repaintOverlay );
+
 		coloringModel = registerColoring( coloring, menuHandle,
-				() -> viewer.getDisplay().repaint() );
+				repaintOverlay::run );
 
 		registerTagSetMenu( tagSetMenuHandle,
-				() -> viewer.getDisplay().repaint() );
+				repaintOverlay::run );
 
-		highlightModel.listeners().add( () -> viewer.getDisplay().repaint() );
-		focusModel.listeners().add( () -> viewer.getDisplay().repaint() );
-		modelGraph.addGraphChangeListener( () -> viewer.getDisplay().repaint() );
-		modelGraph.addVertexPositionListener( v -> viewer.getDisplay().repaint() );
-		selectionModel.listeners().add( () -> viewer.getDisplay().repaint() );
+		highlightModel.listeners().add( repaintOverlay::run );
+		focusModel.listeners().add( repaintOverlay::run );
+		modelGraph.addGraphChangeListener( repaintOverlay::run );
+		modelGraph.addVertexPositionListener( v -> repaintOverlay.run() );
+		selectionModel.listeners().add( repaintOverlay::run );
 
 		final OverlayNavigation< JunctionOverlayVertexWrapper< Junction, MembranePart >, JunctionOverlayEdgeWrapper< Junction, MembranePart > > overlayNavigation = new OverlayNavigation<>( viewer, viewGraph );
 		navigationHandler.listeners().add( overlayNavigation );
@@ -230,6 +252,7 @@ public class LeviathanJunctionViewBdv extends LeviathanJunctionView<
 
 	public void requestRepaint()
 	{
+		tiledRenderer.invalidate();
 		viewer.requestRepaint();
 	}
 
@@ -0,0 +1,141 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.views.bdv;
+
+import java.util.function.Consumer;
+
+import org.mastodon.leviathan.views.bdv.overlay.common.OverlayMetrics;
+import org.mastodon.leviathan.views.bdv.overlay.common.OverlayMetricsHud;
+import org.mastodon.ui.keymap.CommandDescriptionProvider;
+import org.mastodon.ui.keymap.CommandDescriptions;
+import org.mastodon.ui.keymap.KeyConfigContexts;
+import org.scijava.plugin.Plugin;
+import org.scijava.ui.behaviour.util.Actions;
+
+import bdv.viewer.ViewerPanel;
+
+/**
+ * Action showing or hiding the render metrics of the overlay of a BDV view.
+ * While shown, the metrics are recorded and displayed with their percentiles
+ * in a heads-up display.
+ */
+public class OverlayMetricsActions
+{
+
+	public static final String TOGGLE_OVERLAY_METRICS = "toggle overlay metrics";
+
+	static final String[] TOGGLE_OVERLAY_METRICS_KEYS = new String[] { "not mapped" };
+
+	/*
+	 * Command descriptions for all provided commands
+	 */
+	@Plugin( type = CommandDescriptionProvider.class )
+	public static class Descriptions extends CommandDescriptionProvider
+	{
+		public Descriptions()
+		{
+			super( KeyConfigContexts.BIGDATAVIEWER );
+		}
+
+		@Override
+		public void getCommandDescriptions( final CommandDescriptions descriptions )
+		{
+			descriptions.add( TOGGLE_OVERLAY_METRICS, TOGGLE_OVERLAY_METRICS_KEYS,
+					"Show or hide the frame time and draw counts of the overlay, with their percentiles." );
+		}
+	}
+
+	private final ViewerPanel viewer;
+
+	private final OverlayMetrics metrics;
+
+	private final Consumer< OverlayMetrics > renderer;
+
+	private final Runnable repaint;
+
+	private final OverlayMetricsHud hud;
+
+	private boolean shown;
+
+	private OverlayMetricsActions(
+			final ViewerPanel viewer,
+			final OverlayMetrics metrics,
+			final Consumer< OverlayMetrics > renderer,
+			final Runnable repaint )
+	{
+		this.viewer = viewer;
+		this.metrics = metrics;
+		this.renderer = renderer;
+		this.repaint = repaint;
+		this.hud = new OverlayMetricsHud( metrics );
+	}
+
+	/**
+	 * Installs the toggle action.
+	 *
+	 * @param actions
+	 *            the actions of the view.
+	 * @param viewer
+	 *            the viewer to show the metrics in.
+	 * @param metrics
+	 *            the metrics.
+	 * @param renderer
+	 *            sets the metrics the overlay renderer records its paints in,
+	 *            or <code>null</code>.
+	 * @param repaint
+	 *            invalidates and repaints the overlay.
+	 */
+	public static void install(
+			final Actions actions,
+			final ViewerPanel viewer,
+			final OverlayMetrics metrics,
+			final Consumer< OverlayMetrics > renderer,
+			final Runnable repaint )
+	{
+		final OverlayMetricsActions ma = new OverlayMetricsActions( viewer, metrics, renderer, repaint );
+		actions.runnableAction( ma::toggle, TOGGLE_OVERLAY_METRICS, TOGGLE_OVERLAY_METRICS_KEYS );
+	}
+
+	private synchronized void toggle()
+	{
+		shown = !shown;
+		if ( shown )
+		{
+			metrics.reset();
+			renderer.accept( metrics );
+			viewer.getDisplay().overlays().add( hud );
+		}
+		else
+		{
+			renderer.accept( null );
+			viewer.getDisplay().overlays().remove( hud );
+		}
+		repaint.run();
+	}
+}
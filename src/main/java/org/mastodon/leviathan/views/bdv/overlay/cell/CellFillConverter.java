@@ -0,0 +1,161 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.views.bdv.overlay.cell;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.mastodon.ui.coloring.GraphColorGenerator;
+
+import net.imglib2.converter.Converter;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+
+/**
+ * Converts the labels of a {@link CellFillSource} to the colors of the cells,
+ * as given by the coloring of a view.
+ * <p>
+ * The colors are looked up in a table indexed by label, built from the view
+ * graph the first time a label is converted after {@link #invalidate()}, so
+ * that converting a pixel does not touch the graph. Cells without a color, or
+ * added after the table was built, get the cell color of the render
+ * settings. Colors are scaled by {@link #OPACITY}, because BDV adds the
+ * colors of the sources it displays.
+ *
+ * @param <V>
+ *            the type of the cells in the view.
+ * @param <E>
+ *            the type of the links in the view.
+ */
+public class CellFillConverter< V extends CellOverlayVertex< V, E >, E extends CellOverlayEdge< E, V > >
+		implements Converter< UnsignedIntType, ARGBType >
+{
+
+	/**
+	 * Factor applied to the color components.
+	 */
+	public static final double OPACITY = 0.5;
+
+	private final CellOverlayGraph< V, E > graph;
+
+	private final GraphColorGenerator< V, E > coloring;
+
+	private final ReentrantReadWriteLock lock;
+
+	private CellRenderSettings settings = CellRenderSettings.defaultStyle();
+
+	/**
+	 * Colors indexed by label, or <code>null</code> if they must be rebuilt.
+	 */
+	private volatile int[] colors;
+
+	/**
+	 * Color of the labels not in the table.
+	 */
+	private volatile int defaultColor;
+
+	public CellFillConverter( final CellOverlayGraph< V, E > graph, final GraphColorGenerator< V, E > coloring )
+	{
+		this.graph = graph;
+		this.coloring = coloring;
+		this.lock = graph.getLock();
+	}
+
+	public void setCellRenderSettings( final CellRenderSettings settings )
+	{
+		this.settings = settings;
+		invalidate();
+	}
+
+	/**
+	 * Discards the color table, to rebuild it when the coloring, the render
+	 * settings or the cells changed.
+	 */
+	public void invalidate()
+	{
+		colors = null;
+	}
+
+	@Override
+	public void convert( final UnsignedIntType input, final ARGBType output )
+	{
+		final int label = input.getInt();
+		if ( label == 0 )
+		{
+			output.set( 0 );
+			return;
+		}
+		int[] table = colors;
+		if ( table == null )
+			table = buildTable();
+		output.set( label < table.length ? table[ label ] : defaultColor );
+	}
+
+	private synchronized int[] buildTable()
+	{
+		if ( colors != null )
+			return colors;
+
+		final int fallback = scale( settings.getCellColor() );
+		int[] table = new int[ 1024 ];
+		lock.readLock().lock();
+		try
+		{
+			Arrays.fill( table, fallback );
+			for ( final V v : graph.vertices() )
+			{
+				final int label = v.getInternalPoolIndex() + 1;
+				if ( label >= table.length )
+				{
+					final int oldLength = table.length;
+					table = Arrays.copyOf( table, Math.max( label + 1, 2 * oldLength ) );
+					Arrays.fill( table, oldLength, table.length, fallback );
+				}
+				final int color = coloring.color( v );
+				if ( color != 0 )
+					table[ label ] = scale( color );
+			}
+		}
+		finally
+		{
+			lock.readLock().unlock();
+		}
+		defaultColor = fallback;
+		colors = table;
+		return table;
+	}
+
+	private static int scale( final int argb )
+	{
+		final int r = ( int ) ( ARGBType.red( argb ) * OPACITY );
+		final int g = ( int ) ( ARGBType.green( argb ) * OPACITY );
+		final int b = ( int ) ( ARGBType.blue( argb ) * OPACITY );
+		return ARGBType.rgba( r, g, b, 255 );
+	}
+}
@@ -0,0 +1,431 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.views.bdv.overlay.cell;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefList;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.leviathan.algorithms.PolygonRasterizer;
+import org.mastodon.leviathan.model.DoubleSlice;
+import org.mastodon.leviathan.model.cell.Cell;
+import org.mastodon.leviathan.model.cell.CellGraph;
+import org.mastodon.leviathan.model.cell.CellModel;
+import org.mastodon.leviathan.model.cell.CellPolygonIndex;
+import org.mastodon.leviathan.model.cell.CellPool;
+import org.mastodon.leviathan.model.cell.Link;
+import org.mastodon.properties.PropertyChangeListener;
+
+import bdv.util.DefaultInterpolators;
+import bdv.viewer.Interpolation;
+import bdv.viewer.Source;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import mpicbg.spim.data.sequence.VoxelDimensions;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealRandomAccessible;
+import net.imglib2.cache.img.CellLoader;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgFactory;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgOptions;
+import net.imglib2.cache.img.SingleCellArrayImg;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.view.Views;
+
+/**
+ * A BDV source showing the cells of a {@link CellModel} as a label image,
+ * computed lazily block per block.
+ * <p>
+ * The label of a pixel is the pool index of the cell whose polygon contains
+ * the pixel center, plus 1, so that 0 is the background, like in the images
+ * written by the {@code LabelImageExporter}. The source has the pixel grid of
+ * a reference source, typically the image the model was built from, and
+ * mipmap levels downsampled by 2 in X and Y until the image fits in
+ * {@link #MIN_LEVEL_SIZE} pixels. Each block is filled when BDV first reads
+ * it: the cells intersecting the block are found with the
+ * {@link CellPolygonIndex} and their polygons filled with a
+ * {@link PolygonRasterizer}, clipped to the block. Blocks are kept in a
+ * memory-sensitive cache, so BDV renders the filled cells with its own
+ * multi-threaded, mipmapped renderer instead of filling polygons on the
+ * painting thread.
+ * <p>
+ * The cached images of a time-point are discarded when cells of that
+ * time-point are added, removed, moved or reshaped. The colors are given by
+ * the converter of the source, see {@link CellFillConverter}.
+ */
+public class CellFillSource implements Source< UnsignedIntType >
+{
+
+	/**
+	 * Size of the blocks filled at once, in pixels.
+	 */
+	public static final int BLOCK_SIZE = 64;
+
+	/**
+	 * Mipmap levels are added until the largest dimension of the coarsest
+	 * level is below this size.
+	 */
+	public static final int MIN_LEVEL_SIZE = 512;
+
+	private final CellModel model;
+
+	private final Source< ? > reference;
+
+	private final String name;
+
+	private final int numLevels;
+
+	private final CellGraph graph;
+
+	private final CellPool pool;
+
+	private final Listener listener;
+
+	private final UnsignedIntType type = new UnsignedIntType();
+
+	private final DefaultInterpolators< UnsignedIntType > interpolators = new DefaultInterpolators<>();
+
+	/**
+	 * Cached images, per time-point and level, guarded by this source.
+	 */
+	private final TIntObjectHashMap< List< RandomAccessibleInterval< UnsignedIntType > > > images = new TIntObjectHashMap<>();
+
+	private final ThreadLocal< Scratch > scratch = ThreadLocal.withInitial( Scratch::new );
+
+	/**
+	 * Creates a source for the cells of a model.
+	 *
+	 * @param model
+	 *            the cell model.
+	 * @param reference
+	 *            the source whose pixel grid is used, at its finest level.
+	 * @param numTimepoints
+	 *            the number of time-points of the reference source.
+	 * @param name
+	 *            the name of the source.
+	 */
+	public CellFillSource( final CellModel model, final Source< ? > reference, final int numTimepoints, final String name )
+	{
+		this.model = model;
+		this.reference = reference;
+		this.name = name;
+		this.graph = model.getGraph();
+		this.pool = ( CellPool ) graph.vertices().getRefPool();
+
+		int levels = 1;
+		for ( int t = 0; t < numTimepoints; t++ )
+		{
+			if ( !reference.isPresent( t ) )
+				continue;
+			final RandomAccessibleInterval< ? > img = reference.getSource( t, 0 );
+			long size = Math.max( img.dimension( 0 ), img.dimension( 1 ) );
+			while ( size > MIN_LEVEL_SIZE )
+			{
+				size = ( size + 1 ) / 2;
+				levels++;
+			}
+			break;
+		}
+		this.numLevels = levels;
+
+		this.listener = new Listener();
+		graph.addGraphListener( listener );
+		pool.positionProperty().propertyChangeListeners().add( listener );
+		pool.boundaryProperty().propertyChangeListeners().add( listener );
+	}
+
+	/**
+	 * Stops tracking the modifications of the model and discards the cached
+	 * images.
+	 */
+	public void dispose()
+	{
+		graph.removeGraphListener( listener );
+		pool.positionProperty().propertyChangeListeners().remove( listener );
+		pool.boundaryProperty().propertyChangeListeners().remove( listener );
+		invalidateAll();
+	}
+
+	/**
+	 * Discards the cached images of a time-point.
+	 *
+	 * @param timepoint
+	 *            the time-point.
+	 */
+	public synchronized void invalidate( final int timepoint )
+	{
+		images.remove( timepoint );
+	}
+
+	/**
+	 * Discards all the cached images.
+	 */
+	public synchronized void invalidateAll()
+	{
+		images.clear();
+	}
+
+	@Override
+	public boolean isPresent( final int t )
+	{
+		return reference.isPresent( t );
+	}
+
+	@Override
+	public synchronized RandomAccessibleInterval< UnsignedIntType > getSource( final int t, final int level )
+	{
+		List< RandomAccessibleInterval< UnsignedIntType > > levels = images.get( t );
+		if ( levels == null )
+		{
+			levels = new ArrayList<>( numLevels );
+			for ( int l = 0; l < numLevels; l++ )
+				levels.add( null );
+			images.put( t, levels );
+		}
+		RandomAccessibleInterval< UnsignedIntType > img = levels.get( level );
+		if ( img == null )
+		{
+			img = createImg( t, level );
+			levels.set( level, img );
+		}
+		return img;
+	}
+
+	@Override
+	public RealRandomAccessible< UnsignedIntType > getInterpolatedSource( final int t, final int level, final Interpolation method )
+	{
+		// Labels are never interpolated.
+		return Views.interpolate( Views.extendZero( getSource( t, level ) ), interpolators.get( Interpolation.NEARESTNEIGHBOR ) );
+	}
+
+	@Override
+	public void getSourceTransform( final int t, final int level, final AffineTransform3D transform )
+	{
+		reference.getSourceTransform( t, 0, transform );
+		if ( level == 0 )
+			return;
+
+		// Downsampled in X and Y, with the pixel centers of BDV mipmaps.
+		final double s = 1 << level;
+		final AffineTransform3D downsampling = new AffineTransform3D();
+		downsampling.set(
+				s, 0, 0, 0.5 * ( s - 1 ),
+				0, s, 0, 0.5 * ( s - 1 ),
+				0, 0, 1, 0 );
+		transform.concatenate( downsampling );
+	}
+
+	@Override
+	public UnsignedIntType getType()
+	{
+		return type;
+	}
+
+	@Override
+	public String getName()
+	{
+		return name;
+	}
+
+	@Override
+	public VoxelDimensions getVoxelDimensions()
+	{
+		return reference.getVoxelDimensions();
+	}
+
+	@Override
+	public int getNumMipmapLevels()
+	{
+		return numLevels;
+	}
+
+	private RandomAccessibleInterval< UnsignedIntType > createImg( final int t, final int level )
+	{
+		final RandomAccessibleInterval< ? > img = reference.getSource( t, 0 );
+		final long s = 1L << level;
+		final long[] dimensions = new long[] {
+				( img.dimension( 0 ) + s - 1 ) / s,
+				( img.dimension( 1 ) + s - 1 ) / s,
+				1 };
+		final AffineTransform3D transform = new AffineTransform3D();
+		getSourceTransform( t, level, transform );
+		final CellLoader< UnsignedIntType > loader = block -> fill( t, transform, block );
+		final ReadOnlyCachedCellImgOptions options = ReadOnlyCachedCellImgOptions.options()
+				.cellDimensions( BLOCK_SIZE, BLOCK_SIZE, 1 );
+		return new ReadOnlyCachedCellImgFactory( options ).create( dimensions, new UnsignedIntType(), loader );
+	}
+
+	/**
+	 * Fills the polygons of the cells intersecting a block.
+	 */
+	private void fill( final int timepoint, final AffineTransform3D transform, final SingleCellArrayImg< UnsignedIntType, ? > block )
+	{
+		final long minX = block.min( 0 );
+		final long maxX = block.max( 0 );
+		final long minY = block.min( 1 );
+		final long maxY = block.max( 1 );
+
+		// Bounding box of the block in global coordinates.
+		final Scratch s = scratch.get();
+		final double[] pos = s.pos;
+		double xmin = Double.POSITIVE_INFINITY;
+		double ymin = Double.POSITIVE_INFINITY;
+		double xmax = Double.NEGATIVE_INFINITY;
+		double ymax = Double.NEGATIVE_INFINITY;
+		for ( int corner = 0; corner < 4; corner++ )
+		{
+			pos[ 0 ] = ( corner & 1 ) == 0 ? minX - 0.5 : maxX + 0.5;
+			pos[ 1 ] = ( corner & 2 ) == 0 ? minY - 0.5 : maxY + 0.5;
+			pos[ 2 ] = 0.;
+			transform.apply( pos, pos );
+			xmin = Math.min( xmin, pos[ 0 ] );
+			ymin = Math.min( ymin, pos[ 1 ] );
+			xmax = Math.max( xmax, pos[ 0 ] );
+			ymax = Math.max( ymax, pos[ 1 ] );
+		}
+
+		final RandomAccess< UnsignedIntType > ra = block.randomAccess();
+		ra.setPosition( block.min( 2 ), 2 );
+		final long[] label = new long[ 1 ];
+		final PolygonRasterizer.SpanConsumer span = ( y, x0, x1 ) -> {
+			if ( y < minY || y > maxY )
+				return;
+			final long xstart = Math.max( x0, minX );
+			final long xend = Math.min( x1, maxX );
+			if ( xstart > xend )
+				return;
+			ra.setPosition( xstart, 0 );
+			ra.setPosition( y, 1 );
+			for ( long x = xstart; x <= xend; x++ )
+			{
+				ra.get().set( label[ 0 ] );
+				ra.fwd( 0 );
+			}
+		};
+
+		final CellPolygonIndex index = model.getPolygonIndex();
+		graph.getLock().readLock().lock();
+		try
+		{
+			final RefList< Cell > cells = RefCollections.createRefList( graph.vertices() );
+			index.getCellsIntersecting( timepoint, xmin, ymin, xmax, ymax, cells );
+			for ( final Cell cell : cells )
+			{
+				final DoubleSlice boundary = cell.getBoundary( s.slice );
+				if ( boundary == null || boundary.size() < 6 )
+					continue;
+
+				final int n = boundary.size() / 2;
+				final double[] xy = s.xy( n );
+				final double xc = cell.getDoublePosition( 0 );
+				final double yc = cell.getDoublePosition( 1 );
+				final double zc = cell.numDimensions() > 2 ? cell.getDoublePosition( 2 ) : 0.;
+				for ( int i = 0; i < n; i++ )
+				{
+					pos[ 0 ] = xc + boundary.get( 2 * i );
+					pos[ 1 ] = yc + boundary.get( 2 * i + 1 );
+					pos[ 2 ] = zc;
+					transform.applyInverse( pos, pos );
+					xy[ 2 * i ] = pos[ 0 ];
+					xy[ 2 * i + 1 ] = pos[ 1 ];
+				}
+				label[ 0 ] = cell.getInternalPoolIndex() + 1L;
+				s.rasterizer.fill( xy, n, span );
+			}
+		}
+		finally
+		{
+			graph.getLock().readLock().unlock();
+		}
+	}
+
+	/**
+	 * Buffers of a thread filling blocks.
+	 */
+	private static final class Scratch
+	{
+
+		private final PolygonRasterizer rasterizer = new PolygonRasterizer();
+
+		private final DoubleSlice slice = new DoubleSlice();
+
+		private final double[] pos = new double[ 3 ];
+
+		private double[] xy = new double[ 256 ];
+
+		double[] xy( final int n )
+		{
+			if ( xy.length < 2 * n )
+				xy = new double[ 4 * n ];
+			return xy;
+		}
+	}
+
+	/*
+	 * Invalidation.
+	 */
+
+	private class Listener implements GraphListener< Cell, Link >, PropertyChangeListener< Cell >
+	{
+
+		@Override
+		public void graphRebuilt()
+		{
+			invalidateAll();
+		}
+
+		@Override
+		public void vertexAdded( final Cell vertex )
+		{
+			invalidate( vertex.getTimepoint() );
+		}
+
+		@Override
+		public void vertexRemoved( final Cell vertex )
+		{
+			invalidate( vertex.getTimepoint() );
+		}
+
+		@Override
+		public void edgeAdded( final Link edge )
+		{}
+
+		@Override
+		public void edgeRemoved( final Link edge )
+		{}
+
+		@Override
+		public void propertyChanged( final Cell cell )
+		{
+			invalidate( cell.getTimepoint() );
+		}
+	}
+}
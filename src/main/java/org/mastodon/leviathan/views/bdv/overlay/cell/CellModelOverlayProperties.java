@@ -28,8 +28,11 @@
  */
 package org.mastodon.leviathan.views.bdv.overlay.cell;
 
+import org.mastodon.leviathan.model.DoubleSlice;
 import org.mastodon.leviathan.model.cell.Cell;
+import org.mastodon.leviathan.model.cell.CellContourCache;
 import org.mastodon.leviathan.model.cell.CellGraph;
+import org.mastodon.leviathan.model.cell.CellPolygonIndex;
 import org.mastodon.leviathan.model.cell.Link;
 import org.mastodon.leviathan.views.bdv.overlay.cell.wrap.CellOverlayProperties;
 
@@ -37,9 +40,15 @@ public class CellModelOverlayProperties implements CellOverlayProperties< Cell,
 {
 	private final CellGraph cellGraph;
 
-	public CellModelOverlayProperties( final CellGraph cellGraph )
+	private final CellPolygonIndex polygonIndex;
+
+	private final CellContourCache contourCache;
+
+	public CellModelOverlayProperties( final CellGraph cellGraph, final CellPolygonIndex polygonIndex, final CellContourCache contourCache )
 	{
 		this.cellGraph = cellGraph;
+		this.polygonIndex = polygonIndex;
+		this.contourCache = contourCache;
 	}
 
 	@Override
@@ -132,6 +141,30 @@ public class CellModelOverlayProperties implements CellOverlayProperties< Cell,
 		return v.getBoundary();
 	}
 
+	@Override
+	public DoubleSlice getBoundary( final Cell v, final DoubleSlice slice )
+	{
+		return v.getBoundary( slice );
+	}
+
+	@Override
+	public DoubleSlice getContour( final Cell v, final double tolerance, final DoubleSlice slice )
+	{
+		return contourCache.getContour( v, tolerance, slice );
+	}
+
+	@Override
+	public Cell getCellAt( final double x, final double y, final int timepoint, final Cell ref )
+	{
+		return polygonIndex.getCellAt( x, y, timepoint, ref );
+	}
+
+	@Override
+	public double getMaxCellExtent( final int timepoint )
+	{
+		return polygonIndex.getMaxExtent( timepoint );
+	}
+
 	@Override
 	public String getLabel( final Cell v )
 	{
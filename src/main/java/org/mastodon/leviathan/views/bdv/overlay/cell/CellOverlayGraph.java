@@ -32,4 +32,32 @@ import org.mastodon.views.bdv.overlay.OverlayGraph;
 
 public interface CellOverlayGraph< V extends CellOverlayVertex< V, E >, E extends CellOverlayEdge< E, V > >
 		extends OverlayGraph< V, E >
-{}
+{
+
+	/**
+	 * Returns the cell whose polygon contains the specified point.
+	 *
+	 * @param x
+	 *            the X coordinate of the point, in global coordinates.
+	 * @param y
+	 *            the Y coordinate of the point, in global coordinates.
+	 * @param timepoint
+	 *            the timepoint of the cell.
+	 * @param ref
+	 *            a vertex reference, used to return the cell found.
+	 * @return the cell containing the point, or <code>null</code> if there is
+	 *         none.
+	 */
+	public V getCellAt( double x, double y, int timepoint, V ref );
+
+	/**
+	 * Returns an upper bound of the extent of the cell polygons of a
+	 * timepoint: along each axis, no point of a polygon is farther than this
+	 * from the position of its cell.
+	 *
+	 * @param timepoint
+	 *            the timepoint.
+	 * @return the extent, in global units.
+	 */
+	public double getMaxCellExtent( int timepoint );
+}
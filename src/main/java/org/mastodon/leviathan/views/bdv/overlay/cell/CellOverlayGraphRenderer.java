@@ -37,14 +37,21 @@ import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.font.FontRenderContext;
 import java.awt.font.TextLayout;
+import java.awt.geom.Ellipse2D;
 import java.awt.geom.Path2D;
 import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.mastodon.collection.RefCollection;
 import org.mastodon.collection.RefCollections;
 import org.mastodon.collection.RefList;
 import org.mastodon.kdtree.ClipConvexPolytope;
-import org.mastodon.leviathan.views.bdv.overlay.common.DouglasPeucker;
+import org.mastodon.leviathan.model.DoubleSlice;
+import org.mastodon.leviathan.views.bdv.overlay.common.DensityTiles;
+import org.mastodon.leviathan.views.bdv.overlay.common.OverlayMetrics;
+import org.mastodon.leviathan.views.bdv.overlay.common.PathBatch;
+import org.mastodon.leviathan.views.bdv.overlay.common.TiledOverlayRenderer;
 import org.mastodon.model.FocusModel;
 import org.mastodon.model.HighlightModel;
 import org.mastodon.model.SelectionModel;
@@ -58,11 +65,11 @@ import org.mastodon.views.bdv.overlay.Visibilities;
 import org.mastodon.views.bdv.overlay.Visibilities.Visibility;
 import org.mastodon.views.bdv.overlay.Visibilities.VisibilityMode;
 import org.mastodon.views.bdv.overlay.util.BdvRendererUtil;
-import org.scijava.util.DoubleArray;
 
-import net.imglib2.RealPoint;
+import bdv.util.Affine3DHelpers;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
 import net.imglib2.algorithm.kdtree.ConvexPolytope;
-import net.imglib2.neighborsearch.NearestNeighborSearch;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.numeric.ARGBType;
 
@@ -72,6 +79,27 @@ public class CellOverlayGraphRenderer< V extends CellOverlayVertex< V, E >, E ex
 
 	public static final double pointRadius = 2.5;
 
+	/**
+	 * Cells whose contour spans fewer screen pixels than this are not drawn
+	 * individually, but collected in a {@link DensityTiles}.
+	 */
+	public static final double MIN_CONTOUR_SIZE = 3.;
+
+	/**
+	 * Margin added to the regions painted, in screen pixels, so that the
+	 * labels and the wide strokes of cells outside a region are painted too.
+	 */
+	private static final double LABEL_BORDER = 64.;
+
+	private static final double STROKE_BORDER = 2.;
+
+	/**
+	 * Maximal number of ghost contour segments painted in a frame. The cap of
+	 * a region is proportional to its area, and the time-points farthest from
+	 * the current one are dropped first.
+	 */
+	public static final int MAX_GHOST_SEGMENTS = 200_000;
+
 	private int width;
 
 	private int height;
@@ -96,6 +124,10 @@ public class CellOverlayGraphRenderer< V extends CellOverlayVertex< V, E >, E ex
 
 	private final Visibilities< V, E > visibilities;
 
+	private TiledOverlayRenderer tiledRenderer;
+
+	private volatile OverlayMetrics metrics;
+
 	public CellOverlayGraphRenderer(
 			final CellOverlayGraph< V, E > graph,
 			final HighlightModel< V, E > highlight,
@@ -139,6 +171,44 @@ public class CellOverlayGraphRenderer< V extends CellOverlayVertex< V, E >, E ex
 	public void setCellRenderSettings( final CellRenderSettings settings )
 	{
 		this.settings = settings;
+		invalidate();
+	}
+
+	/**
+	 * Sets the renderer used to paint the overlay asynchronously, in tiles.
+	 * The renderer must paint the tiles with
+	 * {@link #paint(Graphics2D, AffineTransform3D, int, int, int, int, int)}.
+	 *
+	 * @param tiledRenderer
+	 *            the tiled renderer, or <code>null</code> to paint the overlay
+	 *            synchronously, in {@link #drawOverlays(Graphics)}.
+	 */
+	public void setTiledRenderer( final TiledOverlayRenderer tiledRenderer )
+	{
+		this.tiledRenderer = tiledRenderer;
+	}
+
+	/**
+	 * Sets the metrics to record the paints of this overlay in.
+	 *
+	 * @param metrics
+	 *            the metrics, or <code>null</code> not to record them.
+	 */
+	public void setMetrics( final OverlayMetrics metrics )
+	{
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Discards the tiles painted so far. Must be called when the model, the
+	 * selection, the coloring or any other state the overlay depends on
+	 * changes, before requesting a repaint.
+	 */
+	public void invalidate()
+	{
+		final TiledOverlayRenderer tr = tiledRenderer;
+		if ( tr != null )
+			tr.invalidate();
 	}
 
 	private static int trunc255( final int i )
@@ -398,15 +468,57 @@ public class CellOverlayGraphRenderer< V extends CellOverlayVertex< V, E >, E ex
 	@Override
 	public void drawOverlays( final Graphics g )
 	{
-		final Graphics2D graphics = ( Graphics2D ) g;
+		final AffineTransform3D transform = getRenderTransformCopy();
+		final int currentTimepoint = renderTimepoint;
+		final TiledOverlayRenderer tr = tiledRenderer;
+		if ( tr != null )
+		{
+			tr.drawOverlays( g, transform, currentTimepoint, width, height );
+		}
+		else
+		{
+			final long start = System.nanoTime();
+			paint( ( Graphics2D ) g, transform, currentTimepoint, 0, 0, width, height );
+			final OverlayMetrics m = metrics;
+			if ( m != null )
+				m.endFrame( System.nanoTime() - start );
+		}
+	}
+
+	/**
+	 * Paints the part of the overlay that covers a region of the screen. May
+	 * be called concurrently, for several regions.
+	 *
+	 * @param graphics
+	 *            the graphics to paint on, in screen coordinates.
+	 * @param transform
+	 *            the viewer transform.
+	 * @param currentTimepoint
+	 *            the timepoint to paint.
+	 * @param x
+	 *            the X coordinate of the region, in screen coordinates.
+	 * @param y
+	 *            the Y coordinate of the region, in screen coordinates.
+	 * @param w
+	 *            the width of the region.
+	 * @param h
+	 *            the height of the region.
+	 */
+	public void paint(
+			final Graphics2D graphics,
+			final AffineTransform3D transform,
+			final int currentTimepoint,
+			final int x,
+			final int y,
+			final int w,
+			final int h )
+	{
 		final BasicStroke defaultVertexStroke = new BasicStroke();
 		final BasicStroke defaultEdgeStroke = new BasicStroke();
 		final BasicStroke highlightedEdgeStroke = new BasicStroke( 3f );
 		final BasicStroke focusedEdgeStroke = new BasicStroke( 3f,
 				BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND, 0f, new float[] { 6f }, 0f );
 
-		final AffineTransform3D transform = getRenderTransformCopy();
-		final int currentTimepoint = renderTimepoint;
 		final double timepointDistanceFade = 0.5;
 
 		final Object antialiasing = settings.getUseAntialiasing()
@@ -426,14 +538,19 @@ public class CellOverlayGraphRenderer< V extends CellOverlayVertex< V, E >, E ex
 		final boolean useGradient = settings.getUseGradient();
 		final boolean drawArrowHeads = settings.getDrawArrowHeads();
 
+		int visitedCount = 0;
+		int drawnCount = 0;
+		final long start = System.nanoTime();
 		graph.getLock().readLock().lock();
 		index.readLock().lock();
+		final long locked = System.nanoTime();
 		try
 		{
 			if ( settings.getDrawLinks() )
 			{
 				final E highlighted = highlight.getHighlightedEdge( ref3 );
 				graphics.setStroke( defaultEdgeStroke );
+				// Links are not bounded in length: visit all the visible ones.
 				forEachVisibleEdge( transform, currentTimepoint, ( edge, td0, td1, x0, y0, x1, y1 ) -> {
 					final boolean isHighlighted = edge.equals( highlighted );
 
@@ -491,9 +608,81 @@ public class CellOverlayGraphRenderer< V extends CellOverlayVertex< V, E >, E ex
 				} );
 			}
 
+			final boolean drawCells = settings.getDrawCells();
+			if ( drawCells && settings.getDrawGhostContours() )
+			{
+				final Visibility< V, E > visibility = visibilities.getVisibility();
+				final int range = settings.getGhostTimeRange();
+				final double scale = Affine3DHelpers.extractScale( transform, 0 );
+				final double tolerance = 1. / scale;
+				final long maxSegments = ( long ) ( MAX_GHOST_SEGMENTS * ( ( double ) w * h ) / Math.max( 1., ( double ) width * height ) );
+				final Path2D.Double path = new Path2D.Double();
+				final DoubleSlice slice = new DoubleSlice();
+				final double[] pos = new double[ 3 ];
+				final double[] vPos = new double[ 3 ];
+				final PathBatch ghostBatch = new PathBatch( defaultVertexStroke );
+				long segments = 0;
+
+				// Nearest time-points first, so that the cap drops the farthest.
+				ghosts: for ( int d = 1; d <= range; d++ )
+				{
+					for ( int sign = -1; sign <= 1; sign += 2 )
+					{
+						final int t = currentTimepoint + sign * d;
+						if ( t < 0 )
+							continue;
+						final SpatialIndex< V > si = index.getSpatialIndex( t );
+						if ( si == null || si.isEmpty() )
+							continue;
+
+						final double td = timeDistance( t, currentTimepoint, range + 1 );
+						final double border = graph.getMaxCellExtent( t ) * scale + STROKE_BORDER;
+						final ClipConvexPolytope< V > ccp = si.getClipConvexPolytope();
+						ccp.clip( getOverlappingPolytopeGlobal(
+								x - border, x + w + border,
+								y - border, y + h + border,
+								transform, t ) );
+						for ( final V vertex : ccp.getInsideValues() )
+						{
+							visitedCount++;
+							if ( !visibility.isVisible( vertex ) )
+								continue;
+							// Filtered with the significances cached by the model.
+							final DoubleSlice contour = vertex.getContour( tolerance, slice );
+							if ( contour == null || contour.size() < 4 )
+								continue;
+							segments += contour.size() / 2;
+							if ( segments > maxSegments )
+								break ghosts;
+
+							final double size = toPath( contour,
+									vertex.getDoublePosition( 0 ),
+									vertex.getDoublePosition( 1 ),
+									transform,
+									path,
+									pos,
+									vPos );
+							if ( size < MIN_CONTOUR_SIZE )
+								continue;
+							drawnCount++;
+							final int ghostColor = getColor(
+									td,
+									timepointDistanceFade,
+									selection.isSelected( vertex ),
+									false,
+									colorSpot,
+									colorPast,
+									colorFuture,
+									coloring.color( vertex ) ).getRGB();
+							ghostBatch.draw( ghostColor, path );
+						}
+					}
+				}
+				ghostBatch.paint( graphics );
+			}
+
 			final boolean drawCellCenter = settings.getDrawCellCenter();
 			final boolean drawCellContour = settings.getDrawCellContour();
-			final boolean drawCells = settings.getDrawCells();
 			if ( drawCells && ( drawCellCenter || drawCellContour ) )
 			{
 				final boolean drawCellFilled = settings.getDrawCellFilled();
@@ -505,94 +694,125 @@ public class CellOverlayGraphRenderer< V extends CellOverlayVertex< V, E >, E ex
 
 				graphics.setStroke( defaultVertexStroke );
 
-				final ConvexPolytope cropPolytopeGlobal = getVisiblePolytopeGlobal( transform, currentTimepoint );
+				// Also visit the cells outside the region that overlap it.
+				final double scale = Affine3DHelpers.extractScale( transform, 0 );
+				final double border = graph.getMaxCellExtent( currentTimepoint ) * scale
+						+ ( drawCellLabel ? LABEL_BORDER : 0. ) + STROKE_BORDER;
+				final ConvexPolytope cropPolytopeGlobal = getOverlappingPolytopeGlobal(
+						x - border, x + w + border,
+						y - border, y + h + border,
+						transform, currentTimepoint );
 				final ClipConvexPolytope< V > ccp = index.getSpatialIndex( currentTimepoint ).getClipConvexPolytope();
 				ccp.clip( cropPolytopeGlobal );
 
+				// Simplify the contours within about one screen pixel.
+				final double tolerance = 1. / scale;
 				final Path2D.Double path = new Path2D.Double();
-				final DoubleArray arr = new DoubleArray();
-				final DoubleArray tmp = new DoubleArray();
+				final DoubleSlice slice = new DoubleSlice();
 				final double[] pos = new double[ 3 ];
 				final double[] vPos = new double[ 3 ];
+				final DensityTiles densityTiles = new DensityTiles();
+				final PathBatch batch = new PathBatch( defaultVertexStroke );
+				final PathBatch selectedBatch = new PathBatch( defaultVertexStroke );
+				final PathBatch highlightedBatch = new PathBatch( highlightedEdgeStroke );
+				final PathBatch focusedBatch = new PathBatch( focusedEdgeStroke );
+				final Labels labels = new Labels();
 
 				for ( final V vertex : ccp.getInsideValues() )
 				{
+					visitedCount++;
 					if ( !visibility.isVisible( vertex ) )
 						continue;
 
 					final int color = coloring.color( vertex );
+					final boolean isSelected = selection.isSelected( vertex );
 					final boolean isHighlighted = vertex.equals( highlighted );
 					final boolean isFocused = vertex.equals( focused );
 
-					graphics.setColor( getColor(
+					final int vertexColor = getColor(
 							0,
 							timepointDistanceFade,
-							selection.isSelected( vertex ),
+							isSelected,
 							isHighlighted,
 							colorSpot,
 							colorPast,
 							colorFuture,
-							color ) );
+							color ).getRGB();
+
+					// Selected, highlighted and focused cells are painted on top.
+					final PathBatch cellBatch = isFocused
+							? focusedBatch
+							: isHighlighted
+									? highlightedBatch
+									: isSelected ? selectedBatch : batch;
 
 					if ( drawCellContour )
 					{
-						toPath( vertex,
+						final double size = toPath( vertex,
 								transform,
+								tolerance,
 								path,
-								arr,
-								tmp,
+								slice,
 								pos,
 								vPos );
 
-						if ( isFocused )
-							graphics.setStroke( focusedEdgeStroke );
-						else if ( isHighlighted )
-							graphics.setStroke( highlightedEdgeStroke );
+						// Level of detail: collect the cells too small to be seen.
+						if ( size < MIN_CONTOUR_SIZE && !isSelected && !isHighlighted && !isFocused )
+						{
+							vertex.localize( pos );
+							transform.apply( pos, vPos );
+							densityTiles.add( vPos[ 0 ], vPos[ 1 ], vertexColor );
+							continue;
+						}
 
+						drawnCount++;
 						if ( drawCellFilled )
 						{
-							graphics.fill( path );
-							graphics.setColor( Color.BLACK );
+							cellBatch.fill( vertexColor, path );
+							cellBatch.draw( BLACK, path );
+						}
+						else
+						{
+							cellBatch.draw( vertexColor, path );
 						}
-						graphics.draw( path );
 						if ( drawCellLabel )
 						{
 							vertex.localize( pos );
 							transform.apply( pos, vPos );
-							final String str = vertex.getLabel();
-							drawLabel( graphics, vPos[ 0 ], vPos[ 1 ], true, str );
+							labels.add( vPos[ 0 ], vPos[ 1 ], vertex.getLabel(), drawCellFilled ? BLACK : vertexColor );
 						}
-
-						if ( isHighlighted || isFocused )
-							graphics.setStroke( defaultVertexStroke );
 					}
 					else
 					{
 						// Draw cell center.
+						drawnCount++;
 						vertex.localize( pos );
 						transform.apply( pos, vPos );
 
-						final double x = vPos[ 0 ];
-						final double y = vPos[ 1 ];
+						final double xv = vPos[ 0 ];
+						final double yv = vPos[ 1 ];
 						double radius = pointRadius;
 						if ( isHighlighted || isFocused )
 							radius *= 2;
-						final int ox = ( int ) ( x - radius );
-						final int oy = ( int ) ( y - radius );
+						final int ox = ( int ) ( xv - radius );
+						final int oy = ( int ) ( yv - radius );
 						final int ow = ( int ) ( 2 * radius );
 						if ( isFocused )
-							graphics.fillRect( ox, oy, ow, ow );
+							cellBatch.fill( vertexColor, new Rectangle2D.Double( ox, oy, ow, ow ) );
 						else
-							graphics.fillOval( ox, oy, ow, ow );
+							cellBatch.fill( vertexColor, new Ellipse2D.Double( ox, oy, ow, ow ) );
 
 						if ( drawCellLabel )
-						{
-							final String str = vertex.getLabel();
-							drawLabel( graphics, x + radius + 1, y, false, str );
-						}
-
+							labels.add( xv + radius + 1, yv, vertex.getLabel(), vertexColor );
 					}
 				}
+				densityTiles.paint( graphics, x + w, y + h );
+				batch.paint( graphics );
+				selectedBatch.paint( graphics );
+				highlightedBatch.paint( graphics );
+				focusedBatch.paint( graphics );
+				graphics.setStroke( defaultVertexStroke );
+				labels.paint( graphics, drawCellContour );
 			}
 		}
 		finally
@@ -604,10 +824,48 @@ public class CellOverlayGraphRenderer< V extends CellOverlayVertex< V, E >, E ex
 		graph.releaseRef( ref1 );
 		graph.releaseRef( ref2 );
 		graph.releaseRef( ref3 );
+
+		final OverlayMetrics m = metrics;
+		if ( m != null )
+			m.addPaint( System.nanoTime() - start, locked - start, visitedCount, drawnCount );
 	}
 
 	private static final Font font = new Font( "SansSerif", Font.PLAIN, 9 );
 
+	private static final int BLACK = Color.BLACK.getRGB();
+
+	/**
+	 * Labels collected while batching the cells, and drawn over them.
+	 */
+	private static final class Labels
+	{
+
+		private final TDoubleArrayList xs = new TDoubleArrayList();
+
+		private final TDoubleArrayList ys = new TDoubleArrayList();
+
+		private final List< String > strings = new ArrayList<>();
+
+		private final TIntArrayList colors = new TIntArrayList();
+
+		void add( final double x, final double y, final String label, final int argb )
+		{
+			xs.add( x );
+			ys.add( y );
+			strings.add( label );
+			colors.add( argb );
+		}
+
+		void paint( final Graphics2D graphics, final boolean center )
+		{
+			for ( int i = 0; i < strings.size(); i++ )
+			{
+				graphics.setColor( new Color( colors.getQuick( i ), true ) );
+				drawLabel( graphics, xs.getQuick( i ), ys.getQuick( i ), center, strings.get( i ) );
+			}
+		}
+	}
+
 	private static final void drawLabel( final Graphics2D graphics, final double x, final double y, final boolean center, final String label )
 	{
 		final FontRenderContext frc = graphics.getFontRenderContext();
@@ -618,40 +876,77 @@ public class CellOverlayGraphRenderer< V extends CellOverlayVertex< V, E >, E ex
 		layout.draw( graphics, tx, ty );
 	}
 
-	private void toPath(
+	/**
+	 * Writes the contour of a vertex, in screen coordinates, in the specified
+	 * path.
+	 *
+	 * @return the largest extent of the contour on the screen, in pixels.
+	 */
+	private double toPath(
 			final V vertex,
 			final AffineTransform3D transform,
+			final double tolerance,
 			final java.awt.geom.Path2D.Double path,
-			final DoubleArray arr,
-			final DoubleArray tmp,
+			final DoubleSlice slice,
 			final double[] pos,
 			final double[] vPos )
 	{
-		arr.clear();
-		tmp.clear();
-		final double[] boundary = vertex.getBoundary();
-		final double xc = vertex.getDoublePosition( 0 );
-		final double yc = vertex.getDoublePosition( 1 );
-
-		for ( int i = 0; i < boundary.length; i = i + 2 )
-		{
-			pos[ 0 ] = xc + boundary[ i ];
-			pos[ 1 ] = yc + boundary[ i + 1 ];
-			transform.apply( pos, vPos );
-			tmp.addValue( vPos[ 0 ] );
-			tmp.addValue( vPos[ 1 ] );
-		}
-		DouglasPeucker.douglasPeucker( tmp, arr, 1. );
+		path.reset();
+		final DoubleSlice contour = vertex.getContour( tolerance, slice );
+		if ( contour == null || contour.size() < 2 )
+			return 0.;
+
+		return toPath( contour,
+				vertex.getDoublePosition( 0 ),
+				vertex.getDoublePosition( 1 ),
+				transform,
+				path,
+				pos,
+				vPos );
+	}
 
+	/**
+	 * Writes a contour, in screen coordinates, in the specified path.
+	 *
+	 * @param contour
+	 *            the contour, as interleaved <code>x, y</code> coordinates
+	 *            relative to the specified origin.
+	 * @param xc
+	 *            the X coordinate of the origin, in global coordinates.
+	 * @param yc
+	 *            the Y coordinate of the origin, in global coordinates.
+	 * @return the largest extent of the contour on the screen, in pixels.
+	 */
+	private static double toPath(
+			final DoubleSlice contour,
+			final double xc,
+			final double yc,
+			final AffineTransform3D transform,
+			final java.awt.geom.Path2D.Double path,
+			final double[] pos,
+			final double[] vPos )
+	{
 		path.reset();
-		path.moveTo( arr.getValue( 0 ), arr.getValue( 1 ) );
-		for ( int i = 2; i < arr.size(); i = i + 2 )
+		double xmin = Double.POSITIVE_INFINITY;
+		double ymin = Double.POSITIVE_INFINITY;
+		double xmax = Double.NEGATIVE_INFINITY;
+		double ymax = Double.NEGATIVE_INFINITY;
+		for ( int i = 0; i < contour.size() - 1; i = i + 2 )
 		{
-			final double x = arr.getValue( i );
-			final double y = arr.getValue( i + 1 );
-			path.lineTo( x, y );
+			pos[ 0 ] = xc + contour.get( i );
+			pos[ 1 ] = yc + contour.get( i + 1 );
+			transform.apply( pos, vPos );
+			if ( i == 0 )
+				path.moveTo( vPos[ 0 ], vPos[ 1 ] );
+			else
+				path.lineTo( vPos[ 0 ], vPos[ 1 ] );
+			xmin = Math.min( xmin, vPos[ 0 ] );
+			ymin = Math.min( ymin, vPos[ 1 ] );
+			xmax = Math.max( xmax, vPos[ 0 ] );
+			ymax = Math.max( ymax, vPos[ 1 ] );
 		}
 		path.closePath();
+		return Math.max( xmax - xmin, ymax - ymin );
 	}
 
 	/**
@@ -806,8 +1101,8 @@ public class CellOverlayGraphRenderer< V extends CellOverlayVertex< V, E >, E ex
 	 * @param ref
 	 *            a vertex reference, that might be used to return the vertex
 	 *            found.
-	 * @return the closest vertex within tolerance, or <code>null</code> if it
-	 *         could not be found.
+	 * @return the cell whose polygon contains the location, or
+	 *         <code>null</code> if it could not be found.
 	 */
 	@Override
 	public V getVertexAt( final int x, final int y, final double tolerance, final V ref )
@@ -821,31 +1116,7 @@ public class CellOverlayGraphRenderer< V extends CellOverlayVertex< V, E >, E ex
 		final double[] lPos = new double[] { x, y, 0 };
 		final double[] gPos = new double[ 3 ];
 		transform.applyInverse( gPos, lPos );
-		// Copy to 2-element array not to break the search.
-		final double[] gPos2 = new double[ 2 ];
-		for ( int d = 0; d < gPos2.length; d++ )
-			gPos2[ d ] = gPos[ d ];
-
-		boolean found = false;
-		index.readLock().lock();
-		final NearestNeighborSearch< V > nns = index.getSpatialIndex( currentTimepoint ).getNearestNeighborSearch();
-		nns.search( RealPoint.wrap( gPos2 ) );
-		final V vertex = nns.getSampler().get();
-		if ( vertex != null )
-		{
-			final Path2D.Double path = new Path2D.Double();
-			final DoubleArray arr = new DoubleArray();
-			final DoubleArray tmp = new DoubleArray();
-			toPath( vertex, transform, path, arr, tmp, lPos, gPos );
-			if ( path.contains( x, y ) )
-			{
-				found = true;
-				ref.refTo( vertex );
-			}
-		}
-
-		index.readLock().unlock();
-		return found ? ref : null;
+		return graph.getCellAt( gPos[ 0 ], gPos[ 1 ], currentTimepoint, ref );
 	}
 
 	/**
@@ -887,6 +1158,8 @@ public class CellOverlayGraphRenderer< V extends CellOverlayVertex< V, E >, E ex
 	@Override
 	public VisibilityMode nextVisibilityMode()
 	{
-		return visibilities.nextMode();
+		final VisibilityMode mode = visibilities.nextMode();
+		invalidate();
+		return mode;
 	}
 }
@@ -29,6 +29,7 @@
 package org.mastodon.leviathan.views.bdv.overlay.cell;
 
 import org.mastodon.Ref;
+import org.mastodon.leviathan.model.DoubleSlice;
 import org.mastodon.model.HasLabel;
 import org.mastodon.spatial.HasTimepoint;
 import org.mastodon.views.bdv.overlay.OverlayVertex;
@@ -46,4 +47,32 @@ public interface CellOverlayVertex< O extends CellOverlayVertex< O, E >, E exten
 
 	public double[] getBoundary();
 
+	/**
+	 * Points the specified slice to the boundary of this vertex, without
+	 * copying it.
+	 *
+	 * @param slice
+	 *            the slice to use.
+	 * @return the specified slice, or <code>null</code> if the boundary is not
+	 *         set.
+	 */
+	public DoubleSlice getBoundary( DoubleSlice slice );
+
+	/**
+	 * Points the specified slice to the contour of this vertex, simplified
+	 * with the specified tolerance. Like the boundary, the contour is relative
+	 * to the vertex position.
+	 * The slice stays readable until the next contour is requested from the
+	 * same thread.
+	 *
+	 * @param tolerance
+	 *            the maximal distance between the contour and the boundary,
+	 *            in global units.
+	 * @param slice
+	 *            the slice to use.
+	 * @return the specified slice, or <code>null</code> if the boundary is not
+	 *         set.
+	 */
+	public DoubleSlice getContour( double tolerance, DoubleSlice slice );
+
 }
@@ -53,6 +53,8 @@ public class CellRenderSettings implements Style< CellRenderSettings >
 	public static final boolean DEFAULT_DRAW_CELL_FILLED = false;
 	public static final boolean DEFAULT_DRAW_CELL_CENTER = false;
 	public static final boolean DEFAULT_DRAW_CELL_LABELS = false;
+	public static final boolean DEFAULT_DRAW_GHOST_CONTOURS = false;
+	public static final int DEFAULT_GHOST_TIME_RANGE = 3;
 	public static final int DEFAULT_COLOR_CELL_AND_PRESENT = Color.GREEN.getRGB();
 	public static final int DEFAULT_COLOR_PAST = Color.RED.getRGB();
 	public static final int DEFAULT_COLOR_FUTURE = Color.BLUE.getRGB();
@@ -106,6 +108,8 @@ public class CellRenderSettings implements Style< CellRenderSettings >
 		drawCellFilled = settings.drawCellFilled;
 		drawCellCenter = settings.drawCellCenter;
 		drawCellLabel = settings.drawCellLabel;
+		drawGhostContours = settings.drawGhostContours;
+		ghostTimeRange = settings.ghostTimeRange;
 		cellColor = settings.cellColor;
 		colorPast = settings.colorPast;
 		colorFuture = settings.colorFuture;
@@ -190,6 +194,18 @@ public class CellRenderSettings implements Style< CellRenderSettings >
 	 */
 	private boolean drawCellLabel;
 
+	/**
+	 * Whether to draw the contours of the cells of the time-points around the
+	 * current one.
+	 */
+	private boolean drawGhostContours;
+
+	/**
+	 * Number of time-points into the past and into the future for which cell
+	 * contours are drawn as ghosts.
+	 */
+	private int ghostTimeRange;
+
 	/**
 	 * The color used to paint cells and links in the current time-point.
 	 */
@@ -518,6 +534,61 @@ public class CellRenderSettings implements Style< CellRenderSettings >
 		}
 	}
 
+	/**
+	 * Gets whether the contours of the cells of the time-points around the
+	 * current one are drawn, with colors fading with the time distance. For
+	 * the number of time-points, see {@link #getGhostTimeRange()}.
+	 *
+	 * @return whether ghost contours are drawn.
+	 */
+	public boolean getDrawGhostContours()
+	{
+		return drawGhostContours;
+	}
+
+	/**
+	 * Sets whether the contours of the cells of the time-points around the
+	 * current one are drawn, with colors fading with the time distance.
+	 *
+	 * @param drawGhostContours
+	 *            whether to draw ghost contours.
+	 */
+	public synchronized void setDrawGhostContours( final boolean drawGhostContours )
+	{
+		if ( this.drawGhostContours != drawGhostContours )
+		{
+			this.drawGhostContours = drawGhostContours;
+			notifyListeners();
+		}
+	}
+
+	/**
+	 * Gets the number of time-points into the past and into the future for
+	 * which cell contours are drawn as ghosts.
+	 *
+	 * @return the number of time-points on each side of the current one.
+	 */
+	public int getGhostTimeRange()
+	{
+		return ghostTimeRange;
+	}
+
+	/**
+	 * Sets the number of time-points into the past and into the future for
+	 * which cell contours are drawn as ghosts.
+	 *
+	 * @param ghostTimeRange
+	 *            the number of time-points on each side of the current one.
+	 */
+	public synchronized void setGhostTimeRange( final int ghostTimeRange )
+	{
+		if ( this.ghostTimeRange != ghostTimeRange )
+		{
+			this.ghostTimeRange = ghostTimeRange;
+			notifyListeners();
+		}
+	}
+
 	/**
 	 * Returns the color used to paint cells and links in the current
 	 * time-point.
@@ -615,6 +686,8 @@ public class CellRenderSettings implements Style< CellRenderSettings >
 		df.drawCellFilled = DEFAULT_DRAW_CELL_FILLED;
 		df.drawCellCenter = DEFAULT_DRAW_CELL_CENTER;
 		df.drawCellLabel = DEFAULT_DRAW_CELL_LABELS;
+		df.drawGhostContours = DEFAULT_DRAW_GHOST_CONTOURS;
+		df.ghostTimeRange = DEFAULT_GHOST_TIME_RANGE;
 		df.cellColor = DEFAULT_COLOR_CELL_AND_PRESENT;
 		df.colorPast = DEFAULT_COLOR_PAST;
 		df.colorFuture = DEFAULT_COLOR_FUTURE;
@@ -195,7 +195,12 @@ public class CellRenderSettingsPanel extends JPanel
 				booleanElement( "draw cell contour", style::getDrawCellContour, style::setDrawCellContour ),
 				booleanElement( "draw cell filled", style::getDrawCellFilled, style::setDrawCellFilled ),
 				booleanElement( "draw cell centers", style::getDrawCellCenter, style::setDrawCellCenter ),
-				booleanElement( "draw cell labels", style::getDrawCellLabel, style::setDrawCellLabel ) 
+				booleanElement( "draw cell labels", style::getDrawCellLabel, style::setDrawCellLabel ),
+
+				separator(),
+
+				booleanElement( "draw ghost contours", style::getDrawGhostContours, style::setDrawGhostContours ),
+				intElement( "time range for ghost contours", 1, 20, style::getGhostTimeRange, style::setGhostTimeRange )
 		);
 	}
 }
@@ -28,8 +28,8 @@
  */
 package org.mastodon.leviathan.views.bdv.overlay.cell.wrap;
 
+import java.util.ArrayDeque;
 import java.util.Iterator;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.mastodon.RefPool;
@@ -57,9 +57,19 @@ public class CellOverlayGraphWrapper< V extends Vertex< E >, E extends Edge< V >
 
 	private final ReentrantReadWriteLock lock;
 
-	private final ConcurrentLinkedQueue< CellOverlayVertexWrapper< V, E > > tmpVertexRefs;
+	/**
+	 * Maximal number of refs kept for reuse, per thread.
+	 */
+	private static final int MAX_TMP_REFS = 256;
+
+	/*
+	 * Refs released, kept per thread so that obtaining and releasing a ref
+	 * neither contends with the other painting threads nor allocates.
+	 */
 
-	private final ConcurrentLinkedQueue< CellOverlayEdgeWrapper< V, E > > tmpEdgeRefs;
+	private final ThreadLocal< ArrayDeque< CellOverlayVertexWrapper< V, E > > > tmpVertexRefs = ThreadLocal.withInitial( ArrayDeque::new );
+
+	private final ThreadLocal< ArrayDeque< CellOverlayEdgeWrapper< V, E > > > tmpEdgeRefs = ThreadLocal.withInitial( ArrayDeque::new );
 
 	private final SpatioTemporalIndex< CellOverlayVertexWrapper< V, E > > wrappedIndex;
 
@@ -78,8 +88,6 @@ public class CellOverlayGraphWrapper< V extends Vertex< E >, E extends Edge< V >
 		this.idmap = idmap;
 		this.lock = lock;
 		this.overlayProperties = overlayProperties;
-		tmpVertexRefs =	new ConcurrentLinkedQueue<>();
-		tmpEdgeRefs = new ConcurrentLinkedQueue<>();
 		wrappedIndex = new SpatioTemporalIndexWrapper<>( this, graphIndex );
 		vertexMap = new CellOverlayVertexWrapperBimap<>( this );
 		edgeMap = new CellOverlayEdgeWrapperBimap<>( this );
@@ -88,27 +96,31 @@ public class CellOverlayGraphWrapper< V extends Vertex< E >, E extends Edge< V >
 	@Override
 	public CellOverlayVertexWrapper< V, E > vertexRef()
 	{
-		final CellOverlayVertexWrapper< V, E > ref = tmpVertexRefs.poll();
+		final CellOverlayVertexWrapper< V, E > ref = tmpVertexRefs.get().poll();
 		return ref == null ? new CellOverlayVertexWrapper<>( this ) : ref;
 	}
 
 	@Override
 	public CellOverlayEdgeWrapper< V, E > edgeRef()
 	{
-		final CellOverlayEdgeWrapper< V, E > ref = tmpEdgeRefs.poll();
+		final CellOverlayEdgeWrapper< V, E > ref = tmpEdgeRefs.get().poll();
 		return ref == null ? new CellOverlayEdgeWrapper<>( this ) : ref;
 	}
 
 	@Override
 	public void releaseRef( final CellOverlayVertexWrapper< V, E > ref )
 	{
-		tmpVertexRefs.add( ref );
+		final ArrayDeque< CellOverlayVertexWrapper< V, E > > refs = tmpVertexRefs.get();
+		if ( refs.size() < MAX_TMP_REFS )
+			refs.push( ref );
 	}
 
 	@Override
 	public void releaseRef( final CellOverlayEdgeWrapper< V, E > ref )
 	{
-		tmpEdgeRefs.add( ref );
+		final ArrayDeque< CellOverlayEdgeWrapper< V, E > > refs = tmpEdgeRefs.get();
+		if ( refs.size() < MAX_TMP_REFS )
+			refs.push( ref );
 	}
 
 	@Override
@@ -156,6 +168,19 @@ public class CellOverlayGraphWrapper< V extends Vertex< E >, E extends Edge< V >
 		return wrappedIndex;
 	}
 
+	@Override
+	public CellOverlayVertexWrapper< V, E > getCellAt( final double x, final double y, final int timepoint, final CellOverlayVertexWrapper< V, E > ref )
+	{
+		ref.wv = overlayProperties.getCellAt( x, y, timepoint, ref.ref );
+		return ref.orNull();
+	}
+
+	@Override
+	public double getMaxCellExtent( final int timepoint )
+	{
+		return overlayProperties.getMaxCellExtent( timepoint );
+	}
+
 	@Override
 	public CellOverlayVertexWrapper< V, E > addVertex()
 	{
@@ -28,6 +28,8 @@
  */
 package org.mastodon.leviathan.views.bdv.overlay.cell.wrap;
 
+import org.mastodon.leviathan.model.DoubleSlice;
+
 public interface CellOverlayProperties< V, E >
 {
 	public void localize( V v, final double[] position );
@@ -42,6 +44,14 @@ public interface CellOverlayProperties< V, E >
 
 	public double[] getBoundary( V v );
 
+	public DoubleSlice getBoundary( V v, DoubleSlice slice );
+
+	public DoubleSlice getContour( V v, double tolerance, DoubleSlice slice );
+
+	public V getCellAt( double x, double y, int timepoint, V ref );
+
+	public double getMaxCellExtent( int timepoint );
+
 	public int[] getMembranes( V v );
 
 	public V addVertex( V ref );
@@ -33,6 +33,7 @@ import java.util.Iterator;
 import org.mastodon.graph.Edge;
 import org.mastodon.graph.Edges;
 import org.mastodon.graph.Vertex;
+import org.mastodon.leviathan.model.DoubleSlice;
 import org.mastodon.leviathan.views.bdv.overlay.cell.CellOverlayVertex;
 
 import net.imglib2.Localizable;
@@ -394,6 +395,18 @@ public class CellOverlayVertexWrapper< V extends Vertex< E >, E extends Edge< V
 		return overlayProperties.getBoundary( wv );
 	}
 
+	@Override
+	public DoubleSlice getBoundary( final DoubleSlice slice )
+	{
+		return overlayProperties.getBoundary( wv, slice );
+	}
+
+	@Override
+	public DoubleSlice getContour( final double tolerance, final DoubleSlice slice )
+	{
+		return overlayProperties.getContour( wv, tolerance, slice );
+	}
+
 	@Override
 	public String getLabel()
 	{
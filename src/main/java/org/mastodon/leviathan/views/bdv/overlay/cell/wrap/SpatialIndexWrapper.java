@@ -41,12 +41,31 @@ import net.imglib2.Sampler;
 import net.imglib2.algorithm.kdtree.ConvexPolytope;
 import net.imglib2.neighborsearch.NearestNeighborSearch;
 
+/**
+ * Wraps the spatial index of a model graph as a spatial index of overlay
+ * vertices.
+ * <p>
+ * The search objects returned by {@link #getNearestNeighborSearch()},
+ * {@link #getIncrementalNearestNeighborSearch()} and
+ * {@link #getClipConvexPolytope()} are reused per thread: each call wraps a
+ * new search of the model index in the instance of the calling thread,
+ * together with its vertex ref and iterators, so that repainting and
+ * hit-testing do not create wrapper objects. A search must therefore not be
+ * used after the next call to the same method from the same thread. Use
+ * {@code copy()} to get an independent search.
+ */
 public class SpatialIndexWrapper< V extends Vertex< E >, E extends Edge< V > >
 		implements SpatialIndex< CellOverlayVertexWrapper< V, E > >
 {
 	private final CellOverlayGraphWrapper< V, E > graphWrapper;
 
-	private final SpatialIndex< V > wrappedIndex;
+	final SpatialIndex< V > wrappedIndex;
+
+	private final ThreadLocal< NNS > nns = new ThreadLocal<>();
+
+	private final ThreadLocal< INNS > inns = new ThreadLocal<>();
+
+	private final ThreadLocal< CCP > ccp = new ThreadLocal<>();
 
 	public SpatialIndexWrapper( final CellOverlayGraphWrapper< V, E > graphWrapper, final SpatialIndex< V > index )
 	{
@@ -63,19 +82,49 @@ public class SpatialIndexWrapper< V extends Vertex< E >, E extends Edge< V > >
 	@Override
 	public NearestNeighborSearch< CellOverlayVertexWrapper< V, E > > getNearestNeighborSearch()
 	{
-		return new NNS();
+		NNS search = nns.get();
+		if ( search == null )
+		{
+			search = new NNS();
+			nns.set( search );
+		}
+		else
+		{
+			search.wrap( wrappedIndex.getNearestNeighborSearch() );
+		}
+		return search;
 	}
 
 	@Override
 	public IncrementalNearestNeighborSearch< CellOverlayVertexWrapper< V, E > > getIncrementalNearestNeighborSearch()
 	{
-		return new INNS();
+		INNS search = inns.get();
+		if ( search == null )
+		{
+			search = new INNS();
+			inns.set( search );
+		}
+		else
+		{
+			search.wrap( wrappedIndex.getIncrementalNearestNeighborSearch() );
+		}
+		return search;
 	}
 
 	@Override
 	public ClipConvexPolytope< CellOverlayVertexWrapper< V, E > > getClipConvexPolytope()
 	{
-		return new CCP();
+		CCP search = ccp.get();
+		if ( search == null )
+		{
+			search = new CCP();
+			ccp.set( search );
+		}
+		else
+		{
+			search.wrap( wrappedIndex.getClipConvexPolytope() );
+		}
+		return search;
 	}
 
 	@Override
@@ -92,7 +141,7 @@ public class SpatialIndexWrapper< V extends Vertex< E >, E extends Edge< V > >
 
 	class NNS implements NearestNeighborSearch< CellOverlayVertexWrapper< V, E > >, Sampler< CellOverlayVertexWrapper< V, E > >
 	{
-		private final NearestNeighborSearch< V > wrappedNNS;
+		private NearestNeighborSearch< V > wrappedNNS;
 
 		private final CellOverlayVertexWrapper< V, E > v;
 
@@ -102,6 +151,11 @@ public class SpatialIndexWrapper< V extends Vertex< E >, E extends Edge< V > >
 			this.v = graphWrapper.vertexRef();
 		}
 
+		void wrap( final NearestNeighborSearch< V > search )
+		{
+			wrappedNNS = search;
+		}
+
 		@Override
 		public CellOverlayVertexWrapper< V, E > get()
 		{
@@ -165,7 +219,7 @@ public class SpatialIndexWrapper< V extends Vertex< E >, E extends Edge< V > >
 
 	class INNS implements IncrementalNearestNeighborSearch< CellOverlayVertexWrapper< V, E > >
 	{
-		private final IncrementalNearestNeighborSearch< V > wrappedINNS;
+		private IncrementalNearestNeighborSearch< V > wrappedINNS;
 
 		private final CellOverlayVertexWrapper< V, E > v;
 
@@ -175,6 +229,11 @@ public class SpatialIndexWrapper< V extends Vertex< E >, E extends Edge< V > >
 			this.v = graphWrapper.vertexRef();
 		}
 
+		void wrap( final IncrementalNearestNeighborSearch< V > search )
+		{
+			wrappedINNS = search;
+		}
+
 		@Override
 		public void localize( final float[] position )
 		{
@@ -287,13 +346,22 @@ public class SpatialIndexWrapper< V extends Vertex< E >, E extends Edge< V > >
 
 	class CCP implements ClipConvexPolytope< CellOverlayVertexWrapper< V, E > >
 	{
-		private final ClipConvexPolytope< V > wrappedCCP;
+		private ClipConvexPolytope< V > wrappedCCP;
+
+		private final Values insideValues = new Values( true );
+
+		private final Values outsideValues = new Values( false );
 
 		public CCP()
 		{
 			this.wrappedCCP = wrappedIndex.getClipConvexPolytope();
 		}
 
+		void wrap( final ClipConvexPolytope< V > clip )
+		{
+			wrappedCCP = clip;
+		}
+
 		@Override
 		public int numDimensions()
 		{
@@ -315,29 +383,42 @@ public class SpatialIndexWrapper< V extends Vertex< E >, E extends Edge< V > >
 		@Override
 		public Iterable< CellOverlayVertexWrapper< V, E > > getInsideValues()
 		{
-			final Iterable< V > iterable = wrappedCCP.getInsideValues();
-			return new Iterable< CellOverlayVertexWrapper< V, E > >()
-			{
-				@Override
-				public Iterator< CellOverlayVertexWrapper< V, E > > iterator()
-				{
-					return new OverlayVertexIteratorWrapper<>( graphWrapper, graphWrapper.vertexRef(), iterable.iterator() );
-				}
-			};
+			return insideValues;
 		}
 
 		@Override
 		public Iterable< CellOverlayVertexWrapper< V, E > > getOutsideValues()
 		{
-			final Iterable< V > iterable = wrappedCCP.getOutsideValues();
-			return new Iterable< CellOverlayVertexWrapper< V, E > >()
+			return outsideValues;
+		}
+
+		/**
+		 * The values inside or outside the polytope. The iterator and its
+		 * vertex ref are reused by each call to {@link #iterator()}.
+		 */
+		private class Values implements Iterable< CellOverlayVertexWrapper< V, E > >
+		{
+			private final boolean inside;
+
+			private OverlayVertexIteratorWrapper< V, E > iterator = null;
+
+			Values( final boolean inside )
+			{
+				this.inside = inside;
+			}
+
+			@Override
+			public Iterator< CellOverlayVertexWrapper< V, E > > iterator()
 			{
-				@Override
-				public Iterator< CellOverlayVertexWrapper< V, E > > iterator()
-				{
-					return new OverlayVertexIteratorWrapper<>( graphWrapper, graphWrapper.vertexRef(), iterable.iterator() );
-				}
-			};
+				final Iterator< V > values = ( inside
+						? wrappedCCP.getInsideValues()
+						: wrappedCCP.getOutsideValues() ).iterator();
+				if ( iterator == null )
+					iterator = new OverlayVertexIteratorWrapper<>( graphWrapper, graphWrapper.vertexRef(), values );
+				else
+					iterator.wrap( values );
+				return iterator;
+			}
 		}
 	}
 }
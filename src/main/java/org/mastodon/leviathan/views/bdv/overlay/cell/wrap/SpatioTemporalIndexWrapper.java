@@ -36,6 +36,8 @@ import org.mastodon.graph.Vertex;
 import org.mastodon.spatial.SpatialIndex;
 import org.mastodon.spatial.SpatioTemporalIndex;
 
+import gnu.trove.map.hash.TIntObjectHashMap;
+
 public class SpatioTemporalIndexWrapper< V extends Vertex< E >, E extends Edge< V > >
 		implements SpatioTemporalIndex< CellOverlayVertexWrapper< V, E > >
 {
@@ -43,6 +45,12 @@ public class SpatioTemporalIndexWrapper< V extends Vertex< E >, E extends Edge<
 
 	private final SpatioTemporalIndex< V > wrappedIndex;
 
+	/**
+	 * Wrappers of the spatial indices of single time-points, reused as long
+	 * as the model index returns the same spatial index. Guarded by itself.
+	 */
+	private final TIntObjectHashMap< SpatialIndexWrapper< V, E > > wrappers = new TIntObjectHashMap<>();
+
 	public SpatioTemporalIndexWrapper( final CellOverlayGraphWrapper< V, E > graphWrapper, final SpatioTemporalIndex< V > index )
 	{
 		this.graphWrapper = graphWrapper;
@@ -67,8 +75,17 @@ public class SpatioTemporalIndexWrapper< V extends Vertex< E >, E extends Edge<
 		final SpatialIndex< V > index = wrappedIndex.getSpatialIndex( timepoint );
 		if ( index == null )
 			return null;
-		else
-			return new SpatialIndexWrapper< >( graphWrapper, index );
+
+		synchronized ( wrappers )
+		{
+			SpatialIndexWrapper< V, E > wrapper = wrappers.get( timepoint );
+			if ( wrapper == null || wrapper.wrappedIndex != index )
+			{
+				wrapper = new SpatialIndexWrapper< >( graphWrapper, index );
+				wrappers.put( timepoint, wrapper );
+			}
+			return wrapper;
+		}
 	}
 
 	@Override
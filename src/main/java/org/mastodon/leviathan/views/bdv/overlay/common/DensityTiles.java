@@ -0,0 +1,183 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.views.bdv.overlay.common;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.util.Arrays;
+
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Collects objects too small to be drawn individually, and paints them
+ * either as dots or, when there are many of them, as screen tiles whose
+ * colour is the mean colour of the objects they contain and whose opacity
+ * grows with their number.
+ * <p>
+ * The number of draw calls of the tiled mode depends only on the size of the
+ * screen, so that the frame time stays roughly constant when zooming out on
+ * a large model.
+ */
+public class DensityTiles
+{
+
+	/**
+	 * Default size of the tiles, in screen pixels.
+	 */
+	public static final int DEFAULT_TILE_SIZE = 8;
+
+	/**
+	 * Default number of objects above which they are painted as tiles instead
+	 * of dots.
+	 */
+	public static final int DEFAULT_DOT_LIMIT = 2000;
+
+	private final int tileSize;
+
+	private final int dotLimit;
+
+	private final TDoubleArrayList xs = new TDoubleArrayList();
+
+	private final TDoubleArrayList ys = new TDoubleArrayList();
+
+	private final TIntArrayList colors = new TIntArrayList();
+
+	private int[] counts = new int[ 0 ];
+
+	private long[] sums = new long[ 0 ];
+
+	public DensityTiles()
+	{
+		this( DEFAULT_TILE_SIZE, DEFAULT_DOT_LIMIT );
+	}
+
+	public DensityTiles( final int tileSize, final int dotLimit )
+	{
+		this.tileSize = tileSize;
+		this.dotLimit = dotLimit;
+	}
+
+	/**
+	 * Removes all the objects collected.
+	 */
+	public void clear()
+	{
+		xs.resetQuick();
+		ys.resetQuick();
+		colors.resetQuick();
+	}
+
+	/**
+	 * Adds an object.
+	 *
+	 * @param x
+	 *            the X position of the object, in screen coordinates.
+	 * @param y
+	 *            the Y position of the object, in screen coordinates.
+	 * @param argb
+	 *            the colour of the object.
+	 */
+	public void add( final double x, final double y, final int argb )
+	{
+		xs.add( x );
+		ys.add( y );
+		colors.add( argb );
+	}
+
+	public int size()
+	{
+		return colors.size();
+	}
+
+	/**
+	 * Paints the objects collected.
+	 *
+	 * @param graphics
+	 *            the graphics to paint on.
+	 * @param width
+	 *            the width of the screen.
+	 * @param height
+	 *            the height of the screen.
+	 */
+	public void paint( final Graphics2D graphics, final int width, final int height )
+	{
+		final int n = size();
+		if ( n == 0 )
+			return;
+
+		if ( n <= dotLimit )
+		{
+			for ( int i = 0; i < n; i++ )
+			{
+				graphics.setColor( new Color( colors.getQuick( i ), true ) );
+				graphics.fillRect( ( int ) xs.getQuick( i ) - 1, ( int ) ys.getQuick( i ) - 1, 2, 2 );
+			}
+			return;
+		}
+
+		final int nx = Math.max( 1, ( width + tileSize - 1 ) / tileSize );
+		final int ny = Math.max( 1, ( height + tileSize - 1 ) / tileSize );
+		final int nTiles = nx * ny;
+		if ( counts.length < nTiles )
+		{
+			counts = new int[ nTiles ];
+			sums = new long[ 3 * nTiles ];
+		}
+		Arrays.fill( counts, 0, nTiles, 0 );
+		Arrays.fill( sums, 0, 3 * nTiles, 0 );
+
+		for ( int i = 0; i < n; i++ )
+		{
+			final int tx = ( int ) Math.floor( xs.getQuick( i ) / tileSize );
+			final int ty = ( int ) Math.floor( ys.getQuick( i ) / tileSize );
+			if ( tx < 0 || tx >= nx || ty < 0 || ty >= ny )
+				continue;
+			final int tile = ty * nx + tx;
+			final int argb = colors.getQuick( i );
+			counts[ tile ]++;
+			sums[ 3 * tile ] += ( argb >> 16 ) & 0xff;
+			sums[ 3 * tile + 1 ] += ( argb >> 8 ) & 0xff;
+			sums[ 3 * tile + 2 ] += argb & 0xff;
+		}
+
+		for ( int tile = 0; tile < nTiles; tile++ )
+		{
+			final int count = counts[ tile ];
+			if ( count == 0 )
+				continue;
+			final int r = ( int ) ( sums[ 3 * tile ] / count );
+			final int g = ( int ) ( sums[ 3 * tile + 1 ] / count );
+			final int b = ( int ) ( sums[ 3 * tile + 2 ] / count );
+			final int alpha = Math.min( 255, 64 + 32 * count );
+			graphics.setColor( new Color( r, g, b, alpha ) );
+			graphics.fillRect( ( tile % nx ) * tileSize, ( tile / nx ) * tileSize, tileSize, tileSize );
+		}
+	}
+}
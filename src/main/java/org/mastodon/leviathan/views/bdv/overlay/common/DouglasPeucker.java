@@ -2,6 +2,15 @@ package org.mastodon.leviathan.views.bdv.overlay.common;
 
 import org.scijava.util.DoubleArray;
 
+/**
+ * The original recursive Douglas-Peucker simplification, kept unchanged
+ * because the membrane curvature feature is computed on its output and saved
+ * in projects. It splits a polyline at the farthest point with an exclusive
+ * end, so it keeps the point before each split point as well, and it differs
+ * from the simplification of
+ * {@link org.mastodon.leviathan.algorithms.PolylineSimplifier} used by the
+ * contour caches.
+ */
 public class DouglasPeucker
 {
 
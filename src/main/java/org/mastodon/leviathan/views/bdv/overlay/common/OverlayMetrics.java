@@ -0,0 +1,349 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.views.bdv.overlay.common;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Collects the time spent painting an overlay and the number of objects
+ * visited and drawn, per frame, and keeps the statistics of the last frames.
+ * <p>
+ * Renderers call {@link #addPaint(long, long, int, int)} once per paint, from
+ * any thread. With a {@link TiledOverlayRenderer}, a frame is made of several
+ * paints, one per tile, and {@link #endFrame(long)} is called when its last
+ * tile completes. Without, each paint is a frame. Paints of frames that were
+ * cancelled are counted in the next complete frame.
+ * <p>
+ * The time spent simplifying contours is read from a cumulative counter, see
+ * {@code AbstractContourCache#getSimplificationTime()}, and attributed to the
+ * frame during which it increased.
+ * <p>
+ * Percentiles are computed over the last {@link #WINDOW} frames. They are
+ * displayed by the {@link OverlayMetricsHud}, so that render settings can be
+ * compared and regressions caught.
+ */
+public class OverlayMetrics
+{
+
+	/**
+	 * Number of frames over which the percentiles are computed.
+	 */
+	public static final int WINDOW = 256;
+
+	private final String name;
+
+	private final LongSupplier simplificationTime;
+
+	/*
+	 * Accumulated since the last frame, by the painting threads.
+	 */
+
+	private final LongAdder paints = new LongAdder();
+
+	private final LongAdder renderTime = new LongAdder();
+
+	private final LongAdder lockWait = new LongAdder();
+
+	private final LongAdder visited = new LongAdder();
+
+	private final LongAdder drawn = new LongAdder();
+
+	/*
+	 * Statistics of the last frames, guarded by this.
+	 */
+
+	private final long[] frameTimes = new long[ WINDOW ];
+
+	private final long[] renderTimes = new long[ WINDOW ];
+
+	private final long[] lockWaits = new long[ WINDOW ];
+
+	private final long[] simplificationTimes = new long[ WINDOW ];
+
+	private final long[] visitedCounts = new long[ WINDOW ];
+
+	private final long[] drawnCounts = new long[ WINDOW ];
+
+	private final long[] paintCounts = new long[ WINDOW ];
+
+	private long frameCount;
+
+	private long lastSimplificationTime;
+
+	/**
+	 * Creates metrics for an overlay.
+	 *
+	 * @param name
+	 *            the name of the overlay, displayed by the HUD.
+	 * @param simplificationTime
+	 *            supplies the cumulative time spent simplifying contours, in
+	 *            nanoseconds.
+	 */
+	public OverlayMetrics( final String name, final LongSupplier simplificationTime )
+	{
+		this.name = name;
+		this.simplificationTime = simplificationTime;
+		this.lastSimplificationTime = simplificationTime.getAsLong();
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Records one paint of the overlay, or of one of its tiles.
+	 *
+	 * @param renderNanos
+	 *            the time spent in the paint, locks included, in nanoseconds.
+	 * @param lockWaitNanos
+	 *            the time spent waiting for the read locks, in nanoseconds.
+	 * @param visitedCount
+	 *            the number of objects visited through the spatial index.
+	 * @param drawnCount
+	 *            the number of objects drawn individually, that is neither
+	 *            invisible nor aggregated in density tiles.
+	 */
+	public void addPaint( final long renderNanos, final long lockWaitNanos, final int visitedCount, final int drawnCount )
+	{
+		paints.increment();
+		renderTime.add( renderNanos );
+		lockWait.add( lockWaitNanos );
+		visited.add( visitedCount );
+		drawn.add( drawnCount );
+	}
+
+	/**
+	 * Ends a frame, made of the paints recorded since the previous frame. Does
+	 * nothing if no paint was recorded.
+	 *
+	 * @param frameNanos
+	 *            the wall-clock time taken by the frame, from its start to the
+	 *            end of its last paint, in nanoseconds.
+	 */
+	public synchronized void endFrame( final long frameNanos )
+	{
+		final long nPaints = paints.sumThenReset();
+		if ( nPaints == 0 )
+			return;
+
+		final long simplification = simplificationTime.getAsLong();
+		final int i = ( int ) ( frameCount % WINDOW );
+		frameTimes[ i ] = frameNanos;
+		renderTimes[ i ] = renderTime.sumThenReset();
+		lockWaits[ i ] = lockWait.sumThenReset();
+		visitedCounts[ i ] = visited.sumThenReset();
+		drawnCounts[ i ] = drawn.sumThenReset();
+		paintCounts[ i ] = nPaints;
+		simplificationTimes[ i ] = Math.max( 0, simplification - lastSimplificationTime );
+		lastSimplificationTime = simplification;
+		frameCount++;
+	}
+
+	/**
+	 * Discards the frames recorded so far.
+	 */
+	public synchronized void reset()
+	{
+		paints.reset();
+		renderTime.reset();
+		lockWait.reset();
+		visited.reset();
+		drawn.reset();
+		frameCount = 0;
+		lastSimplificationTime = simplificationTime.getAsLong();
+	}
+
+	/**
+	 * Returns the number of frames recorded since the last reset.
+	 *
+	 * @return the number of frames.
+	 */
+	public synchronized long getFrameCount()
+	{
+		return frameCount;
+	}
+
+	/**
+	 * Returns the wall-clock time of the last frame.
+	 *
+	 * @return the time in nanoseconds, or 0 if no frame was recorded.
+	 */
+	public synchronized long getLastFrameTime()
+	{
+		return last( frameTimes );
+	}
+
+	/**
+	 * Returns the time spent painting the last frame, summed over its paints.
+	 * With tiles painted concurrently, it can exceed the frame time.
+	 *
+	 * @return the time in nanoseconds, or 0 if no frame was recorded.
+	 */
+	public synchronized long getLastRenderTime()
+	{
+		return last( renderTimes );
+	}
+
+	public synchronized long getLastLockWait()
+	{
+		return last( lockWaits );
+	}
+
+	public synchronized long getLastSimplificationTime()
+	{
+		return last( simplificationTimes );
+	}
+
+	public synchronized long getLastVisitedCount()
+	{
+		return last( visitedCounts );
+	}
+
+	public synchronized long getLastDrawnCount()
+	{
+		return last( drawnCounts );
+	}
+
+	public synchronized long getLastPaintCount()
+	{
+		return last( paintCounts );
+	}
+
+	/**
+	 * Returns a percentile of the frame time over the last frames.
+	 *
+	 * @param p
+	 *            the percentile, between 0 and 100.
+	 * @return the time in nanoseconds, or 0 if no frame was recorded.
+	 */
+	public synchronized long getFrameTimePercentile( final double p )
+	{
+		return percentile( frameTimes, window( WINDOW ), p );
+	}
+
+	/**
+	 * Returns a percentile of the render time over the last frames.
+	 *
+	 * @param p
+	 *            the percentile, between 0 and 100.
+	 * @return the time in nanoseconds, or 0 if no frame was recorded.
+	 */
+	public synchronized long getRenderTimePercentile( final double p )
+	{
+		return percentile( renderTimes, window( WINDOW ), p );
+	}
+
+	/**
+	 * Returns a text report of the percentiles over the last frames.
+	 *
+	 * @param nFrames
+	 *            the maximal number of frames to report on.
+	 * @return the report.
+	 */
+	public synchronized String report( final int nFrames )
+	{
+		final int n = window( nFrames );
+		return String.format( Locale.US,
+				"%s, last %d frames: frame %s, render %s, lock wait %s, simplification %s (ms, p50/p90/p99); "
+						+ "visited %.0f, drawn %.0f, paints %.1f (mean per frame).",
+				name, n,
+				percentiles( frameTimes, n ),
+				percentiles( renderTimes, n ),
+				percentiles( lockWaits, n ),
+				percentiles( simplificationTimes, n ),
+				mean( visitedCounts, n ),
+				mean( drawnCounts, n ),
+				mean( paintCounts, n ) );
+	}
+
+	private int window( final int nFrames )
+	{
+		return ( int ) Math.min( Math.min( nFrames, WINDOW ), frameCount );
+	}
+
+	private long last( final long[] values )
+	{
+		return frameCount == 0 ? 0 : values[ ( int ) ( ( frameCount - 1 ) % WINDOW ) ];
+	}
+
+	/**
+	 * Copies the values of the last <code>n</code> frames.
+	 */
+	private long[] lastValues( final long[] values, final int n )
+	{
+		final long[] copy = new long[ n ];
+		for ( int k = 0; k < n; k++ )
+			copy[ k ] = values[ ( int ) ( ( frameCount - 1 - k ) % WINDOW ) ];
+		return copy;
+	}
+
+	private long percentile( final long[] values, final int n, final double p )
+	{
+		if ( n == 0 )
+			return 0;
+		final long[] sorted = lastValues( values, n );
+		Arrays.sort( sorted );
+		return sorted[ rank( n, p ) ];
+	}
+
+	private String percentiles( final long[] values, final int n )
+	{
+		if ( n == 0 )
+			return "-";
+		final long[] sorted = lastValues( values, n );
+		Arrays.sort( sorted );
+		return String.format( Locale.US, "%.2f/%.2f/%.2f",
+				sorted[ rank( n, 50 ) ] * 1e-6,
+				sorted[ rank( n, 90 ) ] * 1e-6,
+				sorted[ rank( n, 99 ) ] * 1e-6 );
+	}
+
+	private double mean( final long[] values, final int n )
+	{
+		if ( n == 0 )
+			return 0.;
+		double sum = 0.;
+		for ( final long value : lastValues( values, n ) )
+			sum += value;
+		return sum / n;
+	}
+
+	/**
+	 * Nearest-rank percentile.
+	 */
+	private static int rank( final int n, final double p )
+	{
+		final int rank = ( int ) Math.ceil( p / 100. * n ) - 1;
+		return Math.max( 0, Math.min( n - 1, rank ) );
+	}
+}
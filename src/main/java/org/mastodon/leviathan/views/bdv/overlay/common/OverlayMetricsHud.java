@@ -0,0 +1,110 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.views.bdv.overlay.common;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.util.Locale;
+
+import bdv.viewer.OverlayRenderer;
+
+/**
+ * Heads-up display of the {@link OverlayMetrics} of an overlay, in the top
+ * left corner of the viewer.
+ */
+public class OverlayMetricsHud implements OverlayRenderer
+{
+
+	private static final Font FONT = new Font( Font.MONOSPACED, Font.PLAIN, 12 );
+
+	private static final Color BACKGROUND = new Color( 0, 0, 0, 160 );
+
+	private static final int MARGIN = 8;
+
+	private final OverlayMetrics metrics;
+
+	public OverlayMetricsHud( final OverlayMetrics metrics )
+	{
+		this.metrics = metrics;
+	}
+
+	@Override
+	public void drawOverlays( final Graphics g )
+	{
+		final String[] lines = new String[] {
+				metrics.getName(),
+				String.format( Locale.US, "frame  %7.2f ms  p50 %7.2f  p95 %7.2f",
+						ms( metrics.getLastFrameTime() ),
+						ms( metrics.getFrameTimePercentile( 50 ) ),
+						ms( metrics.getFrameTimePercentile( 95 ) ) ),
+				String.format( Locale.US, "render %7.2f ms  p50 %7.2f  p95 %7.2f  paints %d",
+						ms( metrics.getLastRenderTime() ),
+						ms( metrics.getRenderTimePercentile( 50 ) ),
+						ms( metrics.getRenderTimePercentile( 95 ) ),
+						metrics.getLastPaintCount() ),
+				String.format( Locale.US, "visited %d  drawn %d",
+						metrics.getLastVisitedCount(),
+						metrics.getLastDrawnCount() ),
+				String.format( Locale.US, "lock wait %.2f ms  simplification %.2f ms",
+						ms( metrics.getLastLockWait() ),
+						ms( metrics.getLastSimplificationTime() ) ) };
+
+		final Graphics2D g2 = ( Graphics2D ) g.create();
+		try
+		{
+			g2.setFont( FONT );
+			final FontMetrics fm = g2.getFontMetrics();
+			int width = 0;
+			for ( final String line : lines )
+				width = Math.max( width, fm.stringWidth( line ) );
+			final int lineHeight = fm.getHeight();
+			g2.setColor( BACKGROUND );
+			g2.fillRect( MARGIN, MARGIN, width + 2 * MARGIN, lines.length * lineHeight + MARGIN );
+			g2.setColor( Color.WHITE );
+			for ( int i = 0; i < lines.length; i++ )
+				g2.drawString( lines[ i ], 2 * MARGIN, MARGIN + fm.getAscent() + MARGIN / 2 + i * lineHeight );
+		}
+		finally
+		{
+			g2.dispose();
+		}
+	}
+
+	@Override
+	public void setCanvasSize( final int width, final int height )
+	{}
+
+	private static double ms( final long nanos )
+	{
+		return nanos * 1e-6;
+	}
+}
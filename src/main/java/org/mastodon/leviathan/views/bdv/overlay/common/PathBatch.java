@@ -0,0 +1,172 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.views.bdv.overlay.common;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Shape;
+import java.awt.Stroke;
+import java.awt.geom.Path2D;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+/**
+ * Accumulates the shapes to fill and to draw with one stroke, grouped by
+ * colour, and paints each group with a single call.
+ * <p>
+ * Java2D spends most of its time changing the colour and the stroke and
+ * setting up each primitive, not rasterising it. Painting thousands of cell
+ * contours or membranes as a few large paths, one per colour, is much
+ * faster than painting them one by one. All the fills are painted before all
+ * the outlines, so the shapes of a batch should not overlap; objects that
+ * must stay on top, like the selected or highlighted ones, go in a batch
+ * painted afterwards.
+ * <p>
+ * A batch is not thread-safe. It is meant to be used for one paint call.
+ */
+public class PathBatch
+{
+
+	private final Stroke stroke;
+
+	private final TIntObjectHashMap< Path2D.Double > fills = new TIntObjectHashMap<>();
+
+	private final TIntObjectHashMap< Path2D.Double > draws = new TIntObjectHashMap<>();
+
+	/**
+	 * Colours in the order they were first used, so that the painting order
+	 * does not depend on hashing.
+	 */
+	private final TIntArrayList fillColors = new TIntArrayList();
+
+	private final TIntArrayList drawColors = new TIntArrayList();
+
+	/**
+	 * Creates a batch whose outlines are drawn with the specified stroke.
+	 *
+	 * @param stroke
+	 *            the stroke.
+	 */
+	public PathBatch( final Stroke stroke )
+	{
+		this.stroke = stroke;
+	}
+
+	/**
+	 * Adds a shape to fill.
+	 *
+	 * @param argb
+	 *            the colour to fill the shape with.
+	 * @param shape
+	 *            the shape, copied.
+	 */
+	public void fill( final int argb, final Shape shape )
+	{
+		path( fills, fillColors, argb ).append( shape, false );
+	}
+
+	/**
+	 * Adds a shape to draw.
+	 *
+	 * @param argb
+	 *            the colour to draw the outline of the shape with.
+	 * @param shape
+	 *            the shape, copied.
+	 */
+	public void draw( final int argb, final Shape shape )
+	{
+		path( draws, drawColors, argb ).append( shape, false );
+	}
+
+	/**
+	 * Returns the path of the outlines drawn with a colour, to append
+	 * polylines to it directly.
+	 *
+	 * @param argb
+	 *            the colour.
+	 * @return the path.
+	 */
+	public Path2D.Double drawPath( final int argb )
+	{
+		return path( draws, drawColors, argb );
+	}
+
+	public boolean isEmpty()
+	{
+		return fillColors.isEmpty() && drawColors.isEmpty();
+	}
+
+	/**
+	 * Paints the fills, then the outlines, and empties this batch.
+	 *
+	 * @param graphics
+	 *            the graphics to paint on. Its colour and stroke are changed.
+	 */
+	public void paint( final Graphics2D graphics )
+	{
+		for ( int i = 0; i < fillColors.size(); i++ )
+		{
+			final int argb = fillColors.getQuick( i );
+			graphics.setColor( new Color( argb, true ) );
+			graphics.fill( fills.get( argb ) );
+		}
+		if ( !drawColors.isEmpty() )
+		{
+			graphics.setStroke( stroke );
+			for ( int i = 0; i < drawColors.size(); i++ )
+			{
+				final int argb = drawColors.getQuick( i );
+				graphics.setColor( new Color( argb, true ) );
+				graphics.draw( draws.get( argb ) );
+			}
+		}
+		clear();
+	}
+
+	public void clear()
+	{
+		fills.clear();
+		draws.clear();
+		fillColors.resetQuick();
+		drawColors.resetQuick();
+	}
+
+	private static Path2D.Double path( final TIntObjectHashMap< Path2D.Double > paths, final TIntArrayList colors, final int argb )
+	{
+		Path2D.Double path = paths.get( argb );
+		if ( path == null )
+		{
+			path = new Path2D.Double();
+			paths.put( argb, path );
+			colors.add( argb );
+		}
+		return path;
+	}
+}
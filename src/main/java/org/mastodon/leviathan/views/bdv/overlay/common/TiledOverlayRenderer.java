@@ -0,0 +1,505 @@
+/*-
+ * #%L
+ * Mastodon
+ * %%
+ * Copyright (C) 2014 - 2021 Tobias Pietzsch, Jean-Yves Tinevez
+ * %%
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDERS OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ * #L%
+ */
+package org.mastodon.leviathan.views.bdv.overlay.common;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongConsumer;
+
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * Paints an overlay asynchronously, in screen tiles, on a pool of worker
+ * threads, and displays the tiles as they complete.
+ * <p>
+ * {@link #drawOverlays(Graphics, AffineTransform3D, int, int, int)} is called
+ * from the painting thread with the current transform, timepoint and canvas
+ * size. If they differ from those of the frame being painted, or if the
+ * overlay was invalidated since, that frame is cancelled and a new one is
+ * started: its tiles are queued from the center of the screen outwards, and
+ * each worker paints one tile in its own image with the {@link TilePainter}.
+ * The painting thread never waits. It draws the tiles completed so far and,
+ * where tiles are missing, the last complete frame, moved to the new
+ * transform when the new transform only pans, zooms or rotates the old one
+ * in the screen plane. A repaint is requested each time a tile completes.
+ * <p>
+ * Tile painters are called concurrently and take the read locks they need
+ * themselves. Each tile holds the locks only for the time it takes to paint
+ * it, so that edits are not blocked for a whole frame. Since an edit
+ * invalidates the overlay, tiles painted before it are painted again.
+ */
+public class TiledOverlayRenderer
+{
+
+	/**
+	 * Paints the part of an overlay that covers a region of the screen.
+	 */
+	public interface TilePainter
+	{
+
+		/**
+		 * Paints the part of the overlay that covers a region of the screen.
+		 * Called concurrently, for several regions.
+		 *
+		 * @param graphics
+		 *            the graphics to paint on, in screen coordinates and
+		 *            clipped to the region.
+		 * @param transform
+		 *            the viewer transform.
+		 * @param timepoint
+		 *            the timepoint to paint.
+		 * @param x
+		 *            the X coordinate of the region, in screen coordinates.
+		 * @param y
+		 *            the Y coordinate of the region, in screen coordinates.
+		 * @param width
+		 *            the width of the region.
+		 * @param height
+		 *            the height of the region.
+		 */
+		public void paint( Graphics2D graphics, AffineTransform3D transform, int timepoint, int x, int y, int width, int height );
+	}
+
+	/**
+	 * Default size of the tiles, in screen pixels.
+	 */
+	public static final int DEFAULT_TILE_SIZE = 256;
+
+	/**
+	 * Maximal number of tile images kept for reuse.
+	 */
+	private static final int MAX_RECYCLED_IMAGES = 128;
+
+	private static ExecutorService sharedExecutor;
+
+	/**
+	 * Returns the executor shared by the tiled renderers of all the views. It
+	 * has one daemon thread per processor but one, so that the painting
+	 * thread stays responsive.
+	 *
+	 * @return the shared executor.
+	 */
+	public static synchronized ExecutorService sharedExecutor()
+	{
+		if ( sharedExecutor == null )
+		{
+			final int nThreads = Math.max( 1, Runtime.getRuntime().availableProcessors() - 1 );
+			final AtomicInteger count = new AtomicInteger();
+			sharedExecutor = Executors.newFixedThreadPool( nThreads, r -> {
+				final Thread thread = new Thread( r, "Leviathan overlay renderer " + count.incrementAndGet() );
+				thread.setDaemon( true );
+				return thread;
+			} );
+		}
+		return sharedExecutor;
+	}
+
+	private final TilePainter painter;
+
+	private final Runnable repaint;
+
+	private final ExecutorService executor;
+
+	private final int tileSize;
+
+	private final ArrayDeque< BufferedImage > recycled = new ArrayDeque<>();
+
+	/**
+	 * The frame being painted, or the last one if it is complete.
+	 */
+	private Frame current;
+
+	/**
+	 * The last complete frame, drawn where the tiles of the current frame are
+	 * missing.
+	 */
+	private Frame previous;
+
+	private int generation;
+
+	private volatile LongConsumer frameListener;
+
+	/**
+	 * Creates a tiled renderer with the default tile size, using the shared
+	 * executor.
+	 *
+	 * @param painter
+	 *            paints the tiles.
+	 * @param repaint
+	 *            requests a repaint of the display. Called from the worker
+	 *            threads.
+	 */
+	public TiledOverlayRenderer( final TilePainter painter, final Runnable repaint )
+	{
+		this( painter, repaint, sharedExecutor(), DEFAULT_TILE_SIZE );
+	}
+
+	public TiledOverlayRenderer( final TilePainter painter, final Runnable repaint, final ExecutorService executor, final int tileSize )
+	{
+		this.painter = painter;
+		this.repaint = repaint;
+		this.executor = executor;
+		this.tileSize = tileSize;
+	}
+
+	/**
+	 * Sets the listener notified when all the tiles of a frame are painted,
+	 * with the time elapsed since the frame was started, in nanoseconds. The
+	 * listener is called from a worker thread.
+	 *
+	 * @param frameListener
+	 *            the listener, or <code>null</code>.
+	 */
+	public void setFrameListener( final LongConsumer frameListener )
+	{
+		this.frameListener = frameListener;
+	}
+
+	/**
+	 * Discards the tiles painted so far, so that the next call to
+	 * {@link #drawOverlays(Graphics, AffineTransform3D, int, int, int)} starts
+	 * a new frame. The tiles are still drawn until they are replaced.
+	 */
+	public synchronized void invalidate()
+	{
+		generation++;
+	}
+
+	/**
+	 * Cancels the frame being painted. Must be called when the overlay is
+	 * closed.
+	 */
+	public synchronized void cancel()
+	{
+		if ( current != null )
+			current.cancel();
+		current = null;
+		previous = null;
+		recycled.clear();
+	}
+
+	/**
+	 * Draws the overlay for the specified state, and starts painting it if it
+	 * was not started yet. Does not block.
+	 *
+	 * @param g
+	 *            the graphics to draw on.
+	 * @param transform
+	 *            the viewer transform.
+	 * @param timepoint
+	 *            the timepoint.
+	 * @param width
+	 *            the width of the canvas.
+	 * @param height
+	 *            the height of the canvas.
+	 */
+	public void drawOverlays( final Graphics g, final AffineTransform3D transform, final int timepoint, final int width, final int height )
+	{
+		if ( width <= 0 || height <= 0 )
+			return;
+
+		final Frame frame;
+		final Frame fallback;
+		synchronized ( this )
+		{
+			if ( current != null && current != previous && current.isComplete() )
+			{
+				// The previous frame is no longer needed, reuse its images.
+				if ( previous != null )
+					previous.recycle();
+				previous = current;
+			}
+			if ( current == null || !current.matches( transform, timepoint, width, height, generation ) )
+			{
+				if ( current != null && current != previous )
+					current.cancel();
+				current = new Frame( transform, timepoint, width, height, generation );
+				current.submit();
+			}
+			frame = current;
+			fallback = previous == current ? null : previous;
+		}
+		frame.draw( ( Graphics2D ) g, fallback );
+	}
+
+	private synchronized BufferedImage obtainImage()
+	{
+		final BufferedImage image = recycled.poll();
+		return image != null
+				? image
+				: new BufferedImage( tileSize, tileSize, BufferedImage.TYPE_INT_ARGB_PRE );
+	}
+
+	private synchronized void recycle( final BufferedImage image )
+	{
+		if ( recycled.size() < MAX_RECYCLED_IMAGES )
+			recycled.add( image );
+	}
+
+	/**
+	 * Returns <code>true</code> if two transforms are equal.
+	 */
+	private static boolean sameTransform( final AffineTransform3D a, final AffineTransform3D b )
+	{
+		return Arrays.equals( a.getRowPackedCopy(), b.getRowPackedCopy() );
+	}
+
+	/**
+	 * Returns the 2D transform that maps the screen at transform
+	 * <code>from</code> to the screen at transform <code>to</code>, or
+	 * <code>null</code> if the two do not differ only in the screen plane.
+	 */
+	private static AffineTransform screenTransform( final AffineTransform3D from, final AffineTransform3D to )
+	{
+		final AffineTransform3D d = from.inverse();
+		d.preConcatenate( to );
+		final double eps = 1e-6;
+		if ( Math.abs( d.get( 0, 2 ) ) > eps
+				|| Math.abs( d.get( 1, 2 ) ) > eps
+				|| Math.abs( d.get( 2, 0 ) ) > eps
+				|| Math.abs( d.get( 2, 1 ) ) > eps
+				|| Math.abs( d.get( 2, 2 ) - 1. ) > eps
+				|| Math.abs( d.get( 2, 3 ) ) > eps )
+			return null;
+		return new AffineTransform(
+				d.get( 0, 0 ), d.get( 1, 0 ),
+				d.get( 0, 1 ), d.get( 1, 1 ),
+				d.get( 0, 3 ), d.get( 1, 3 ) );
+	}
+
+	/*
+	 * One frame of the overlay.
+	 */
+
+	private final class Frame
+	{
+
+		private final AffineTransform3D transform;
+
+		private final int timepoint;
+
+		private final int width;
+
+		private final int height;
+
+		private final int generation;
+
+		private final int nx;
+
+		private final int ny;
+
+		private final AtomicReferenceArray< BufferedImage > tiles;
+
+		private final AtomicInteger remaining;
+
+		private final List< Future< ? > > futures = new ArrayList<>();
+
+		private final long start = System.nanoTime();
+
+		private volatile boolean cancelled;
+
+		Frame( final AffineTransform3D transform, final int timepoint, final int width, final int height, final int generation )
+		{
+			this.transform = transform.copy();
+			this.timepoint = timepoint;
+			this.width = width;
+			this.height = height;
+			this.generation = generation;
+			this.nx = ( width + tileSize - 1 ) / tileSize;
+			this.ny = ( height + tileSize - 1 ) / tileSize;
+			this.tiles = new AtomicReferenceArray<>( nx * ny );
+			this.remaining = new AtomicInteger( nx * ny );
+		}
+
+		boolean matches( final AffineTransform3D transform, final int timepoint, final int width, final int height, final int generation )
+		{
+			return this.timepoint == timepoint
+					&& this.width == width
+					&& this.height == height
+					&& this.generation == generation
+					&& sameTransform( this.transform, transform );
+		}
+
+		boolean isComplete()
+		{
+			return remaining.get() == 0;
+		}
+
+		/**
+		 * Queues the tiles, closest to the center of the screen first.
+		 */
+		void submit()
+		{
+			final Integer[] order = new Integer[ nx * ny ];
+			for ( int i = 0; i < order.length; i++ )
+				order[ i ] = i;
+			final double cx = ( nx - 1 ) / 2.;
+			final double cy = ( ny - 1 ) / 2.;
+			Arrays.sort( order, Comparator.comparingDouble( i -> {
+				final double dx = i % nx - cx;
+				final double dy = i / nx - cy;
+				return dx * dx + dy * dy;
+			} ) );
+			for ( final int i : order )
+				futures.add( executor.submit( () -> paintTile( i ) ) );
+		}
+
+		void cancel()
+		{
+			cancelled = true;
+			for ( final Future< ? > future : futures )
+				future.cancel( false );
+		}
+
+		/**
+		 * Returns the images of a complete frame for reuse.
+		 */
+		void recycle()
+		{
+			for ( int i = 0; i < tiles.length(); i++ )
+			{
+				final BufferedImage image = tiles.getAndSet( i, null );
+				if ( image != null )
+					TiledOverlayRenderer.this.recycle( image );
+			}
+		}
+
+		private void paintTile( final int i )
+		{
+			if ( cancelled )
+				return;
+
+			final int x = ( i % nx ) * tileSize;
+			final int y = ( i / nx ) * tileSize;
+			final BufferedImage image = obtainImage();
+			final Graphics2D g = image.createGraphics();
+			try
+			{
+				g.setComposite( AlphaComposite.Clear );
+				g.fillRect( 0, 0, tileSize, tileSize );
+				g.setComposite( AlphaComposite.SrcOver );
+				g.clipRect( 0, 0, tileSize, tileSize );
+				g.translate( -x, -y );
+				painter.paint( g, transform, timepoint, x, y,
+						Math.min( tileSize, width - x ),
+						Math.min( tileSize, height - y ) );
+			}
+			catch ( final RuntimeException e )
+			{
+				// Show what could be painted, do not stall the frame.
+				e.printStackTrace();
+			}
+			finally
+			{
+				g.dispose();
+			}
+
+			if ( cancelled )
+			{
+				TiledOverlayRenderer.this.recycle( image );
+				return;
+			}
+			tiles.set( i, image );
+			if ( remaining.decrementAndGet() == 0 )
+			{
+				final LongConsumer listener = frameListener;
+				if ( listener != null )
+					listener.accept( System.nanoTime() - start );
+			}
+			repaint.run();
+		}
+
+		/**
+		 * Draws the tiles completed so far, and the fallback frame where they
+		 * are missing.
+		 */
+		void draw( final Graphics2D g, final Frame fallback )
+		{
+			Path2D.Double missing = null;
+			for ( int i = 0; i < tiles.length(); i++ )
+			{
+				final int x = ( i % nx ) * tileSize;
+				final int y = ( i / nx ) * tileSize;
+				final BufferedImage image = tiles.get( i );
+				if ( image != null )
+				{
+					g.drawImage( image, x, y, null );
+				}
+				else
+				{
+					if ( missing == null )
+						missing = new Path2D.Double();
+					missing.append( new Rectangle( x, y, tileSize, tileSize ), false );
+				}
+			}
+
+			if ( missing == null || fallback == null || fallback.timepoint != timepoint )
+				return;
+			final AffineTransform move = screenTransform( fallback.transform, transform );
+			if ( move == null )
+				return;
+			final Graphics2D gf = ( Graphics2D ) g.create();
+			try
+			{
+				gf.clip( missing );
+				gf.transform( move );
+				fallback.drawTiles( gf );
+			}
+			finally
+			{
+				gf.dispose();
+			}
+		}
+
+		private void drawTiles( final Graphics2D g )
+		{
+			for ( int i = 0; i < tiles.length(); i++ )
+			{
+				final BufferedImage image = tiles.get( i );
+				if ( image != null )
+					g.drawImage( image, ( i % nx ) * tileSize, ( i / nx ) * tileSize, null );
+			}
+		}
+	}
+}
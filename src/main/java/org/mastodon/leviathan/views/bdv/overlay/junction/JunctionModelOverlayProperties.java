@@ -28,18 +28,27 @@
  */
 package org.mastodon.leviathan.views.bdv.overlay.junction;
 
+import org.mastodon.leviathan.model.DoubleSlice;
 import org.mastodon.leviathan.model.junction.Junction;
 import org.mastodon.leviathan.model.junction.JunctionGraph;
+import org.mastodon.leviathan.model.junction.MembraneContourCache;
 import org.mastodon.leviathan.model.junction.MembranePart;
+import org.mastodon.leviathan.model.junction.MembraneSegmentIndex;
 import org.mastodon.leviathan.views.bdv.overlay.junction.wrap.JunctionOverlayProperties;
 
 public class JunctionModelOverlayProperties implements JunctionOverlayProperties< Junction, MembranePart >
 {
 	private final JunctionGraph modelGraph;
 
-	public JunctionModelOverlayProperties( final JunctionGraph modelGraph )
+	private final MembraneSegmentIndex segmentIndex;
+
+	private final MembraneContourCache contourCache;
+
+	public JunctionModelOverlayProperties( final JunctionGraph modelGraph, final MembraneSegmentIndex segmentIndex, final MembraneContourCache contourCache )
 	{
 		this.modelGraph = modelGraph;
+		this.segmentIndex = segmentIndex;
+		this.contourCache = contourCache;
 	}
 
 	@Override
@@ -120,6 +129,24 @@ public class JunctionModelOverlayProperties implements JunctionOverlayProperties
 		return e.getPixels();
 	}
 
+	@Override
+	public DoubleSlice getContour( final MembranePart e, final double tolerance, final DoubleSlice slice )
+	{
+		return contourCache.getContour( e, tolerance, slice );
+	}
+
+	@Override
+	public MembranePart getMembraneAt( final double x, final double y, final int timepoint, final double maxDistance, final MembranePart ref )
+	{
+		return segmentIndex.getMembraneAt( x, y, timepoint, maxDistance, ref );
+	}
+
+	@Override
+	public double getMaxMembraneExtent( final int timepoint )
+	{
+		return segmentIndex.getMaxExtent( timepoint );
+	}
+
 	@Override
 	public void setPixels( final MembranePart e, final double[] pixels )
 	{
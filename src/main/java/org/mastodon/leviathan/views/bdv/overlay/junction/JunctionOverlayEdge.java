@@ -29,6 +29,7 @@
 package org.mastodon.leviathan.views.bdv.overlay.junction;
 
 import org.mastodon.Ref;
+import org.mastodon.leviathan.model.DoubleSlice;
 import org.mastodon.views.bdv.overlay.OverlayEdge;
 
 public interface JunctionOverlayEdge< O extends JunctionOverlayEdge< O, V >, V extends JunctionOverlayVertex< V, ? > >
@@ -40,6 +41,22 @@ public interface JunctionOverlayEdge< O extends JunctionOverlayEdge< O, V >, V e
 
 	public double[] getPixels();
 
+	/**
+	 * Points the specified slice to the polyline of this edge, simplified with
+	 * the specified tolerance, in global coordinates.
+	 * The slice stays readable until the next polyline is requested from the
+	 * same thread.
+	 *
+	 * @param tolerance
+	 *            the maximal distance between the polyline and the pixels, in
+	 *            global units.
+	 * @param slice
+	 *            the slice to use.
+	 * @return the specified slice, or <code>null</code> if the pixels are not
+	 *         set.
+	 */
+	public DoubleSlice getContour( double tolerance, DoubleSlice slice );
+
 	public int getCellIdCCW();
 
 	public int getCellIdCW();
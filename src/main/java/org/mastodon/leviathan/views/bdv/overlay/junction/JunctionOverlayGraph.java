@@ -32,4 +32,35 @@ import org.mastodon.views.bdv.overlay.OverlayGraph;
 
 public interface JunctionOverlayGraph< V extends JunctionOverlayVertex< V, E >, E extends JunctionOverlayEdge< E, V > >
 		extends OverlayGraph< V, E >
-{}
+{
+
+	/**
+	 * Returns the membrane nearest to the specified point, within a maximal
+	 * distance.
+	 *
+	 * @param x
+	 *            the X coordinate of the point, in global coordinates.
+	 * @param y
+	 *            the Y coordinate of the point, in global coordinates.
+	 * @param timepoint
+	 *            the timepoint of the membrane.
+	 * @param maxDistance
+	 *            the maximal distance, in global units.
+	 * @param ref
+	 *            an edge reference, used to return the membrane found.
+	 * @return the nearest membrane, or <code>null</code> if there is none
+	 *         within the maximal distance.
+	 */
+	public E getMembraneAt( double x, double y, int timepoint, double maxDistance, E ref );
+
+	/**
+	 * Returns an upper bound of the extent of the membranes of a timepoint:
+	 * along each axis, no pixel of a membrane is farther than this from the
+	 * junctions it connects.
+	 *
+	 * @param timepoint
+	 *            the timepoint.
+	 * @return the extent, in global units.
+	 */
+	public double getMaxMembraneExtent( int timepoint );
+}
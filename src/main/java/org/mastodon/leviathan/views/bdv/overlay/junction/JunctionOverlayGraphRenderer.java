@@ -33,19 +33,25 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
 
 import org.mastodon.collection.RefCollection;
 import org.mastodon.collection.RefCollections;
 import org.mastodon.collection.RefList;
 import org.mastodon.kdtree.ClipConvexPolytope;
-import org.mastodon.leviathan.views.bdv.overlay.common.DouglasPeucker;
+import org.mastodon.leviathan.model.DoubleSlice;
+import org.mastodon.leviathan.views.bdv.overlay.common.DensityTiles;
+import org.mastodon.leviathan.views.bdv.overlay.common.OverlayMetrics;
+import org.mastodon.leviathan.views.bdv.overlay.common.PathBatch;
+import org.mastodon.leviathan.views.bdv.overlay.common.TiledOverlayRenderer;
 import org.mastodon.model.FocusModel;
 import org.mastodon.model.HighlightModel;
 import org.mastodon.model.SelectionModel;
 import org.mastodon.spatial.SpatialIndex;
 import org.mastodon.spatial.SpatioTemporalIndex;
 import org.mastodon.ui.coloring.GraphColorGenerator;
-import org.mastodon.util.GeometryUtil;
 import org.mastodon.views.bdv.overlay.OverlayContext;
 import org.mastodon.views.bdv.overlay.OverlayGraphRenderer;
 import org.mastodon.views.bdv.overlay.Visibilities.VisibilityMode;
@@ -53,6 +59,7 @@ import org.mastodon.views.bdv.overlay.util.BdvRendererUtil;
 import org.scijava.util.DoubleArray;
 
 import bdv.util.Affine3DHelpers;
+import gnu.trove.list.array.TIntArrayList;
 import net.imglib2.RealPoint;
 import net.imglib2.algorithm.kdtree.ConvexPolytope;
 import net.imglib2.neighborsearch.NearestNeighborSearch;
@@ -85,6 +92,10 @@ public class JunctionOverlayGraphRenderer< V extends JunctionOverlayVertex< V, E
 
 	private JunctionRenderSettings settings;
 
+	private TiledOverlayRenderer tiledRenderer;
+
+	private volatile OverlayMetrics metrics;
+
 	public JunctionOverlayGraphRenderer(
 			final JunctionOverlayGraph< V, E > graph,
 			final HighlightModel< V, E > highlight,
@@ -127,10 +138,63 @@ public class JunctionOverlayGraphRenderer< V extends JunctionOverlayVertex< V, E
 	public void setRenderSettings( final JunctionRenderSettings settings )
 	{
 		this.settings = settings;
+		invalidate();
+	}
+
+	/**
+	 * Sets the renderer used to paint the overlay asynchronously, in tiles.
+	 * The renderer must paint the tiles with
+	 * {@link #paint(Graphics2D, AffineTransform3D, int, int, int, int, int)}.
+	 *
+	 * @param tiledRenderer
+	 *            the tiled renderer, or <code>null</code> to paint the overlay
+	 *            synchronously, in {@link #drawOverlays(Graphics)}.
+	 */
+	public void setTiledRenderer( final TiledOverlayRenderer tiledRenderer )
+	{
+		this.tiledRenderer = tiledRenderer;
+	}
+
+	/**
+	 * Sets the metrics to record the paints of this overlay in.
+	 *
+	 * @param metrics
+	 *            the metrics, or <code>null</code> not to record them.
+	 */
+	public void setMetrics( final OverlayMetrics metrics )
+	{
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Discards the tiles painted so far. Must be called when the model, the
+	 * selection, the coloring or any other state the overlay depends on
+	 * changes, before requesting a repaint.
+	 */
+	public void invalidate()
+	{
+		final TiledOverlayRenderer tr = tiledRenderer;
+		if ( tr != null )
+			tr.invalidate();
 	}
 
 	public static final double pointRadius = 0.4;
 
+	/**
+	 * Membranes whose polyline spans fewer screen pixels than this are not
+	 * drawn individually, but collected in a {@link DensityTiles}.
+	 */
+	public static final double MIN_MEMBRANE_SIZE = 2.;
+
+	/**
+	 * Margin added to the regions painted, in screen pixels, so that the
+	 * labels and the wide strokes of junctions outside a region are painted
+	 * too.
+	 */
+	private static final double LABEL_BORDER = 64.;
+
+	private static final double STROKE_BORDER = 2.;
+
 	private static int trunc255( final int i )
 	{
 		return Math.min( 255, Math.max( 0, i ) );
@@ -295,7 +359,7 @@ public class JunctionOverlayGraphRenderer< V extends JunctionOverlayVertex< V, E
 	}
 
 	private void forEachVisibleEdge(
-			final AffineTransform3D transform,
+			final ConvexPolytope cropPolytopeGlobal,
 			final int currentTimepoint,
 			final EdgeOperation< E, V > edgeOperation )
 	{
@@ -306,7 +370,7 @@ public class JunctionOverlayGraphRenderer< V extends JunctionOverlayVertex< V, E
 		final V refTarget = graph.vertexRef();
 		final SpatialIndex< V > si = index.getSpatialIndex( currentTimepoint );
 		final ClipConvexPolytope< V > ccp = si.getClipConvexPolytope();
-		ccp.clip( getVisiblePolytopeGlobal( transform, currentTimepoint ) );
+		ccp.clip( cropPolytopeGlobal );
 		for ( final V vertex : ccp.getInsideValues() )
 		{
 			for ( final E edge : vertex.incomingEdges() )
@@ -322,14 +386,55 @@ public class JunctionOverlayGraphRenderer< V extends JunctionOverlayVertex< V, E
 	@Override
 	public void drawOverlays( final Graphics g )
 	{
-		final Graphics2D graphics = ( Graphics2D ) g;
+		final AffineTransform3D transform = getRenderTransformCopy();
+		final int currentTimepoint = renderTimepoint;
+		final TiledOverlayRenderer tr = tiledRenderer;
+		if ( tr != null )
+		{
+			tr.drawOverlays( g, transform, currentTimepoint, width, height );
+		}
+		else
+		{
+			final long start = System.nanoTime();
+			paint( ( Graphics2D ) g, transform, currentTimepoint, 0, 0, width, height );
+			final OverlayMetrics m = metrics;
+			if ( m != null )
+				m.endFrame( System.nanoTime() - start );
+		}
+	}
+
+	/**
+	 * Paints the part of the overlay that covers a region of the screen. May
+	 * be called concurrently, for several regions.
+	 *
+	 * @param graphics
+	 *            the graphics to paint on, in screen coordinates.
+	 * @param transform
+	 *            the viewer transform.
+	 * @param currentTimepoint
+	 *            the timepoint to paint.
+	 * @param x
+	 *            the X coordinate of the region, in screen coordinates.
+	 * @param y
+	 *            the Y coordinate of the region, in screen coordinates.
+	 * @param w
+	 *            the width of the region.
+	 * @param h
+	 *            the height of the region.
+	 */
+	public void paint(
+			final Graphics2D graphics,
+			final AffineTransform3D transform,
+			final int currentTimepoint,
+			final int x,
+			final int y,
+			final int w,
+			final int h )
+	{
 		final BasicStroke defaultVertexStroke = new BasicStroke();
 		final BasicStroke defaultEdgeStroke = new BasicStroke();
 		final BasicStroke highlightedEdgeStroke = new BasicStroke( 3f );
 
-		final AffineTransform3D transform = getRenderTransformCopy();
-		final int currentTimepoint = renderTimepoint;
-
 		final Object antialiasing = settings.getUseAntialiasing()
 				? RenderingHints.VALUE_ANTIALIAS_ON
 				: RenderingHints.VALUE_ANTIALIAS_OFF;
@@ -345,8 +450,12 @@ public class JunctionOverlayGraphRenderer< V extends JunctionOverlayVertex< V, E
 
 		final int colorSpot = settings.getColorSpot();
 
+		// Membranes visited and drawn.
+		final int[] counts = new int[ 2 ];
+		final long start = System.nanoTime();
 		graph.getLock().readLock().lock();
 		index.readLock().lock();
+		final long locked = System.nanoTime();
 		try
 		{
 			if ( settings.getDrawLinks() )
@@ -354,39 +463,62 @@ public class JunctionOverlayGraphRenderer< V extends JunctionOverlayVertex< V, E
 				final E highlighted = highlight.getHighlightedEdge( ref3 );
 				graphics.setStroke( defaultEdgeStroke );
 
+				// Simplify the membranes within about one screen pixel.
+				final double tolerance = 1. / scale;
 				final DoubleArray arr = new DoubleArray();
-				final DoubleArray tmp = new DoubleArray();
-				forEachVisibleEdge( transform, currentTimepoint, ( edge, source, target ) -> {
-
+				final DoubleSlice slice = new DoubleSlice();
+				final DensityTiles densityTiles = new DensityTiles();
+				final PathBatch batch = new PathBatch( defaultEdgeStroke );
+				final PathBatch selectedBatch = new PathBatch( defaultEdgeStroke );
+				final PathBatch highlightedBatch = new PathBatch( highlightedEdgeStroke );
+
+				// Also visit the membranes of junctions outside the region.
+				final double border = graph.getMaxMembraneExtent( currentTimepoint ) * scale + STROKE_BORDER;
+				final ConvexPolytope cropPolytopeGlobal = getOverlappingPolytopeGlobal(
+						x - border, x + w + border,
+						y - border, y + h + border,
+						transform, currentTimepoint );
+				forEachVisibleEdge( cropPolytopeGlobal, currentTimepoint, ( edge, source, target ) -> {
+
+					counts[ 0 ]++;
 					final boolean isHighlighted = edge.equals( highlighted );
+					final boolean isSelected = selection.isSelected( edge );
 
 					final int edgeColor = coloring.color( edge, source, target );
-					graphics.setPaint( getColor(
-							selection.isSelected( edge ),
+					final Color color = getColor(
+							isSelected,
 							isHighlighted,
 							colorSpot,
-							edgeColor ) );
-
-					edgeLines( edge, source, target, transform, arr, tmp, pos, vPos );
-					double xf = arr.getValue( 0 );
-					double yf = arr.getValue( 1 );
+							edgeColor );
 
-					if ( isHighlighted )
-						graphics.setStroke( highlightedEdgeStroke );
+					final double size = edgeLines( edge, source, target, transform, tolerance, slice, arr, pos, vPos );
 
-					for ( int i = 2; i < arr.size(); i = i + 2 )
+					// Level of detail: collect the membranes too small to be seen.
+					if ( size < MIN_MEMBRANE_SIZE && !isSelected && !isHighlighted )
 					{
-						final double xt = arr.getValue( i );
-						final double yt = arr.getValue( i + 1 );
-						graphics.drawLine( ( int ) xf, ( int ) yf, ( int ) xt, ( int ) yt );
-//						graphics.drawRect( xt - 1, yt - 1, 3, 3 );
-						xf = xt;
-						yf = yt;
+						final int last = arr.size() - 2;
+						densityTiles.add(
+								( arr.getValue( 0 ) + arr.getValue( last ) ) / 2.,
+								( arr.getValue( 1 ) + arr.getValue( last + 1 ) ) / 2.,
+								color.getRGB() );
+						return;
 					}
 
-					if ( isHighlighted )
-						graphics.setStroke( defaultEdgeStroke );
+					// Selected and highlighted membranes are painted on top.
+					counts[ 1 ]++;
+					final PathBatch membraneBatch = isHighlighted
+							? highlightedBatch
+							: isSelected ? selectedBatch : batch;
+					final Path2D.Double path = membraneBatch.drawPath( color.getRGB() );
+					path.moveTo( arr.getValue( 0 ), arr.getValue( 1 ) );
+					for ( int i = 2; i < arr.size(); i = i + 2 )
+						path.lineTo( arr.getValue( i ), arr.getValue( i + 1 ) );
 				} );
+				densityTiles.paint( graphics, x + w, y + h );
+				batch.paint( graphics );
+				selectedBatch.paint( graphics );
+				highlightedBatch.paint( graphics );
+				graphics.setStroke( defaultEdgeStroke );
 			}
 
 			if ( settings.getDrawSpots() )
@@ -396,10 +528,19 @@ public class JunctionOverlayGraphRenderer< V extends JunctionOverlayVertex< V, E
 
 				graphics.setStroke( defaultVertexStroke );
 
-				final ConvexPolytope cropPolytopeGlobal = getVisiblePolytopeGlobal( transform, currentTimepoint );
+				final double border = Math.max( 1.5 * pointRadius * scale, 1.5 ) + LABEL_BORDER;
+				final ConvexPolytope cropPolytopeGlobal = getOverlappingPolytopeGlobal(
+						x - border, x + w + border,
+						y - border, y + h + border,
+						transform, currentTimepoint );
 				final ClipConvexPolytope< V > ccp = index.getSpatialIndex( currentTimepoint ).getClipConvexPolytope();
 				ccp.clip( cropPolytopeGlobal );
 
+				final PathBatch batch = new PathBatch( defaultVertexStroke );
+				final PathBatch topBatch = new PathBatch( defaultVertexStroke );
+				// x, y, id and colour of each label.
+				final TIntArrayList labels = new TIntArrayList();
+
 				for ( final V vertex : ccp.getInsideValues() )
 				{
 					final int color = coloring.color( vertex );
@@ -408,14 +549,15 @@ public class JunctionOverlayGraphRenderer< V extends JunctionOverlayVertex< V, E
 
 					vertex.localize( pos );
 					transform.apply( pos, vPos );
-					final double x = vPos[ 0 ];
-					final double y = vPos[ 1 ];
+					final double xv = vPos[ 0 ];
+					final double yv = vPos[ 1 ];
 
-					graphics.setColor( getColor(
-							selection.isSelected( vertex ),
+					final boolean isSelected = selection.isSelected( vertex );
+					final int spotColor = getColor(
+							isSelected,
 							isHighlighted,
 							colorSpot,
-							color ) );
+							color ).getRGB();
 					double radius = pointRadius * scale;
 					if ( isHighlighted || isFocused )
 					{
@@ -425,15 +567,28 @@ public class JunctionOverlayGraphRenderer< V extends JunctionOverlayVertex< V, E
 
 					if ( radius < 1. )
 						continue;
-					final int ox = ( int ) ( x - radius );
-					final int oy = ( int ) ( y - radius );
+					final int ox = ( int ) ( xv - radius );
+					final int oy = ( int ) ( yv - radius );
 					final int ow = ( int ) ( 2 * radius );
+					// Selected, highlighted and focused junctions are painted on top.
 					if ( isFocused )
-						graphics.fillRect( ox, oy, ow, ow );
+						topBatch.fill( spotColor, new Rectangle2D.Double( ox, oy, ow, ow ) );
+					else if ( isHighlighted || isSelected )
+						topBatch.fill( spotColor, new Ellipse2D.Double( ox, oy, ow, ow ) );
 					else
-						graphics.fillOval( ox, oy, ow, ow );
+						batch.fill( spotColor, new Ellipse2D.Double( ox, oy, ow, ow ) );
 
-					graphics.drawString( " " + vertex.getInternalPoolIndex(), ( int ) ( x + radius ), ( int ) y );
+					labels.add( ( int ) ( xv + radius ) );
+					labels.add( ( int ) yv );
+					labels.add( vertex.getInternalPoolIndex() );
+					labels.add( spotColor );
+				}
+				batch.paint( graphics );
+				topBatch.paint( graphics );
+				for ( int i = 0; i < labels.size(); i += 4 )
+				{
+					graphics.setColor( new Color( labels.getQuick( i + 3 ), true ) );
+					graphics.drawString( " " + labels.getQuick( i + 2 ), labels.getQuick( i ), labels.getQuick( i + 1 ) );
 				}
 			}
 		}
@@ -445,43 +600,66 @@ public class JunctionOverlayGraphRenderer< V extends JunctionOverlayVertex< V, E
 		graph.releaseRef( ref1 );
 		graph.releaseRef( ref2 );
 		graph.releaseRef( ref3 );
+
+		final OverlayMetrics m = metrics;
+		if ( m != null )
+			m.addPaint( System.nanoTime() - start, locked - start, counts[ 0 ], counts[ 1 ] );
 	}
 
-	public final static < V extends JunctionOverlayVertex< V, E >, E extends JunctionOverlayEdge< E, V > > void edgeLines(
+	/**
+	 * Writes the simplified polyline of an edge, in screen coordinates, in the
+	 * specified array. Edges without pixels are drawn as a straight line
+	 * between their source and target.
+	 *
+	 * @return the largest extent of the polyline on the screen, in pixels.
+	 */
+	public final static < V extends JunctionOverlayVertex< V, E >, E extends JunctionOverlayEdge< E, V > > double edgeLines(
 			final E edge,
 			final V source,
 			final V target,
 			final AffineTransform3D transform,
+			final double tolerance,
+			final DoubleSlice slice,
 			final DoubleArray arr,
-			final DoubleArray tmp,
 			final double[] pos,
 			final double[] vPos )
 	{
-		tmp.clear();
 		arr.clear();
-		source.localize( pos );
-		transform.apply( pos, vPos );
-		final double[] pixels = edge.getPixels();
-		if ( pixels == null )
+		final DoubleSlice contour = edge.getContour( tolerance, slice );
+		if ( contour == null || contour.size() < 2 )
 		{
+			source.localize( pos );
+			transform.apply( pos, vPos );
 			arr.addValue( vPos[ 0 ] );
 			arr.addValue( vPos[ 1 ] );
 			target.localize( pos );
 			transform.apply( pos, vPos );
 			arr.addValue( vPos[ 0 ] );
 			arr.addValue( vPos[ 1 ] );
-			return;
+			return Math.max(
+					Math.abs( arr.getValue( 2 ) - arr.getValue( 0 ) ),
+					Math.abs( arr.getValue( 3 ) - arr.getValue( 1 ) ) );
 		}
 
-		for ( int i = 0; i < pixels.length; i = i + 2 )
+		// Keep the Z coordinate of the source junction.
+		source.localize( pos );
+		double xmin = Double.POSITIVE_INFINITY;
+		double ymin = Double.POSITIVE_INFINITY;
+		double xmax = Double.NEGATIVE_INFINITY;
+		double ymax = Double.NEGATIVE_INFINITY;
+		for ( int i = 0; i < contour.size() - 1; i = i + 2 )
 		{
-			pos[ 0 ] = pixels[ i ];
-			pos[ 1 ] = pixels[ i + 1 ];
+			pos[ 0 ] = contour.get( i );
+			pos[ 1 ] = contour.get( i + 1 );
 			transform.apply( pos, vPos );
-			tmp.addValue( vPos[ 0 ] );
-			tmp.addValue( vPos[ 1 ] );
+			arr.addValue( vPos[ 0 ] );
+			arr.addValue( vPos[ 1 ] );
+			xmin = Math.min( xmin, vPos[ 0 ] );
+			ymin = Math.min( ymin, vPos[ 1 ] );
+			xmax = Math.max( xmax, vPos[ 0 ] );
+			ymax = Math.max( ymax, vPos[ 1 ] );
 		}
-		DouglasPeucker.douglasPeucker( tmp, arr, 1. );
+		return Math.max( xmax - xmin, ymax - ymin );
 	}
 
 	/**
@@ -516,7 +694,7 @@ public class JunctionOverlayGraphRenderer< V extends JunctionOverlayVertex< V, E
 	 * @param ref
 	 *            an edge reference, that might be used to return the vertex
 	 *            found.
-	 * @return the closest edge within tolerance, or <code>null</code> if it
+	 * @return the nearest edge within tolerance, or <code>null</code> if it
 	 *         could not be found.
 	 */
 	@Override
@@ -525,57 +703,15 @@ public class JunctionOverlayGraphRenderer< V extends JunctionOverlayVertex< V, E
 		if ( !settings.getDrawLinks() )
 			return null;
 
-		final AffineTransform3D transform = getRenderTransformCopy();
 		final int currentTimepoint = renderTimepoint;
-		final DoubleArray arr = new DoubleArray();
-		final DoubleArray tmp = new DoubleArray();
-		final double[] pos = new double[ 3 ];
-		final double[] vPos = new double[ 3 ];
-
-		class Op implements EdgeOperation< E, V >
-		{
-			final double squTolerance = tolerance * tolerance;
-
-			double bestSquDist = Double.POSITIVE_INFINITY;
-
-			boolean found = false;
-
-			@Override
-			public void apply( final E edge, final V source, final V target )
-			{
-				edgeLines( edge, source, target, transform, arr, tmp, pos, vPos );
-				double xf = arr.getValue( 0 );
-				double yf = arr.getValue( 1 );
-
-				for ( int i = 2; i < arr.size(); i = i + 2 )
-				{
-					final double xt = arr.getValue( i );
-					final double yt = arr.getValue( i + 1 );
-					final double squDist = GeometryUtil.squSegmentDist( x, y, xf, yf, xt, yt );
-					if ( squDist <= squTolerance && squDist < bestSquDist )
-					{
-						found = true;
-						bestSquDist = squDist;
-						ref.refTo( edge );
-						break;
-					}
-					xf = xt;
-					yf = yt;
-				}
-			}
-		};
-		final Op op = new Op();
-
-		index.readLock().lock();
-		try
-		{
-			forEachVisibleEdge( transform, currentTimepoint, op );
-		}
-		finally
+		final double[] gPos = new double[ 3 ];
+		final double scale;
+		synchronized ( renderTransform )
 		{
-			index.readLock().unlock();
+			renderTransform.applyInverse( gPos, new double[] { x, y, 0 } );
+			scale = Affine3DHelpers.extractScale( renderTransform, 0 );
 		}
-		return op.found ? ref : null;
+		return graph.getMembraneAt( gPos[ 0 ], gPos[ 1 ], currentTimepoint, tolerance / scale, ref );
 	}
 
 	/**
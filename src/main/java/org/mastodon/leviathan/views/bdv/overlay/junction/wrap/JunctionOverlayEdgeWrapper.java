@@ -30,6 +30,7 @@ package org.mastodon.leviathan.views.bdv.overlay.junction.wrap;
 
 import org.mastodon.graph.Edge;
 import org.mastodon.graph.Vertex;
+import org.mastodon.leviathan.model.DoubleSlice;
 import org.mastodon.leviathan.views.bdv.overlay.junction.JunctionOverlayEdge;
 
 public class JunctionOverlayEdgeWrapper< V extends Vertex< E >, E extends Edge< V > >
@@ -157,6 +158,12 @@ public class JunctionOverlayEdgeWrapper< V extends Vertex< E >, E extends Edge<
 		return overlayProperties.getPixels( we );
 	}
 
+	@Override
+	public DoubleSlice getContour( final double tolerance, final DoubleSlice slice )
+	{
+		return overlayProperties.getContour( we, tolerance, slice );
+	}
+
 	@Override
 	public int getCellIdCCW()
 	{
@@ -28,8 +28,8 @@
  */
 package org.mastodon.leviathan.views.bdv.overlay.junction.wrap;
 
+import java.util.ArrayDeque;
 import java.util.Iterator;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.mastodon.RefPool;
@@ -57,9 +57,19 @@ public class JunctionOverlayGraphWrapper< V extends Vertex< E >, E extends Edge<
 
 	private final ReentrantReadWriteLock lock;
 
-	private final ConcurrentLinkedQueue< JunctionOverlayVertexWrapper< V, E > > tmpVertexRefs;
+	/**
+	 * Maximal number of refs kept for reuse, per thread.
+	 */
+	private static final int MAX_TMP_REFS = 256;
+
+	/*
+	 * Refs released, kept per thread so that obtaining and releasing a ref
+	 * neither contends with the other painting threads nor allocates.
+	 */
 
-	private final ConcurrentLinkedQueue< JunctionOverlayEdgeWrapper< V, E > > tmpEdgeRefs;
+	private final ThreadLocal< ArrayDeque< JunctionOverlayVertexWrapper< V, E > > > tmpVertexRefs = ThreadLocal.withInitial( ArrayDeque::new );
+
+	private final ThreadLocal< ArrayDeque< JunctionOverlayEdgeWrapper< V, E > > > tmpEdgeRefs = ThreadLocal.withInitial( ArrayDeque::new );
 
 	private final SpatioTemporalIndex< JunctionOverlayVertexWrapper< V, E > > wrappedIndex;
 
@@ -78,8 +88,6 @@ public class JunctionOverlayGraphWrapper< V extends Vertex< E >, E extends Edge<
 		this.idmap = idmap;
 		this.lock = lock;
 		this.overlayProperties = overlayProperties;
-		tmpVertexRefs =	new ConcurrentLinkedQueue<>();
-		tmpEdgeRefs = new ConcurrentLinkedQueue<>();
 		wrappedIndex = new SpatioTemporalIndexWrapper<>( this, graphIndex );
 		vertexMap = new JunctionOverlayVertexWrapperBimap<>( this );
 		edgeMap = new JunctionOverlayEdgeWrapperBimap<>( this );
@@ -88,27 +96,31 @@ public class JunctionOverlayGraphWrapper< V extends Vertex< E >, E extends Edge<
 	@Override
 	public JunctionOverlayVertexWrapper< V, E > vertexRef()
 	{
-		final JunctionOverlayVertexWrapper< V, E > ref = tmpVertexRefs.poll();
+		final JunctionOverlayVertexWrapper< V, E > ref = tmpVertexRefs.get().poll();
 		return ref == null ? new JunctionOverlayVertexWrapper<>( this ) : ref;
 	}
 
 	@Override
 	public JunctionOverlayEdgeWrapper< V, E > edgeRef()
 	{
-		final JunctionOverlayEdgeWrapper< V, E > ref = tmpEdgeRefs.poll();
+		final JunctionOverlayEdgeWrapper< V, E > ref = tmpEdgeRefs.get().poll();
 		return ref == null ? new JunctionOverlayEdgeWrapper<>( this ) : ref;
 	}
 
 	@Override
 	public void releaseRef( final JunctionOverlayVertexWrapper< V, E > ref )
 	{
-		tmpVertexRefs.add( ref );
+		final ArrayDeque< JunctionOverlayVertexWrapper< V, E > > refs = tmpVertexRefs.get();
+		if ( refs.size() < MAX_TMP_REFS )
+			refs.push( ref );
 	}
 
 	@Override
 	public void releaseRef( final JunctionOverlayEdgeWrapper< V, E > ref )
 	{
-		tmpEdgeRefs.add( ref );
+		final ArrayDeque< JunctionOverlayEdgeWrapper< V, E > > refs = tmpEdgeRefs.get();
+		if ( refs.size() < MAX_TMP_REFS )
+			refs.push( ref );
 	}
 
 	@Override
@@ -154,6 +166,19 @@ public class JunctionOverlayGraphWrapper< V extends Vertex< E >, E extends Edge<
 		return wrappedIndex;
 	}
 
+	@Override
+	public JunctionOverlayEdgeWrapper< V, E > getMembraneAt( final double x, final double y, final int timepoint, final double maxDistance, final JunctionOverlayEdgeWrapper< V, E > ref )
+	{
+		ref.we = overlayProperties.getMembraneAt( x, y, timepoint, maxDistance, ref.ref );
+		return ref.orNull();
+	}
+
+	@Override
+	public double getMaxMembraneExtent( final int timepoint )
+	{
+		return overlayProperties.getMaxMembraneExtent( timepoint );
+	}
+
 	@Override
 	public JunctionOverlayVertexWrapper< V, E > addVertex()
 	{
@@ -28,6 +28,8 @@
  */
 package org.mastodon.leviathan.views.bdv.overlay.junction.wrap;
 
+import org.mastodon.leviathan.model.DoubleSlice;
+
 public interface JunctionOverlayProperties< V, E >
 {
 	public void localize( V v, final double[] position );
@@ -44,6 +46,12 @@ public interface JunctionOverlayProperties< V, E >
 
 	public double[] getPixels( E e );
 
+	public DoubleSlice getContour( E e, double tolerance, DoubleSlice slice );
+
+	public E getMembraneAt( double x, double y, int timepoint, double maxDistance, E ref );
+
+	public double getMaxMembraneExtent( int timepoint );
+
 	public V addVertex( V ref );
 
 	public V initVertex( V v, int timepoint, double[] position );
@@ -0,0 +1,27 @@
+package org.mastodon.spatial;
+
+/**
+ * Gives access to the per-time-point rebuild of a
+ * {@link SpatioTemporalIndexImp}, which is package-private and otherwise only
+ * used by {@link SpatioTemporalIndexImpRebuilderThread}.
+ */
+public final class SpatioTemporalIndexImpAccess
+{
+
+	/**
+	 * Rebuilds the spatial index of one time-point of a spatio-temporal index.
+	 * The index takes its own lock while it swaps the rebuilt index in.
+	 *
+	 * @param index
+	 *            the spatio-temporal index.
+	 * @param timepoint
+	 *            the time-point to rebuild.
+	 */
+	public static void rebuild( final SpatioTemporalIndexImp< ?, ? > index, final int timepoint )
+	{
+		index.rebuildIndex( timepoint );
+	}
+
+	private SpatioTemporalIndexImpAccess()
+	{}
+}
@@ -0,0 +1,108 @@
+package org.mastodon.leviathan.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ArrayArenaTest
+{
+
+	@Test
+	public void testSetGetRemove()
+	{
+		final ArrayArena< int[] > arena = ArrayArena.ofInts();
+		arena.set( 3, new int[] { 1, 2, 3 } );
+		arena.set( 0, new int[ 0 ] );
+
+		assertEquals( 2, arena.size() );
+		assertTrue( arena.isSet( 0 ) );
+		assertFalse( arena.isSet( 1 ) );
+		assertTrue( arena.isSet( 3 ) );
+		assertFalse( arena.isSet( 100 ) );
+		assertEquals( -1, arena.length( 100 ) );
+		assertArrayEquals( new int[ 0 ], arena.copy( 0 ) );
+		assertArrayEquals( new int[] { 1, 2, 3 }, arena.copy( 3 ) );
+		assertNull( arena.copy( 1 ) );
+
+		// Shorter arrays reuse the segment, longer ones get a new one.
+		arena.set( 3, new int[] { 4 } );
+		assertArrayEquals( new int[] { 4 }, arena.copy( 3 ) );
+		arena.set( 3, new int[] { 5, 6, 7, 8 } );
+		assertArrayEquals( new int[] { 5, 6, 7, 8 }, arena.copy( 3 ) );
+
+		arena.remove( 3 );
+		assertFalse( arena.isSet( 3 ) );
+		assertEquals( 1, arena.size() );
+		assertEquals( 0, arena.getUsed() );
+
+		arena.clear();
+		assertEquals( 0, arena.size() );
+		assertFalse( arena.isSet( 0 ) );
+	}
+
+	@Test
+	public void testSegmentsInPages()
+	{
+		final ArrayArena< double[] > arena = ArrayArena.ofDoubles();
+		final double[] values = new double[] { 0.5, -1., 2. };
+		arena.set( 7, values );
+		final double[] page = arena.page( 7 );
+		final int offset = arena.offset( 7 );
+		for ( int i = 0; i < values.length; i++ )
+			assertEquals( values[ i ], page[ offset + i ], 0. );
+
+		// An array longer than a page gets its own page.
+		final double[] large = new double[ ArrayArena.DEFAULT_PAGE_SIZE + 10 ];
+		large[ large.length - 1 ] = 42.;
+		arena.set( 8, large );
+		assertEquals( 0, arena.offset( 8 ) );
+		assertArrayEquals( large, arena.copy( 8 ), 0. );
+		assertArrayEquals( values, arena.copy( 7 ), 0. );
+	}
+
+	@Test
+	public void testCompaction()
+	{
+		final Random random = new Random( 1L );
+		final int n = 1000;
+		final int[][] expected = new int[ n ][];
+		final ArrayArena< int[] > arena = ArrayArena.ofInts();
+
+		// Growing arrays leave garbage and trigger compactions.
+		for ( int round = 0; round < 50; round++ )
+		{
+			for ( int key = 0; key < n; key++ )
+			{
+				final int[] values = new int[ random.nextInt( 20 + 2 * round ) ];
+				for ( int i = 0; i < values.length; i++ )
+					values[ i ] = random.nextInt();
+				arena.set( key, values );
+				expected[ key ] = values;
+			}
+			for ( int key = 0; key < n; key += 7 )
+			{
+				arena.remove( key );
+				expected[ key ] = null;
+			}
+		}
+		for ( int key = 0; key < n; key++ )
+			assertArrayEquals( expected[ key ], arena.copy( key ) );
+
+		arena.compact();
+		assertEquals( 0, arena.getGarbage() );
+		long used = 0;
+		for ( int key = 0; key < n; key++ )
+		{
+			assertArrayEquals( expected[ key ], arena.copy( key ) );
+			if ( expected[ key ] != null )
+				used += expected[ key ].length;
+		}
+		assertEquals( used, arena.getUsed() );
+	}
+}
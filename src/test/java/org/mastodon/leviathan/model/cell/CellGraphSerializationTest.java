@@ -0,0 +1,114 @@
+package org.mastodon.leviathan.model.cell;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.mastodon.graph.io.RawGraphIO;
+import org.mastodon.graph.io.RawGraphIO.GraphToFileIdMap;
+import org.mastodon.io.properties.ObjPropertyMapSerializer;
+import org.mastodon.io.properties.PropertyMapSerializers;
+import org.mastodon.io.properties.RawPropertyIO;
+import org.mastodon.io.properties.StringPropertyMapSerializer;
+
+public class CellGraphSerializationTest
+{
+
+	private static final double[][] BOUNDARIES = new double[][] {
+			// Pixel steps.
+			{ -3., -2., -2., -2., -1., -1., 0., -1., 1., 0., 1., 1. },
+			// Half-pixel steps.
+			{ -1.5, 0.5, -1., 0., 0., 0., 0.5, 0.5, 1000.5, -2000. },
+			// Arbitrary coordinates, stored raw.
+			{ 0.1, 0.2, Math.PI, -Math.E, 1e-9, 1e9 },
+			// Empty.
+			{} };
+
+	private static final int[][] MEMBRANES = new int[][] {
+			{ 4, 5, 6, 100000, 7 },
+			{ 0 },
+			{ 3, 1, 2 },
+			{} };
+
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		final CellGraph graph = createGraph();
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		graph.saveRaw( bos, CellModelSerializer.getInstance() );
+
+		final CellGraph loaded = new CellGraph();
+		loaded.loadRaw( new ByteArrayInputStream( bos.toByteArray() ), CellModelSerializer.getInstance() );
+		assertEquals( graph.vertices().size(), loaded.vertices().size() );
+
+		final Map< String, Cell > cells = byLabel( loaded );
+		for ( int i = 0; i < BOUNDARIES.length; i++ )
+		{
+			final Cell cell = cells.get( "cell-" + i );
+			assertArrayEquals( BOUNDARIES[ i ], cell.getBoundary(), 0. );
+			assertArrayEquals( MEMBRANES[ i ], cell.getMembranes() );
+		}
+		final Cell unset = cells.get( "unset" );
+		assertNull( unset.getBoundary() );
+		assertNull( unset.getMembranes() );
+	}
+
+	/**
+	 * Files written before the membrane ids were varint encoded store them as
+	 * serialized arrays, under another key.
+	 */
+	@Test
+	public void testReadLegacyMembranes() throws IOException
+	{
+		final CellGraph graph = createGraph();
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		final ObjectOutputStream oos = new ObjectOutputStream( bos );
+		final GraphToFileIdMap< Cell, Link > idmap = RawGraphIO.write( graph, graph.idmap(), CellModelSerializer.getInstance(), oos );
+		final PropertyMapSerializers< Cell > legacy = new PropertyMapSerializers<>();
+		legacy.put( CellGraph.LEGACY_MEMBRANES_KEY, new ObjPropertyMapSerializer<>( graph.getVertexPool().membranes ) );
+		legacy.put( CellGraph.LABEL_KEY, new StringPropertyMapSerializer<>( graph.getVertexPool().label ) );
+		RawPropertyIO.writePropertyMaps( idmap.vertices(), legacy, oos );
+		oos.close();
+
+		final CellGraph loaded = new CellGraph();
+		loaded.loadRaw( new ByteArrayInputStream( bos.toByteArray() ), CellModelSerializer.getInstance() );
+
+		final Map< String, Cell > cells = byLabel( loaded );
+		for ( int i = 0; i < MEMBRANES.length; i++ )
+		{
+			final Cell cell = cells.get( "cell-" + i );
+			assertArrayEquals( MEMBRANES[ i ], cell.getMembranes() );
+			assertNull( cell.getBoundary() );
+		}
+	}
+
+	private static CellGraph createGraph()
+	{
+		final CellGraph graph = new CellGraph();
+		for ( int i = 0; i < BOUNDARIES.length; i++ )
+		{
+			final Cell cell = graph.addVertex().init( i % 2, new double[] { 10. * i, 5. * i } );
+			cell.setLabel( "cell-" + i );
+			cell.setBoundary( BOUNDARIES[ i ] );
+			cell.setMembranes( MEMBRANES[ i ] );
+		}
+		graph.addVertex().init( 0, new double[] { -1., -1. } ).setLabel( "unset" );
+		return graph;
+	}
+
+	private static Map< String, Cell > byLabel( final CellGraph graph )
+	{
+		final Map< String, Cell > cells = new HashMap<>();
+		for ( final Cell cell : graph.vertices() )
+			cells.put( cell.getLabel(), graph.vertices().getRefPool().getObject( cell.getInternalPoolIndex(), graph.vertexRef() ) );
+		return cells;
+	}
+}
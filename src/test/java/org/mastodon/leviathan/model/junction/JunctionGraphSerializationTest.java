@@ -0,0 +1,82 @@
+package org.mastodon.leviathan.model.junction;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+import org.junit.Test;
+import org.mastodon.graph.io.RawGraphIO;
+import org.mastodon.graph.io.RawGraphIO.GraphToFileIdMap;
+import org.mastodon.io.properties.PropertyMapSerializers;
+import org.mastodon.io.properties.RawPropertyIO;
+
+public class JunctionGraphSerializationTest
+{
+
+	private static final double[][] PIXELS = new double[][] {
+			// Neighbor pixels.
+			{ 0., 0., 1., 0., 2., 1., 2., 2., 1., 3., 0., 3., -5., 2. },
+			// Half-pixel steps.
+			{ 0., 0., 0.5, 0.5, 1., 0.5, 1.5, -100.5 },
+			// Arbitrary coordinates, stored raw.
+			{ 0., 0., 0.3, 0.7, 2.25, 1.1 } };
+
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		final JunctionGraph graph = createGraph();
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		graph.saveRaw( bos, JunctionModelSerializer.getInstance() );
+
+		final JunctionGraph loaded = new JunctionGraph();
+		loaded.loadRaw( new ByteArrayInputStream( bos.toByteArray() ), JunctionModelSerializer.getInstance() );
+		assertEquals( graph.vertices().size(), loaded.vertices().size() );
+		assertEquals( graph.edges().size(), loaded.edges().size() );
+
+		// Edges are numbered in the file in the order they are visited.
+		int i = 0;
+		for ( final MembranePart membrane : loaded.edges() )
+			assertArrayEquals( PIXELS[ i++ ], membrane.getPixels(), 0. );
+	}
+
+	/**
+	 * Files written before the membrane pixels were saved end after the
+	 * vertex property maps.
+	 */
+	@Test
+	public void testReadWithoutEdgeProperties() throws IOException
+	{
+		final JunctionGraph graph = createGraph();
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		final ObjectOutputStream oos = new ObjectOutputStream( bos );
+		final GraphToFileIdMap< Junction, MembranePart > idmap = RawGraphIO.write( graph, graph.idmap(), JunctionModelSerializer.getInstance(), oos );
+		RawPropertyIO.writePropertyMaps( idmap.vertices(), new PropertyMapSerializers<>(), oos );
+		oos.close();
+
+		final JunctionGraph loaded = new JunctionGraph();
+		loaded.loadRaw( new ByteArrayInputStream( bos.toByteArray() ), JunctionModelSerializer.getInstance() );
+		assertEquals( graph.vertices().size(), loaded.vertices().size() );
+		assertEquals( graph.edges().size(), loaded.edges().size() );
+	}
+
+	private static JunctionGraph createGraph()
+	{
+		final JunctionGraph graph = new JunctionGraph();
+		final Junction ref1 = graph.vertexRef();
+		final Junction ref2 = graph.vertexRef();
+		for ( int i = 0; i < PIXELS.length; i++ )
+		{
+			final double[] pixels = PIXELS[ i ];
+			final Junction source = graph.addVertex( ref1 ).init( 0, new double[] { pixels[ 0 ], pixels[ 1 ] } );
+			final Junction target = graph.addVertex( ref2 ).init( 0, new double[] { pixels[ pixels.length - 2 ], pixels[ pixels.length - 1 ] } );
+			graph.addEdge( source, target ).init().setPixels( pixels );
+		}
+		graph.releaseRef( ref1 );
+		graph.releaseRef( ref2 );
+		return graph;
+	}
+}